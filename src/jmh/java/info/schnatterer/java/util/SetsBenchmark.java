@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link Sets} the way the migration uses it: Playlists are
+ * matched against a {@link HashSet} of normalized names.
+ * 
+ * @author schnatterer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetsBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	private int size;
+
+	private List<String> a;
+	private Set<String> b;
+
+	@Setup
+	public void setUp() {
+		a = new ArrayList<>(size);
+		b = new HashSet<>();
+		for (int i = 0; i < size; i++) {
+			a.add(" Playlist " + i + " ");
+			// Every other element is contained in both
+			if (i % 2 == 0) {
+				b.add("PLAYLIST " + i);
+			}
+		}
+	}
+
+	@Benchmark
+	public long intersection() {
+		return Sets.intersection(a, b, s -> s.trim().toUpperCase()).count();
+	}
+
+	@Benchmark
+	public long relativeComplement() {
+		return Sets.relativeComplement(a, b, s -> s.trim().toUpperCase())
+				.count();
+	}
+}
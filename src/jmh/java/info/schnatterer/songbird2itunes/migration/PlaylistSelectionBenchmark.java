@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks indexing playlists (sorting them and normalizing their names)
+ * and selecting the playlists to migrate.
+ * 
+ * @author schnatterer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaylistSelectionBenchmark {
+
+	@Param({ "100", "10000" })
+	private int playlists;
+
+	private List<String> names;
+	private PlaylistIndex<String> index;
+	/** Every tenth playlist, exact and as glob. */
+	private List<String> requestedNames;
+
+	@Setup
+	public void setUp() {
+		names = new ArrayList<>(playlists);
+		for (int i = 0; i < playlists; i++) {
+			names.add(" Playlist " + i + " ");
+		}
+		Collections.shuffle(names, new Random(42));
+		index = new PlaylistIndex<>(names, Function.identity());
+		requestedNames = new ArrayList<>();
+		for (int i = 0; i < playlists; i += 10) {
+			requestedNames.add("playlist " + i);
+			requestedNames.add("glob:playlist " + i + "?");
+		}
+	}
+
+	@Benchmark
+	public PlaylistIndex<String> index() {
+		return new PlaylistIndex<>(names, Function.identity());
+	}
+
+	@Benchmark
+	public List<String> select() {
+		return index.select(requestedNames).getSelected();
+	}
+
+	@Benchmark
+	public List<String> normalizePlaylistNames() {
+		return names.stream()
+				.map(Songbird2itunesMigration::normalizePlaylistName)
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.itunes4j.entity.Rating;
+import info.schnatterer.java.lang.XLong;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the conversion of a single songbird track: Its numeric
+ * properties, its rating and its path.
+ * 
+ * @author schnatterer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrackConversionBenchmark {
+
+	private Songbird2itunesMigration migration = new Songbird2itunesMigration();
+	/** Not final, so the JIT does not fold the values. */
+	private Long playCount = Long.valueOf(42);
+	private Long rating = Long.valueOf(4);
+
+	private File file;
+	private SongbirdTrack track;
+
+	@Setup
+	public void setUp() throws IOException {
+		file = File.createTempFile("songbird2itunes", ".mp3");
+		String contentUrl = file.toURI().toString();
+		track = new SongbirdTrack() {
+			@Override
+			public String getGuid() {
+				return null;
+			}
+
+			@Override
+			public String getContentUrl() {
+				return contentUrl;
+			}
+
+			@Override
+			public Date getDateCreated() {
+				return null;
+			}
+
+			@Override
+			public String getProperty(String name) {
+				return null;
+			}
+		};
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.delete(file.toPath());
+	}
+
+	@Benchmark
+	public int convertSongbirdLongValue() {
+		return migration.convertSongbirdLongValue(playCount);
+	}
+
+	@Benchmark
+	public Integer xLongToInt() {
+		return new XLong(playCount).toInt();
+	}
+
+	@Benchmark
+	public Rating convertSongbirdRating() {
+		return migration.convertSongbirdRating(rating);
+	}
+
+	@Benchmark
+	public Optional<String> toAbsolutePath() {
+		return migration.toAbsolutePath(track);
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.lang;
+
+import info.schnatterer.java.lang.SystemClock.SystemClockException;
+
+import java.util.Date;
+
+/**
+ * Strategy that knows how to control the system clock on a specific operating
+ * system. Returns the commands only, they are run by a {@link CommandExecutor}.
+ * 
+ * @author schnatterer
+ *
+ */
+public interface ClockPlatform {
+
+	/**
+	 * @return the platform of the operating system this JVM runs on
+	 * 
+	 * @throws SystemClockException
+	 *             if setting the system clock is not supported on this
+	 *             operating system
+	 */
+	static ClockPlatform current() throws SystemClockException {
+		return of(System.getProperty("os.name", ""));
+	}
+
+	/**
+	 * @param osName
+	 *            name of an operating system, as in the system property
+	 *            <code>os.name</code>
+	 * @return the platform of the operating system
+	 * 
+	 * @throws SystemClockException
+	 *             if setting the system clock is not supported on the
+	 *             operating system, e.g. on macOS, whose <code>date</code>
+	 *             and <code>hwclock</code> differ from Linux
+	 */
+	static ClockPlatform of(String osName) throws SystemClockException {
+		if (osName.startsWith("Windows")) {
+			return new WindowsClockPlatform();
+		}
+		if (osName.startsWith("Linux")) {
+			return new LinuxClockPlatform();
+		}
+		throw new SystemClockException(
+				"Setting the system clock is not supported on " + osName);
+	}
+
+	/**
+	 * @param command
+	 *            a command for this platform's shell
+	 * @return the arguments for a new process that executes
+	 *         <code>command</code> and terminates
+	 */
+	String[] fork(String command);
+
+	/**
+	 * @return the arguments for a new shell process that reads commands from
+	 *         stdin
+	 */
+	String[] shell();
+
+	/**
+	 * @param marker
+	 *            text to print before the exit status
+	 * @return a command that prints <code>marker</code> followed by a space
+	 *         and the exit status of the previous command
+	 */
+	String exitStatus(String marker);
+
+	/**
+	 * @param date
+	 *            the date and time to set, only up to the minute
+	 * @return a command that sets the system clock to the beginning of the
+	 *         minute of <code>date</code>
+	 */
+	String set(Date date);
+
+	/**
+	 * @param date
+	 *            the date and time to set, up to the second
+	 * @return a command that sets the system clock to <code>date</code>
+	 */
+	String setExact(Date date);
+
+	/**
+	 * @return a command that sets the system clock to the real time from an
+	 *         external source
+	 */
+	String resync();
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.lang;
+
+import info.schnatterer.java.lang.SystemClock.SystemClockException;
+
+/**
+ * Runs the commands returned by a {@link ClockPlatform}.
+ * 
+ * @author schnatterer
+ *
+ */
+@FunctionalInterface
+public interface CommandExecutor extends AutoCloseable {
+
+	/**
+	 * Executes a command synchronously, that is, returns after the command
+	 * terminated.
+	 * 
+	 * @param command
+	 *            command to execute
+	 * 
+	 * @throws SystemClockException
+	 *             wraps all exceptions, including non-zero exit values
+	 */
+	void execute(String command) throws SystemClockException;
+
+	/**
+	 * Releases all resources held by this executor. Does nothing by default.
+	 */
+	@Override
+	default void close() {
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.lang;
+
+import info.schnatterer.java.lang.SystemClock.SystemClockException;
+
+import java.io.IOException;
+
+/**
+ * Forks a new process for each command and waits for its termination.
+ * 
+ * @author schnatterer
+ *
+ */
+public class ForkingCommandExecutor implements CommandExecutor {
+	private final ClockPlatform platform;
+
+	/**
+	 * @param platform
+	 *            provides the shell that executes the commands
+	 */
+	public ForkingCommandExecutor(ClockPlatform platform) {
+		this.platform = platform;
+	}
+
+	@Override
+	public void execute(String command) throws SystemClockException {
+		try {
+			Process proc = exec(platform.fork(command));
+			int exitValue = proc.waitFor();
+			if (exitValue != 0) {
+				throw new SystemClockException("Executing \"" + command
+						+ "\" failed: Exit value " + exitValue);
+			}
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			throw new SystemClockException("Executing \"" + command
+					+ "\" failed with exception: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Low level wrapper for {@link Runtime#exec(String[])}.
+	 * 
+	 * @param cmdarray
+	 *            array containing the command to call and its arguments
+	 * 
+	 * @return A new {@link Process} object for managing the subprocess
+	 * 
+	 * @throws IOException
+	 *             If an I/O error occurs
+	 */
+	private Process exec(String[] cmdarray) throws IOException {
+		return Runtime.getRuntime().exec(cmdarray);
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.lang;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controls the clock using GNU <code>date</code>. Requires the process to run
+ * as root.
+ * 
+ * @author schnatterer
+ *
+ */
+public class LinuxClockPlatform implements ClockPlatform {
+	/**
+	 * Thread-safe holder for the {@link DateFormat} used for formatting the
+	 * date and time values.
+	 */
+	private static ThreadLocal<DateFormat> dateFormatHolder = new ThreadLocal<DateFormat>() {
+		@Override
+		protected DateFormat initialValue() {
+			DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+			return dateFormat;
+		}
+	};
+
+	@Override
+	public String[] fork(String command) {
+		return new String[] { "/bin/sh", "-c", command };
+	}
+
+	@Override
+	public String[] shell() {
+		return new String[] { "/bin/sh" };
+	}
+
+	@Override
+	public String exitStatus(String marker) {
+		return "echo " + marker + " $?";
+	}
+
+	@Override
+	public String set(Date date) {
+		return "date -s '" + dateFormatHolder.get().format(date) + "'";
+	}
+
+	@Override
+	public String setExact(Date date) {
+		return "date -s @"
+				+ TimeUnit.MILLISECONDS.toSeconds(date.getTime());
+	}
+
+	@Override
+	public String resync() {
+		// date -s does not change the hardware clock
+		return "hwclock --hctosys";
+	}
+}
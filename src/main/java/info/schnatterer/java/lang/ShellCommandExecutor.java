@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.lang;
+
+import info.schnatterer.java.lang.SystemClock.SystemClockException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executes all commands in one long-lived shell process, sending them via
+ * stdin. Saves forking a new process for each command.
+ * 
+ * After each command the shell is asked to print its exit status, prefixed by
+ * a marker. Everything that is read from the shell's output before the marker
+ * is considered the output of the command.
+ * 
+ * The shell is started on the first command and stopped by {@link #close()}.
+ * If a command does not return in time, the shell is killed and a new one is
+ * started on the next command.
+ * 
+ * @author schnatterer
+ *
+ */
+public class ShellCommandExecutor implements CommandExecutor {
+	/** Prefix of the line that contains a command's exit status. */
+	static final String EXIT_STATUS_MARKER = "__exit_status__";
+	/** Time to wait for the shell to terminate after sending exit. */
+	private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+	/** Time to wait for a command to return, by default. */
+	private static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+	private final ClockPlatform platform;
+	private final long timeoutMillis;
+
+	private Process shell = null;
+	private BufferedWriter shellIn;
+	private BufferedReader shellOut;
+	/** Kills the shell when a command does not return in time. */
+	private ScheduledExecutorService watchdog;
+
+	/**
+	 * @param platform
+	 *            provides the shell that executes the commands
+	 */
+	public ShellCommandExecutor(ClockPlatform platform) {
+		this(platform, DEFAULT_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param platform
+	 *            provides the shell that executes the commands
+	 * @param timeoutMillis
+	 *            time to wait for a command to return, before the shell is
+	 *            killed
+	 */
+	ShellCommandExecutor(ClockPlatform platform, long timeoutMillis) {
+		this.platform = platform;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public synchronized void execute(String command)
+			throws SystemClockException {
+		StringBuilder output = new StringBuilder();
+		// Set by whoever comes first: The command returning or the watchdog
+		AtomicBoolean finished = new AtomicBoolean(false);
+		Integer exitStatus;
+		try {
+			if (shell == null) {
+				start();
+			}
+			/*
+			 * Kills the shell if the command does not return, e.g. because it
+			 * prompts for input and reads the next line from stdin.
+			 */
+			Process current = shell;
+			ScheduledFuture<?> deadline = watchdog.schedule(() -> {
+				if (finished.compareAndSet(false, true)) {
+					current.destroy();
+				}
+			}, timeoutMillis, TimeUnit.MILLISECONDS);
+			try {
+				exitStatus = send(command, output);
+			} finally {
+				deadline.cancel(false);
+			}
+		} catch (IOException | RuntimeException e) {
+			close();
+			if (finished.compareAndSet(false, true)) {
+				throw new SystemClockException("Executing \"" + command
+						+ "\" failed with exception: " + e.getMessage(), e);
+			}
+			throw timeout(command, output);
+		}
+		if (!finished.compareAndSet(false, true)) {
+			// Start a new shell on the next command
+			close();
+			throw timeout(command, output);
+		}
+		if (exitStatus == null) {
+			// Start a new shell on the next command
+			close();
+			throw new SystemClockException("Executing \"" + command
+					+ "\" failed: Shell terminated. Output: " + output);
+		}
+		if (exitStatus != 0) {
+			throw new SystemClockException("Executing \"" + command
+					+ "\" failed: Exit value " + exitStatus + ". Output: "
+					+ output);
+		}
+	}
+
+	/**
+	 * Stops the shell, if running.
+	 */
+	@Override
+	public synchronized void close() {
+		if (shell == null) {
+			return;
+		}
+		try {
+			shellIn.write("exit");
+			shellIn.newLine();
+			shellIn.close();
+		} catch (IOException e) {
+			// Shell is gone already
+		}
+		try {
+			if (!shell.waitFor(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				shell.destroy();
+			}
+		} catch (InterruptedException e) {
+			shell.destroy();
+			Thread.currentThread().interrupt();
+		}
+		watchdog.shutdown();
+		shell = null;
+	}
+
+	/**
+	 * Starts the shell, merging its stderr into stdout.
+	 * 
+	 * @throws IOException
+	 *             If an I/O error occurs
+	 */
+	private void start() throws IOException {
+		shell = new ProcessBuilder(platform.shell()).redirectErrorStream(true)
+				.start();
+		shellIn = new BufferedWriter(new OutputStreamWriter(
+				shell.getOutputStream()));
+		shellOut = new BufferedReader(new InputStreamReader(
+				shell.getInputStream()));
+		watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "shell-watchdog");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Sends a command to the shell and reads its output up to its exit status.
+	 * 
+	 * @param command
+	 *            the command to execute
+	 * @param output
+	 *            the output of the command is appended to it
+	 * @return the exit status of the command or <code>null</code> if the shell
+	 *         terminated before
+	 * @throws IOException
+	 *             If an I/O error occurs
+	 */
+	private Integer send(String command, StringBuilder output)
+			throws IOException {
+		shellIn.write(command);
+		shellIn.newLine();
+		shellIn.write(platform.exitStatus(EXIT_STATUS_MARKER));
+		shellIn.newLine();
+		shellIn.flush();
+
+		String line;
+		while ((line = shellOut.readLine()) != null) {
+			Integer exitStatus = parseExitStatus(line);
+			if (exitStatus != null) {
+				return exitStatus;
+			}
+			output.append(line).append(System.lineSeparator());
+		}
+		return null;
+	}
+
+	private SystemClockException timeout(String command, StringBuilder output) {
+		return new SystemClockException("Executing \"" + command
+				+ "\" failed: No exit status within " + timeoutMillis
+				+ " ms. Output: " + output);
+	}
+
+	/**
+	 * @param line
+	 *            a line of the shell's output
+	 * @return the exit status, if <code>line</code> contains the marker
+	 *         followed by a number. Otherwise <code>null</code>. A prompt or
+	 *         the echoed status command itself are no exit status.
+	 */
+	static Integer parseExitStatus(String line) {
+		int markerIndex = line.indexOf(EXIT_STATUS_MARKER);
+		if (markerIndex < 0) {
+			return null;
+		}
+		try {
+			return Integer.valueOf(line.substring(
+					markerIndex + EXIT_STATUS_MARKER.length()).trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
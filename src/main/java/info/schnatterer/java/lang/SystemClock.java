@@ -15,50 +15,93 @@
  */
 package info.schnatterer.java.lang;
 
-import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A java wrapper for the system clock. For now this will
  * <ul>
- * <li><b>only work on windows</b></li>
+ * <li><b>only work on windows and linux</b></li>
  * <li><b>only work when run as administrator</b></li>
  * </ul>
  * So better don't use this :)
  * 
+ * The clock is set with a resolution of minutes. Setting it to the same minute
+ * again right away is skipped, as the clock is still within that minute.
+ * 
+ * The platform specific commands are provided by a {@link ClockPlatform} and
+ * run by a {@link CommandExecutor}.
+ * 
  * @author schnatterer
  *
  */
-public class SystemClock {
+public class SystemClock implements AutoCloseable {
 	/**
-	 * Thread-safe holder for the {@link DateFormat} used for formatting the
-	 * time values.
+	 * Setting the clock to a minute starts it at the minute's first second.
+	 * Within this time it is safe to assume the clock did not leave the
+	 * minute.
 	 */
-	private static ThreadLocal<DateFormat> dateFormatHolderTime = new ThreadLocal<DateFormat>() {
-		@Override
-		protected DateFormat initialValue() {
-			DateFormat dateFormat = new SimpleDateFormat("HH:mm");
-			return dateFormat;
-		}
-	};
+	private static final long MAX_COALESCE_NANOS = TimeUnit.SECONDS
+			.toNanos(50);
+
+	private final ClockPlatform platform;
+	private final CommandExecutor executor;
+
+	/** Real time when this instance was created. */
+	private final long startMillis = System.currentTimeMillis();
+	/** Unaffected by changes of the system clock. */
+	private final long startNanos = System.nanoTime();
+
+	/** The last command that set the clock successfully. */
+	private String lastSetCommand = null;
+	/** {@link System#nanoTime()} before the clock was last set. */
+	private long lastSetNanos;
+	private long setCount = 0;
+
 	/**
-	 * Thread-safe holder for the {@link DateFormat} used for formatting the
-	 * date values.
+	 * Creates a clock for the current platform that runs all commands in one
+	 * shell process. Create it before changing the clock, see
+	 * {@link #restore()}.
+	 * 
+	 * @throws SystemClockException
+	 *             if setting the system clock is not supported on the current
+	 *             operating system, see {@link ClockPlatform#current()}
 	 */
-	private static ThreadLocal<DateFormat> dateFormatHolderDate = new ThreadLocal<DateFormat>() {
-		@Override
-		protected DateFormat initialValue() {
-			DateFormat dateFormat = new SimpleDateFormat("dd-MM-yy");
-			return dateFormat;
-		}
-	};
+	public SystemClock() throws SystemClockException {
+		this(ClockPlatform.current());
+	}
+
+	/**
+	 * Creates a clock that runs all commands in one shell process. Create it
+	 * before changing the clock, see {@link #restore()}.
+	 * 
+	 * @param platform
+	 *            provides the commands that control the clock
+	 */
+	public SystemClock(ClockPlatform platform) {
+		this(platform, new ShellCommandExecutor(platform));
+	}
+
+	/**
+	 * Create it before changing the clock, see {@link #restore()}.
+	 * 
+	 * @param platform
+	 *            provides the commands that control the clock
+	 * @param executor
+	 *            runs the commands
+	 */
+	public SystemClock(ClockPlatform platform, CommandExecutor executor) {
+		this.platform = platform;
+		this.executor = executor;
+	}
 
 	/**
-	 * Sets the system clock synchronously (that is, by forking a process and
-	 * waiting for its termination) without throwing exceptions. Any errors are
-	 * logged.
+	 * Sets the system clock synchronously (that is, by executing a command and
+	 * waiting for its termination).
+	 * 
+	 * If the clock was set to the same minute less than 50 seconds ago, it
+	 * still is within this minute and nothing is done. So it is much faster
+	 * to set the clock to dates in chronological order.
 	 * 
 	 * @param date
 	 *            the date and time to se
@@ -67,64 +110,60 @@ public class SystemClock {
 	 *             wraps all exceptions
 	 */
 	public void set(Date date) throws SystemClockException {
-		// Windows "cmd /C date dd-MM-yy & time hh:mm:ss"
-		synchronousExec("cmd /C date "
-				+ dateFormatHolderDate.get().format(date) + " & time "
-				+ dateFormatHolderTime.get().format(date));
-		// Linux: "date -s MMddhhmm[[yy]yy]"
+		String command = platform.set(date);
+		long now = System.nanoTime();
+		if (command.equals(lastSetCommand)
+				&& now - lastSetNanos < MAX_COALESCE_NANOS) {
+			return;
+		}
+		lastSetCommand = null;
+		executor.execute(command);
+		lastSetCommand = command;
+		lastSetNanos = now;
+		setCount++;
 	}
 
 	/**
-	 * Resyncs the system clock with a time server.
+	 * @return the number of times the clock was actually set
+	 */
+	public long getSetCount() {
+		return setCount;
+	}
+
+	/**
+	 * Sets the system clock back to the real time, without network access.
+	 * The real time is calculated from the time this instance was created
+	 * plus the time elapsed since, measured by {@link System#nanoTime()}.
 	 * 
 	 * @throws SystemClockException
 	 *             wraps all exceptions
 	 */
-	public void resync() throws SystemClockException {
-		synchronousExec("cmd /C w32tm /resync /force");
+	public void restore() throws SystemClockException {
+		lastSetCommand = null;
+		executor.execute(platform.setExact(new Date(startMillis
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+						- startNanos))));
 	}
 
 	/**
-	 * Higher level level wrapper for synchronous system calls. Forks a process
-	 * and waits for the result. Any errors are uniformly wrapped in a
-	 * {@link SystemClockException}.
-	 * 
-	 * @param execCommand
-	 *            command to fork and execute
+	 * Synchronizes the system clock with an external time source, such as a
+	 * network time server.
 	 * 
 	 * @throws SystemClockException
 	 *             wraps all exceptions
 	 */
-	protected void synchronousExec(String execCommand)
-			throws SystemClockException {
-		try {
-			Process proc = exec(execCommand);
-			int exitValue = proc.waitFor();
-			if (exitValue != 0) {
-				throw new SystemClockException(
-						"Setting the system clock failed (\"" + execCommand
-								+ "\"): Exit value " + exitValue);
-			}
-		} catch (IOException | InterruptedException | RuntimeException e) {
-			throw new SystemClockException(
-					"Setting the system clock failed (\"" + execCommand
-							+ "\") with exception: " + e.getMessage(), e);
-		}
+	public void resync() throws SystemClockException {
+		lastSetCommand = null;
+		executor.execute(platform.resync());
 	}
 
 	/**
-	 * Low level wrapper for {@link Runtime#exec(String)}. Useful for testing.
-	 * 
-	 * @param execCommand
-	 *            a specified system command.
-	 * 
-	 * @return A new {@link Process} object for managing the subprocess
-	 * 
-	 * @throws IOException
-	 *             If an I/O error occurs
+	 * Releases the resources held by the executor. Does not restore the
+	 * clock.
 	 */
-	private Process exec(String execCommand) throws IOException {
-		return Runtime.getRuntime().exec(execCommand);
+	@Override
+	public void close() {
+		executor.close();
 	}
 
 	/**
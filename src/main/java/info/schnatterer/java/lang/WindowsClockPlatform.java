@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.lang;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Controls the clock using the builtins of the windows command line. Requires
+ * the process to run as administrator.
+ * 
+ * @author schnatterer
+ *
+ */
+public class WindowsClockPlatform implements ClockPlatform {
+	/**
+	 * Thread-safe holder for the {@link DateFormat} used for formatting the
+	 * time values.
+	 */
+	private static ThreadLocal<DateFormat> dateFormatHolderTime = new ThreadLocal<DateFormat>() {
+		@Override
+		protected DateFormat initialValue() {
+			DateFormat dateFormat = new SimpleDateFormat("HH:mm");
+			return dateFormat;
+		}
+	};
+	/**
+	 * Thread-safe holder for the {@link DateFormat} used for formatting the
+	 * time values up to the second.
+	 */
+	private static ThreadLocal<DateFormat> dateFormatHolderTimeExact = new ThreadLocal<DateFormat>() {
+		@Override
+		protected DateFormat initialValue() {
+			DateFormat dateFormat = new SimpleDateFormat("HH:mm:ss");
+			return dateFormat;
+		}
+	};
+	/**
+	 * Thread-safe holder for the {@link DateFormat} used for formatting the
+	 * date values.
+	 */
+	private static ThreadLocal<DateFormat> dateFormatHolderDate = new ThreadLocal<DateFormat>() {
+		@Override
+		protected DateFormat initialValue() {
+			DateFormat dateFormat = new SimpleDateFormat("dd-MM-yy");
+			return dateFormat;
+		}
+	};
+
+	@Override
+	public String[] fork(String command) {
+		return new String[] { "cmd", "/C", command };
+	}
+
+	@Override
+	public String[] shell() {
+		// Don't echo the commands
+		return new String[] { "cmd", "/Q" };
+	}
+
+	@Override
+	public String exitStatus(String marker) {
+		return "echo " + marker + " %errorlevel%";
+	}
+
+	@Override
+	public String set(Date date) {
+		return "date " + dateFormatHolderDate.get().format(date) + " & time "
+				+ dateFormatHolderTime.get().format(date);
+	}
+
+	@Override
+	public String setExact(Date date) {
+		return "date " + dateFormatHolderDate.get().format(date) + " & time "
+				+ dateFormatHolderTimeExact.get().format(date);
+	}
+
+	@Override
+	public String resync() {
+		return "w32tm /resync /force";
+	}
+}
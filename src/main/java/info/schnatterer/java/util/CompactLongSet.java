@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.util;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of primitive <code>long</code> values, backed by a sorted
+ * array. Needs 8 bytes per element (no boxing, no hash table overhead), lookups
+ * are done by binary search.
+ * 
+ * Use the {@link Builder} to create instances.
+ * 
+ * @author schnatterer
+ *
+ */
+public class CompactLongSet {
+	/** Sorted, without duplicates. */
+	private final long[] values;
+
+	private CompactLongSet(long[] values) {
+		this.values = values;
+	}
+
+	/**
+	 * @param value
+	 *            value to look up
+	 * @return <code>true</code> if this set contains <code>value</code>
+	 */
+	public boolean contains(long value) {
+		return Arrays.binarySearch(values, value) >= 0;
+	}
+
+	/**
+	 * @return the number of (distinct) elements in this set
+	 */
+	public int size() {
+		return values.length;
+	}
+
+	/**
+	 * Collects values for a {@link CompactLongSet}. Not thread-safe.
+	 */
+	public static class Builder {
+		private long[] values = new long[16];
+		private int size = 0;
+
+		/**
+		 * @param value
+		 *            value to add, duplicates are allowed
+		 * @return this builder
+		 */
+		public Builder add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, values.length * 2);
+			}
+			values[size++] = value;
+			return this;
+		}
+
+		/**
+		 * @return a new set containing all distinct values added so far
+		 */
+		public CompactLongSet build() {
+			long[] sorted = Arrays.copyOf(values, size);
+			Arrays.sort(sorted);
+			int distinct = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+					sorted[distinct++] = sorted[i];
+				}
+			}
+			return new CompactLongSet(Arrays.copyOf(sorted, distinct));
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 64 bit FNV-1a hash of character sequences and bytes. Fast and well
+ * distributed, but not cryptographic.
+ * 
+ * A hash can be continued with further sequences, so the hash of several
+ * values can be computed without concatenating them first.
+ * 
+ * @author schnatterer
+ *
+ */
+public final class Fnv1a64 {
+	/** The hash of the empty sequence, the start value of each hash. */
+	public static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	private Fnv1a64() {
+	}
+
+	/**
+	 * @param chars
+	 *            the characters to hash
+	 * @return the hash of <code>chars</code>
+	 */
+	public static long hash(CharSequence chars) {
+		return hash(OFFSET_BASIS, chars);
+	}
+
+	/**
+	 * @param hash
+	 *            the hash to continue, e.g. {@link #OFFSET_BASIS}
+	 * @param chars
+	 *            the characters to add to <code>hash</code>
+	 * @return the hash of the sequences hashed so far, followed by
+	 *         <code>chars</code>
+	 */
+	public static long hash(long hash, CharSequence chars) {
+		for (int i = 0; i < chars.length(); i++) {
+			hash ^= chars.charAt(i);
+			hash *= PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * @param hash
+	 *            the hash to continue, e.g. {@link #OFFSET_BASIS}
+	 * @param bytes
+	 *            the bytes to add to <code>hash</code>, from the position to
+	 *            the limit. The position is moved to the limit.
+	 * @return the hash of the bytes hashed so far, followed by
+	 *         <code>bytes</code>
+	 */
+	public static long hash(long hash, ByteBuffer bytes) {
+		while (bytes.hasRemaining()) {
+			hash ^= bytes.get() & 0xff;
+			hash *= PRIME;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Records non-negative values (such as latencies in nanoseconds) into a fixed
+ * number of buckets, similar to an HDR histogram. Values below 64 are recorded
+ * exactly. Larger values fall into one of 32 linear buckets per power of two,
+ * so percentiles are accurate to about 3%.
+ * 
+ * Recording does not allocate and is thread-safe. The memory used is fixed at
+ * about 15 KB, no matter how many values are recorded.
+ * 
+ * @author schnatterer
+ *
+ */
+public class LatencyHistogram {
+	/** Number of bits that select the sub bucket within a power of two. */
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** Covers all positive long values. */
+	private static final int BUCKETS = (Long.SIZE - 1 - SUB_BUCKET_BITS)
+			* SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * @param value
+	 *            the value to record. Negative values are recorded as
+	 *            <code>0</code>.
+	 */
+	public void record(long value) {
+		long nonNegative = Math.max(value, 0);
+		counts.incrementAndGet(bucketIndex(nonNegative));
+		max.accumulate(nonNegative);
+	}
+
+	/**
+	 * @return the number of values recorded
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the largest value recorded (exact), or <code>0</code> if none
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile
+	 *            between <code>0</code> and <code>100</code>
+	 * @return the highest value of the bucket that contains the value at
+	 *         <code>percentile</code>, never larger than {@link #getMax()}.
+	 *         <code>0</code> if no values were recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = getCount();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1,
+				(long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValueInBucket(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	static int bucketIndex(long value) {
+		if (value < 2 * SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		// Between SUB_BUCKETS and 2 * SUB_BUCKETS - 1
+		int subBucket = (int) (value >>> shift);
+		return shift * SUB_BUCKETS + subBucket;
+	}
+
+	static long highestValueInBucket(int index) {
+		if (index < 2 * SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.util;
+
+import java.util.Arrays;
+
+/**
+ * Stores paths (or URLs) that share prefixes, e.g. the directories of a music
+ * library, as a tree of segments. Each distinct prefix is stored once: A node
+ * holds its parent node and the id of its segment in a {@link StringPool}, so
+ * a segment that occurs in many paths (e.g. <code>Music</code>) is stored once
+ * as well. Each path is identified by the <code>int</code> id of its node.
+ * 
+ * A path is split after each separator. Its last segment is the part after
+ * the last separator, so <code>/music/a/</code> and <code>/music/a</code> are
+ * distinct nodes.
+ * 
+ * The root node (id 0) is the empty path. Not thread-safe while adding,
+ * thread-safe for reading afterwards.
+ * 
+ * @author schnatterer
+ *
+ */
+public class PathTrie {
+	/** Id of the node of the empty path. */
+	public static final int ROOT = 0;
+
+	private static final long NO_KEY = -1;
+
+	private final char separator;
+	private final StringPool segments = new StringPool();
+
+	/** Parent of each node, by node id. */
+	private int[] parents = new int[16];
+	/** Segment id of each node, by node id. */
+	private int[] segmentIds = new int[16];
+	private int size = 1;
+
+	/**
+	 * Open addressing hash table that finds the child of a node by its
+	 * segment. Key is parent and segment id, value the id of the child.
+	 */
+	private long[] childKeys = newKeys(64);
+	private int[] childIds = new int[64];
+
+	/**
+	 * @param separator
+	 *            separates the segments of a path, e.g. <code>'/'</code>
+	 */
+	public PathTrie(char separator) {
+		this.separator = separator;
+		parents[ROOT] = -1;
+		segmentIds[ROOT] = -1;
+	}
+
+	/**
+	 * Adds a path, unless contained already.
+	 * 
+	 * @param path
+	 *            the path to add
+	 * @return the id of the path's node
+	 */
+	public int add(String path) {
+		int node = ROOT;
+		int start = 0;
+		while (start < path.length()) {
+			int end = path.indexOf(separator, start);
+			end = end < 0 ? path.length() : end + 1;
+			node = child(node, segments.intern(path.substring(start, end)));
+			start = end;
+		}
+		return node;
+	}
+
+	/**
+	 * @param node
+	 *            the id returned by {@link #add(String)}
+	 * @return the path
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no node with this id
+	 */
+	public String get(int node) {
+		return appendTo(new StringBuilder(), node).toString();
+	}
+
+	/**
+	 * Appends a path to a builder, without creating a string.
+	 * 
+	 * @param builder
+	 *            the builder to append to
+	 * @param node
+	 *            the id returned by {@link #add(String)}
+	 * @return <code>builder</code>
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no node with this id
+	 */
+	public StringBuilder appendTo(StringBuilder builder, int node) {
+		if (node < 0 || node >= size) {
+			throw new IndexOutOfBoundsException("Node: " + node + ", size: "
+					+ size);
+		}
+		if (node != ROOT) {
+			appendTo(builder, parents[node]);
+			builder.append(segments.get(segmentIds[node]));
+		}
+		return builder;
+	}
+
+	/**
+	 * @return the number of nodes, i.e. distinct prefixes of all paths added,
+	 *         including the empty path
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of distinct segments
+	 */
+	public int getSegments() {
+		return segments.size();
+	}
+
+	/**
+	 * @return the approximate number of bytes held by the trie: The nodes,
+	 *         the hash table of the children and the segments
+	 */
+	public long getBytes() {
+		return (long) (parents.length + segmentIds.length + childIds.length)
+				* Integer.BYTES + (long) childKeys.length * Long.BYTES
+				+ segments.getBytes();
+	}
+
+	/**
+	 * @return the child of a node with the segment, added if necessary
+	 */
+	private int child(int parent, int segmentId) {
+		long key = ((long) parent << 32) | segmentId;
+		int mask = childKeys.length - 1;
+		int slot = hash(key) & mask;
+		while (childKeys[slot] != NO_KEY) {
+			if (childKeys[slot] == key) {
+				return childIds[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (size == parents.length) {
+			parents = Arrays.copyOf(parents, size * 2);
+			segmentIds = Arrays.copyOf(segmentIds, size * 2);
+		}
+		int child = size++;
+		parents[child] = parent;
+		segmentIds[child] = segmentId;
+		childKeys[slot] = key;
+		childIds[slot] = child;
+		// Keep the load factor below 1/2, the root is no child
+		if (size * 2 > childKeys.length) {
+			rehash(childKeys.length * 2);
+		}
+		return child;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = childKeys;
+		int[] oldIds = childIds;
+		childKeys = newKeys(capacity);
+		childIds = new int[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != NO_KEY) {
+				int slot = hash(oldKeys[i]) & mask;
+				while (childKeys[slot] != NO_KEY) {
+					slot = (slot + 1) & mask;
+				}
+				childKeys[slot] = oldKeys[i];
+				childIds[slot] = oldIds[i];
+			}
+		}
+	}
+
+	private static long[] newKeys(int capacity) {
+		long[] keys = new long[capacity];
+		Arrays.fill(keys, NO_KEY);
+		return keys;
+	}
+
+	/** Spreads the bits of parent and segment over the slots. */
+	private static int hash(long key) {
+		int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
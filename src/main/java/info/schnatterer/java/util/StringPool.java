@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores each distinct string once and identifies it by an <code>int</code>,
+ * so values that repeat (e.g. the artist of thousands of tracks) take 4 bytes
+ * per occurrence instead of a string each. Meant to live as long as a single
+ * run, it never forgets a string.
+ * 
+ * The ids are assigned in order, starting at 0.
+ * 
+ * Not thread-safe while adding, thread-safe for reading afterwards.
+ * 
+ * @author schnatterer
+ *
+ */
+public class StringPool {
+	/*
+	 * Approximate sizes in bytes of the objects held, assuming compressed
+	 * references.
+	 */
+	private static final int REFERENCE = 4;
+	private static final int ARRAY = 16;
+	private static final int STRING = 24;
+	private static final int MAP_ENTRY = 32;
+	private static final int INTEGER = 16;
+
+	private final Map<String, Integer> ids = new HashMap<>();
+	private String[] strings = new String[16];
+	private int size = 0;
+
+	/**
+	 * Adds a string to the pool, unless contained already.
+	 * 
+	 * @param string
+	 *            the string to add, not <code>null</code>
+	 * @return the id of the string
+	 */
+	public int intern(String string) {
+		Integer id = ids.get(string);
+		if (id != null) {
+			return id;
+		}
+		if (size == strings.length) {
+			strings = Arrays.copyOf(strings, size + (size >> 1));
+		}
+		strings[size] = string;
+		ids.put(string, size);
+		return size++;
+	}
+
+	/**
+	 * @param id
+	 *            the id returned by {@link #intern(String)}
+	 * @return the string
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no string with this id
+	 */
+	public String get(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("Id: " + id + ", size: "
+					+ size);
+		}
+		return strings[id];
+	}
+
+	/**
+	 * @return the number of distinct strings
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the approximate number of bytes held by the pool: The strings,
+	 *         the array of the strings and the map from string to id
+	 */
+	public long getBytes() {
+		long bytes = ARRAY + (long) strings.length * REFERENCE;
+		// Table of a HashMap: Power of 2, load factor 3/4
+		bytes += ARRAY + (long) Integer.highestOneBit(Math.max(1, size * 4 / 3)
+				* 2 - 1) * REFERENCE;
+		bytes += (long) size * (MAP_ENTRY + INTEGER);
+		for (int i = 0; i < size; i++) {
+			// Object and its char array, aligned to 8 bytes
+			bytes += STRING
+					+ ((ARRAY + (long) strings[i].length() * Character.BYTES + 7) & ~7);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.util.concurrent;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A two-stage pipeline: Applies a function to each element of a source in
+ * parallel (on a pool of worker threads) and hands out the results in the
+ * order of the source. The results are meant to be consumed by one single
+ * thread, using the {@link Iterator} interface.
+ * 
+ * The number of elements that are processed ahead of the consumer is bounded
+ * by the <code>queueDepth</code>. That is, the source is only read as fast as
+ * the consumer takes the results.
+ * 
+ * Make sure to {@link #close()} the pipeline, in order to stop the threads.
+ * 
+ * @author schnatterer
+ *
+ * @param <S>
+ *            type of the elements of the source
+ * @param <T>
+ *            type of the results
+ */
+public class OrderedPipeline<S, T> implements Iterator<T>, AutoCloseable {
+	/** Marks the end of the source. */
+	private static final Future<?> END = CompletableFuture.completedFuture(null);
+
+	private final BlockingQueue<Future<T>> queue;
+	private final ExecutorService workers;
+	private final Thread feeder;
+	/** Set by {@link #close()} before interrupting the feeder. */
+	private volatile boolean closed = false;
+
+	/** The result returned by the next call to {@link #next()}, if any. */
+	private Future<T> nextResult = null;
+
+	/**
+	 * Creates and starts the pipeline.
+	 * 
+	 * @param source
+	 *            elements to process. The iterator is read by a separate
+	 *            thread.
+	 * @param stage
+	 *            function that is applied in parallel to each element of
+	 *            <code>source</code>. Must be thread-safe.
+	 * @param threads
+	 *            number of worker threads that apply <code>stage</code>
+	 * @param queueDepth
+	 *            maximum number of elements that are processed ahead of the
+	 *            consumer
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>threads</code> or <code>queueDepth</code> is less
+	 *             than one
+	 */
+	public OrderedPipeline(Iterator<S> source, Function<S, T> stage,
+			int threads, int queueDepth) throws IllegalArgumentException {
+		if (threads < 1) {
+			throw new IllegalArgumentException(
+					"Number of threads must be at least 1, but was " + threads);
+		}
+		if (queueDepth < 1) {
+			throw new IllegalArgumentException(
+					"Queue depth must be at least 1, but was " + queueDepth);
+		}
+		queue = new ArrayBlockingQueue<>(queueDepth);
+		AtomicInteger threadNumber = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "pipeline-worker-"
+					+ threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		feeder = new Thread(() -> feed(source, stage), "pipeline-feeder");
+		feeder.setDaemon(true);
+		feeder.start();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextResult == null) {
+			try {
+				nextResult = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new PipelineException(
+						"Interrupted while waiting for next result", e);
+			}
+		}
+		return nextResult != END;
+	}
+
+	/**
+	 * Returns the next result, waiting for it to be computed if necessary.
+	 * 
+	 * @return the result of the next element of the source
+	 * 
+	 * @throws NoSuchElementException
+	 *             if the source has no more elements
+	 * @throws RuntimeException
+	 *             if thrown by <code>stage</code> or while reading the source
+	 * @throws PipelineException
+	 *             when interrupted or wraps checked exceptions
+	 */
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Future<T> result = nextResult;
+		nextResult = null;
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PipelineException("Interrupted while waiting for result",
+					e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new PipelineException("Processing element failed", cause);
+		}
+	}
+
+	/**
+	 * Stops reading the source and all worker threads. Results that have not
+	 * been consumed yet are discarded. Waits for the source to be released, so
+	 * it can be safely closed afterwards.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		feeder.interrupt();
+		workers.shutdownNow();
+		try {
+			feeder.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reads all elements of the source, submits them to the workers and queues
+	 * the results in order. Runs in the feeder thread.
+	 */
+	@SuppressWarnings("unchecked")
+	private void feed(Iterator<S> source, Function<S, T> stage) {
+		try {
+			try {
+				while (source.hasNext()) {
+					S element = source.next();
+					queue.put(workers.submit(() -> stage.apply(element)));
+				}
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Throwable e) {
+				// Hand any error over to the consumer, including Errors
+				CompletableFuture<T> failed = new CompletableFuture<>();
+				failed.completeExceptionally(e);
+				queue.put(failed);
+			} finally {
+				// Otherwise the consumer waits forever. Nobody waits when closed.
+				if (!closed) {
+					queue.put((Future<T>) END);
+				}
+			}
+		} catch (InterruptedException e) {
+			// Closed
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Thrown when the pipeline is interrupted or a stage throws a checked
+	 * exception.
+	 * 
+	 * @author schnatterer
+	 */
+	public static class PipelineException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructs a new exception with the specified detail message and
+		 * cause.
+		 *
+		 * @param message
+		 *            the detail message (which is saved for later retrieval by
+		 *            the {@link #getMessage()} method).
+		 * @param cause
+		 *            the cause (which is saved for later retrieval by the
+		 *            {@link #getCause()} method).
+		 */
+		public PipelineException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes;
+
+import com.beust.jcommander.IParameterValidator;
+import com.beust.jcommander.ParameterException;
+
+/**
+ * jcommander parameter validator that accepts integers of 0 or greater only,
+ * e.g. for parameters where 0 means a default.
+ * 
+ * @author schnatterer
+ * 
+ */
+public class NonNegativeInteger implements IParameterValidator {
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.beust.jcommander.IParameterValidator#validate(java.lang.String,
+	 * java.lang.String)
+	 */
+	@Override
+	public void validate(String name, String value) throws ParameterException {
+		int number;
+		try {
+			number = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new ParameterException("Parameter " + name
+					+ " should be an integer (found " + value + ")");
+		}
+		if (number < 0) {
+			throw new ParameterException("Parameter " + name
+					+ " should be 0 or greater (found " + value + ")");
+		}
+	}
+}
@@ -16,6 +16,7 @@
 package info.schnatterer.songbird2itunes;
 
 import info.schnatterer.java.util.jar.Jar;
+import info.schnatterer.songbird2itunes.migration.CommandConverter;
 import info.schnatterer.songbird2itunes.migration.Songbird2itunesMigration;
 import info.schnatterer.songbird2itunes.migration.Songbird2itunesMigration.Statistics;
 
@@ -59,15 +60,50 @@ public class Songbird2itunesApp {
 		try {
 			cliParams = Songbird2itunesCli.readParams(args, PROG_NAME);
 			if (cliParams != null) {
-				if (cliParams.isDateAddedWorkaround() && !confirmedWorkaround()) {
+				// A dry run, a library XML file and exporting playlists don't
+				// touch the system clock
+				if (cliParams.isDateAddedWorkaround() && !cliParams.isDryRun()
+						&& cliParams.getLibraryXml() == null
+						&& cliParams.getExportPlaylists() == null
+						&& !confirmedWorkaround()) {
 					return EXIT_SUCCESS;
 				}
 				// Successfully read command line params. Do conversion
-				printStats(createSongbird2itunes().migrate(cliParams.getPath(),
+				Songbird2itunesMigration migration = createSongbird2itunes();
+				migration.setThreads(cliParams.getThreads());
+				migration.setQueueDepth(cliParams.getQueueDepth());
+				migration.setFetchSize(cliParams.getFetchSize());
+				migration.setBatchSize(cliParams.getBatchSize());
+				migration.setResume(cliParams.isResume());
+				migration.setJournalFile(cliParams.getJournal());
+				migration.setProgressInterval(cliParams.getProgress());
+				migration.setMetricsFile(cliParams.getMetrics());
+				migration.setDryRun(cliParams.isDryRun());
+				migration.setPlanFile(cliParams.getPlan());
+				migration.setDelta(cliParams.isDelta());
+				migration.setStateFile(cliParams.getState());
+				migration.setLibraryXmlFile(cliParams.getLibraryXml());
+				migration.setPlaylistExport(cliParams.getExportPlaylists(),
+						cliParams.getExportFormat());
+				migration.setDeduplicate(cliParams.isDedup());
+				migration.setDuplicateMergePolicy(cliParams.getDedupMerge());
+				migration.setCheckHeaders(cliParams.isCheckHeaders());
+				if (cliParams.getConvertCommand() != null) {
+					migration.setConverter(
+							new CommandConverter(cliParams.getConvertCommand(),
+									cliParams.getConvertFormat()),
+							cliParams.getConvertDir());
+				}
+				Statistics stats = migration.migrate(cliParams.getPath(),
 						cliParams.getRetries(),
 						cliParams.isDateAddedWorkaround(),
 						cliParams.getPlaylistNames(),
-						cliParams.isPlaylistsOnly()));
+						cliParams.isPlaylistsOnly());
+				if (cliParams.isDryRun()) {
+					log.info("Finished dry run. To migrate the plan, call again with --plan instead of --dry-run.");
+				} else {
+					printStats(stats);
+				}
 				return EXIT_SUCCESS;
 			}
 		} catch (ParameterException e) {
@@ -113,12 +149,39 @@ public class Songbird2itunesApp {
 		log.info("Processed " + stats.getTracksProcessed()
 				+ " tracks (total) of which " + stats.getTracksFailed()
 				+ " failed.");
+		if (stats.getTracksSkipped() > 0) {
+			log.info("Skipped " + stats.getTracksSkipped()
+					+ " tracks that were migrated in a previous run.");
+		}
+		if (stats.getDuplicatesFound() > 0) {
+			log.info("Did not add " + stats.getDuplicatesFound()
+					+ " duplicate files to iTunes.");
+		}
+		if (stats.getUnsupportedFiles() > 0 || stats.getCorruptFiles() > 0) {
+			log.info("Did not add " + stats.getUnsupportedFiles()
+					+ " files of a format not supported by iTunes and "
+					+ stats.getCorruptFiles() + " corrupt files to iTunes.");
+		}
+		if (stats.getConvertedFiles() > 0) {
+			log.info("Added " + stats.getConvertedFiles()
+					+ " converted files to iTunes instead of the originals.");
+		}
 		log.info("Processed " + stats.getPlaylistsProcessed()
 				+ " playlists of which " + stats.getPlaylistsFailed()
 				+ " failed.");
 		log.info("Processed " + stats.getPlaylistTracksProcessed()
 				+ " tracks (playlist members) of which "
 				+ stats.getPlaylistTracksFailed() + " failed.");
+		if (stats.getRetries() > 0) {
+			log.info("Retried writing track properties " + stats.getRetries()
+					+ " times. Gave up on " + stats.getRetriesExhausted()
+					+ " track(s).");
+		}
+		if (stats.getReadsSaved() > 0 || stats.getWritesSaved() > 0) {
+			log.info("Saved " + stats.getReadsSaved() + " reads and "
+					+ stats.getWritesSaved()
+					+ " writes of track properties in iTunes.");
+		}
 		log.info("See log file for more info");
 	}
 
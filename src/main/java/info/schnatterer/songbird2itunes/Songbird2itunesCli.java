@@ -15,6 +15,11 @@
  */
 package info.schnatterer.songbird2itunes;
 
+import info.schnatterer.songbird2itunes.migration.CommandConverter;
+import info.schnatterer.songbird2itunes.migration.DuplicateMergePolicy;
+import info.schnatterer.songbird2itunes.migration.PlaylistFormat;
+import info.schnatterer.songbird2itunes.migration.Songbird2itunesMigration;
+
 import java.util.LinkedList;
 import java.util.List;
 
@@ -50,8 +55,32 @@ public class Songbird2itunesCli {
 	private static final String DESC_RETR = "(optional) Number of retries after an iTunes error";
 	private static final String DESC_DATE_ADDED = "(optional) workaround for migrating the date added to iTunes. NOTE: This requires admin rights and set your system date before adding each track. Use with extreme care.";
 	private static final String DESC_HELP = "(optional) Show this message";
-	private static final String DESC_PLAYLIST_NAMES = "(optional) Names of the playlists that should be migrated. If not specified, all playlist are migrated.";
+	private static final String DESC_PLAYLIST_NAMES = "(optional) Names of the playlists that should be migrated, ignoring case. Prefix a name with glob: for wildcards (* and ?), e.g. glob:Rock*, or with regex: for a regular expression. If not specified, all playlist are migrated.";
 	private static final String DESC_PLAYLISTS_ONLY = "(optional) Migrate only the playlists and the tracks within playlists. Don't migrate other tracks.";
+	private static final String DESC_THREADS = "(optional) Number of threads that prepare tracks (resolve paths, read properties) ahead of iTunes";
+	private static final String DESC_QUEUE_DEPTH = "(optional) Maximum number of tracks that are prepared ahead of iTunes";
+	private static final String DESC_FETCH_SIZE = "(optional) Number of rows fetched from the songbird database at once. 0 uses the default of the database driver.";
+	private static final String DESC_BATCH_SIZE = "(optional) Number of files added to iTunes before their properties are written. 1 writes the properties right after adding each file.";
+	private static final String DESC_RESUME = "(optional) Resume a previous migration that was aborted. Skips all tracks and playlists that were migrated before.";
+	private static final String DESC_JOURNAL = "(optional) File that keeps track of what has been migrated, needed for resuming";
+	private static final String DESC_METRICS = "(optional) File that the latencies of each stage of the migration are written to (CSV)";
+	private static final String DESC_DRY_RUN = "(optional) Don't write to iTunes. Check which tracks and playlists would be migrated, report them and write them to the plan file.";
+	private static final String DESC_PLAN = "(optional) Plan file. Written on a dry run (default: "
+			+ Songbird2itunesMigration.DEFAULT_PLAN_FILE
+			+ "). Otherwise a plan written by a dry run, which is migrated instead of reading the songbird database again.";
+	private static final String DESC_DELTA = "(optional) Delta sync: Only migrate tracks and playlists that are new or changed since the previous delta sync. Their state is kept in the state file. The previous playlists cannot be found via the iTunes API, so a changed playlist is created again next to the previous one. Delete the previous one in iTunes afterwards.";
+	private static final String DESC_STATE = "(optional) State file for delta sync (default: "
+			+ Songbird2itunesMigration.DEFAULT_STATE_FILE + ")";
+	private static final String DESC_LIBRARY_XML = "(optional) Don't write to iTunes. Instead write an iTunes Library XML file that can be imported into iTunes (File | Library | Import Playlist). Runs without iTunes and migrates the date added without the date added workaround. Always contains all tracks, so it cannot be combined with --resume or --delta.";
+	private static final String DESC_EXPORT_PLAYLISTS = "(optional) Don't write to iTunes. Instead write each playlist to a file in this directory. Tracks are not migrated.";
+	private static final String DESC_EXPORT_FORMAT = "(optional) Format of the playlist files written by --export-playlists: m3u8 or xspf";
+	private static final String DESC_DEDUP = "(optional) Add only one of the files that have the same content (copies of the same file) to iTunes. Their properties are merged, see --dedup-merge.";
+	private static final String DESC_DEDUP_MERGE = "(optional) How the play and skip counts of duplicates are merged: sum, max or canonical (keep the ones of the file added to songbird first)";
+	private static final String DESC_CHECK_HEADERS = "(optional) Read the first bytes of each file before adding it to iTunes. Skips files whose format is not supported by iTunes (e.g. FLAC, Ogg, WMA) or that are corrupt, instead of waiting for iTunes to reject them.";
+	private static final String DESC_CONVERT_COMMAND = "(optional) Convert files whose format is not supported by iTunes (e.g. FLAC, Ogg) by calling this program and add the converted files instead. {input} and {output} are replaced by the files, e.g. \"ffmpeg -i {input} -c:a alac {output}\". Implies --check-headers.";
+	private static final String DESC_CONVERT_FORMAT = "(optional) File extension of the files written by --convert-command";
+	private static final String DESC_CONVERT_DIR = "(optional) Directory the files written by --convert-command are stored in. Converted files are reused by later runs.";
+	private static final String DESC_PROGRESS = "(optional) Interval in seconds for logging the progress and the estimated time remaining. 0 disables it.";
 
 	/**
 	 * Reads the command line parameters and prints error messages when
@@ -108,6 +137,69 @@ public class Songbird2itunesCli {
 	@Parameter(names = { "-p", "--playlistsonly" }, description = DESC_PLAYLISTS_ONLY)
 	private boolean playlistsOnly = false;
 
+	@Parameter(names = { "-t", "--threads" }, description = DESC_THREADS, validateWith = PositiveInteger.class)
+	private Integer threads = Songbird2itunesMigration.DEFAULT_THREADS;
+
+	@Parameter(names = "--queue-depth", description = DESC_QUEUE_DEPTH, validateWith = PositiveInteger.class)
+	private Integer queueDepth = Songbird2itunesMigration.DEFAULT_QUEUE_DEPTH;
+
+	@Parameter(names = "--fetch-size", description = DESC_FETCH_SIZE, validateWith = NonNegativeInteger.class)
+	private Integer fetchSize = Songbird2itunesMigration.DEFAULT_FETCH_SIZE;
+
+	@Parameter(names = "--batch-size", description = DESC_BATCH_SIZE, validateWith = PositiveInteger.class)
+	private Integer batchSize = Songbird2itunesMigration.DEFAULT_BATCH_SIZE;
+
+	@Parameter(names = "--resume", description = DESC_RESUME)
+	private boolean resume = false;
+
+	@Parameter(names = "--journal", description = DESC_JOURNAL)
+	private String journal = Songbird2itunesMigration.DEFAULT_JOURNAL_FILE;
+
+	@Parameter(names = "--progress", description = DESC_PROGRESS)
+	private Integer progress = Songbird2itunesMigration.DEFAULT_PROGRESS_INTERVAL;
+
+	@Parameter(names = "--metrics", description = DESC_METRICS)
+	private String metrics = Songbird2itunesMigration.DEFAULT_METRICS_FILE;
+
+	@Parameter(names = "--dry-run", description = DESC_DRY_RUN)
+	private boolean dryRun = false;
+
+	@Parameter(names = "--plan", description = DESC_PLAN)
+	private String plan = null;
+
+	@Parameter(names = "--library-xml", description = DESC_LIBRARY_XML)
+	private String libraryXml = null;
+
+	@Parameter(names = "--export-playlists", description = DESC_EXPORT_PLAYLISTS)
+	private String exportPlaylists = null;
+
+	@Parameter(names = "--export-format", description = DESC_EXPORT_FORMAT)
+	private PlaylistFormat exportFormat = PlaylistFormat.M3U8;
+
+	@Parameter(names = "--dedup", description = DESC_DEDUP)
+	private boolean dedup = false;
+
+	@Parameter(names = "--dedup-merge", description = DESC_DEDUP_MERGE)
+	private DuplicateMergePolicy dedupMerge = DuplicateMergePolicy.SUM;
+
+	@Parameter(names = "--check-headers", description = DESC_CHECK_HEADERS)
+	private boolean checkHeaders = false;
+
+	@Parameter(names = "--convert-command", description = DESC_CONVERT_COMMAND)
+	private String convertCommand = null;
+
+	@Parameter(names = "--convert-format", description = DESC_CONVERT_FORMAT)
+	private String convertFormat = CommandConverter.DEFAULT_EXTENSION;
+
+	@Parameter(names = "--convert-dir", description = DESC_CONVERT_DIR)
+	private String convertDir = Songbird2itunesMigration.DEFAULT_CONVERT_DIRECTORY;
+
+	@Parameter(names = "--delta", description = DESC_DELTA)
+	private boolean delta = false;
+
+	@Parameter(names = "--state", description = DESC_STATE)
+	private String state = Songbird2itunesMigration.DEFAULT_STATE_FILE;
+
 	@Parameter(names = "--help", help = true, description = DESC_HELP)
 	private boolean help;
 
@@ -145,4 +237,151 @@ public class Songbird2itunesCli {
 	public boolean isPlaylistsOnly() {
 		return playlistsOnly;
 	}
+
+	/**
+	 * @return the threads
+	 */
+	public Integer getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return the queueDepth
+	 */
+	public Integer getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * @return the fetchSize
+	 */
+	public Integer getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * @return the batchSize
+	 */
+	public Integer getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return the resume
+	 */
+	public boolean isResume() {
+		return resume;
+	}
+
+	/**
+	 * @return the journal
+	 */
+	public String getJournal() {
+		return journal;
+	}
+
+	/**
+	 * @return the progress
+	 */
+	public Integer getProgress() {
+		return progress;
+	}
+
+	/**
+	 * @return the metrics
+	 */
+	public String getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the dryRun
+	 */
+	public boolean isDryRun() {
+		return dryRun;
+	}
+
+	/**
+	 * @return the plan
+	 */
+	public String getPlan() {
+		return plan;
+	}
+
+	/**
+	 * @return the delta
+	 */
+	public boolean isDelta() {
+		return delta;
+	}
+
+	/**
+	 * @return the state
+	 */
+	public String getState() {
+		return state;
+	}
+
+	/**
+	 * @return the libraryXml
+	 */
+	public String getLibraryXml() {
+		return libraryXml;
+	}
+
+	/**
+	 * @return the exportPlaylists
+	 */
+	public String getExportPlaylists() {
+		return exportPlaylists;
+	}
+
+	/**
+	 * @return the exportFormat
+	 */
+	public PlaylistFormat getExportFormat() {
+		return exportFormat;
+	}
+
+	/**
+	 * @return the dedup
+	 */
+	public boolean isDedup() {
+		return dedup;
+	}
+
+	/**
+	 * @return the dedupMerge
+	 */
+	public DuplicateMergePolicy getDedupMerge() {
+		return dedupMerge;
+	}
+
+	/**
+	 * @return the checkHeaders
+	 */
+	public boolean isCheckHeaders() {
+		return checkHeaders;
+	}
+
+	/**
+	 * @return the convertCommand
+	 */
+	public String getConvertCommand() {
+		return convertCommand;
+	}
+
+	/**
+	 * @return the convertFormat
+	 */
+	public String getConvertFormat() {
+		return convertFormat;
+	}
+
+	/**
+	 * @return the convertDir
+	 */
+	public String getConvertDir() {
+		return convertDir;
+	}
 }
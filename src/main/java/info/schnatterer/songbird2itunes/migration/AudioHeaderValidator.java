@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks the first bytes of an audio file, so files that iTunes would reject
+ * are not added at all. Adding such a file to iTunes fails only after a slow
+ * round trip via COM.
+ * 
+ * Reads the header only, not the whole file. The file format is determined
+ * by the magic bytes at the beginning of the file:
+ * <ul>
+ * <li>Supported by iTunes: MP3 (ID3 tag or MPEG frame sync), AAC (ADTS frame
+ * sync), MP4/M4A (<code>ftyp</code> box), WAV and AIFF.</li>
+ * <li>Not supported by iTunes: FLAC, Ogg, WMA/ASF, Monkey's Audio and RIFF
+ * files that are not WAV.</li>
+ * <li>Corrupt: Files that are too short to have a header and container
+ * formats (e.g. <code>.m4a</code>, <code>.wav</code>) whose header does not
+ * match their extension.</li>
+ * </ul>
+ * MP3 files might start with junk before the first frame, so files that
+ * cannot be classified are left to iTunes.
+ * 
+ * The files that were rejected are counted. Thread-safe.
+ * 
+ * @author schnatterer
+ *
+ */
+class AudioHeaderValidator {
+	/** Result of checking the header of a file. */
+	enum Verdict {
+		/** A format supported by iTunes. */
+		SUPPORTED,
+		/** A format that is not supported by iTunes. */
+		UNSUPPORTED,
+		/** Too short or not matching the extension. */
+		CORRUPT,
+		/** Could not be classified, left to iTunes. */
+		UNKNOWN
+	}
+
+	/** Number of bytes read from the beginning of each file. */
+	static final int HEADER_SIZE = 12;
+
+	/**
+	 * Extensions of container formats that always start with their magic
+	 * bytes.
+	 */
+	private static final Set<String> CONTAINER_EXTENSIONS = new HashSet<>(
+			Arrays.asList("m4a", "m4b", "m4p", "mp4", "wav", "aif", "aiff",
+					"aifc"));
+
+	private static final byte[] ASF_GUID = { 0x30, 0x26, (byte) 0xB2, 0x75,
+			(byte) 0x8E, 0x66, (byte) 0xCF, 0x11 };
+
+	private final LongAdder unsupported = new LongAdder();
+	private final LongAdder corrupt = new LongAdder();
+
+	/**
+	 * Reads the header of a file and classifies it. Counts unsupported and
+	 * corrupt files.
+	 * 
+	 * @param path
+	 *            the audio file
+	 * @return the verdict. {@link Verdict#CORRUPT} if the file cannot be read.
+	 */
+	Verdict validate(Path path) {
+		Verdict verdict;
+		try {
+			verdict = classify(path.getFileName().toString(), readHeader(path));
+		} catch (IOException e) {
+			verdict = Verdict.CORRUPT;
+		}
+		if (verdict == Verdict.UNSUPPORTED) {
+			unsupported.increment();
+		} else if (verdict == Verdict.CORRUPT) {
+			corrupt.increment();
+		}
+		return verdict;
+	}
+
+	/**
+	 * @return the number of files whose format is not supported by iTunes
+	 */
+	long getUnsupported() {
+		return unsupported.sum();
+	}
+
+	/**
+	 * @return the number of files that are corrupt or could not be read
+	 */
+	long getCorrupt() {
+		return corrupt.sum();
+	}
+
+	/**
+	 * Classifies a file by its header.
+	 * 
+	 * @param fileName
+	 *            name of the file, for its extension
+	 * @param header
+	 *            the first bytes of the file, between position 0 and limit
+	 * @return the verdict
+	 */
+	static Verdict classify(String fileName, ByteBuffer header) {
+		if (header.remaining() < 4) {
+			return Verdict.CORRUPT;
+		}
+		if (startsWith(header, 0, "ID3")
+				|| ((header.get(0) & 0xFF) == 0xFF && (header.get(1) & 0xE0) == 0xE0)) {
+			// MP3 or ADTS AAC
+			return Verdict.SUPPORTED;
+		}
+		if (startsWith(header, 4, "ftyp")) {
+			return Verdict.SUPPORTED;
+		}
+		if (startsWith(header, 0, "RIFF")) {
+			if (header.remaining() < HEADER_SIZE) {
+				return Verdict.CORRUPT;
+			}
+			return startsWith(header, 8, "WAVE") ? Verdict.SUPPORTED
+					: Verdict.UNSUPPORTED;
+		}
+		if (startsWith(header, 0, "FORM")) {
+			if (header.remaining() < HEADER_SIZE) {
+				return Verdict.CORRUPT;
+			}
+			return startsWith(header, 8, "AIFF")
+					|| startsWith(header, 8, "AIFC") ? Verdict.SUPPORTED
+					: Verdict.UNSUPPORTED;
+		}
+		if (startsWith(header, 0, "fLaC") || startsWith(header, 0, "OggS")
+				|| startsWith(header, 0, "MAC ")
+				|| startsWith(header, 0, ASF_GUID)) {
+			return Verdict.UNSUPPORTED;
+		}
+		return CONTAINER_EXTENSIONS.contains(getExtension(fileName)) ? Verdict.CORRUPT
+				: Verdict.UNKNOWN;
+	}
+
+	private static ByteBuffer readHeader(Path path) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+				// Read until full or end of file
+			}
+		}
+		header.flip();
+		return header;
+	}
+
+	private static boolean startsWith(ByteBuffer header, int offset,
+			String magic) {
+		return startsWith(header, offset,
+				magic.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static boolean startsWith(ByteBuffer header, int offset,
+			byte[] magic) {
+		if (header.remaining() < offset + magic.length) {
+			return false;
+		}
+		for (int i = 0; i < magic.length; i++) {
+			if (header.get(offset + i) != magic[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String getExtension(String fileName) {
+		int dot = fileName.lastIndexOf('.');
+		return dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase(
+				Locale.ENGLISH);
+	}
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.itunes4j.entity.Rating;
+import info.schnatterer.itunes4j.exception.ITunesException;
+import info.schnatterer.songbird2itunes.migration.MigrationTarget.Track;
+
+import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorates a {@link Track} of the {@link MigrationTarget}, so the target is
+ * only called when necessary. For iTunes, each call is a round trip via COM.
+ * <ul>
+ * <li>Reads are memoized: Each property is read from the target at most once.
+ * Values that were written are remembered as well.</li>
+ * <li>Writes are elided if the value equals the current value of the track.
+ * For a track that was just added to iTunes, the current values are the
+ * defaults of iTunes: No play count, skip count and rating. For an existing
+ * track, only values read or written before are known.</li>
+ * </ul>
+ * The calls that were saved are counted in {@link Savings}.
+ * 
+ * Assumes that the track is not changed by anyone else while migrating. Not
+ * thread-safe, meant to be used by the thread that talks to iTunes only.
+ * 
+ * @author schnatterer
+ *
+ */
+class CachingTrack {
+	private final Track track;
+	private final Savings savings;
+
+	private final CachedProperty<String> artist = new CachedProperty<>();
+	private final CachedProperty<String> name = new CachedProperty<>();
+	private final CachedProperty<Date> dateAdded = new CachedProperty<>();
+	private final CachedProperty<Date> playedDate = new CachedProperty<>();
+	private final CachedProperty<Date> skippedDate = new CachedProperty<>();
+	private final CachedProperty<Integer> playedCount = new CachedProperty<>();
+	private final CachedProperty<Rating> rating = new CachedProperty<>();
+	private final CachedProperty<Integer> skippedCount = new CachedProperty<>();
+
+	private CachingTrack(Track track, Savings savings) {
+		this.track = track;
+		this.savings = savings;
+	}
+
+	/**
+	 * @param track
+	 *            a track that was just added to iTunes
+	 * @param savings
+	 *            counts the calls to iTunes that were saved
+	 * @return a decorator that knows the default values of the track
+	 */
+	static CachingTrack added(Track track, Savings savings) {
+		CachingTrack cachingTrack = new CachingTrack(track, savings);
+		cachingTrack.playedCount.known(0);
+		cachingTrack.rating.known(Rating.STARS_0);
+		cachingTrack.skippedCount.known(0);
+		return cachingTrack;
+	}
+
+	/**
+	 * @param track
+	 *            a track that might have been in iTunes before
+	 * @param savings
+	 *            counts the calls to iTunes that were saved
+	 * @return a decorator that does not know any value of the track yet
+	 */
+	static CachingTrack existing(Track track, Savings savings) {
+		return new CachingTrack(track, savings);
+	}
+
+	/**
+	 * @return the decorated track, e.g. for adding it to a playlist
+	 */
+	Track getTrack() {
+		return track;
+	}
+
+	String getArtist() throws ITunesException {
+		return artist.read(track::getArtist);
+	}
+
+	String getName() throws ITunesException {
+		return name.read(track::getName);
+	}
+
+	Date getDateAdded() throws ITunesException {
+		return dateAdded.read(track::getDateAdded);
+	}
+
+	Date getPlayedDate() throws ITunesException {
+		return playedDate.read(track::getPlayedDate);
+	}
+
+	Date getSkippedDate() throws ITunesException {
+		return skippedDate.read(track::getSkippedDate);
+	}
+
+	int getPlayedCount() throws ITunesException {
+		return playedCount.read(track::getPlayedCount);
+	}
+
+	Rating getRating() throws ITunesException {
+		return rating.read(track::getRating);
+	}
+
+	int getSkippedCount() throws ITunesException {
+		return skippedCount.read(track::getSkippedCount);
+	}
+
+	/**
+	 * @return <code>true</code> if iTunes was called, <code>false</code> if
+	 *         the write was elided
+	 */
+	boolean setPlayedDate(Date date) throws ITunesException {
+		return playedDate.write(date, track::setPlayedDate);
+	}
+
+	/**
+	 * @return <code>true</code> if iTunes was called, <code>false</code> if
+	 *         the write was elided
+	 */
+	boolean setSkippedDate(Date date) throws ITunesException {
+		return skippedDate.write(date, track::setSkippedDate);
+	}
+
+	/**
+	 * @return <code>true</code> if iTunes was called, <code>false</code> if
+	 *         the write was elided
+	 */
+	boolean setPlayedCount(int count) throws ITunesException {
+		return playedCount.write(count, track::setPlayedCount);
+	}
+
+	/**
+	 * @return <code>true</code> if iTunes was called, <code>false</code> if
+	 *         the write was elided
+	 */
+	boolean setRating(Rating rating) throws ITunesException {
+		return this.rating.write(rating, track::setRating);
+	}
+
+	/**
+	 * @return <code>true</code> if iTunes was called, <code>false</code> if
+	 *         the write was elided
+	 */
+	boolean setSkippedCount(int count) throws ITunesException {
+		return skippedCount.write(count, track::setSkippedCount);
+	}
+
+	/**
+	 * Counts the calls to iTunes that were saved by all decorators that share
+	 * an instance. Can be read while the migration is running.
+	 */
+	static class Savings {
+		private final LongAdder reads = new LongAdder();
+		private final LongAdder writes = new LongAdder();
+
+		/**
+		 * @return the number of reads answered without calling iTunes
+		 */
+		long getReads() {
+			return reads.sum();
+		}
+
+		/**
+		 * @return the number of writes that were elided, because the track
+		 *         had the value already
+		 */
+		long getWrites() {
+			return writes.sum();
+		}
+	}
+
+	/** Reads a property from iTunes. */
+	@FunctionalInterface
+	private interface Reader<V> {
+		V read() throws ITunesException;
+	}
+
+	/** Writes a property to iTunes. */
+	@FunctionalInterface
+	private interface Writer<V> {
+		void write(V value) throws ITunesException;
+	}
+
+	/**
+	 * The value of a property of the track in iTunes, if known.
+	 */
+	private class CachedProperty<V> {
+		private V value;
+		private boolean known = false;
+
+		void known(V value) {
+			this.value = value;
+			known = true;
+		}
+
+		V read(Reader<V> reader) throws ITunesException {
+			if (known) {
+				savings.reads.increment();
+				return value;
+			}
+			known(reader.read());
+			return value;
+		}
+
+		boolean write(V newValue, Writer<V> writer) throws ITunesException {
+			if (known && Objects.equals(value, newValue)) {
+				savings.writes.increment();
+				return false;
+			}
+			// Remember the value only if iTunes accepted it
+			writer.write(newValue);
+			known(newValue);
+			return true;
+		}
+	}
+}
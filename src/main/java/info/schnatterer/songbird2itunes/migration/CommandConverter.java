@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts files by calling an external program, e.g. <code>ffmpeg</code>.
+ * 
+ * The command is split at whitespace. The arguments {@value #INPUT} and
+ * {@value #OUTPUT} are replaced by the file to convert and the file to write,
+ * e.g. <code>ffmpeg -i {input} -c:a alac {output}</code>. The output of the
+ * program is logged on debug level.
+ * 
+ * @author schnatterer
+ *
+ */
+public class CommandConverter implements TrackConverter {
+	/** Placeholder for the file to convert. */
+	public static final String INPUT = "{input}";
+	/** Placeholder for the file to write. */
+	public static final String OUTPUT = "{output}";
+	/** Default file extension of the converted files: MPEG-4 audio. */
+	public static final String DEFAULT_EXTENSION = "m4a";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final List<String> command;
+	private final String extension;
+
+	/**
+	 * @param command
+	 *            the command line, containing {@value #INPUT} and
+	 *            {@value #OUTPUT}
+	 * @param extension
+	 *            the file extension of the converted files, without dot
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a placeholder is missing
+	 */
+	public CommandConverter(String command, String extension) {
+		this.command = Arrays.asList(command.trim().split("\\s+"));
+		if (!this.command.contains(INPUT) || !this.command.contains(OUTPUT)) {
+			throw new IllegalArgumentException("Converter command must contain "
+					+ INPUT + " and " + OUTPUT + ": " + command);
+		}
+		this.extension = extension;
+	}
+
+	@Override
+	public String getExtension() {
+		return extension;
+	}
+
+	@Override
+	public void convert(Path source, Path target) throws IOException {
+		Process process = new ProcessBuilder(toCommand(source, target))
+				.redirectErrorStream(true).start();
+		process.getOutputStream().close();
+		try (BufferedReader output = new BufferedReader(new InputStreamReader(
+				process.getInputStream(), Charset.defaultCharset()))) {
+			// Consume the output, so the program does not block
+			String line;
+			while ((line = output.readLine()) != null) {
+				log.debug(line);
+			}
+		}
+		try {
+			int exitValue = process.waitFor();
+			if (exitValue != 0) {
+				throw new IOException("Converter exited with " + exitValue
+						+ " when converting " + source);
+			}
+		} catch (InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while converting "
+					+ source);
+		}
+	}
+
+	/**
+	 * @param source
+	 *            the file to convert
+	 * @param target
+	 *            the file to write
+	 * @return the command with the placeholders replaced
+	 */
+	List<String> toCommand(Path source, Path target) {
+		List<String> arguments = new ArrayList<>(command.size());
+		for (String argument : command) {
+			if (INPUT.equals(argument)) {
+				arguments.add(source.toString());
+			} else if (OUTPUT.equals(argument)) {
+				arguments.add(target.toString());
+			} else {
+				arguments.add(argument);
+			}
+		}
+		return arguments;
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.java.util.Fnv1a64;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts files of formats that are not supported by iTunes using a
+ * {@link TrackConverter}, on a fixed number of worker threads. Converting is
+ * CPU-bound, so the number of conversions running at the same time is
+ * bounded independently of the number of threads that prepare the tracks.
+ * 
+ * Each file is converted to the directory once: The name of the converted file
+ * contains a hash of the path of the original file. A converted file that is
+ * newer than its original is reused by later runs. A file is written under a
+ * temporary name first, so an aborted conversion is never reused. Tracks of
+ * the same file that are converted at the same time share one conversion.
+ * 
+ * Thread-safe.
+ * 
+ * @author schnatterer
+ *
+ */
+class ConverterPool implements AutoCloseable {
+	private static final String TEMP_PREFIX = "part-";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final TrackConverter converter;
+	private final File directory;
+	private final ExecutorService executor;
+	/** Conversions that are queued or running, by original file. */
+	private final ConcurrentMap<Path, Future<String>> inFlight = new ConcurrentHashMap<>();
+
+	private final LongAdder converted = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+
+	/**
+	 * @param converter
+	 *            converts a single file
+	 * @param directory
+	 *            where the converted files are written to. Created if
+	 *            necessary.
+	 * @param threads
+	 *            maximum number of conversions running at the same time
+	 */
+	ConverterPool(TrackConverter converter, File directory, int threads) {
+		this.converter = converter;
+		this.directory = directory;
+		this.executor = Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * Converts a file, waiting for a worker thread to become available. Counts
+	 * converted and failed files. If the file cannot be converted, a warning
+	 * is logged.
+	 * 
+	 * @param absolutePath
+	 *            the file to convert
+	 * @return the path of the converted file or {@link Optional#empty()} if
+	 *         the conversion failed
+	 */
+	Optional<String> convert(String absolutePath) {
+		Path source = Paths.get(absolutePath);
+		FutureTask<String> task = new FutureTask<>(() -> doConvert(source));
+		// Tracks of the same file wait for the conversion that is running
+		Future<String> conversion = inFlight.putIfAbsent(source, task);
+		if (conversion == null) {
+			conversion = task;
+			executor.execute(() -> {
+				try {
+					task.run();
+				} finally {
+					inFlight.remove(source, task);
+				}
+			});
+		}
+		try {
+			String convertedPath = conversion.get();
+			converted.increment();
+			return Optional.of(convertedPath);
+		} catch (ExecutionException e) {
+			log.warn("Unable to convert file: " + absolutePath, e.getCause());
+		} catch (InterruptedException e) {
+			if (conversion == task) {
+				conversion.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+		}
+		failed.increment();
+		return Optional.empty();
+	}
+
+	/**
+	 * @return the number of files that were converted or reused
+	 */
+	long getConverted() {
+		return converted.sum();
+	}
+
+	/**
+	 * @return the number of files that could not be converted
+	 */
+	long getFailed() {
+		return failed.sum();
+	}
+
+	/**
+	 * Stops the worker threads, interrupting conversions still running.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @param source
+	 *            an original file
+	 * @return the converted file within the directory
+	 */
+	Path toTarget(Path source) {
+		String fileName = source.getFileName().toString();
+		int dot = fileName.lastIndexOf('.');
+		String baseName = dot > 0 ? fileName.substring(0, dot) : fileName;
+		return new File(directory, baseName + "-"
+				+ Long.toHexString(Fnv1a64.hash(source.toString())) + "."
+				+ converter.getExtension()).toPath();
+	}
+
+	private String doConvert(Path source) throws IOException {
+		Path target = toTarget(source);
+		if (Files.isRegularFile(target)
+				&& Files.getLastModifiedTime(target).compareTo(
+						Files.getLastModifiedTime(source)) >= 0) {
+			log.debug("Reusing converted file " + target + " for " + source);
+			return target.toString();
+		}
+		Files.createDirectories(target.getParent());
+		// Keep the extension, converters might depend on it
+		Path temp = target.resolveSibling(TEMP_PREFIX + target.getFileName());
+		try {
+			converter.convert(source, temp);
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		log.debug("Converted " + source + " to " + target);
+		return target.toString();
+	}
+}
@@ -0,0 +1,370 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.java.util.Fnv1a64;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds songbird tracks whose files have the same content (copies, the same
+ * rip under several paths), so only one file of each group is added to
+ * iTunes.
+ * 
+ * Files are grouped by size first, which is cheap. Only files that have the
+ * same size as another file are hashed: Each file is mapped into memory in
+ * chunks that are hashed one after another, files in parallel on a
+ * fork-join pool. Files with the same size and hash are duplicates. In the
+ * very unlikely case of a hash collision, different files might be treated
+ * as duplicates. Empty files are never duplicates.
+ * 
+ * The file of the track that was added to songbird first is the canonical
+ * one. Its date added is migrated, the other properties are merged according
+ * to a {@link DuplicateMergePolicy}.
+ * 
+ * @author schnatterer
+ *
+ */
+class DuplicateDetector {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(DuplicateDetector.class);
+
+	/** Size of the chunks of a file that are mapped into memory at once. */
+	static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+	private static final Comparator<Candidate> CANONICAL_FIRST = Comparator
+			.comparing((Candidate candidate) -> candidate.dateCreated,
+					Comparator.nullsLast(Comparator.naturalOrder()))
+			.thenComparing(candidate -> candidate.path);
+
+	private final int threads;
+	private final int chunkSize;
+	private final DuplicateMergePolicy policy;
+
+	/**
+	 * @param threads
+	 *            number of files whose paths are resolved and that are hashed
+	 *            in parallel
+	 * @param chunkSize
+	 *            number of bytes of a file mapped into memory at once
+	 * @param policy
+	 *            how the properties of duplicates are merged
+	 */
+	DuplicateDetector(int threads, int chunkSize, DuplicateMergePolicy policy) {
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+		this.policy = policy;
+	}
+
+	/**
+	 * Finds the duplicates among tracks. Tracks whose file is invalid are
+	 * ignored, without logging: This is reported when migrating them.
+	 * 
+	 * @param tracks
+	 *            the songbird tracks
+	 * @return the duplicates, by path
+	 */
+	Duplicates detect(Iterator<? extends SongbirdTrack> tracks) {
+		List<Candidate> candidates = new ArrayList<>();
+		while (tracks.hasNext()) {
+			candidates.add(new Candidate(tracks.next()));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			inParallel(pool, candidates, Candidate::resolve);
+			List<Candidate> sameSize = candidates.stream()
+					.filter(candidate -> candidate.size > 0)
+					.collect(Collectors.groupingBy(candidate -> candidate.size))
+					.values().stream().filter(group -> group.size() > 1)
+					.flatMap(List::stream).collect(Collectors.toList());
+			inParallel(pool, sameSize, this::hash);
+
+			Map<String, Group> groups = new HashMap<>();
+			long files = 0;
+			long bytes = 0;
+			for (List<Candidate> duplicates : sameSize
+					.stream()
+					.filter(candidate -> candidate.hash.isPresent())
+					.collect(
+							Collectors.groupingBy(candidate -> candidate.size
+									+ ":" + candidate.hash.get())).values()) {
+				long distinctFiles = duplicates.stream()
+						.map(candidate -> candidate.path).distinct().count();
+				if (distinctFiles < 2) {
+					// Different URLs of the same file
+					continue;
+				}
+				files += distinctFiles - 1;
+				bytes += (distinctFiles - 1) * duplicates.get(0).size;
+				Group group = merge(duplicates);
+				for (Candidate duplicate : duplicates) {
+					groups.put(duplicate.path, group);
+				}
+			}
+			return new Duplicates(groups, files, bytes);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private Group merge(List<Candidate> duplicates) {
+		Candidate canonical = Collections.min(duplicates, CANONICAL_FIRST);
+		if (policy == DuplicateMergePolicy.CANONICAL) {
+			return new Group(canonical.path, canonical.dateCreated,
+					canonical.lastPlayTime, canonical.lastSkipTime,
+					canonical.playCount, canonical.rating,
+					canonical.skipCount);
+		}
+		BinaryOperator<Long> count = policy == DuplicateMergePolicy.SUM ? Long::sum
+				: Math::max;
+		return new Group(canonical.path, canonical.dateCreated,
+				latest(duplicates, candidate -> candidate.lastPlayTime),
+				latest(duplicates, candidate -> candidate.lastSkipTime),
+				reduce(duplicates, candidate -> candidate.playCount, count),
+				reduce(duplicates, candidate -> candidate.rating, Math::max),
+				reduce(duplicates, candidate -> candidate.skipCount, count));
+	}
+
+	private static Date latest(List<Candidate> duplicates,
+			Function<Candidate, Date> date) {
+		return duplicates.stream().map(date).filter(Objects::nonNull)
+				.max(Comparator.naturalOrder()).orElse(null);
+	}
+
+	private static Long reduce(List<Candidate> duplicates,
+			Function<Candidate, Long> value,
+			BinaryOperator<Long> operator) {
+		return duplicates.stream().map(value).filter(Objects::nonNull)
+				.reduce(operator).orElse(null);
+	}
+
+	/**
+	 * Hashes the content of a file, mapping one chunk after another into
+	 * memory. If the file cannot be read, it is not hashed and therefore not
+	 * a duplicate.
+	 */
+	private void hash(Candidate candidate) {
+		try (FileChannel channel = FileChannel.open(
+				new File(candidate.path).toPath(), StandardOpenOption.READ)) {
+			long hash = Fnv1a64.OFFSET_BASIS;
+			long size = channel.size();
+			for (long position = 0; position < size; position += chunkSize) {
+				hash = Fnv1a64.hash(hash, channel.map(
+						FileChannel.MapMode.READ_ONLY, position,
+						Math.min(chunkSize, size - position)));
+			}
+			candidate.hash = Optional.of(hash);
+		} catch (IOException e) {
+			LOG.debug("Unable to hash file " + candidate.path
+					+ ". Not checking for duplicates.", e);
+		}
+	}
+
+	private static <T> void inParallel(ForkJoinPool pool, List<T> items,
+			Consumer<T> action) {
+		try {
+			pool.submit(() -> items.parallelStream().forEach(action)).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+					"Interrupted detecting duplicates", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * A track that might be a duplicate. Written by one thread at a time
+	 * only, the fork-join pool makes the writes visible.
+	 */
+	private static class Candidate {
+		private final String contentUrl;
+		private final Date dateCreated;
+		private final Date lastPlayTime;
+		private final Date lastSkipTime;
+		private final Long playCount;
+		private final Long rating;
+		private final Long skipCount;
+		private String path;
+		private long size = 0;
+		private Optional<Long> hash = Optional.empty();
+
+		Candidate(SongbirdTrack track) {
+			contentUrl = track.getContentUrl();
+			dateCreated = track.getDateCreated();
+			lastPlayTime = track.getPropertyAsDate(Property.PROP_LAST_PLAY_TIME);
+			lastSkipTime = track.getPropertyAsDate(Property.PROP_LAST_SKIP_TIME);
+			playCount = track.getPropertyAsLong(Property.PROP_PLAY_COUNT);
+			rating = track.getPropertyAsLong(Property.PROP_RATING);
+			skipCount = track.getPropertyAsLong(Property.PROP_SKIP_COUNT);
+		}
+
+		/**
+		 * Resolves the canonical path and the size of the file, like
+		 * {@link Songbird2itunesMigration#toAbsolutePath(SongbirdTrack)} but
+		 * without logging.
+		 */
+		void resolve() {
+			try {
+				File file = new File(new URI(contentUrl)).getCanonicalFile();
+				if (file.isFile() && file.canRead()) {
+					path = file.getPath();
+					size = file.length();
+				}
+			} catch (Exception e) {
+				// Invalid files are reported when migrating
+			}
+		}
+	}
+
+	/**
+	 * The merged properties of files that have the same content. Immutable.
+	 */
+	static class Group {
+		private final String canonicalPath;
+		private final Date dateCreated;
+		private final Date lastPlayTime;
+		private final Date lastSkipTime;
+		private final Long playCount;
+		private final Long rating;
+		private final Long skipCount;
+
+		Group(String canonicalPath, Date dateCreated, Date lastPlayTime,
+				Date lastSkipTime, Long playCount, Long rating, Long skipCount) {
+			this.canonicalPath = canonicalPath;
+			this.dateCreated = dateCreated;
+			this.lastPlayTime = lastPlayTime;
+			this.lastSkipTime = lastSkipTime;
+			this.playCount = playCount;
+			this.rating = rating;
+			this.skipCount = skipCount;
+		}
+
+		/**
+		 * @return the path of the file that is added to iTunes
+		 */
+		String getCanonicalPath() {
+			return canonicalPath;
+		}
+
+		/**
+		 * @return the date the canonical file was added to songbird
+		 */
+		Date getDateCreated() {
+			return dateCreated;
+		}
+
+		Date getLastPlayTime() {
+			return lastPlayTime;
+		}
+
+		Date getLastSkipTime() {
+			return lastSkipTime;
+		}
+
+		Long getPlayCount() {
+			return playCount;
+		}
+
+		Long getRating() {
+			return rating;
+		}
+
+		Long getSkipCount() {
+			return skipCount;
+		}
+	}
+
+	/**
+	 * The result of detecting duplicates. Immutable, so it can be read from
+	 * multiple threads.
+	 */
+	static class Duplicates {
+		private static final Duplicates NONE = new Duplicates(
+				Collections.emptyMap(), 0, 0);
+
+		private final Map<String, Group> groupsByPath;
+		private final long files;
+		private final long bytes;
+
+		private Duplicates(Map<String, Group> groupsByPath, long files,
+				long bytes) {
+			this.groupsByPath = groupsByPath;
+			this.files = files;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @return no duplicates at all, i.e. deduplication disabled
+		 */
+		static Duplicates none() {
+			return NONE;
+		}
+
+		/**
+		 * @param path
+		 *            canonical path of a file
+		 * @return the group of files with the same content or
+		 *         {@link Optional#empty()} if the file has no duplicates
+		 */
+		Optional<Group> getGroup(String path) {
+			return Optional.ofNullable(groupsByPath.get(path));
+		}
+
+		/**
+		 * @return the number of files that are not added to iTunes, because
+		 *         they are duplicates of a canonical file
+		 */
+		long getFiles() {
+			return files;
+		}
+
+		/**
+		 * @return the size of the files that are not added to iTunes
+		 */
+		long getBytes() {
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+/**
+ * How the properties of tracks whose files have the same content are merged
+ * into the one file that is added to iTunes.
+ * 
+ * @author schnatterer
+ *
+ */
+public enum DuplicateMergePolicy {
+	/**
+	 * Play and skip counts are added up. The latest play and skip dates and
+	 * the best rating win.
+	 */
+	SUM,
+	/**
+	 * The highest play and skip counts, the latest play and skip dates and
+	 * the best rating win.
+	 */
+	MAX,
+	/** Only the properties of the file that is added to iTunes are kept. */
+	CANONICAL
+}
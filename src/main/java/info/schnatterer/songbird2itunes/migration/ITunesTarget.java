@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.itunes4j.ITunes;
+import info.schnatterer.itunes4j.entity.Rating;
+import info.schnatterer.itunes4j.exception.ITunesException;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Migrates to a running iTunes instance via COM. Each call is a round trip to
+ * iTunes.
+ * 
+ * @author schnatterer
+ *
+ */
+class ITunesTarget implements MigrationTarget {
+	private final ITunes iTunes;
+
+	/**
+	 * @param iTunes
+	 *            iTunes wrapper instance
+	 */
+	ITunesTarget(ITunes iTunes) {
+		this.iTunes = iTunes;
+	}
+
+	@Override
+	public Track addFile(String absolutePath, PreparedTrack track)
+			throws IOException, ITunesException {
+		// The properties are written afterwards, so they can be retried
+		return new ITunesTrack(iTunes.addFile(absolutePath));
+	}
+
+	@Override
+	public Playlist createPlaylist(String name) throws ITunesException {
+		info.schnatterer.itunes4j.entity.Playlist playlist = iTunes
+				.createPlaylist(name);
+		return track -> playlist.addTrack(((ITunesTrack) track).track);
+	}
+
+	@Override
+	public boolean isDateAddedMigrated() {
+		// Not possible via iTunes COM API
+		return false;
+	}
+
+	@Override
+	public boolean isIncremental() {
+		return true;
+	}
+
+	@Override
+	public void complete() {
+		// Everything has been written to iTunes already
+	}
+
+	@Override
+	public void close() {
+		// Nothing to release
+	}
+
+	/**
+	 * Delegates to an itunes4j track.
+	 */
+	private static class ITunesTrack implements Track {
+		private final info.schnatterer.itunes4j.entity.Track track;
+
+		ITunesTrack(info.schnatterer.itunes4j.entity.Track track) {
+			this.track = track;
+		}
+
+		@Override
+		public String getArtist() throws ITunesException {
+			return track.getArtist();
+		}
+
+		@Override
+		public String getName() throws ITunesException {
+			return track.getName();
+		}
+
+		@Override
+		public Date getDateAdded() throws ITunesException {
+			return track.getDateAdded();
+		}
+
+		@Override
+		public Date getPlayedDate() throws ITunesException {
+			return track.getPlayedDate();
+		}
+
+		@Override
+		public Date getSkippedDate() throws ITunesException {
+			return track.getSkippedDate();
+		}
+
+		@Override
+		public int getPlayedCount() throws ITunesException {
+			return track.getPlayedCount();
+		}
+
+		@Override
+		public Rating getRating() throws ITunesException {
+			return track.getRating();
+		}
+
+		@Override
+		public int getSkippedCount() throws ITunesException {
+			return track.getSkippedCount();
+		}
+
+		@Override
+		public void setPlayedDate(Date date) throws ITunesException {
+			track.setPlayedDate(date);
+		}
+
+		@Override
+		public void setSkippedDate(Date date) throws ITunesException {
+			track.setSkippedDate(date);
+		}
+
+		@Override
+		public void setPlayedCount(int count) throws ITunesException {
+			track.setPlayedCount(count);
+		}
+
+		@Override
+		public void setRating(Rating rating) throws ITunesException {
+			track.setRating(rating);
+		}
+
+		@Override
+		public void setSkippedCount(int count) throws ITunesException {
+			track.setSkippedCount(count);
+		}
+	}
+}
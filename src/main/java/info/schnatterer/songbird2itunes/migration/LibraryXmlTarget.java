@@ -0,0 +1,473 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.itunes4j.entity.Rating;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Objects;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes an iTunes Library XML file (a property list) that can be imported
+ * into iTunes in one step, instead of driving iTunes track by track. This
+ * runs anywhere and migrates the date added without setting the system
+ * clock.
+ * 
+ * The file is streamed in one pass: Each track is written when it is added,
+ * including its properties. In the file, the playlists follow the tracks, so
+ * they are spooled to a temporary file and appended by {@link #complete()}.
+ * The memory needed does not depend on the number of tracks or playlists.
+ * 
+ * The library is written to a temporary file that is renamed by
+ * {@link #complete()}, so an aborted migration does not leave an incomplete
+ * library.
+ * 
+ * @author schnatterer
+ *
+ */
+class LibraryXmlTarget implements MigrationTarget {
+	private static final String PLIST_DTD = "<!DOCTYPE plist PUBLIC \"-//Apple Computer//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">";
+	/** iTunes rates from 0 to 100. */
+	private static final int RATING_PER_STAR = 20;
+	private static final byte SPOOL_PLAYLIST = 'L';
+	private static final byte SPOOL_TRACK = 'T';
+
+	private final File file;
+	private final File tempFile;
+	private final File spoolFile;
+	private final OutputStream out;
+	private final XMLStreamWriter xml;
+	private final DataOutputStream spool;
+	/** Nesting of the current element, for indenting. */
+	private int depth = 0;
+	private int nextTrackId = 1;
+	private boolean completed = false;
+
+	private LibraryXmlTarget(File file) throws IOException,
+			XMLStreamException {
+		this.file = file;
+		tempFile = new File(file.getPath() + ".tmp");
+		spoolFile = new File(file.getPath() + ".playlists.tmp");
+		out = new BufferedOutputStream(new FileOutputStream(tempFile));
+		xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out,
+				StandardCharsets.UTF_8.name());
+		spool = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(spoolFile)));
+	}
+
+	/**
+	 * Starts writing a library.
+	 * 
+	 * @param file
+	 *            the library file, written on {@link #complete()}
+	 * @return a new target
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the library cannot be created
+	 */
+	static LibraryXmlTarget create(File file) {
+		LibraryXmlTarget target = null;
+		try {
+			target = new LibraryXmlTarget(file);
+			target.writeHeader();
+			return target;
+		} catch (IOException | XMLStreamException e) {
+			if (target != null) {
+				target.close();
+			}
+			throw failed(file, e);
+		}
+	}
+
+	@Override
+	public Track addFile(String absolutePath, PreparedTrack track) {
+		LibraryTrack libraryTrack = new LibraryTrack(nextTrackId++, track);
+		try {
+			key(String.valueOf(libraryTrack.id));
+			start("dict");
+			key("Track ID");
+			value("integer", String.valueOf(libraryTrack.id));
+			if (libraryTrack.name != null) {
+				key("Name");
+				value("string", libraryTrack.name);
+			}
+			if (libraryTrack.artist != null) {
+				key("Artist");
+				value("string", libraryTrack.artist);
+			}
+			if (libraryTrack.dateAdded != null) {
+				key("Date Added");
+				date(libraryTrack.dateAdded);
+			}
+			if (libraryTrack.playedCount > 0) {
+				key("Play Count");
+				value("integer", String.valueOf(libraryTrack.playedCount));
+			}
+			if (libraryTrack.playedDate != null) {
+				key("Play Date UTC");
+				date(libraryTrack.playedDate);
+			}
+			if (libraryTrack.skippedCount > 0) {
+				key("Skip Count");
+				value("integer", String.valueOf(libraryTrack.skippedCount));
+			}
+			if (libraryTrack.skippedDate != null) {
+				key("Skip Date");
+				date(libraryTrack.skippedDate);
+			}
+			if (libraryTrack.rating != null
+					&& libraryTrack.rating != Rating.STARS_0) {
+				key("Rating");
+				value("integer", String.valueOf(libraryTrack.rating.ordinal()
+						* RATING_PER_STAR));
+			}
+			key("Location");
+			value("string", toLocation(absolutePath));
+			end();
+		} catch (XMLStreamException e) {
+			throw failed(file, e);
+		}
+		return libraryTrack;
+	}
+
+	@Override
+	public Playlist createPlaylist(String name) {
+		spool(SPOOL_PLAYLIST, name);
+		return track -> spool(SPOOL_TRACK, ((LibraryTrack) track).id);
+	}
+
+	@Override
+	public boolean isDateAddedMigrated() {
+		return true;
+	}
+
+	@Override
+	public boolean isIncremental() {
+		// The library replaces the previous one as a whole
+		return false;
+	}
+
+	/**
+	 * Appends the playlists and writes the library file.
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the library cannot be written
+	 */
+	@Override
+	public void complete() {
+		try {
+			spool.close();
+			// Tracks
+			end();
+			key("Playlists");
+			start("array");
+			writePlaylists();
+			end();
+			// Root dict
+			end();
+			xml.writeCharacters("\n");
+			xml.writeEndElement();
+			xml.writeEndDocument();
+			xml.close();
+			out.close();
+			Files.move(tempFile.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			Files.delete(spoolFile.toPath());
+			completed = true;
+		} catch (IOException | XMLStreamException e) {
+			throw failed(file, e);
+		}
+	}
+
+	/**
+	 * Deletes the temporary files, unless the library was completed.
+	 */
+	@Override
+	public void close() {
+		if (completed) {
+			return;
+		}
+		try {
+			xml.close();
+		} catch (XMLStreamException e) {
+			// Deleted anyway
+		}
+		try {
+			out.close();
+			spool.close();
+		} catch (IOException e) {
+			// Deleted anyway
+		}
+		tempFile.delete();
+		spoolFile.delete();
+	}
+
+	private void writeHeader() throws XMLStreamException {
+		xml.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+		xml.writeCharacters("\n");
+		xml.writeDTD(PLIST_DTD);
+		xml.writeCharacters("\n");
+		xml.writeStartElement("plist");
+		xml.writeAttribute("version", "1.0");
+		start("dict");
+		key("Major Version");
+		value("integer", "1");
+		key("Minor Version");
+		value("integer", "1");
+		key("Tracks");
+		start("dict");
+	}
+
+	/**
+	 * Writes the playlists from the spool file.
+	 */
+	private void writePlaylists() throws IOException, XMLStreamException {
+		int playlistId = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(spoolFile)))) {
+			while (true) {
+				byte type;
+				try {
+					type = in.readByte();
+				} catch (EOFException e) {
+					break;
+				}
+				if (type == SPOOL_PLAYLIST) {
+					if (playlistId > 0) {
+						endPlaylist();
+					}
+					start("dict");
+					key("Name");
+					value("string", in.readUTF());
+					key("Playlist ID");
+					value("integer", String.valueOf(++playlistId));
+					key("All Items");
+					xml.writeEmptyElement("true");
+					key("Playlist Items");
+					start("array");
+				} else {
+					start("dict");
+					key("Track ID");
+					value("integer", String.valueOf(in.readInt()));
+					end();
+				}
+			}
+		}
+		if (playlistId > 0) {
+			endPlaylist();
+		}
+	}
+
+	private void endPlaylist() throws XMLStreamException {
+		// Playlist Items
+		end();
+		end();
+	}
+
+	private void spool(byte type, String name) {
+		try {
+			spool.writeByte(type);
+			spool.writeUTF(name);
+		} catch (IOException e) {
+			throw failed(file, e);
+		}
+	}
+
+	private void spool(byte type, int trackId) {
+		try {
+			spool.writeByte(type);
+			spool.writeInt(trackId);
+		} catch (IOException e) {
+			throw failed(file, e);
+		}
+	}
+
+	private void start(String element) throws XMLStreamException {
+		indent();
+		xml.writeStartElement(element);
+		depth++;
+	}
+
+	private void end() throws XMLStreamException {
+		depth--;
+		indent();
+		xml.writeEndElement();
+	}
+
+	private void key(String key) throws XMLStreamException {
+		indent();
+		value("key", key);
+	}
+
+	private void value(String element, String value)
+			throws XMLStreamException {
+		xml.writeStartElement(element);
+		xml.writeCharacters(value);
+		xml.writeEndElement();
+	}
+
+	private void date(Date date) throws XMLStreamException {
+		value("date", date.toInstant().truncatedTo(ChronoUnit.SECONDS)
+				.toString());
+	}
+
+	private void indent() throws XMLStreamException {
+		StringBuilder indent = new StringBuilder("\n");
+		for (int i = 0; i < depth; i++) {
+			indent.append('\t');
+		}
+		xml.writeCharacters(indent.toString());
+	}
+
+	/**
+	 * @return the location of a file, as written by iTunes
+	 */
+	static String toLocation(String absolutePath) {
+		return "file://localhost"
+				+ new File(absolutePath).toURI().getRawPath();
+	}
+
+	private static UncheckedIOException failed(File file, Exception e) {
+		if (e instanceof IOException) {
+			return new UncheckedIOException("Unable to write library " + file,
+					(IOException) e);
+		}
+		return new UncheckedIOException("Unable to write library " + file,
+				new IOException(e));
+	}
+
+	/**
+	 * A track that was written to the library. Its values are final, writing
+	 * a different value fails.
+	 */
+	private static class LibraryTrack implements Track {
+		private final int id;
+		private final String artist;
+		private final String name;
+		private final Date dateAdded;
+		private final Date playedDate;
+		private final Date skippedDate;
+		private final int playedCount;
+		private final Rating rating;
+		private final int skippedCount;
+
+		LibraryTrack(int id, PreparedTrack track) {
+			this.id = id;
+			artist = track.getSbTrack().getProperty(Property.PROP_ARTIST_NAME);
+			name = track.getSbTrack().getProperty(Property.PROP_TRACK_NAME);
+			dateAdded = track.getDateCreated();
+			playedDate = track.getLastPlayTime();
+			skippedDate = track.getLastSkipTime();
+			playedCount = track.getPlayCount();
+			rating = track.getRating();
+			skippedCount = track.getSkipCount();
+		}
+
+		@Override
+		public String getArtist() {
+			return artist;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public Date getDateAdded() {
+			return dateAdded;
+		}
+
+		@Override
+		public Date getPlayedDate() {
+			return playedDate;
+		}
+
+		@Override
+		public Date getSkippedDate() {
+			return skippedDate;
+		}
+
+		@Override
+		public int getPlayedCount() {
+			return playedCount;
+		}
+
+		@Override
+		public Rating getRating() {
+			return rating;
+		}
+
+		@Override
+		public int getSkippedCount() {
+			return skippedCount;
+		}
+
+		@Override
+		public void setPlayedDate(Date date) {
+			checkWritten("played date", playedDate, date);
+		}
+
+		@Override
+		public void setSkippedDate(Date date) {
+			checkWritten("skipped date", skippedDate, date);
+		}
+
+		@Override
+		public void setPlayedCount(int count) {
+			checkWritten("played count", playedCount, count);
+		}
+
+		@Override
+		public void setRating(Rating rating) {
+			checkWritten("rating", this.rating, rating);
+		}
+
+		@Override
+		public void setSkippedCount(int count) {
+			checkWritten("skipped count", skippedCount, count);
+		}
+
+		private void checkWritten(String property, Object written,
+				Object value) {
+			if (!Objects.equals(written, value)) {
+				throw new IllegalStateException("Track " + id
+						+ " was written with " + property + " " + written
+						+ " already, cannot change it to " + value);
+			}
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+
+import java.util.Date;
+
+/**
+ * Adapts a {@link MediaItem} read via the songbird API to a
+ * {@link SongbirdTrack}.
+ * 
+ * @author schnatterer
+ *
+ */
+class MediaItemTrack implements SongbirdTrack {
+	private final MediaItem mediaItem;
+
+	/**
+	 * @param mediaItem
+	 *            the media item to adapt
+	 */
+	MediaItemTrack(MediaItem mediaItem) {
+		this.mediaItem = mediaItem;
+	}
+
+	@Override
+	public String getGuid() {
+		return mediaItem.getGuid();
+	}
+
+	@Override
+	public String getContentUrl() {
+		return mediaItem.getContentUrl();
+	}
+
+	@Override
+	public Date getDateCreated() {
+		return mediaItem.getDateCreated();
+	}
+
+	@Override
+	public String getProperty(String propertyName) {
+		return mediaItem.getProperty(propertyName);
+	}
+
+	@Override
+	public Long getPropertyAsLong(String propertyName) {
+		return mediaItem.getPropertyAsLong(propertyName);
+	}
+
+	@Override
+	public Date getPropertyAsDate(String propertyName) {
+		return mediaItem.getPropertyAsDate(propertyName);
+	}
+}
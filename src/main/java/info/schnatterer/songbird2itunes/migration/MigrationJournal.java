@@ -0,0 +1,333 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.java.util.CompactLongSet;
+import info.schnatterer.java.util.Fnv1a64;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Append-only journal of the work that has been completed during a migration,
+ * so a migration that was aborted (crash, reboot, etc.) can be resumed without
+ * doing everything again.
+ * 
+ * Each line of the journal file is one entry: A type character, a tab and a
+ * key (content URL or playlist name). The journal is synced to disk every
+ * <code>syncInterval</code> entries. An incomplete last line (e.g. after a
+ * power loss) is ignored and removed when resuming.
+ * 
+ * When resuming, the entries of the previous runs are loaded into a compact
+ * index that stores only a 64 bit hash of each entry. In the very unlikely
+ * case of a hash collision, a track or playlist might be skipped wrongly.
+ * 
+ * Looking up entries of previous runs is thread-safe, writing entries is not
+ * and is meant to be done by the thread that talks to iTunes only.
+ * 
+ * @author schnatterer
+ *
+ */
+class MigrationJournal implements AutoCloseable {
+	/** Default number of entries written before syncing to disk. */
+	static final int DEFAULT_SYNC_INTERVAL = 100;
+
+	private static final char TYPE_TRACK = 'T';
+	private static final char TYPE_PLAYLIST_CREATED = 'C';
+	private static final char TYPE_PLAYLIST_COMPLETED = 'P';
+	private static final char SEPARATOR = '\t';
+
+	private static final MigrationJournal DISABLED = new MigrationJournal(
+			null, new CompactLongSet.Builder().build(), null, 0);
+
+	private final File file;
+	private final CompactLongSet previousEntries;
+	private final FileOutputStream out;
+	private final Writer writer;
+	private final int syncInterval;
+	private int unsyncedEntries = 0;
+
+	private MigrationJournal(File file, CompactLongSet previousEntries,
+			FileOutputStream out, int syncInterval) {
+		this.file = file;
+		this.previousEntries = previousEntries;
+		this.out = out;
+		this.writer = out != null ? new BufferedWriter(new OutputStreamWriter(
+				out, StandardCharsets.UTF_8)) : null;
+		this.syncInterval = syncInterval;
+	}
+
+	/**
+	 * Opens a journal for writing.
+	 * 
+	 * @param file
+	 *            the journal file
+	 * @param resume
+	 *            <code>true</code> loads the entries of previous runs and
+	 *            appends to the file. <code>false</code> starts a new journal,
+	 *            deleting the entries of previous runs.
+	 * @param syncInterval
+	 *            number of entries written before syncing to disk
+	 * @return a new journal
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the journal cannot be read or created
+	 */
+	static MigrationJournal open(File file, boolean resume, int syncInterval) {
+		try {
+			CompactLongSet.Builder previousEntries = new CompactLongSet.Builder();
+			if (resume && file.exists()) {
+				truncateLastLine(file);
+				readEntries(file, previousEntries);
+			}
+			return new MigrationJournal(file, previousEntries.build(),
+					new FileOutputStream(file, resume), syncInterval);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to open journal " + file, e);
+		}
+	}
+
+	/**
+	 * Opens a journal for looking up the entries of previous runs only, e.g.
+	 * for a dry run. The file is not modified.
+	 * 
+	 * @param file
+	 *            the journal file
+	 * @param resume
+	 *            <code>true</code> loads the entries of previous runs.
+	 *            <code>false</code> returns an empty journal.
+	 * @return a new journal that cannot be written to
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the journal cannot be read
+	 */
+	static MigrationJournal openReadOnly(File file, boolean resume) {
+		try {
+			CompactLongSet.Builder previousEntries = new CompactLongSet.Builder();
+			if (resume && file.exists()) {
+				readEntries(file, previousEntries);
+			}
+			return new MigrationJournal(file, previousEntries.build(), null, 0);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to open journal " + file, e);
+		}
+	}
+
+	/**
+	 * @return a journal that contains no entries and ignores new ones, e.g.
+	 *         for a target that cannot be resumed
+	 */
+	static MigrationJournal disabled() {
+		return DISABLED;
+	}
+
+	/**
+	 * @return the number of distinct entries loaded from previous runs
+	 */
+	int getPreviousEntries() {
+		return previousEntries.size();
+	}
+
+	/**
+	 * @param contentUrl
+	 *            songbird content URL of the track
+	 * @return <code>true</code> if the track was migrated in a previous run
+	 */
+	boolean isTrackMigrated(String contentUrl) {
+		return containsPrevious(TYPE_TRACK, contentUrl);
+	}
+
+	/**
+	 * @param playlistName
+	 *            name of the playlist
+	 * @return <code>true</code> if the playlist was created in a previous run
+	 *         (but is not necessarily complete)
+	 */
+	boolean isPlaylistCreated(String playlistName) {
+		return containsPrevious(TYPE_PLAYLIST_CREATED, playlistName);
+	}
+
+	/**
+	 * @param playlistName
+	 *            name of the playlist
+	 * @return <code>true</code> if the playlist and all its tracks were
+	 *         migrated in a previous run
+	 */
+	boolean isPlaylistCompleted(String playlistName) {
+		return containsPrevious(TYPE_PLAYLIST_COMPLETED, playlistName);
+	}
+
+	/**
+	 * Records that a track was migrated successfully.
+	 * 
+	 * @param contentUrl
+	 *            songbird content URL of the track
+	 */
+	void trackMigrated(String contentUrl) {
+		append(TYPE_TRACK, contentUrl);
+	}
+
+	/**
+	 * Records that a playlist was created in iTunes.
+	 * 
+	 * @param playlistName
+	 *            name of the playlist
+	 */
+	void playlistCreated(String playlistName) {
+		append(TYPE_PLAYLIST_CREATED, playlistName);
+	}
+
+	/**
+	 * Records that all tracks of a playlist were added to it.
+	 * 
+	 * @param playlistName
+	 *            name of the playlist
+	 */
+	void playlistCompleted(String playlistName) {
+		append(TYPE_PLAYLIST_COMPLETED, playlistName);
+	}
+
+	/**
+	 * Writes all pending entries to disk.
+	 * 
+	 * @throws UncheckedIOException
+	 *             if writing fails
+	 */
+	void sync() {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.flush();
+			out.getFD().sync();
+			unsyncedEntries = 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write journal " + file, e);
+		}
+	}
+
+	/**
+	 * Syncs and closes the journal.
+	 * 
+	 * @throws UncheckedIOException
+	 *             if writing fails
+	 */
+	@Override
+	public void close() {
+		if (writer == null) {
+			return;
+		}
+		try {
+			sync();
+		} finally {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to close journal "
+						+ file, e);
+			}
+		}
+	}
+
+	private boolean containsPrevious(char type, String key) {
+		return previousEntries.contains(Fnv1a64.hash(toEntry(type, key)));
+	}
+
+	private void append(char type, String key) {
+		if (this == DISABLED) {
+			return;
+		}
+		if (writer == null) {
+			throw new IllegalStateException("Journal is read-only: " + file);
+		}
+		try {
+			writer.write(toEntry(type, key));
+			writer.write('\n');
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write journal " + file, e);
+		}
+		if (++unsyncedEntries >= syncInterval) {
+			sync();
+		}
+	}
+
+	private static String toEntry(char type, String key) {
+		// Line breaks would corrupt the journal
+		return type + String.valueOf(SEPARATOR)
+				+ key.replace('\n', ' ').replace('\r', ' ');
+	}
+
+	/**
+	 * Reads the hashes of all complete entries of a journal file. A last line
+	 * that is not terminated by a line break is incomplete and ignored: It
+	 * might be the prefix of another key.
+	 */
+	private static void readEntries(File file,
+			CompactLongSet.Builder entries) throws IOException {
+		boolean lastLineComplete = completeLength(file) == file.length();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line = reader.readLine();
+			while (line != null) {
+				String next = reader.readLine();
+				if ((next != null || lastLineComplete) && line.length() > 1
+						&& line.charAt(1) == SEPARATOR) {
+					entries.add(Fnv1a64.hash(line));
+				}
+				line = next;
+			}
+		}
+	}
+
+	/**
+	 * Removes an incomplete last line, so new entries are not appended to it.
+	 */
+	private static void truncateLastLine(File file) throws IOException {
+		long completeLength = completeLength(file);
+		if (completeLength < file.length()) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(completeLength);
+			}
+		}
+	}
+
+	/**
+	 * @return the length of the file up to and including its last line break
+	 */
+	private static long completeLength(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			long length = raf.length();
+			while (length > 0) {
+				raf.seek(length - 1);
+				if (raf.read() == '\n') {
+					break;
+				}
+				length--;
+			}
+			return length;
+		}
+	}
+}
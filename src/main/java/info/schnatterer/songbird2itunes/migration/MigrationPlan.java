@@ -0,0 +1,611 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * The outcome of a dry run: All tracks and playlists that would be migrated,
+ * with the paths already resolved and validated. A later run can execute the
+ * plan without reading songbird or accessing the file system again.
+ * 
+ * Each line of the plan file is one entry: A type character, a tab and
+ * tab-separated fields. Tabs, line breaks and percent signs within fields
+ * are percent-encoded.
+ * <ul>
+ * <li><code>V</code> version and whether only playlists are migrated (first
+ * line)</li>
+ * <li><code>T</code> a track: GUID, content URL, path, date created, last
+ * played, last skipped, play count, rating, skip count</li>
+ * <li><code>C</code> a track whose file is converted before it is added to
+ * iTunes: Same fields as <code>T</code>, the path is the original file</li>
+ * <li><code>L</code> a playlist: name</li>
+ * <li><code>M</code> a member of the preceding playlist: content URL</li>
+ * </ul>
+ * The tracks before the first playlist are migrated in the order they appear.
+ * Tracks after that are only added to iTunes as members of playlists. Members
+ * without a valid track were found to be invalid by the dry run.
+ * 
+ * @author schnatterer
+ *
+ */
+final class MigrationPlan {
+	/** Version of the plan file format. */
+	static final String VERSION = "2";
+	/** Versions of the plan file format that can be read. */
+	private static final List<String> READABLE_VERSIONS = Arrays.asList("1",
+			VERSION);
+
+	private static final char TYPE_VERSION = 'V';
+	private static final char TYPE_TRACK = 'T';
+	private static final char TYPE_TRACK_TO_CONVERT = 'C';
+	private static final char TYPE_PLAYLIST = 'L';
+	private static final char TYPE_MEMBER = 'M';
+	private static final char SEPARATOR = '\t';
+
+	/** Properties of a track that are stored in the plan, in order. */
+	private static final String[] PROPERTIES = { Property.PROP_LAST_PLAY_TIME,
+			Property.PROP_LAST_SKIP_TIME, Property.PROP_PLAY_COUNT,
+			Property.PROP_RATING, Property.PROP_SKIP_COUNT };
+
+	private MigrationPlan() {
+	}
+
+	/**
+	 * Creates a new plan. The plan is written to a temporary file first and
+	 * only replaces <code>file</code> when {@link Writer#complete()} is
+	 * called, so an aborted dry run never leaves an incomplete plan.
+	 * 
+	 * @param file
+	 *            the plan file
+	 * @param playlistsOnly
+	 *            <code>true</code> if only playlists and the tracks within
+	 *            playlists are migrated
+	 * @return a new writer
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the plan cannot be created
+	 */
+	static Writer create(File file, boolean playlistsOnly) {
+		return new Writer(file, playlistsOnly);
+	}
+
+	/**
+	 * Opens a plan for executing it. Reads the file once in order to count the
+	 * tracks.
+	 * 
+	 * @param file
+	 *            the plan file
+	 * @return a new reader, positioned before the first track
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the plan cannot be read or is not a valid plan
+	 */
+	static Reader open(File file) {
+		return new Reader(file);
+	}
+
+	/**
+	 * Writes a plan, entry by entry. Not thread-safe.
+	 */
+	static class Writer implements AutoCloseable {
+		private final File file;
+		private final File tempFile;
+		private final java.io.Writer writer;
+		private boolean completed = false;
+
+		private Writer(File file, boolean playlistsOnly) {
+			this.file = file;
+			tempFile = new File(file.getPath() + ".tmp");
+			try {
+				writer = new BufferedWriter(new OutputStreamWriter(
+						new FileOutputStream(tempFile), StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to create plan "
+						+ tempFile, e);
+			}
+			append(TYPE_VERSION, VERSION, Boolean.toString(playlistsOnly));
+		}
+
+		/**
+		 * Adds a track. Tracks added before the first playlist are migrated
+		 * on their own, all others only as member of the following playlists.
+		 * 
+		 * @param track
+		 *            the songbird track
+		 * @param absolutePath
+		 *            the validated path of the track's file
+		 */
+		void track(SongbirdTrack track, String absolutePath) {
+			track(TYPE_TRACK, track, absolutePath);
+		}
+
+		/**
+		 * Adds a track whose file has a format not supported by iTunes. It is
+		 * converted when the plan is executed. Otherwise like
+		 * {@link #track(SongbirdTrack, String)}.
+		 * 
+		 * @param track
+		 *            the songbird track
+		 * @param absolutePath
+		 *            the path of the original file
+		 */
+		void trackToConvert(SongbirdTrack track, String absolutePath) {
+			track(TYPE_TRACK_TO_CONVERT, track, absolutePath);
+		}
+
+		private void track(char type, SongbirdTrack track, String absolutePath) {
+			String[] fields = new String[4 + PROPERTIES.length];
+			fields[0] = track.getGuid() != null ? track.getGuid() : "";
+			fields[1] = track.getContentUrl();
+			fields[2] = absolutePath;
+			fields[3] = toField(track.getDateCreated() != null ? track
+					.getDateCreated().getTime() : null);
+			for (int i = 0; i < PROPERTIES.length; i++) {
+				fields[4 + i] = toField(track.getPropertyAsLong(PROPERTIES[i]));
+			}
+			append(type, fields);
+		}
+
+		/**
+		 * Adds a playlist. The following members belong to this playlist.
+		 * 
+		 * @param name
+		 *            name of the playlist
+		 */
+		void playlist(String name) {
+			append(TYPE_PLAYLIST, name);
+		}
+
+		/**
+		 * Adds a member to the current playlist.
+		 * 
+		 * @param contentUrl
+		 *            the content URL of the track
+		 */
+		void member(String contentUrl) {
+			append(TYPE_MEMBER, contentUrl);
+		}
+
+		/**
+		 * Finishes writing and replaces the plan file by the new plan.
+		 * 
+		 * @throws UncheckedIOException
+		 *             if writing fails
+		 */
+		void complete() {
+			try {
+				writer.close();
+				Files.move(tempFile.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+				completed = true;
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to write plan " + file,
+						e);
+			}
+		}
+
+		/**
+		 * Closes the plan. If not {@link #complete()}d, the new plan is
+		 * discarded.
+		 */
+		@Override
+		public void close() {
+			if (completed) {
+				return;
+			}
+			try {
+				writer.close();
+			} catch (IOException e) {
+				// Discarded anyway
+			}
+			tempFile.delete();
+		}
+
+		private void append(char type, String... fields) {
+			try {
+				writer.write(type);
+				for (String field : fields) {
+					writer.write(SEPARATOR);
+					writer.write(escape(field));
+				}
+				writer.write('\n');
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to write plan "
+						+ tempFile, e);
+			}
+		}
+
+		private static String toField(Long value) {
+			return value != null ? value.toString() : "";
+		}
+	}
+
+	/**
+	 * Reads a plan: First the tracks, then the playlists. Not thread-safe.
+	 */
+	static class Reader implements AutoCloseable {
+		private final File file;
+		private final BufferedReader reader;
+		private final boolean playlistsOnly;
+		private final long tracks;
+		/** Tracks that are only referenced by playlists, by content URL. */
+		private final Map<String, PlannedTrack> memberTracks = new HashMap<>();
+		/** The next entry, already split into its fields. */
+		private String[] next;
+
+		private Reader(File file) {
+			this.file = file;
+			try {
+				tracks = countTracks(file);
+				reader = new BufferedReader(new InputStreamReader(
+						new FileInputStream(file), StandardCharsets.UTF_8));
+				String[] version = readEntry();
+				if (version == null || version[0].charAt(0) != TYPE_VERSION
+						|| version.length < 3
+						|| !READABLE_VERSIONS.contains(version[1])) {
+					reader.close();
+					throw new IOException("Not a plan of version " + VERSION);
+				}
+				playlistsOnly = Boolean.parseBoolean(version[2]);
+				next = readEntry();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to read plan " + file, e);
+			}
+		}
+
+		/**
+		 * @return <code>true</code> if only playlists and the tracks within
+		 *         playlists are migrated
+		 */
+		boolean isPlaylistsOnly() {
+			return playlistsOnly;
+		}
+
+		/**
+		 * @return the number of tracks that are migrated on their own, i.e.
+		 *         not only as members of playlists
+		 */
+		long getTracks() {
+			return tracks;
+		}
+
+		/**
+		 * @return the tracks that are migrated on their own, in order. Read
+		 *         lazily from the file.
+		 */
+		Iterator<PlannedTrack> tracks() {
+			return new Iterator<PlannedTrack>() {
+				@Override
+				public boolean hasNext() {
+					return isNextTrack();
+				}
+
+				@Override
+				public PlannedTrack next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					PlannedTrack track = toTrack(next);
+					advance();
+					return track;
+				}
+			};
+		}
+
+		/**
+		 * @return the playlists, in order. Read lazily from the file, skipping
+		 *         all tracks that have not been read yet.
+		 */
+		Iterator<PlannedPlaylist> playlists() {
+			return new Iterator<PlannedPlaylist>() {
+				@Override
+				public boolean hasNext() {
+					while (isNextTrack()) {
+						advance();
+					}
+					return isNext(TYPE_PLAYLIST);
+				}
+
+				@Override
+				public PlannedPlaylist next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					String name = next[1];
+					List<PlannedTrack> members = new ArrayList<>();
+					advance();
+					while (isNextTrack() || isNext(TYPE_MEMBER)) {
+						if (isNextTrack()) {
+							PlannedTrack track = toTrack(next);
+							memberTracks.put(track.getContentUrl(), track);
+						} else {
+							String contentUrl = next[1];
+							PlannedTrack track = memberTracks.get(contentUrl);
+							members.add(track != null ? track
+									: new PlannedTrack(contentUrl));
+						}
+						advance();
+					}
+					return new PlannedPlaylist(name, members);
+				}
+			};
+		}
+
+		@Override
+		public void close() {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to close plan " + file,
+						e);
+			}
+		}
+
+		private boolean isNext(char type) {
+			return next != null && next[0].charAt(0) == type;
+		}
+
+		private boolean isNextTrack() {
+			return isNext(TYPE_TRACK) || isNext(TYPE_TRACK_TO_CONVERT);
+		}
+
+		private void advance() {
+			try {
+				next = readEntry();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to read plan " + file, e);
+			}
+		}
+
+		private String[] readEntry() throws IOException {
+			String line;
+			do {
+				line = reader.readLine();
+			} while (line != null && line.isEmpty());
+			if (line == null) {
+				return null;
+			}
+			String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+			for (int i = 1; i < fields.length; i++) {
+				fields[i] = unescape(fields[i]);
+			}
+			return fields;
+		}
+
+		private PlannedTrack toTrack(String[] fields) {
+			if (fields.length != 5 + PROPERTIES.length) {
+				throw new UncheckedIOException("Unable to read plan " + file,
+						new IOException("Invalid track: " + fields[2]));
+			}
+			Map<String, String> properties = new HashMap<>();
+			for (int i = 0; i < PROPERTIES.length; i++) {
+				if (!fields[5 + i].isEmpty()) {
+					properties.put(PROPERTIES[i], fields[5 + i]);
+				}
+			}
+			return new PlannedTrack(fields[1].isEmpty() ? null : fields[1],
+					fields[2], Optional.of(fields[3]),
+					fields[4].isEmpty() ? null : new Date(
+							Long.parseLong(fields[4])), properties,
+					fields[0].charAt(0) == TYPE_TRACK_TO_CONVERT);
+		}
+
+		/**
+		 * Counts the tracks before the first playlist.
+		 */
+		private static long countTracks(File file) throws IOException {
+			long tracks = 0;
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(new FileInputStream(file),
+							StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null
+						&& (line.isEmpty() || line.charAt(0) != TYPE_PLAYLIST)) {
+					if (!line.isEmpty()
+							&& (line.charAt(0) == TYPE_TRACK
+									|| line.charAt(0) == TYPE_TRACK_TO_CONVERT)) {
+						tracks++;
+					}
+				}
+			}
+			return tracks;
+		}
+	}
+
+	/**
+	 * A track read from a plan. Its path has already been validated by the
+	 * dry run.
+	 */
+	static class PlannedTrack implements SongbirdTrack {
+		private final String guid;
+		private final String contentUrl;
+		private final Optional<String> absolutePath;
+		private final Date dateCreated;
+		private final Map<String, String> properties;
+		private final boolean toConvert;
+
+		/**
+		 * Creates a track that was found to be invalid by the dry run.
+		 * 
+		 * @param contentUrl
+		 *            the content URL of the track
+		 */
+		PlannedTrack(String contentUrl) {
+			this(null, contentUrl, Optional.empty(), null, new HashMap<>());
+		}
+
+		/**
+		 * @param guid
+		 *            the GUID of the track in songbird or <code>null</code>
+		 * @param contentUrl
+		 *            the content URL of the track
+		 * @param absolutePath
+		 *            the validated path of the track's file or
+		 *            {@link Optional#empty()} if invalid
+		 * @param dateCreated
+		 *            the date the track was added to songbird
+		 * @param properties
+		 *            the properties that are migrated, by name
+		 */
+		PlannedTrack(String guid, String contentUrl,
+				Optional<String> absolutePath, Date dateCreated,
+				Map<String, String> properties) {
+			this(guid, contentUrl, absolutePath, dateCreated, properties,
+					false);
+		}
+
+		/**
+		 * @param guid
+		 *            the GUID of the track in songbird or <code>null</code>
+		 * @param contentUrl
+		 *            the content URL of the track
+		 * @param absolutePath
+		 *            the validated path of the track's file or
+		 *            {@link Optional#empty()} if invalid
+		 * @param dateCreated
+		 *            the date the track was added to songbird
+		 * @param properties
+		 *            the properties that are migrated, by name
+		 * @param toConvert
+		 *            <code>true</code> if the file has to be converted before
+		 *            it is added to iTunes
+		 */
+		PlannedTrack(String guid, String contentUrl,
+				Optional<String> absolutePath, Date dateCreated,
+				Map<String, String> properties, boolean toConvert) {
+			this.guid = guid;
+			this.contentUrl = contentUrl;
+			this.absolutePath = absolutePath;
+			this.dateCreated = dateCreated;
+			this.properties = properties;
+			this.toConvert = toConvert;
+		}
+
+		/**
+		 * @return the validated path of the track's file or
+		 *         {@link Optional#empty()} if found to be invalid by the dry
+		 *         run
+		 */
+		Optional<String> getAbsolutePath() {
+			return absolutePath;
+		}
+
+		/**
+		 * @return <code>true</code> if the file has a format not supported by
+		 *         iTunes and has to be converted before it is added
+		 */
+		boolean isToConvert() {
+			return toConvert;
+		}
+
+		@Override
+		public String getGuid() {
+			return guid;
+		}
+
+		@Override
+		public String getContentUrl() {
+			return contentUrl;
+		}
+
+		@Override
+		public Date getDateCreated() {
+			return dateCreated;
+		}
+
+		@Override
+		public String getProperty(String propertyName) {
+			return properties.get(propertyName);
+		}
+	}
+
+	/**
+	 * A playlist read from a plan.
+	 */
+	static class PlannedPlaylist {
+		private final String name;
+		private final List<PlannedTrack> members;
+
+		PlannedPlaylist(String name, List<PlannedTrack> members) {
+			this.name = name;
+			this.members = members;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		List<PlannedTrack> getMembers() {
+			return members;
+		}
+	}
+
+	/**
+	 * Percent-encodes the characters that would break the format.
+	 */
+	static String escape(String field) {
+		if (field.indexOf('%') < 0 && field.indexOf(SEPARATOR) < 0
+				&& field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+			return field;
+		}
+		return field.replace("%", "%25").replace("\t", "%09")
+				.replace("\n", "%0A").replace("\r", "%0D");
+	}
+
+	/**
+	 * Reverts {@link #escape(String)}.
+	 */
+	static String unescape(String field) {
+		if (field.indexOf('%') < 0) {
+			return field;
+		}
+		StringBuilder unescaped = new StringBuilder(field.length());
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if (c == '%' && i + 2 < field.length()) {
+				unescaped.append((char) Integer.parseInt(
+						field.substring(i + 1, i + 3), 16));
+				i += 2;
+			} else {
+				unescaped.append(c);
+			}
+		}
+		return unescaped.toString();
+	}
+}
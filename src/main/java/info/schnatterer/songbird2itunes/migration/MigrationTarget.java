@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.itunes4j.entity.Rating;
+import info.schnatterer.itunes4j.exception.ITunesException;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Where tracks and playlists are migrated to, e.g. a running iTunes instance
+ * ({@link ITunesTarget}) or an iTunes Library XML file
+ * ({@link LibraryXmlTarget}).
+ * 
+ * Not thread-safe, meant to be used by the thread that talks to iTunes only.
+ * 
+ * @author schnatterer
+ *
+ */
+interface MigrationTarget extends AutoCloseable {
+
+	/**
+	 * Adds a file. Its properties are written to the track returned.
+	 * 
+	 * @param absolutePath
+	 *            the file to add
+	 * @param track
+	 *            the track the file belongs to, including the properties
+	 *            that are about to be written
+	 * @return the track that was added
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be added, e.g. because it is corrupt
+	 * @throws ITunesException
+	 *             if the target refuses the file
+	 */
+	Track addFile(String absolutePath, PreparedTrack track)
+			throws IOException, ITunesException;
+
+	/**
+	 * @param name
+	 *            name of the playlist
+	 * @return a new, empty playlist
+	 * 
+	 * @throws ITunesException
+	 *             if the playlist cannot be created
+	 */
+	Playlist createPlaylist(String name) throws ITunesException;
+
+	/**
+	 * @return <code>true</code> if the target takes the date added from the
+	 *         songbird track. Otherwise the date added can only be migrated by
+	 *         setting the system clock.
+	 */
+	boolean isDateAddedMigrated();
+
+	/**
+	 * @return <code>true</code> if each track is migrated as soon as it is
+	 *         added, so a migration can be resumed or synced incrementally.
+	 *         <code>false</code> if the target is written as a whole by
+	 *         {@link #complete()}, so each migration must contain all tracks.
+	 */
+	boolean isIncremental();
+
+	/**
+	 * Finishes the target after all tracks and playlists were migrated
+	 * successfully.
+	 */
+	void complete();
+
+	/**
+	 * Releases the target. Without {@link #complete()}, an incomplete target
+	 * might be discarded.
+	 */
+	@Override
+	void close();
+
+	/**
+	 * A track in the target.
+	 */
+	interface Track {
+		String getArtist() throws ITunesException;
+
+		String getName() throws ITunesException;
+
+		Date getDateAdded() throws ITunesException;
+
+		Date getPlayedDate() throws ITunesException;
+
+		Date getSkippedDate() throws ITunesException;
+
+		int getPlayedCount() throws ITunesException;
+
+		Rating getRating() throws ITunesException;
+
+		int getSkippedCount() throws ITunesException;
+
+		void setPlayedDate(Date date) throws ITunesException;
+
+		void setSkippedDate(Date date) throws ITunesException;
+
+		void setPlayedCount(int count) throws ITunesException;
+
+		void setRating(Rating rating) throws ITunesException;
+
+		void setSkippedCount(int count) throws ITunesException;
+	}
+
+	/**
+	 * A playlist in the target.
+	 */
+	interface Playlist {
+		/**
+		 * @param track
+		 *            a track returned by
+		 *            {@link MigrationTarget#addFile(String, PreparedTrack)}
+		 * @throws ITunesException
+		 *             if the track cannot be added to the playlist
+		 */
+		void addTrack(Track track) throws ITunesException;
+	}
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.songbird2itunes.migration.Songbird2itunesMigration.Statistics;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes playlists to files (M3U8 or XSPF) instead of migrating them to
+ * iTunes. Each playlist is written to its own file in a directory, named
+ * after the playlist.
+ * 
+ * The playlists are independent of each other, so they are written in
+ * parallel on a fork-join pool. The path of a track is resolved only once,
+ * even if it is a member of many playlists. Members whose file is invalid
+ * are left out, as when migrating to iTunes.
+ * 
+ * @author schnatterer
+ *
+ */
+class PlaylistExporter {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(PlaylistExporter.class);
+
+	private static final String XSPF_NAMESPACE = "http://xspf.org/ns/0/";
+	private static final String EOL = "\n";
+	/** Characters that are not allowed in file names on some platforms. */
+	private static final String INVALID_FILE_NAME_CHARS = "[\\\\/:*?\"<>|\\p{Cntrl}]";
+
+	private final File directory;
+	private final PlaylistFormat format;
+	private final int threads;
+	private final Function<SongbirdTrack, Optional<String>> resolvePath;
+	/** Content URL to absolute path, shared by all playlists. */
+	private final Map<String, Optional<String>> paths = new ConcurrentHashMap<>();
+
+	/**
+	 * @param directory
+	 *            the directory to write the playlist files to. Created if it
+	 *            does not exist.
+	 * @param format
+	 *            the format of the playlist files
+	 * @param threads
+	 *            number of playlists written in parallel
+	 * @param resolvePath
+	 *            resolves the absolute path of a track. Returns
+	 *            {@link Optional#empty()} if the file is invalid. Must be
+	 *            thread-safe.
+	 */
+	PlaylistExporter(File directory, PlaylistFormat format, int threads,
+			Function<SongbirdTrack, Optional<String>> resolvePath) {
+		this.directory = directory;
+		this.format = format;
+		this.threads = threads;
+		this.resolvePath = resolvePath;
+	}
+
+	/**
+	 * Writes the playlists in parallel. A playlist that cannot be written is
+	 * logged and counted as failed, the others are written anyway.
+	 * 
+	 * @param playlists
+	 *            the playlists to export
+	 * @param getName
+	 *            returns the name of a playlist
+	 * @param getMembers
+	 *            returns the tracks of a playlist, in order
+	 * @param stats
+	 *            statistics, updated while exporting
+	 * @param <T>
+	 *            type of the playlists
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the directory cannot be created
+	 */
+	<T> void export(List<T> playlists, Function<T, String> getName,
+			Function<T, List<? extends SongbirdTrack>> getMembers,
+			Statistics stats) {
+		try {
+			Files.createDirectories(directory.toPath());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to create directory "
+					+ directory, e);
+		}
+		// Assigned up front, so the file names don't depend on the order
+		List<Path> files = toFiles(playlists, getName);
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.submit(
+					() -> IntStream.range(0, playlists.size()).parallel()
+							.forEach(i -> {
+								T playlist = playlists.get(i);
+								export(getName.apply(playlist),
+										getMembers.apply(playlist), files.get(i),
+										stats);
+							})).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted exporting playlists",
+					e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Writes one playlist.
+	 */
+	private void export(String name, List<? extends SongbirdTrack> members,
+			Path file, Statistics stats) {
+		stats.playlistProcessed();
+		List<ExportedTrack> tracks = new ArrayList<>(members.size());
+		for (SongbirdTrack member : members) {
+			stats.playlistTrackProcessed();
+			Optional<String> path = paths.computeIfAbsent(
+					member.getContentUrl(), url -> resolvePath.apply(member));
+			if (path.isPresent()) {
+				tracks.add(new ExportedTrack(path.get(), member));
+			} else {
+				stats.playlistTrackFailed();
+			}
+		}
+
+		try (BufferedWriter writer = Files.newBufferedWriter(file,
+				StandardCharsets.UTF_8)) {
+			if (format == PlaylistFormat.XSPF) {
+				writeXspf(writer, name, tracks);
+			} else {
+				writeM3u8(writer, name, tracks);
+			}
+			LOG.info("Exported playlist \"" + name + "\" with " + tracks.size()
+					+ " track(s) to " + file);
+		} catch (IOException | XMLStreamException e) {
+			stats.playlistFailed();
+			LOG.warn("Unable to export playlist \"" + name + "\" to " + file,
+					e);
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException deleteException) {
+				LOG.debug("Unable to delete incomplete playlist " + file,
+						deleteException);
+			}
+		}
+	}
+
+	private static void writeM3u8(BufferedWriter writer, String name,
+			List<ExportedTrack> tracks) throws IOException {
+		writer.write("#EXTM3U");
+		writer.write(EOL);
+		writer.write("#PLAYLIST:");
+		writer.write(singleLine(name));
+		writer.write(EOL);
+		for (ExportedTrack track : tracks) {
+			// Duration is unknown
+			writer.write("#EXTINF:-1,");
+			writer.write(singleLine(track.getTitle()));
+			writer.write(EOL);
+			writer.write(track.path);
+			writer.write(EOL);
+		}
+	}
+
+	private static void writeXspf(BufferedWriter writer, String name,
+			List<ExportedTrack> tracks) throws XMLStreamException {
+		XMLStreamWriter xml = XMLOutputFactory.newInstance()
+				.createXMLStreamWriter(writer);
+		xml.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+		xml.writeCharacters(EOL);
+		xml.writeStartElement("playlist");
+		xml.writeDefaultNamespace(XSPF_NAMESPACE);
+		xml.writeAttribute("version", "1");
+		xml.writeCharacters(EOL);
+		element(xml, 1, "title", name);
+		xml.writeCharacters("\t");
+		xml.writeStartElement("trackList");
+		xml.writeCharacters(EOL);
+		for (ExportedTrack track : tracks) {
+			xml.writeCharacters("\t\t");
+			xml.writeStartElement("track");
+			xml.writeCharacters(EOL);
+			element(xml, 3, "location", new File(track.path).toURI()
+					.toASCIIString());
+			if (track.title != null) {
+				element(xml, 3, "title", track.title);
+			}
+			if (track.artist != null) {
+				element(xml, 3, "creator", track.artist);
+			}
+			xml.writeCharacters("\t\t");
+			xml.writeEndElement();
+			xml.writeCharacters(EOL);
+		}
+		xml.writeCharacters("\t");
+		xml.writeEndElement();
+		xml.writeCharacters(EOL);
+		xml.writeEndElement();
+		xml.writeCharacters(EOL);
+		xml.writeEndDocument();
+		xml.flush();
+	}
+
+	private static void element(XMLStreamWriter xml, int depth, String name,
+			String value) throws XMLStreamException {
+		for (int i = 0; i < depth; i++) {
+			xml.writeCharacters("\t");
+		}
+		xml.writeStartElement(name);
+		xml.writeCharacters(value);
+		xml.writeEndElement();
+		xml.writeCharacters(EOL);
+	}
+
+	/**
+	 * @return one file per playlist, named after the playlist. Names that
+	 *         clash (ignoring case, for case-insensitive file systems) are
+	 *         numbered.
+	 */
+	private <T> List<Path> toFiles(List<T> playlists,
+			Function<T, String> getName) {
+		List<Path> files = new ArrayList<>(playlists.size());
+		Set<String> fileNames = new HashSet<>();
+		for (T playlist : playlists) {
+			String baseName = toFileName(getName.apply(playlist));
+			String fileName = baseName + "." + format.getExtension();
+			for (int i = 2; !fileNames.add(fileName.toLowerCase(Locale.ROOT)); i++) {
+				fileName = baseName + " (" + i + ")." + format.getExtension();
+			}
+			files.add(directory.toPath().resolve(fileName));
+		}
+		return files;
+	}
+
+	/**
+	 * @param playlistName
+	 *            name of a playlist
+	 * @return a name that is valid as file name on all platforms
+	 */
+	static String toFileName(String playlistName) {
+		String fileName = playlistName != null ? playlistName.replaceAll(
+				INVALID_FILE_NAME_CHARS, "_").trim() : "";
+		// Windows does not allow trailing dots
+		while (fileName.endsWith(".")) {
+			fileName = fileName.substring(0, fileName.length() - 1);
+		}
+		return fileName.isEmpty() ? "_" : fileName;
+	}
+
+	private static String singleLine(String value) {
+		return value.replace('\n', ' ').replace('\r', ' ');
+	}
+
+	/**
+	 * A member of a playlist, whose file is valid.
+	 */
+	private static class ExportedTrack {
+		private final String path;
+		private final String title;
+		private final String artist;
+
+		ExportedTrack(String path, SongbirdTrack track) {
+			this.path = path;
+			this.title = track.getProperty(Property.PROP_TRACK_NAME);
+			this.artist = track.getProperty(Property.PROP_ARTIST_NAME);
+		}
+
+		/**
+		 * @return "artist - title", as far as known. Otherwise the file name.
+		 */
+		String getTitle() {
+			if (title == null) {
+				return new File(path).getName();
+			}
+			return artist != null ? artist + " - " + title : title;
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+/**
+ * File formats that playlists can be exported to.
+ * 
+ * @author schnatterer
+ *
+ */
+public enum PlaylistFormat {
+	/** Extended M3U, encoded in UTF-8. */
+	M3U8("m3u8"),
+	/** XML Shareable Playlist Format, see http://xspf.org/ */
+	XSPF("xspf");
+
+	private final String extension;
+
+	private PlaylistFormat(String extension) {
+		this.extension = extension;
+	}
+
+	/**
+	 * @return the file extension of the format, without dot
+	 */
+	public String getExtension() {
+		return extension;
+	}
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The playlists found in songbird, indexed for selecting the ones requested
+ * by the user. The name of each playlist is read and normalized (see
+ * {@link Songbird2itunesMigration#normalizePlaylistName(String)}) only once,
+ * when building the index.
+ * 
+ * A requested name is one of
+ * <ul>
+ * <li>an exact name, e.g. <code>Rock</code>, looked up in a hash index,</li>
+ * <li>a glob, prefixed by <code>glob:</code>, e.g. <code>glob:Rock*</code>.
+ * <code>*</code> matches any number of characters, <code>?</code> exactly
+ * one,</li>
+ * <li>a regular expression, prefixed by <code>regex:</code>, e.g.
+ * <code>regex:Rock|Pop</code>, that must match the whole name.</li>
+ * </ul>
+ * All of them ignore case and surrounding whitespace, just like exact names.
+ * 
+ * @author schnatterer
+ *
+ * @param <T>
+ *            type of the playlists
+ */
+class PlaylistIndex<T> {
+	/** Prefix of a requested name that is a glob. */
+	static final String PREFIX_GLOB = "glob:";
+	/** Prefix of a requested name that is a regular expression. */
+	static final String PREFIX_REGEX = "regex:";
+
+	private final List<T> playlists;
+	private final String[] names;
+	private final String[] keys;
+	/** Normalized name to the indices of the playlists with that name. */
+	private final Map<String, int[]> indicesByKey;
+
+	/**
+	 * Builds the index.
+	 * 
+	 * @param playlists
+	 *            the playlists found in songbird
+	 * @param getName
+	 *            returns the name of a playlist
+	 */
+	PlaylistIndex(Collection<T> playlists, Function<T, String> getName) {
+		// Read each name once, then sort by it
+		List<T> unsorted = new ArrayList<>(playlists);
+		String[] unsortedNames = new String[unsorted.size()];
+		Integer[] order = new Integer[unsorted.size()];
+		for (int i = 0; i < order.length; i++) {
+			unsortedNames[i] = getName.apply(unsorted.get(i));
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> unsortedNames[a]
+				.compareTo(unsortedNames[b]));
+
+		this.playlists = new ArrayList<>(order.length);
+		names = new String[order.length];
+		keys = new String[order.length];
+		indicesByKey = new HashMap<>();
+		for (int i = 0; i < order.length; i++) {
+			this.playlists.add(unsorted.get(order[i]));
+			names[i] = unsortedNames[order[i]];
+			keys[i] = Songbird2itunesMigration.normalizePlaylistName(names[i]);
+			indicesByKey.merge(keys[i], new int[] { i }, PlaylistIndex::concat);
+		}
+	}
+
+	/**
+	 * @return all playlists, sorted by name
+	 */
+	List<T> getPlaylists() {
+		return Collections.unmodifiableList(playlists);
+	}
+
+	/**
+	 * @return the names of all playlists, sorted
+	 */
+	List<String> getNames() {
+		return Collections.unmodifiableList(Arrays.asList(names));
+	}
+
+	/**
+	 * Selects the playlists requested by the user.
+	 * 
+	 * @param requestedNames
+	 *            exact names, globs or regular expressions, see
+	 *            {@link PlaylistIndex}
+	 * @return the selection
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a regular expression is invalid
+	 */
+	Selection<T> select(Collection<String> requestedNames) {
+		boolean[] selected = new boolean[keys.length];
+		Set<String> notFound = new TreeSet<>();
+		List<String> patternNames = new ArrayList<>();
+		List<Pattern> patterns = new ArrayList<>();
+
+		// Exact names are looked up, patterns compiled once
+		for (String requestedName : new LinkedHashSet<>(requestedNames)) {
+			Pattern pattern = toPattern(requestedName);
+			if (pattern != null) {
+				patternNames.add(requestedName);
+				patterns.add(pattern);
+				continue;
+			}
+			int[] indices = indicesByKey.get(Songbird2itunesMigration
+					.normalizePlaylistName(requestedName));
+			if (indices == null) {
+				notFound.add(requestedName);
+				continue;
+			}
+			for (int index : indices) {
+				selected[index] = true;
+			}
+		}
+
+		// One pass over all playlists per pattern
+		for (int p = 0; p < patterns.size(); p++) {
+			boolean found = false;
+			for (int i = 0; i < keys.length; i++) {
+				if (patterns.get(p).matcher(keys[i]).matches()) {
+					selected[i] = true;
+					found = true;
+				}
+			}
+			if (!found) {
+				notFound.add(patternNames.get(p));
+			}
+		}
+
+		List<T> selectedPlaylists = new ArrayList<>();
+		Set<String> ignoredNames = new TreeSet<>();
+		for (int i = 0; i < selected.length; i++) {
+			if (selected[i]) {
+				selectedPlaylists.add(playlists.get(i));
+			} else {
+				ignoredNames.add(names[i]);
+			}
+		}
+		return new Selection<>(selectedPlaylists, new ArrayList<>(
+				ignoredNames), new ArrayList<>(notFound));
+	}
+
+	/**
+	 * @param requestedName
+	 *            a name requested by the user
+	 * @return the compiled pattern or <code>null</code> if an exact name
+	 */
+	private static Pattern toPattern(String requestedName) {
+		String regex;
+		if (requestedName.startsWith(PREFIX_GLOB)) {
+			regex = globToRegex(requestedName.substring(PREFIX_GLOB.length())
+					.trim());
+		} else if (requestedName.startsWith(PREFIX_REGEX)) {
+			regex = requestedName.substring(PREFIX_REGEX.length()).trim();
+		} else {
+			return null;
+		}
+		try {
+			return Pattern.compile(regex, Pattern.CASE_INSENSITIVE
+					| Pattern.UNICODE_CASE);
+		} catch (PatternSyntaxException e) {
+			throw new IllegalArgumentException("Invalid playlist name \""
+					+ requestedName + "\": " + e.getDescription(), e);
+		}
+	}
+
+	/**
+	 * @param glob
+	 *            a glob with wildcards <code>*</code> and <code>?</code>
+	 * @return an equivalent regular expression
+	 */
+	static String globToRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (char c : glob.toCharArray()) {
+			if (c == '*' || c == '?') {
+				if (literal.length() > 0) {
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+				regex.append(c == '*' ? ".*" : ".");
+			} else {
+				literal.append(c);
+			}
+		}
+		if (literal.length() > 0) {
+			regex.append(Pattern.quote(literal.toString()));
+		}
+		return regex.toString();
+	}
+
+	private static int[] concat(int[] a, int[] b) {
+		int[] result = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		return result;
+	}
+
+	/**
+	 * The result of selecting playlists.
+	 * 
+	 * @param <T>
+	 *            type of the playlists
+	 */
+	static class Selection<T> {
+		private final List<T> selected;
+		private final List<String> ignoredNames;
+		private final List<String> notFound;
+
+		private Selection(List<T> selected, List<String> ignoredNames,
+				List<String> notFound) {
+			this.selected = selected;
+			this.ignoredNames = ignoredNames;
+			this.notFound = notFound;
+		}
+
+		/**
+		 * @return the playlists that were requested, sorted by name
+		 */
+		List<T> getSelected() {
+			return selected;
+		}
+
+		/**
+		 * @return the distinct names of the playlists that were not
+		 *         requested, sorted
+		 */
+		List<String> getIgnoredNames() {
+			return ignoredNames;
+		}
+
+		/**
+		 * @return the requested names that don't match any playlist, sorted
+		 */
+		List<String> getNotFound() {
+			return notFound;
+		}
+	}
+}
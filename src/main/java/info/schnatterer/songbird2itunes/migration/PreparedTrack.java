@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.itunes4j.entity.Rating;
+
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * A songbird track whose path has been resolved and whose properties have been
+ * decoded, so it is ready to be written to iTunes without further file system
+ * access or conversion.
+ * 
+ * Immutable, so it can be safely handed from the thread that prepared it to
+ * the thread that writes to iTunes.
+ * 
+ * @author schnatterer
+ *
+ */
+class PreparedTrack {
+	private final SongbirdTrack sbTrack;
+	private final Optional<String> absolutePath;
+	private final Date dateCreated;
+	private final Date lastPlayTime;
+	private final Date lastSkipTime;
+	private final int playCount;
+	private final Rating rating;
+	private final int skipCount;
+
+	/**
+	 * @param sbTrack
+	 *            the original songbird track
+	 * @param absolutePath
+	 *            the canonical path of the file or {@link Optional#empty()} if
+	 *            the path is invalid or the file does not exist
+	 * @param dateCreated
+	 *            date the track was added to songbird
+	 * @param lastPlayTime
+	 *            last time the track was played, may be <code>null</code>
+	 * @param lastSkipTime
+	 *            last time the track was skipped, may be <code>null</code>
+	 * @param playCount
+	 *            number of times the track was played
+	 * @param rating
+	 *            the rating converted to iTunes
+	 * @param skipCount
+	 *            number of times the track was skipped
+	 */
+	PreparedTrack(SongbirdTrack sbTrack, Optional<String> absolutePath,
+			Date dateCreated, Date lastPlayTime, Date lastSkipTime,
+			int playCount, Rating rating, int skipCount) {
+		this.sbTrack = sbTrack;
+		this.absolutePath = absolutePath;
+		this.dateCreated = dateCreated;
+		this.lastPlayTime = lastPlayTime;
+		this.lastSkipTime = lastSkipTime;
+		this.playCount = playCount;
+		this.rating = rating;
+		this.skipCount = skipCount;
+	}
+
+	public SongbirdTrack getSbTrack() {
+		return sbTrack;
+	}
+
+	public String getContentUrl() {
+		return sbTrack.getContentUrl();
+	}
+
+	public Optional<String> getAbsolutePath() {
+		return absolutePath;
+	}
+
+	public Date getDateCreated() {
+		return dateCreated;
+	}
+
+	public Date getLastPlayTime() {
+		return lastPlayTime;
+	}
+
+	public Date getLastSkipTime() {
+		return lastSkipTime;
+	}
+
+	public int getPlayCount() {
+		return playCount;
+	}
+
+	public Rating getRating() {
+		return rating;
+	}
+
+	public int getSkipCount() {
+		return skipCount;
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.songbird2itunes.migration.Songbird2itunesMigration.Statistics;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the progress of a running migration in a fixed interval: Tracks per
+ * second, playlist tracks per second, failure rates and the estimated time
+ * until all tracks are migrated.
+ * 
+ * The rates are measured within the last interval, the estimated time uses
+ * the average rate since the start.
+ * 
+ * @author schnatterer
+ *
+ */
+class ProgressReporter implements AutoCloseable {
+	/** SLF4J-Logger. */
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final Statistics stats;
+	private final long startNanos;
+	private ScheduledExecutorService scheduler = null;
+
+	private long lastNanos;
+	private long lastTracksProcessed = 0;
+	private long lastPlaylistTracksProcessed = 0;
+
+	/**
+	 * @param stats
+	 *            the statistics of the running migration
+	 * @param startNanos
+	 *            {@link System#nanoTime()} when the migration started
+	 */
+	ProgressReporter(Statistics stats, long startNanos) {
+		this.stats = stats;
+		this.startNanos = startNanos;
+		lastNanos = startNanos;
+	}
+
+	/**
+	 * Starts logging the progress in the background, on a daemon thread.
+	 * 
+	 * @param stats
+	 *            the statistics of the running migration
+	 * @param intervalSeconds
+	 *            interval between two log entries. If <code>0</code> or
+	 *            negative, nothing is logged.
+	 * @return a new reporter. Close it to stop logging.
+	 */
+	static ProgressReporter start(Statistics stats, long intervalSeconds) {
+		ProgressReporter reporter = new ProgressReporter(stats,
+				System.nanoTime());
+		if (intervalSeconds > 0) {
+			reporter.scheduler = Executors
+					.newSingleThreadScheduledExecutor(runnable -> {
+						Thread thread = new Thread(runnable,
+								"progress-reporter");
+						thread.setDaemon(true);
+						return thread;
+					});
+			reporter.scheduler.scheduleAtFixedRate(reporter::report,
+					intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+		}
+		return reporter;
+	}
+
+	/**
+	 * Logs the progress. Never throws, because that would cancel all further
+	 * reports.
+	 */
+	private void report() {
+		try {
+			log.info(progress(System.nanoTime()));
+		} catch (RuntimeException e) {
+			log.warn("Failed to report progress", e);
+		}
+	}
+
+	/**
+	 * @param nowNanos
+	 *            current {@link System#nanoTime()}
+	 * @return a description of the progress since the last call
+	 */
+	synchronized String progress(long nowNanos) {
+		long tracksProcessed = stats.getTracksProcessed();
+		long tracksFailed = stats.getTracksFailed();
+		long playlistTracksProcessed = stats.getPlaylistTracksProcessed();
+		long playlistTracksFailed = stats.getPlaylistTracksFailed();
+		double intervalSeconds = seconds(nowNanos - lastNanos);
+
+		StringBuilder progress = new StringBuilder("Progress after ")
+				.append(formatDuration(nowNanos - startNanos)).append(": ");
+		progress.append(tracksProcessed);
+		if (stats.getTracksFound() > 0) {
+			progress.append(" of ").append(
+					stats.getTracksFound() - stats.getTracksSkipped());
+		}
+		progress.append(" tracks, ")
+				.append(format("%.1f", rate(tracksProcessed
+						- lastTracksProcessed, intervalSeconds)))
+				.append(" tracks/s, ")
+				.append(format("%.1f%%", percent(tracksFailed,
+						tracksProcessed))).append(" failed; ");
+		progress.append(playlistTracksProcessed)
+				.append(" playlist tracks, ")
+				.append(format("%.1f", rate(playlistTracksProcessed
+						- lastPlaylistTracksProcessed, intervalSeconds)))
+				.append(" playlist tracks/s, ")
+				.append(format("%.1f%%", percent(playlistTracksFailed,
+						playlistTracksProcessed))).append(" failed");
+
+		long tracksRemaining = stats.getTracksFound()
+				- stats.getTracksSkipped() - tracksProcessed;
+		if (tracksRemaining > 0 && tracksProcessed > 0) {
+			long nanosPerTrack = (nowNanos - startNanos) / tracksProcessed;
+			progress.append("; tracks ETA ").append(
+					formatDuration(nanosPerTrack * tracksRemaining));
+		}
+
+		lastNanos = nowNanos;
+		lastTracksProcessed = tracksProcessed;
+		lastPlaylistTracksProcessed = playlistTracksProcessed;
+		return progress.toString();
+	}
+
+	/**
+	 * Stops logging the progress.
+	 */
+	@Override
+	public void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+	}
+
+	private static double rate(long count, double seconds) {
+		return seconds > 0 ? count / seconds : 0;
+	}
+
+	private static double percent(long part, long total) {
+		return total > 0 ? 100.0 * part / total : 0;
+	}
+
+	private static String format(String format, double value) {
+		return String.format(Locale.ENGLISH, format, value);
+	}
+
+	/**
+	 * @param nanos
+	 *            a duration in nanoseconds
+	 * @return the duration as hours:minutes:seconds
+	 */
+	static String formatDuration(long nanos) {
+		long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+		return String.format(Locale.ENGLISH, "%d:%02d:%02d", seconds / 3600,
+				(seconds / 60) % 60, seconds % 60);
+	}
+}
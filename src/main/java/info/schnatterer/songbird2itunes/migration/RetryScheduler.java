@@ -0,0 +1,318 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.itunes4j.exception.ITunesException;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes properties to iTunes tracks and retries the writes that failed,
+ * without blocking the migration of other tracks.
+ * 
+ * Why? iTunes seems to return errors and reconsiders on retry. An example is
+ * the "a0040203" ({@link info.schnatterer.itunes4j.exception.NotModifiableException}
+ * ) error in iTunes. This exception might occur right after a track has been
+ * added but iTunes (for some reasons) won't let us modify it for some more
+ * milliseconds. Maybe it parses artwork or goes fishing.
+ * 
+ * So only the writes that have not succeeded yet are scheduled for a retry,
+ * the file is not added again. The retries are delayed with an exponential
+ * backoff, meanwhile other tracks are migrated. The number of retries per
+ * track is limited by a budget per type of exception. Exceptions without
+ * budget are not retried but thrown.
+ * 
+ * Not thread-safe, meant to be used by the thread that talks to iTunes only.
+ * 
+ * @author schnatterer
+ *
+ */
+class RetryScheduler {
+	/** Delay before the first retry of a track. */
+	static final long DEFAULT_INITIAL_DELAY_MILLIS = 100;
+	/** Upper limit for the delay between two retries of a track. */
+	static final long DEFAULT_MAX_DELAY_MILLIS = 10000;
+
+	/** SLF4J-Logger. */
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final Map<Class<? extends ITunesException>, Integer> budgets;
+	private final long initialDelayMillis;
+	private final long maxDelayMillis;
+	private final DelayQueue<PendingWrites> retries = new DelayQueue<>();
+	/** Writes queued during the current batch, in order. */
+	private final Queue<PendingWrites> batch = new ArrayDeque<>();
+	private boolean batching = false;
+
+	/** Number of retries spent, per type of exception. */
+	private final Map<Class<? extends ITunesException>, Long> retriesSpent = new LinkedHashMap<>();
+	private long retriesExhausted = 0;
+
+	/**
+	 * @param budgets
+	 *            maximum number of retries per track for each type of
+	 *            exception. Subclasses of the types are retried as well.
+	 * @param initialDelayMillis
+	 *            delay before the first retry of a track
+	 * @param maxDelayMillis
+	 *            upper limit for the delay between two retries of a track
+	 */
+	RetryScheduler(Map<Class<? extends ITunesException>, Integer> budgets,
+			long initialDelayMillis, long maxDelayMillis) {
+		this.budgets = budgets;
+		this.initialDelayMillis = initialDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	/**
+	 * Writes properties to a track. Writes that fail with an exception that
+	 * has a retry budget are scheduled for a retry. During a batch, the writes
+	 * are queued until the batch ends.
+	 * 
+	 * @param track
+	 *            the track to write to
+	 * @param description
+	 *            identifies the track in the log, e.g. its path
+	 * @param writes
+	 *            the property writes, in order
+	 * @param onCompleted
+	 *            called after all writes succeeded. Not called if the budget
+	 *            was exhausted.
+	 * @param onFailed
+	 *            called if the budget was exhausted or the retries were
+	 *            interrupted, i.e. the properties were not written
+	 * 
+	 * @throws ITunesException
+	 *             if a write failed with an exception that has no retry
+	 *             budget
+	 */
+	void write(CachingTrack track, String description, List<PropertyWrite> writes,
+			Runnable onCompleted, Runnable onFailed) throws ITunesException {
+		PendingWrites pending = new PendingWrites(track, description, writes,
+				onCompleted, onFailed);
+		if (batching) {
+			batch.add(pending);
+		} else {
+			tryWrites(pending);
+		}
+	}
+
+	/**
+	 * Starts a batch: Writes are queued instead of executed until
+	 * {@link #endBatch()} is called. So iTunes can add a number of files
+	 * before the properties of the first one are written.
+	 */
+	void startBatch() {
+		batching = true;
+	}
+
+	/**
+	 * Ends the current batch and executes the writes queued during the batch,
+	 * in order. Does nothing if no batch was started.
+	 * 
+	 * @throws ITunesException
+	 *             if a write failed with an exception that has no retry
+	 *             budget
+	 */
+	void endBatch() throws ITunesException {
+		batching = false;
+		PendingWrites pending;
+		while ((pending = batch.poll()) != null) {
+			tryWrites(pending);
+		}
+	}
+
+	/**
+	 * Retries all writes whose delay has expired. Returns immediately.
+	 * 
+	 * @throws ITunesException
+	 *             if a write failed with an exception that has no retry
+	 *             budget
+	 */
+	void runDue() throws ITunesException {
+		PendingWrites pending;
+		while ((pending = retries.poll()) != null) {
+			tryWrites(pending);
+		}
+	}
+
+	/**
+	 * Retries all pending writes until they either succeed or their budget is
+	 * exhausted, waiting for their delays to expire.
+	 * 
+	 * @throws ITunesException
+	 *             if a write failed with an exception that has no retry
+	 *             budget
+	 */
+	void drain() throws ITunesException {
+		endBatch();
+		if (!retries.isEmpty()) {
+			log.debug("Waiting for " + retries.size()
+					+ " track(s) whose properties could not be written yet");
+		}
+		try {
+			while (!retries.isEmpty()) {
+				tryWrites(retries.take());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.warn("Interrupted while retrying. Properties of "
+					+ retries.size() + " track(s) were not written.");
+			retries.forEach(pending -> pending.onFailed.run());
+			retries.clear();
+		}
+	}
+
+	/**
+	 * @return the number of retries spent in total
+	 */
+	long getRetriesSpent() {
+		return retriesSpent.values().stream().mapToLong(Long::longValue)
+				.sum();
+	}
+
+	/**
+	 * @return the number of retries spent, per type of exception
+	 */
+	Map<Class<? extends ITunesException>, Long> getRetriesSpentByType() {
+		return new HashMap<>(retriesSpent);
+	}
+
+	/**
+	 * @return the number of tracks whose properties could not be written,
+	 *         because their budget was exhausted
+	 */
+	long getRetriesExhausted() {
+		return retriesExhausted;
+	}
+
+	/**
+	 * Executes the remaining writes of a track, until one of them fails.
+	 */
+	private void tryWrites(PendingWrites pending) throws ITunesException {
+		try {
+			while (pending.next < pending.writes.size()) {
+				pending.writes.get(pending.next).write(pending.track);
+				pending.next++;
+			}
+			pending.onCompleted.run();
+		} catch (ITunesException e) {
+			Class<? extends ITunesException> type = findBudgetType(e
+					.getClass());
+			if (type == null) {
+				throw e;
+			}
+			int attempts = pending.attemptsByType.merge(type, 1, Integer::sum);
+			if (attempts > budgets.get(type)) {
+				retriesExhausted++;
+				log.warn(
+						"Unable set track attributes, tried multiple times without luck. Skipping. You might manually add  File: "
+								+ pending.description, e);
+				pending.onFailed.run();
+				return;
+			}
+			retriesSpent.merge(type, 1L, Long::sum);
+			long delay = Math.min(maxDelayMillis, initialDelayMillis
+					* (1L << Math.min(attempts - 1, 30)));
+			log.debug("Error setting attributes. Retry #" + attempts + " in "
+					+ delay + "ms. File: " + pending.description, e);
+			pending.dueNanos = System.nanoTime()
+					+ TimeUnit.MILLISECONDS.toNanos(delay);
+			retries.add(pending);
+		}
+	}
+
+	/**
+	 * @return the most specific type of exception that has a budget and that
+	 *         <code>type</code> is assignable to, or <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	private Class<? extends ITunesException> findBudgetType(
+			Class<? extends ITunesException> type) {
+		Class<?> current = type;
+		while (current != null && ITunesException.class.isAssignableFrom(current)) {
+			if (budgets.containsKey(current)) {
+				return (Class<? extends ITunesException>) current;
+			}
+			current = current.getSuperclass();
+		}
+		return null;
+	}
+
+	/**
+	 * Writes a single property to an iTunes track.
+	 */
+	@FunctionalInterface
+	interface PropertyWrite {
+		/**
+		 * @param track
+		 *            the track to write to
+		 * @return <code>true</code> if iTunes was called, <code>false</code>
+		 *         if the write was elided
+		 * @throws ITunesException
+		 *             if iTunes refuses the write
+		 */
+		boolean write(CachingTrack track) throws ITunesException;
+	}
+
+	/**
+	 * The writes of a track that have not succeeded yet.
+	 */
+	private static class PendingWrites implements Delayed {
+		private final CachingTrack track;
+		private final String description;
+		private final List<PropertyWrite> writes;
+		private final Runnable onCompleted;
+		private final Runnable onFailed;
+		private final Map<Class<? extends ITunesException>, Integer> attemptsByType = new HashMap<>();
+		/** Index of the next write to execute. */
+		private int next = 0;
+		private long dueNanos;
+
+		PendingWrites(CachingTrack track, String description,
+				List<PropertyWrite> writes, Runnable onCompleted,
+				Runnable onFailed) {
+			this.track = track;
+			this.description = description;
+			this.writes = writes;
+			this.onCompleted = onCompleted;
+			this.onFailed = onFailed;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(dueNanos - System.nanoTime(),
+					TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			return Long.compare(getDelay(TimeUnit.NANOSECONDS),
+					other.getDelay(TimeUnit.NANOSECONDS));
+		}
+	}
+}
@@ -16,18 +16,24 @@
 package info.schnatterer.songbird2itunes.migration;
 
 import info.schnatterer.itunes4j.ITunes;
-import info.schnatterer.itunes4j.entity.Playlist;
 import info.schnatterer.itunes4j.entity.Rating;
-import info.schnatterer.itunes4j.entity.Track;
 import info.schnatterer.itunes4j.exception.ITunesException;
 import info.schnatterer.itunes4j.exception.NotModifiableException;
 import info.schnatterer.itunes4j.exception.WrongParameterException;
 import info.schnatterer.java.lang.SystemClock;
 import info.schnatterer.java.lang.SystemClock.SystemClockException;
 import info.schnatterer.java.lang.XLong;
-import info.schnatterer.java.util.Sets;
+import info.schnatterer.java.util.concurrent.OrderedPipeline;
+import info.schnatterer.songbird2itunes.migration.AudioHeaderValidator.Verdict;
+import info.schnatterer.songbird2itunes.migration.DuplicateDetector.Duplicates;
+import info.schnatterer.songbird2itunes.migration.DuplicateDetector.Group;
+import info.schnatterer.songbird2itunes.migration.MigrationPlan.PlannedPlaylist;
+import info.schnatterer.songbird2itunes.migration.MigrationPlan.PlannedTrack;
+import info.schnatterer.songbird2itunes.migration.RetryScheduler.PropertyWrite;
+import info.schnatterer.songbird2itunes.migration.SongbirdTrackCursor.CursorException;
+import info.schnatterer.songbird2itunes.migration.StageMetrics.Stage;
+import info.schnatterer.songbird2itunes.migration.SyncState.Change;
 import info.schnatterer.songbirddbapi4j.SongbirdDb;
-import info.schnatterer.songbirddbapi4j.domain.MediaItem;
 import info.schnatterer.songbirddbapi4j.domain.MemberMediaItem;
 import info.schnatterer.songbirddbapi4j.domain.Property;
 import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
@@ -36,13 +42,25 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +69,64 @@ public class Songbird2itunesMigration {
 	/** SLF4J-Logger. */
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
+	/** Default number of threads that prepare tracks ahead of iTunes. */
+	public static final int DEFAULT_THREADS = Runtime.getRuntime()
+			.availableProcessors();
+	/** Default maximum number of tracks that are prepared ahead of iTunes. */
+	public static final int DEFAULT_QUEUE_DEPTH = 256;
+	/** Default number of rows fetched from songbird at once. */
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+	/** Default number of files added to iTunes before writing properties. */
+	public static final int DEFAULT_BATCH_SIZE = 16;
+	/** Default location of the journal, next to the log file. */
+	public static final String DEFAULT_JOURNAL_FILE = "songbird2itunes.journal";
+	/** Default interval in seconds for logging the progress. */
+	public static final int DEFAULT_PROGRESS_INTERVAL = 60;
+	/** Default location of the latencies per stage, next to the log file. */
+	public static final String DEFAULT_METRICS_FILE = "songbird2itunes-metrics.csv";
+	/** Default location of the plan written by a dry run. */
+	public static final String DEFAULT_PLAN_FILE = "songbird2itunes.plan";
+	/** Default location of the state of the previous delta sync. */
+	public static final String DEFAULT_STATE_FILE = "songbird2itunes.state";
+	/** Default directory of the converted files. */
+	public static final String DEFAULT_CONVERT_DIRECTORY = "songbird2itunes-converted";
+
+	private int threads = DEFAULT_THREADS;
+	private int queueDepth = DEFAULT_QUEUE_DEPTH;
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private File journalFile = new File(DEFAULT_JOURNAL_FILE);
+	private boolean resume = false;
+	private int progressInterval = DEFAULT_PROGRESS_INTERVAL;
+	private File metricsFile = new File(DEFAULT_METRICS_FILE);
+	private boolean dryRun = false;
+	private File planFile = null;
+	private boolean delta = false;
+	private File stateFile = new File(DEFAULT_STATE_FILE);
+	private File libraryXmlFile = null;
+	private File playlistExportDirectory = null;
+	private PlaylistFormat playlistExportFormat = PlaylistFormat.M3U8;
+	private boolean deduplicate = false;
+	private DuplicateMergePolicy duplicateMergePolicy = DuplicateMergePolicy.SUM;
+	private boolean checkHeaders = false;
+	private TrackConverter converter = null;
+	private File convertDirectory = null;
+
+	/** Latencies of the current migration. */
+	private StageMetrics metrics = new StageMetrics();
+	/** State of the previous delta sync, for the current migration. */
+	private SyncState syncState = SyncState.disabled();
+	/** Calls to iTunes saved by caching the tracks of the current migration. */
+	private CachingTrack.Savings savings = new CachingTrack.Savings();
+	/** Files with the same content, for the current migration. */
+	private Duplicates duplicates = Duplicates.none();
+	/** Files rejected by their header, for the current migration. */
+	private AudioHeaderValidator headerValidator = new AudioHeaderValidator();
+	/** Converts unsupported files for the current migration, if enabled. */
+	private Optional<ConverterPool> converterPool = Optional.empty();
+	/** Files to convert when executing the plan of the current dry run. */
+	private Set<String> filesToConvert = new HashSet<>();
+
 	/**
 	 * Migrate all tracks and playlists from a songbird database to iTunes.
 	 * 
@@ -58,65 +134,540 @@ public class Songbird2itunesMigration {
 	 *            absolute File path to songbird database
 	 * @param exceptionRetries
 	 *            After running into a {@link NotModifiableException} - amount
-	 *            of times adding track is retried before exiting with an error.
+	 *            of times writing the properties of a track is retried before
+	 *            giving up on the track.
 	 * @param setSystemDate
 	 *            use workaround - try to set the date added in iTunes by
 	 *            setting the system date to the date added and then adding the
 	 *            track
 	 * @param playlistNames
 	 *            migrate only the playlists and the tracks within playlists.
-	 *            Don't migrat other tracks. If <code>null</code> or empty, all
+	 *            Don't migrat other tracks. Exact names, globs (prefix
+	 *            <code>glob:</code>) or regular expressions (prefix
+	 *            <code>regex:</code>). If <code>null</code> or empty, all
 	 *            playlists are migrated.
 	 * @param migratePlaylistsOnly
 	 *            <code>true</code> migrates only the playlists and the tracks
 	 *            within playlists. Don't migrate other tracks.
 	 * 
-	 * @return statistics that keeps track of the number of migrated objects
+	 * @return statistics that keeps track of the number of migrated objects.
+	 *         On a dry run the number of objects that would be migrated.
 	 * 
 	 * @throws SQLException
 	 *             errors when querying source database
 	 * @throws ITunesException
 	 *             errors when writing to target iTunes
+	 * 
+	 * @see #setDryRun(boolean)
+	 * @see #setPlanFile(String)
+	 * @see #setPlaylistExport(String, PlaylistFormat)
 	 */
 	public Statistics migrate(String songbirdDbFile, int exceptionRetries,
 			boolean setSystemDate, List<String> playlistNames,
 			boolean migratePlaylistsOnly) throws SQLException, ITunesException {
 		// Create database wrapper instance
-		SongbirdDb songbirdDb = createSongbirdDb(new File(songbirdDbFile));
-		// Create reference to iTunes
-		ITunes iTunes = createItunes();
+		File songbirdFile = new File(songbirdDbFile);
+		SongbirdDb songbirdDb = createSongbirdDb(songbirdFile);
+		if (dryRun) {
+			return planMigration(songbirdFile, songbirdDb, setSystemDate,
+					playlistNames, migratePlaylistsOnly);
+		}
+		if (playlistExportDirectory != null) {
+			return exportPlaylists(songbirdDb, playlistNames);
+		}
+		MigrationTarget target = createTarget();
+		if (!target.isIncremental() && (resume || delta)) {
+			target.close();
+			throw new IllegalArgumentException(
+					"Resuming and delta sync are not possible when writing a library XML file: The file always contains all tracks of one migration");
+		}
 		Optional<SystemClock> systemClock = Optional.empty();
 		if (setSystemDate) {
-			systemClock = Optional.of(new SystemClock());
+			if (target.isDateAddedMigrated()) {
+				log.info("The date added is migrated without setting the system clock.");
+			} else {
+				try {
+					systemClock = Optional.of(createSystemClock());
+				} catch (SystemClockException e) {
+					log.warn("Not migrating the date added: " + e.getMessage());
+				}
+			}
 		}
 
+		// Makes sure each file is added to iTunes only once during this run
+		TrackCache trackCache = new TrackCache();
+		// Retries only the property writes that iTunes refused
+		RetryScheduler retryScheduler = createRetryScheduler(exceptionRetries);
+
 		Statistics stats = new Statistics();
-		if (!migratePlaylistsOnly) {
-			stats.merge(migrateTracks(songbirdDb, iTunes, exceptionRetries,
-					systemClock));
+		metrics = new StageMetrics();
+		syncState = openSyncState(true);
+		savings = new CachingTrack.Savings();
+		duplicates = Duplicates.none();
+		headerValidator = new AudioHeaderValidator();
+		/*
+		 * When setting the system clock, add the tracks in chronological order
+		 * so tracks added to songbird within the same minute need only one
+		 * change of the clock.
+		 */
+		boolean orderByDateCreated = systemClock.isPresent();
+		/*
+		 * Detecting duplicates needs all tracks before the first one is
+		 * migrated. Keep them in memory, so the database is read only once.
+		 * Otherwise the tracks are streamed.
+		 */
+		Optional<TrackTable> tracks = Optional.empty();
+		if (deduplicate) {
+			if (planFile != null) {
+				log.info("Not checking for duplicates, migrating the plan as it is.");
+			} else {
+				tracks = Optional.of(loadTracks(songbirdFile,
+						orderByDateCreated));
+				duplicates = detectDuplicates(tracks.get(), stats);
+			}
+		}
+		converterPool = openConverterPool();
+		ProgressReporter progressReporter = ProgressReporter.start(stats,
+				progressInterval);
+		// Keeps track of what has been migrated, in case this run is aborted
+		try (MigrationJournal journal = target.isIncremental() ? openJournal(
+				journalFile, resume) : MigrationJournal.disabled()) {
+			if (resume) {
+				log.info("Resuming previous migration. Read "
+						+ journal.getPreviousEntries()
+						+ " entries from journal " + journalFile);
+			}
+			if (planFile != null) {
+				executePlan(target, trackCache, journal, retryScheduler,
+						systemClock, stats);
+			} else {
+				if (migratePlaylistsOnly) {
+					log.info("Migrating only tracks that are contained in playlists.");
+				} else if (tracks.isPresent()) {
+					migrateTracks(tracks.get(), target, trackCache, journal,
+							retryScheduler, systemClock, stats);
+				} else {
+					migrateTracks(songbirdFile, orderByDateCreated, target,
+							trackCache, journal, retryScheduler, systemClock,
+							stats);
+				}
+
+				/*
+				 * if migrating only playlists, set properties. If tracks have
+				 * been migrated (above) they are taken from the cache and are
+				 * not added again (faster)
+				 */
+				migratePlaylists(songbirdDb, target, trackCache, journal,
+						retryScheduler, migratePlaylistsOnly, systemClock,
+						playlistNames, stats);
+			}
+
+			retryScheduler.drain();
+			target.complete();
+			syncState.complete();
+		} finally {
+			progressReporter.close();
+			target.close();
+			converterPool.ifPresent(ConverterPool::close);
+			if (systemClock.isPresent()) {
+				restoreSystemClock(systemClock.get());
+			}
+			writeMetrics();
+		}
+		stats.retried(retryScheduler.getRetriesSpent(),
+				retryScheduler.getRetriesExhausted());
+		stats.callsSaved(savings.getReads(), savings.getWrites());
+		filesRejected(stats);
+		retryScheduler.getRetriesSpentByType().forEach(
+				(type, retries) -> log.debug("Spent " + retries
+						+ " retries on " + type.getSimpleName()));
+
+		log.debug("Added " + trackCache.size() + " distinct files to iTunes");
+		logSyncState();
+		return stats;
+	}
+
+	/**
+	 * Writes the playlists to files instead of migrating them to iTunes.
+	 * Tracks are not migrated.
+	 * 
+	 * @param songbirdDb
+	 *            songbird database wrapper
+	 * @param playlistNames
+	 *            export only these playlists. If <code>null</code> or empty,
+	 *            all playlists are exported.
+	 * @return statistics that keeps track of the number of exported playlists
+	 *         and members
+	 * 
+	 * @throws SQLException
+	 *             errors when querying source database
+	 */
+	private Statistics exportPlaylists(SongbirdDb songbirdDb,
+			List<String> playlistNames) throws SQLException {
+		log.info("Exporting playlists as " + playlistExportFormat + " to "
+				+ playlistExportDirectory + ". Tracks are not migrated.");
+		Statistics stats = new Statistics();
+		metrics = new StageMetrics();
+		try {
+			List<SimpleMediaList> playlists = selectPlaylists(songbirdDb,
+					playlistNames);
+			new PlaylistExporter(playlistExportDirectory,
+					playlistExportFormat, threads, sbTrack -> {
+						long start = System.nanoTime();
+						Optional<String> absolutePath = toAbsolutePath(sbTrack);
+						metrics.record(Stage.ABSOLUTE_PATH, start);
+						return absolutePath;
+					}).export(playlists,
+					Songbird2itunesMigration::getPlaylistName,
+					Songbird2itunesMigration::toSongbirdTracks, stats);
+		} finally {
+			writeMetrics();
+		}
+		return stats;
+	}
+
+	/**
+	 * Reads all tracks from songbird into memory, for migrations that need
+	 * more than one pass over the tracks (detecting duplicates). The tracks
+	 * are stored column by column, so even large libraries take little
+	 * memory. Still, memory grows with the size of the library and no track
+	 * is migrated before all of them are read. Without a second pass, the
+	 * tracks are streamed from a {@link SongbirdTrackCursor} instead.
+	 * 
+	 * @param songbirdDbFile
+	 *            the songbird database
+	 * @param orderByDateCreated
+	 *            <code>true</code> returns the tracks in the order they were
+	 *            added to songbird
+	 * @return the tracks
+	 * 
+	 * @throws SQLException
+	 *             errors when querying source database
+	 */
+	private TrackTable loadTracks(File songbirdDbFile,
+			boolean orderByDateCreated) throws SQLException {
+		try (SongbirdTrackCursor cursor = openTrackCursor(songbirdDbFile,
+				fetchSize, orderByDateCreated)) {
+			TrackTable tracks = TrackTable.of(
+					metrics.timed(Stage.SONGBIRD_TRACK_QUERY, cursor),
+					(int) cursor.count());
+			log.info("Found " + tracks.size() + " tracks ("
+					+ tracks.getDirectories() + " distinct directory prefixes, "
+					+ tracks.getBytes() / (1024 * 1024) + " MB in memory)");
+			return tracks;
+		} catch (CursorException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Finds the tracks whose files have the same content, so only one file
+	 * of each group is added to iTunes.
+	 * 
+	 * @param tracks
+	 *            all tracks
+	 * @param stats
+	 *            counts the duplicates
+	 * @return the duplicates
+	 */
+	private Duplicates detectDuplicates(TrackTable tracks, Statistics stats) {
+		log.info("Checking for files with the same content...");
+		Duplicates detected = new DuplicateDetector(threads,
+				DuplicateDetector.DEFAULT_CHUNK_SIZE, duplicateMergePolicy)
+				.detect(tracks.iterator());
+		stats.duplicatesFound(detected.getFiles());
+		log.info("Found " + detected.getFiles()
+				+ " duplicate file(s) that are not added to iTunes ("
+				+ detected.getBytes() / (1024 * 1024)
+				+ " MB). Merging their properties: " + duplicateMergePolicy);
+		return detected;
+	}
+
+	/**
+	 * @param writable
+	 *            <code>false</code> never writes the state, e.g. for a dry run
+	 * @return the state of the previous delta sync, if enabled
+	 */
+	private SyncState openSyncState(boolean writable) {
+		if (!delta) {
+			return SyncState.disabled();
+		}
+		log.info("Delta sync: Migrating only tracks and playlists that are new or changed since the previous sync. State: "
+				+ stateFile);
+		return SyncState.open(stateFile, writable);
+	}
+
+	/**
+	 * Logs the number of new, changed and unchanged tracks, if delta sync is
+	 * enabled.
+	 */
+	private void logSyncState() {
+		if (delta) {
+			log.info("Delta sync: " + syncState.getNewTracks()
+					+ " new tracks, " + syncState.getChangedTracks()
+					+ " changed tracks, " + syncState.getUnchangedTracks()
+					+ " unchanged tracks");
+		}
+	}
+
+	/**
+	 * @return a pool that converts unsupported files, if a converter is set
+	 */
+	private Optional<ConverterPool> openConverterPool() {
+		if (converter == null) {
+			return Optional.empty();
+		}
+		log.info("Converting files of formats not supported by iTunes to "
+				+ convertDirectory);
+		return Optional.of(new ConverterPool(converter, convertDirectory,
+				Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Counts the files that were not added to iTunes because of their header
+	 * and the files that were converted instead.
+	 * 
+	 * @param stats
+	 *            statistics to write to
+	 */
+	private void filesRejected(Statistics stats) {
+		if (converterPool.isPresent()) {
+			stats.filesConverted(converterPool.get().getConverted());
+			stats.filesRejected(converterPool.get().getFailed(),
+					headerValidator.getCorrupt());
+		} else if (dryRun && converter != null) {
+			// Would be converted
+			stats.filesConverted(filesToConvert.size());
+			stats.filesRejected(0, headerValidator.getCorrupt());
 		} else {
-			log.info("Migrating only tracks that are contained in playlists.");
+			stats.filesRejected(headerValidator.getUnsupported(),
+					headerValidator.getCorrupt());
 		}
+	}
 
-		/*
-		 * if migrating only playlists, set properties. If tracks have been
-		 * migrated (above) don't set them again (faster)
-		 */
-		stats.merge(migratePlaylists(songbirdDb, iTunes, exceptionRetries,
-				migratePlaylistsOnly, systemClock, playlistNames));
+	/**
+	 * Dry run: Reads the tracks and playlists from songbird, resolves and
+	 * validates the paths of their files in parallel and writes the outcome to
+	 * the plan file. Neither iTunes nor the system clock are touched. Files of
+	 * unsupported formats are not converted, even if a converter is set: The
+	 * plan marks them, so they are converted when the plan is executed.
+	 * 
+	 * @param songbirdDbFile
+	 *            the songbird database
+	 * @param songbirdDb
+	 *            songbird database wrapper
+	 * @param setSystemDate
+	 *            <code>true</code> plans the tracks in the order they were
+	 *            added to songbird
+	 * @param playlistNames
+	 *            plan only these playlists. If <code>null</code> or empty,
+	 *            all playlists are planned.
+	 * @param migratePlaylistsOnly
+	 *            <code>true</code> plans only the playlists and the tracks
+	 *            within playlists
+	 * @return statistics about the tracks and playlists that would be migrated
+	 * 
+	 * @throws SQLException
+	 *             errors when querying source database
+	 */
+	private Statistics planMigration(File songbirdDbFile,
+			SongbirdDb songbirdDb, boolean setSystemDate,
+			List<String> playlistNames, boolean migratePlaylistsOnly)
+			throws SQLException {
+		File file = planFile != null ? planFile : new File(DEFAULT_PLAN_FILE);
+		log.info("Dry run: Not writing to iTunes. Writing plan to " + file);
+		Statistics stats = new Statistics();
+		metrics = new StageMetrics();
+		syncState = openSyncState(false);
+		headerValidator = new AudioHeaderValidator();
+		converterPool = Optional.empty();
+		filesToConvert = ConcurrentHashMap.newKeySet();
+		if (converter != null) {
+			log.info("Dry run: Not converting files. Files of formats not supported by iTunes are converted when the plan is executed.");
+		}
+		// Tracks that are part of the plan by content URL: valid or not
+		Map<String, Boolean> plannedTracks = new ConcurrentHashMap<>();
+		// Distinct files that would be added to iTunes
+		Set<String> plannedFiles = new HashSet<>();
+		ProgressReporter progressReporter = ProgressReporter.start(stats,
+				progressInterval);
+		try (MigrationJournal journal = MigrationJournal.openReadOnly(
+				journalFile, resume);
+				MigrationPlan.Writer plan = MigrationPlan.create(file,
+						migratePlaylistsOnly)) {
+			if (!migratePlaylistsOnly) {
+				try (SongbirdTrackCursor tracks = openTrackCursor(
+						songbirdDbFile, fetchSize, setSystemDate)) {
+					stats.tracksFound(tracks.count());
+					try (OrderedPipeline<SongbirdTrack, PreparedTrack> preparedTracks = new OrderedPipeline<>(
+							skipMigrated(metrics.timed(
+									Stage.SONGBIRD_TRACK_QUERY, tracks),
+									journal, stats), this::prepareTrack,
+							threads, queueDepth)) {
+						while (preparedTracks.hasNext()) {
+							stats.trackProcessed();
+							if (!planTrack(plan, preparedTracks.next(),
+									plannedTracks, plannedFiles)) {
+								stats.trackFailed();
+							}
+						}
+					}
+				} catch (CursorException e) {
+					throw e.getCause();
+				}
+			}
+
+			for (SimpleMediaList playlist : selectPlaylists(songbirdDb,
+					playlistNames)) {
+				String playlistName = getPlaylistName(playlist);
+				if (journal.isPlaylistCompleted(playlistName)) {
+					log.info("Playlist was migrated in a previous run. Skipping: "
+							+ playlistName);
+					continue;
+				}
+				List<SongbirdTrack> members = toSongbirdTracks(playlist);
+				if (syncState.comparePlaylist(playlistName, members) == Change.UNCHANGED) {
+					log.info("Playlist is unchanged since the previous sync. Skipping: "
+							+ playlistName);
+					continue;
+				}
+				stats.playlistProcessed();
+				plan.playlist(playlistName);
+				// Resolve only members that are not part of the plan, yet
+				try (OrderedPipeline<SongbirdTrack, Optional<PreparedTrack>> preparedMembers = new OrderedPipeline<>(
+						members.iterator(),
+						member -> plannedTracks.containsKey(member
+								.getContentUrl()) ? Optional.empty() : Optional
+								.of(prepareTrack(member)), threads, queueDepth)) {
+					for (SongbirdTrack member : members) {
+						Optional<PreparedTrack> preparedMember = preparedMembers
+								.next();
+						stats.playlistTrackProcessed();
+						Boolean valid = plannedTracks.get(member
+								.getContentUrl());
+						if (valid == null) {
+							valid = planTrack(plan, preparedMember.get(),
+									plannedTracks, plannedFiles);
+						}
+						if (!valid) {
+							stats.playlistTrackFailed();
+						}
+						plan.member(member.getContentUrl());
+					}
+				}
+			}
+			plan.complete();
+		} finally {
+			progressReporter.close();
+			writeMetrics();
+		}
+		filesRejected(stats);
 
+		log.info("Dry run: " + stats.getTracksFound() + " tracks found. "
+				+ (stats.getTracksProcessed() - stats.getTracksFailed())
+				+ " would be added, " + stats.getTracksFailed()
+				+ " would fail, " + stats.getTracksSkipped()
+				+ " were migrated in a previous run");
+		log.info("Dry run: " + stats.getPlaylistsProcessed()
+				+ " playlists would be created with "
+				+ stats.getPlaylistTracksProcessed() + " tracks, "
+				+ stats.getPlaylistTracksFailed() + " tracks would fail");
+		log.info("Dry run: " + plannedFiles.size()
+				+ " distinct files would be added to iTunes, "
+				+ filesToConvert.size()
+				+ " of them after converting. Wrote plan to " + file);
+		logSyncState();
 		return stats;
 	}
 
+	/**
+	 * Adds a prepared track to the plan, if valid.
+	 * 
+	 * @param plan
+	 *            the plan to write to
+	 * @param track
+	 *            the prepared track
+	 * @param plannedTracks
+	 *            tracks that are part of the plan by content URL, updated
+	 * @param plannedFiles
+	 *            files that are part of the plan, updated
+	 * @return <code>true</code> if the track is valid
+	 */
+	private boolean planTrack(MigrationPlan.Writer plan, PreparedTrack track,
+			Map<String, Boolean> plannedTracks, Set<String> plannedFiles) {
+		Optional<String> absolutePath = track.getAbsolutePath();
+		plannedTracks.put(track.getContentUrl(), absolutePath.isPresent());
+		if (!absolutePath.isPresent()) {
+			return false;
+		}
+		if (filesToConvert.contains(absolutePath.get())) {
+			plan.trackToConvert(track.getSbTrack(), absolutePath.get());
+		} else {
+			plan.track(track.getSbTrack(), absolutePath.get());
+		}
+		plannedFiles.add(absolutePath.get());
+		return true;
+	}
+
+	/**
+	 * Migrates the tracks and playlists of the plan file that was written by a
+	 * dry run. Neither songbird is read nor are paths resolved again.
+	 * 
+	 * @param target
+	 *            where to migrate to
+	 * @param trackCache
+	 *            tracks that have already been added to iTunes during this
+	 *            run
+	 * @param journal
+	 *            records the tracks and playlists that have been migrated
+	 * @param retryScheduler
+	 *            writes the track properties and retries failed writes
+	 * @param systemClock
+	 *            system clock to set before adding the tracks to iTunes. If
+	 *            {@link Optional#empty()} the system clock is not set.
+	 * @param stats
+	 *            statistics about the migration, updated while migrating
+	 * 
+	 * @throws ITunesException
+	 *             errors when writing to target iTunes
+	 */
+	private void executePlan(MigrationTarget target, TrackCache trackCache,
+			MigrationJournal journal, RetryScheduler retryScheduler,
+			Optional<SystemClock> systemClock, Statistics stats)
+			throws ITunesException {
+		try (MigrationPlan.Reader plan = MigrationPlan.open(planFile)) {
+			log.info("Executing plan " + planFile + ". Found "
+					+ plan.getTracks() + " tracks");
+			stats.tracksFound(plan.getTracks());
+			migrateTracks(plan.tracks(), this::preparePlannedTrack, target,
+					trackCache, journal, retryScheduler, systemClock, stats);
+
+			Iterator<PlannedPlaylist> playlists = plan.playlists();
+			while (playlists.hasNext()) {
+				PlannedPlaylist playlist = playlists.next();
+				migratePlaylist(playlist.getName(), playlist.getMembers(),
+						this::preparePlannedTrack, target, trackCache, journal,
+						retryScheduler, plan.isPlaylistsOnly(), systemClock,
+						stats);
+			}
+		}
+	}
+
 	/**
 	 * Migrates playlists from songbird2iTunes.
 	 * 
 	 * @param songbirdDb
 	 *            songbird database wrapper
-	 * @param iTunes
-	 *            iTunes wrapper After running into a
-	 *            {@link NotModifiableException} - amount of times adding track
-	 *            is retried before exiting with an error.
+	 * @param target
+	 *            where to migrate to
+	 * @param trackCache
+	 *            tracks that have already been added to iTunes during this
+	 *            run
+	 * @param journal
+	 *            records the playlists that have been migrated. Playlists
+	 *            that were completed in a previous run are skipped.
+	 * @param retryScheduler
+	 *            writes the track properties and retries failed writes
 	 * @param setProperties
 	 *            <code>true</code> migrates properties lastPlayTime,
 	 *            lastSkipTime, playCount, rating, skipCount
@@ -125,127 +676,189 @@ public class Songbird2itunesMigration {
 	 *            {@link Optional#empty()} the system clock is not set.
 	 * @param requestedPlaylistNames
 	 *            migrate only the playlists and the tracks within playlists.
-	 *            Don't migrat other tracks. If <code>null</code> or empty, all
+	 *            Don't migrat other tracks. Exact names, globs (prefix
+	 *            <code>glob:</code>) or regular expressions (prefix
+	 *            <code>regex:</code>). If <code>null</code> or empty, all
 	 *            playlists are migrated.
-	 * 
-	 * @return statistics about the migration
+	 * @param stats
+	 *            statistics about the migration, updated while migrating
 	 * 
 	 * @throws SQLException
 	 *             errors when querying source database
 	 * @throws ITunesException
 	 *             errors when writing to target iTunes
 	 */
-	private Statistics migratePlaylists(SongbirdDb songbirdDb, ITunes iTunes,
-			int exceptionRetries, boolean setProperties,
+	private void migratePlaylists(SongbirdDb songbirdDb, MigrationTarget target,
+			TrackCache trackCache, MigrationJournal journal,
+			RetryScheduler retryScheduler, boolean setProperties,
 			Optional<SystemClock> systemClock,
-			List<String> requestedPlaylistNames) throws SQLException,
-			ITunesException {
-		Statistics stats = new Statistics();
+			List<String> requestedPlaylistNames, Statistics stats)
+			throws SQLException, ITunesException {
+		for (SimpleMediaList playList : selectPlaylists(songbirdDb,
+				requestedPlaylistNames)) {
+			migratePlaylist(getPlaylistName(playList),
+					toSongbirdTracks(playList), this::prepareTrack, target,
+					trackCache, journal, retryScheduler, setProperties,
+					systemClock, stats);
+		}
+	}
 
+	/**
+	 * Finds the playlists in songbird and filters them as requested by the
+	 * user.
+	 * 
+	 * @param songbirdDb
+	 *            songbird database wrapper
+	 * @param requestedPlaylistNames
+	 *            migrate only the playlists and the tracks within playlists.
+	 *            Exact names, globs or regular expressions, see
+	 *            {@link PlaylistIndex}. If <code>null</code> or empty, all
+	 *            playlists are migrated.
+	 * @return the playlists to migrate, sorted by name
+	 * 
+	 * @throws SQLException
+	 *             errors when querying source database
+	 */
+	private List<SimpleMediaList> selectPlaylists(SongbirdDb songbirdDb,
+			List<String> requestedPlaylistNames) throws SQLException {
 		// Find playlists in songbird
-		List<SimpleMediaList> playlistsToMigrate = songbirdDb
-				.getPlayLists(true, true)
-				.stream()
-				.sorted((p1, p2) -> p1
-						.getList()
-						.getProperty(Property.PROP_MEDIA_LIST_NAME)
-						.compareTo(
-								p2.getList().getProperty(
-										Property.PROP_MEDIA_LIST_NAME)))
-				.collect(Collectors.toList());
-		log.info(playlistsToMigrate.size()
+		long start = System.nanoTime();
+		List<SimpleMediaList> playlists = songbirdDb.getPlayLists(true, true);
+		metrics.record(Stage.SONGBIRD_PLAYLIST_QUERY, start);
+		PlaylistIndex<SimpleMediaList> index = new PlaylistIndex<>(playlists,
+				Songbird2itunesMigration::getPlaylistName);
+		log.info(index.getNames().size()
 				+ " playlist(s) were found in songbird: "
-				+ extractPlaylistNames(playlistsToMigrate));
+				+ toStringQuoted(index.getNames()));
+
+		if (requestedPlaylistNames == null || requestedPlaylistNames.isEmpty()) {
+			return index.getPlaylists();
+		}
 
 		// Filter playlist as requested by the user
-		if (requestedPlaylistNames != null && !requestedPlaylistNames.isEmpty()) {
-			// Remove duplicates and sort
-			requestedPlaylistNames = requestedPlaylistNames.stream().distinct()
-					.sorted().collect(Collectors.toList());
-			log.info(requestedPlaylistNames.size()
-					+ " playlist(s) were requested by the user: "
-					+ toStringQuoted(requestedPlaylistNames));
-
-			Set<String> requestedPlaylistNamesSetUpper = requestedPlaylistNames
-					.stream()
-					.map(playlistName -> playlistName.trim().toUpperCase())
-					.collect(Collectors.toSet());
-			Set<String> songbirdPlaylistNamesSetUpper = playlistsToMigrate
-					.stream()
-					.map(playlist -> playlist.getList()
-							.getProperty(Property.PROP_MEDIA_LIST_NAME).trim()
-							.toUpperCase()).collect(Collectors.toSet());
-
-			// find playlists that are only in songbird but not requeted
-			List<String> ignoredPlaylists = Sets
-					.relativeComplement(
-							playlistsToMigrate,
-							requestedPlaylistNamesSetUpper,
-							playlist -> playlist.getList()
-									.getProperty(Property.PROP_MEDIA_LIST_NAME)
-									.trim().toUpperCase())
-					.map(playlist -> playlist.getList().getProperty(
-							Property.PROP_MEDIA_LIST_NAME)).distinct().sorted()
-					.collect(Collectors.toList());
-			if (!ignoredPlaylists.isEmpty()) {
-				log.info(ignoredPlaylists.size()
-						+ " playlists are not migrated because they were not requested by the user: "
-						+ toStringQuoted(ignoredPlaylists));
-			}
+		log.info(requestedPlaylistNames.size()
+				+ " playlist(s) were requested by the user: "
+				+ toStringQuoted(requestedPlaylistNames.stream().distinct()
+						.sorted().collect(Collectors.toList())));
+		PlaylistIndex.Selection<SimpleMediaList> selection = index
+				.select(requestedPlaylistNames);
+		if (!selection.getIgnoredNames().isEmpty()) {
+			log.info(selection.getIgnoredNames().size()
+					+ " playlists are not migrated because they were not requested by the user: "
+					+ toStringQuoted(selection.getIgnoredNames()));
+		}
+		if (!selection.getNotFound().isEmpty()) {
+			// This must be a warning
+			log.warn(selection.getNotFound().size()
+					+ " playlist(s) were requested by the user but not found in songbird: "
+					+ toStringQuoted(selection.getNotFound()));
+		}
+		log.info(selection.getSelected().size()
+				+ " playlist(s) from the list were found in songbird and will be migrated: "
+				+ extractPlaylistNames(selection.getSelected()));
+		return selection.getSelected();
+	}
 
-			// find playlists thate are only requested but not in songbird
-			List<String> requestedPlaylistsNotFound = Sets
-					.relativeComplement(requestedPlaylistNames,
-							songbirdPlaylistNamesSetUpper,
-							playlistName -> playlistName.trim().toUpperCase())
-					.distinct().sorted().collect(Collectors.toList());
-			if (!requestedPlaylistsNotFound.isEmpty()) {
-				// This must be a warning
-				log.warn(requestedPlaylistsNotFound.size()
-						+ " playlist(s) were requested by the user but not found in songbird: "
-						+ toStringQuoted(requestedPlaylistsNotFound));
-			}
+	/**
+	 * Migrates one playlist and its members to iTunes, unless it was
+	 * completed in a previous run.
+	 * 
+	 * @param playlistName
+	 *            name of the playlist
+	 * @param members
+	 *            the tracks of the playlist, in order
+	 * @param prepare
+	 *            prepares a member that has not been added to iTunes during
+	 *            this run
+	 * @param target
+	 *            where to migrate to
+	 * @param trackCache
+	 *            tracks that have already been added to iTunes during this
+	 *            run
+	 * @param journal
+	 *            records the playlists that have been migrated
+	 * @param retryScheduler
+	 *            writes the track properties and retries failed writes
+	 * @param setProperties
+	 *            <code>true</code> migrates properties lastPlayTime,
+	 *            lastSkipTime, playCount, rating, skipCount
+	 * @param systemClock
+	 *            system clock to set before adding the tracks to iTunes. If
+	 *            {@link Optional#empty()} the system clock is not set.
+	 * @param stats
+	 *            statistics about the migration, updated while migrating
+	 * 
+	 * @throws ITunesException
+	 *             errors when writing to target iTunes
+	 */
+	private <T extends SongbirdTrack> void migratePlaylist(
+			String playlistName, List<T> members,
+			Function<? super T, PreparedTrack> prepare, MigrationTarget target,
+			TrackCache trackCache, MigrationJournal journal,
+			RetryScheduler retryScheduler, boolean setProperties,
+			Optional<SystemClock> systemClock, Statistics stats)
+			throws ITunesException {
+		if (journal.isPlaylistCompleted(playlistName)) {
+			log.info("Playlist was migrated in a previous run. Skipping: "
+					+ playlistName);
+			return;
+		}
+		if (journal.isPlaylistCreated(playlistName)) {
+			// There is no way to find the playlist created before
+			log.warn("Playlist \""
+					+ playlistName
+					+ "\" was only partly migrated in a previous run. Creating it again. You might want to delete the incomplete one in iTunes.");
+		}
+		Change change = syncState.comparePlaylist(playlistName, members);
+		if (change == Change.UNCHANGED) {
+			log.info("Playlist is unchanged since the previous sync. Skipping: "
+					+ playlistName);
+			return;
+		} else if (change == Change.CHANGED) {
+			// Neither can the playlist of the previous sync be found
+			log.warn("Playlist \""
+					+ playlistName
+					+ "\" changed since the previous sync. Creating it again. You might want to delete the previous one in iTunes.");
+		}
 
-			// Limit to playlists that are both: in songbird and requested
-			playlistsToMigrate = Sets
-					.intersection(
-							playlistsToMigrate,
-							requestedPlaylistNamesSetUpper,
-							playlist -> playlist.getList()
-									.getProperty(Property.PROP_MEDIA_LIST_NAME)
-									.trim().toUpperCase()).distinct()
-					.collect(Collectors.toList());
-
-			log.info(playlistsToMigrate.size()
-					+ " playlist(s) from the list were found in songbird and will be migrated: "
-					+ extractPlaylistNames(playlistsToMigrate));
-		}
-
-		// Migrate filtered playlists
-		for (SimpleMediaList playList : playlistsToMigrate) {
-			String playlistName = playList.getList().getProperty(
-					Property.PROP_MEDIA_LIST_NAME);
-
-			stats.playlistProcessed();
-			Playlist iTunesplaylist = iTunes.createPlaylist(playlistName);
-			log.info("Created Playlist #" + stats.getPlaylistsProcessed()
-					+ ": " + playlistName);
-			for (MemberMediaItem member : playList.getMembers()) {
-				stats.playlistTrackProcessed();
-
-				Optional<Track> optionalTrack = addTrack(iTunes,
-						member.getMember(), exceptionRetries, setProperties,
-						systemClock);
-				if (optionalTrack.isPresent()) {
-					printPlaylistTrack(stats.getPlaylistTracksProcessed(),
-							playlistName, member.getMember());
-					iTunesplaylist.addTrack(optionalTrack.get());
-				} else {
-					stats.playlistTrackFailed();
-				}
+		stats.playlistProcessed();
+		MigrationTarget.Playlist targetPlaylist = target
+				.createPlaylist(playlistName);
+		journal.playlistCreated(playlistName);
+		log.info("Created Playlist #" + stats.getPlaylistsProcessed() + ": "
+				+ playlistName);
+		for (T member : members) {
+			stats.playlistTrackProcessed();
+
+			Optional<CachingTrack> optionalTrack = addTrack(target, trackCache,
+					member, prepare, retryScheduler, setProperties,
+					systemClock, stats::playlistTrackFailed);
+			if (optionalTrack.isPresent()) {
+				printPlaylistTrack(stats.getPlaylistTracksProcessed(),
+						playlistName, member);
+				long addStart = System.nanoTime();
+				targetPlaylist.addTrack(optionalTrack.get().getTrack());
+				metrics.record(Stage.PLAYLIST_ADD_TRACK, addStart);
+			} else {
+				stats.playlistTrackFailed();
 			}
+			retryScheduler.runDue();
 		}
-		return stats;
+		journal.playlistCompleted(playlistName);
+		syncState.playlistMigrated(playlistName, members);
+	}
+
+	/**
+	 * @param playlist
+	 *            a songbird playlist
+	 * @return the members of <code>playlist</code>, in order
+	 */
+	private static List<SongbirdTrack> toSongbirdTracks(SimpleMediaList playlist) {
+		List<SongbirdTrack> tracks = new ArrayList<>();
+		for (MemberMediaItem member : playlist.getMembers()) {
+			tracks.add(new MediaItemTrack(member.getMember()));
+		}
+		return tracks;
 	}
 
 	/**
@@ -256,13 +869,32 @@ public class Songbird2itunesMigration {
 	 * @return the names of the playlist objects
 	 */
 	private String extractPlaylistNames(List<SimpleMediaList> playLists) {
-		return toStringQuoted(playLists
-				.stream()
-				.map(playlist -> playlist.getList().getProperty(
-						Property.PROP_MEDIA_LIST_NAME))
+		return toStringQuoted(playLists.stream()
+				.map(Songbird2itunesMigration::getPlaylistName)
 				.collect(Collectors.toList()));
 	}
 
+	/**
+	 * @param playlist
+	 *            a songbird playlist
+	 * @return the name of <code>playlist</code>
+	 */
+	private static String getPlaylistName(SimpleMediaList playlist) {
+		return playlist.getList().getProperty(Property.PROP_MEDIA_LIST_NAME);
+	}
+
+	/**
+	 * Normalizes a playlist name, so names can be compared regardless of case
+	 * and surrounding whitespace.
+	 * 
+	 * @param playlistName
+	 *            name of a playlist
+	 * @return the normalized name
+	 */
+	static String normalizePlaylistName(String playlistName) {
+		return playlistName.trim().toUpperCase();
+	}
+
 	/**
 	 * Convert a list of Strings to a single string, that contains the
 	 * comma-separated strings wrapped in quotes.
@@ -278,58 +910,252 @@ public class Songbird2itunesMigration {
 	}
 
 	/**
-	 * Migrates tracks from songbird2iTunes.
+	 * Migrates tracks from songbird2iTunes. The tracks are read one by one
+	 * from a cursor, so the first track is added right away and memory does
+	 * not grow with the size of the library.
 	 * 
-	 * @param songbirdDb
-	 *            songbird database wrapper
-	 * @param iTunes
-	 *            iTunes wrapper
-	 * @param exceptionRetries
-	 *            After running into a {@link NotModifiableException} - amount
-	 *            of times adding track is retried before exiting with an error.
+	 * @param songbirdDbFile
+	 *            the songbird database
+	 * @param orderByDateCreated
+	 *            <code>true</code> migrates the tracks in the order they were
+	 *            added to songbird
+	 * @param target
+	 *            where to migrate to
+	 * @param trackCache
+	 *            tracks that have already been added to iTunes during this
+	 *            run
+	 * @param journal
+	 *            records the tracks that have been migrated. Tracks that were
+	 *            migrated in a previous run are skipped.
+	 * @param retryScheduler
+	 *            writes the track properties and retries failed writes
 	 * @param systemClock
 	 *            system clock to set before adding the tracks to iTunes. If
 	 *            {@link Optional#empty()} the system clock is not set.
-	 * 
-	 * @return statistics about the migration
+	 * @param stats
+	 *            statistics about the migration, updated while migrating
 	 * 
 	 * @throws SQLException
 	 *             errors when querying source database
 	 * @throws ITunesException
 	 *             errors when writing to target iTunes
 	 */
-	private Statistics migrateTracks(SongbirdDb songbirdDb, ITunes iTunes,
-			int exceptionRetries, Optional<SystemClock> systemClock)
+	private void migrateTracks(File songbirdDbFile,
+			boolean orderByDateCreated, MigrationTarget target,
+			TrackCache trackCache, MigrationJournal journal,
+			RetryScheduler retryScheduler,
+			Optional<SystemClock> systemClock, Statistics stats)
 			throws SQLException, ITunesException {
-		Statistics stats = new Statistics();
+		try (SongbirdTrackCursor tracks = openTrackCursor(songbirdDbFile,
+				fetchSize, orderByDateCreated)) {
+			long tracksFound = tracks.count();
+			log.info("Found " + tracksFound + " tracks");
+			stats.tracksFound(tracksFound);
+			/*
+			 * Resolve paths and decode properties in parallel, so the (single)
+			 * thread talking to iTunes never waits for the file system.
+			 */
+			migrateTracks(metrics.timed(Stage.SONGBIRD_TRACK_QUERY, tracks),
+					this::prepareTrack, target, trackCache, journal,
+					retryScheduler, systemClock, stats);
+		} catch (CursorException e) {
+			throw e.getCause();
+		}
+	}
 
-		// Query all tracks from songbird
-		List<MediaItem> tracks = songbirdDb.getAllTracks();
-		log.info("Found " + tracks.size() + " tracks");
+	/**
+	 * Migrates tracks that were read into memory by
+	 * {@link #loadTracks(File, boolean)}, one by one in the order of the
+	 * table.
+	 * 
+	 * @param tracks
+	 *            the tracks read from songbird
+	 * @param target
+	 *            where to migrate to
+	 * @param trackCache
+	 *            tracks that have already been added to iTunes during this
+	 *            run
+	 * @param journal
+	 *            records the tracks that have been migrated. Tracks that were
+	 *            migrated in a previous run are skipped.
+	 * @param retryScheduler
+	 *            writes the track properties and retries failed writes
+	 * @param systemClock
+	 *            system clock to set before adding the tracks to iTunes. If
+	 *            {@link Optional#empty()} the system clock is not set.
+	 * @param stats
+	 *            statistics about the migration, updated while migrating
+	 * 
+	 * @throws ITunesException
+	 *             errors when writing to target iTunes
+	 */
+	private void migrateTracks(TrackTable tracks, MigrationTarget target,
+			TrackCache trackCache, MigrationJournal journal,
+			RetryScheduler retryScheduler,
+			Optional<SystemClock> systemClock, Statistics stats)
+			throws ITunesException {
+		stats.tracksFound(tracks.size());
+		/*
+		 * Resolve paths and decode properties in parallel, so the (single)
+		 * thread talking to iTunes never waits for the file system.
+		 */
+		migrateTracks(tracks.iterator(), this::prepareTrack, target,
+				trackCache, journal, retryScheduler, systemClock, stats);
+	}
 
-		try {
-			for (MediaItem sbTrack : tracks) {
-				stats.trackProcessed();
-				Optional<Track> optionalTrack = addTrack(iTunes, sbTrack,
-						exceptionRetries, true, systemClock);
-				if (optionalTrack.isPresent()) {
-					printTrack(stats.getTracksProcessed(), optionalTrack.get(),
-							sbTrack.getContentUrl());
-				} else {
-					stats.trackFailed();
+	/**
+	 * Migrates tracks to iTunes, skipping the ones that were migrated in a
+	 * previous run. The tracks are prepared in parallel, ahead of iTunes, and
+	 * added to iTunes in batches of {@link #setBatchSize(int)}.
+	 * 
+	 * @param tracks
+	 *            the tracks to migrate, in order
+	 * @param prepare
+	 *            prepares a track for being added to iTunes. Must be
+	 *            thread-safe.
+	 * @param target
+	 *            where to migrate to
+	 * @param trackCache
+	 *            tracks that have already been added to iTunes during this
+	 *            run
+	 * @param journal
+	 *            records the tracks that have been migrated
+	 * @param retryScheduler
+	 *            writes the track properties and retries failed writes
+	 * @param systemClock
+	 *            system clock to set before adding the tracks to iTunes. If
+	 *            {@link Optional#empty()} the system clock is not set.
+	 * @param stats
+	 *            statistics about the migration, updated while migrating
+	 * 
+	 * @throws ITunesException
+	 *             errors when writing to iTunes
+	 */
+	private <T extends SongbirdTrack> void migrateTracks(Iterator<T> tracks,
+			Function<? super T, PreparedTrack> prepare, MigrationTarget target,
+			TrackCache trackCache, MigrationJournal journal,
+			RetryScheduler retryScheduler,
+			Optional<SystemClock> systemClock, Statistics stats)
+			throws ITunesException {
+		try (OrderedPipeline<T, PreparedTrack> preparedTracks = new OrderedPipeline<>(
+				skipMigrated(tracks, journal, stats), prepare::apply, threads,
+				queueDepth)) {
+			List<PreparedTrack> batch = new ArrayList<>(batchSize);
+			while (preparedTracks.hasNext()) {
+				batch.add(preparedTracks.next());
+				if (batch.size() >= batchSize || !preparedTracks.hasNext()) {
+					importBatch(batch, target, trackCache, journal,
+							retryScheduler, systemClock, stats);
+					batch.clear();
 				}
 			}
-		} finally {
-			if (systemClock.isPresent()) {
-				log.debug("Trying to resync system time from time server");
-				try {
-					systemClock.get().resync();
-				} catch (SystemClockException e) {
-					log.warn("Failed to resync system clock.", e);
-				}
+		}
+		if (stats.getTracksSkipped() > 0) {
+			log.info("Skipped " + stats.getTracksSkipped()
+					+ " tracks that were migrated in a previous run");
+		}
+	}
+
+	/**
+	 * Adds a batch of tracks to iTunes: First all files, then the properties
+	 * of all tracks that were added. itunes4j does not offer a bulk import,
+	 * but adding the files one after another gives iTunes time to process
+	 * each file before its properties are written. So iTunes refuses fewer
+	 * writes that need to be retried.
+	 * 
+	 * @param batch
+	 *            the tracks to add, in order
+	 * @param target
+	 *            where to migrate to
+	 * @param trackCache
+	 *            tracks that have already been added to iTunes during this
+	 *            run
+	 * @param journal
+	 *            records the tracks that have been migrated
+	 * @param retryScheduler
+	 *            writes the track properties and retries failed writes
+	 * @param systemClock
+	 *            system clock to set before adding the tracks to iTunes. If
+	 *            {@link Optional#empty()} the system clock is not set.
+	 * @param stats
+	 *            statistics about the migration, updated while migrating
+	 * 
+	 * @throws ITunesException
+	 *             errors when writing to iTunes
+	 */
+	private void importBatch(List<PreparedTrack> batch, MigrationTarget target,
+			TrackCache trackCache, MigrationJournal journal,
+			RetryScheduler retryScheduler,
+			Optional<SystemClock> systemClock, Statistics stats)
+			throws ITunesException {
+		List<Optional<CachingTrack>> addedTracks = new ArrayList<>(
+				batch.size());
+		retryScheduler.startBatch();
+		for (PreparedTrack preparedTrack : batch) {
+			// Journal tracks only after all properties were written
+			addedTracks.add(addTrack(target, trackCache, preparedTrack,
+					retryScheduler, true, systemClock, () -> {
+						journal.trackMigrated(preparedTrack.getContentUrl());
+						syncState.trackMigrated(preparedTrack.getSbTrack());
+					}, stats::trackFailed));
+		}
+		retryScheduler.endBatch();
+
+		for (int i = 0; i < batch.size(); i++) {
+			stats.trackProcessed();
+			Optional<CachingTrack> optionalTrack = addedTracks.get(i);
+			if (optionalTrack.isPresent()) {
+				printTrack(stats.getTracksProcessed(), optionalTrack.get(),
+						batch.get(i).getContentUrl());
+			} else {
+				stats.trackFailed();
 			}
 		}
-		return stats;
+		// Meanwhile, some properties might have become writable
+		retryScheduler.runDue();
+	}
+
+	/**
+	 * @param tracks
+	 *            tracks to migrate
+	 * @param journal
+	 *            records the tracks that have been migrated
+	 * @param stats
+	 *            counts the skipped tracks
+	 * @return the tracks that were not migrated in a previous run and, on a
+	 *         delta sync, are new or changed since the previous sync, in
+	 *         order
+	 */
+	private <T extends SongbirdTrack> Iterator<T> skipMigrated(
+			Iterator<T> tracks, MigrationJournal journal, Statistics stats) {
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(tracks,
+						Spliterator.ORDERED), false).filter(track -> {
+					if (journal.isTrackMigrated(track.getContentUrl())
+							|| syncState.compareTrack(track) == Change.UNCHANGED) {
+						stats.trackSkipped();
+						return false;
+					}
+					return true;
+				}).iterator();
+	}
+
+	/**
+	 * Sets the system clock back to the real time and releases it.
+	 * 
+	 * @param systemClock
+	 *            the clock that was set while adding tracks to iTunes
+	 */
+	private void restoreSystemClock(SystemClock systemClock) {
+		log.debug("Set system clock " + systemClock.getSetCount() + " times");
+		log.debug("Trying to restore system time");
+		try {
+			systemClock.restore();
+		} catch (SystemClockException e) {
+			log.warn("Failed to restore system clock.", e);
+		} finally {
+			systemClock.close();
+		}
 	}
 
 	/**
@@ -343,11 +1169,18 @@ public class Songbird2itunesMigration {
 	 *            path to the track
 	 */
 	private void printPlaylistTrack(long playlistTrackIndex,
-			String playlistName, MediaItem sbTrack) {
-		log.info("Added playlist track #" + playlistTrackIndex
-				+ ": Playlist \"" + playlistName + "\" - Track "
-				+ sbTrack.getProperty(Property.PROP_ARTIST_NAME) + " - "
-				+ sbTrack.getProperty(Property.PROP_TRACK_NAME));
+			String playlistName, SongbirdTrack sbTrack) {
+		String trackName = sbTrack.getProperty(Property.PROP_TRACK_NAME);
+		log.info("Added playlist track #"
+				+ playlistTrackIndex
+				+ ": Playlist \""
+				+ playlistName
+				+ "\" - Track "
+				// Tracks read from a plan are known by their URL only
+				+ (trackName != null ? sbTrack
+						.getProperty(Property.PROP_ARTIST_NAME)
+						+ " - "
+						+ trackName : sbTrack.getContentUrl()));
 	}
 
 	/**
@@ -362,119 +1195,451 @@ public class Songbird2itunesMigration {
 	 * 
 	 * @throws ITunesException
 	 */
-	private void printTrack(long trackIndex, Track track, String path)
-			throws ITunesException {
-		log.info("Added track #" + trackIndex + ": " + track.getArtist()
-				+ " - " + track.getName() + ": created=" + track.getDateAdded()
-				+ "; lastPlayed=" + track.getPlayedDate() + "; lastSkipTime="
-				+ track.getSkippedDate() + "; playCount="
-				+ track.getPlayedCount() + "; rating=" + track.getRating()
-				+ "; skipCount=" + track.getSkippedCount() + "; path=" + path);
+	private void printTrack(long trackIndex, CachingTrack track, String path)
+			throws ITunesException {
+		log.info("Added track #" + trackIndex + ": " + track.getArtist()
+				+ " - " + track.getName() + ": created=" + track.getDateAdded()
+				+ "; lastPlayed=" + track.getPlayedDate() + "; lastSkipTime="
+				+ track.getSkippedDate() + "; playCount="
+				+ track.getPlayedCount() + "; rating=" + track.getRating()
+				+ "; skipCount=" + track.getSkippedCount() + "; path=" + path);
+	}
+
+	/**
+	 * Add track to iTunes, unless it has already been added (or failed) during
+	 * this run. In this case, the track is taken from the
+	 * <code>trackCache</code> and neither the file system nor iTunes are
+	 * accessed at all.
+	 * 
+	 * @param target
+	 *            where to migrate to
+	 * @param trackCache
+	 *            tracks that have already been added to iTunes during this
+	 *            run
+	 * @param sbTrack
+	 *            the source track to add to iTunes
+	 * @param prepare
+	 *            prepares <code>sbTrack</code>, unless it is cached
+	 * @param retryScheduler
+	 *            writes the track properties and retries failed writes
+	 * @param setProperties
+	 *            <code>true</code> migrates properties lastPlayTime,
+	 *            lastSkipTime, playCount, rating, skipCount
+	 * @param systemClock
+	 *            system clock to set before adding the tracks to iTunes. If
+	 *            {@link Optional#empty()} the system clock is not set.
+	 * @param onFailed
+	 *            called if the track was added, but its properties could not
+	 *            be written, which might happen after this method returned.
+	 * @return an instance of the added track or {@link Optional#empty()} in
+	 *         case of error. If empty, a warning was logged.
+	 * 
+	 * @throws ITunesException
+	 *             errors when writing to iTunes that cannot be retried
+	 */
+	private <T extends SongbirdTrack> Optional<CachingTrack> addTrack(MigrationTarget target,
+			TrackCache trackCache, T sbTrack,
+			Function<? super T, PreparedTrack> prepare,
+			RetryScheduler retryScheduler, boolean setProperties,
+			Optional<SystemClock> systemClock, Runnable onFailed)
+			throws ITunesException {
+		if (trackCache.contains(sbTrack.getContentUrl())) {
+			return trackCache.getByContentUrl(sbTrack.getContentUrl());
+		}
+		return addTrack(target, trackCache, prepare.apply(sbTrack),
+				retryScheduler, setProperties, systemClock, () -> {
+				}, onFailed);
+	}
+
+	/**
+	 * Add a prepared track to iTunes, unless it has already been added (or
+	 * failed) during this run. In this case, the track is taken from the
+	 * <code>trackCache</code> and iTunes is not called at all.
+	 * 
+	 * @param target
+	 *            where to migrate to
+	 * @param trackCache
+	 *            tracks that have already been added to iTunes during this
+	 *            run
+	 * @param track
+	 *            the prepared source track to add to iTunes
+	 * @param retryScheduler
+	 *            writes the track properties and retries failed writes
+	 * @param setProperties
+	 *            <code>true</code> migrates properties lastPlayTime,
+	 *            lastSkipTime, playCount, rating, skipCount
+	 * @param systemClock
+	 *            system clock to set before adding the tracks to iTunes. If
+	 *            {@link Optional#empty()} the system clock is not set.
+	 * @param onCompleted
+	 *            called once the track was added and all of its properties
+	 *            were written, which might happen after this method returned.
+	 * @param onFailed
+	 *            called if the track was added, but its properties could not
+	 *            be written, which might happen after this method returned.
+	 * @return an instance of the added track or {@link Optional#empty()} in
+	 *         case of error. If empty, a warning was logged.
+	 * 
+	 * @throws ITunesException
+	 *             errors when writing to iTunes that cannot be retried
+	 */
+	private Optional<CachingTrack> addTrack(MigrationTarget target,
+			TrackCache trackCache,
+			PreparedTrack track, RetryScheduler retryScheduler,
+			boolean setProperties, Optional<SystemClock> systemClock,
+			Runnable onCompleted, Runnable onFailed) throws ITunesException {
+		String contentUrl = track.getContentUrl();
+		if (trackCache.contains(contentUrl)) {
+			Optional<CachingTrack> cachedTrack = trackCache
+					.getByContentUrl(contentUrl);
+			if (cachedTrack.isPresent()) {
+				onCompleted.run();
+			}
+			return cachedTrack;
+		}
+
+		Optional<CachingTrack> addedTrack = addTrackToTarget(target, trackCache,
+				track, retryScheduler, setProperties, systemClock, onCompleted,
+				onFailed);
+		if (!addedTrack.isPresent()) {
+			trackCache.failed(contentUrl);
+		}
+		return addedTrack;
 	}
 
 	/**
-	 * Add track to iTunes. If a {@link NotModifiableException} is throw, the
-	 * method calls itself <code>nRetries</code> recursively. If it still fails
-	 * an exception is re-thrown.
+	 * Add track to iTunes. The properties are written via the
+	 * <code>retryScheduler</code>: If iTunes refuses a write (e.g. with a
+	 * {@link NotModifiableException}) the track is returned anyway and the
+	 * remaining writes are retried later.
 	 * 
-	 * @param iTunes
-	 *            iTunes wrapper instance.
-	 * @param sbTrack
-	 *            the source track to add to iTunes
-	 * @param exceptionRetries
-	 *            After running into a {@link NotModifiableException} - amount
-	 *            of times adding track is retried before exiting with an error.
+	 * @param target
+	 *            where to migrate to
+	 * @param trackCache
+	 *            tracks that have already been added to iTunes during this
+	 *            run. Successfully added tracks are stored here.
+	 * @param track
+	 *            the prepared source track to add to iTunes
+	 * @param retryScheduler
+	 *            writes the track properties and retries failed writes
 	 * @param setProperties
 	 *            <code>true</code> migrates properties lastPlayTime,
 	 *            lastSkipTime, playCount, rating, skipCount
 	 * @param systemClock
 	 *            system clock to set before adding the tracks to iTunes. If
 	 *            {@link Optional#empty()} the system clock is not set.
+	 * @param onCompleted
+	 *            called once all properties were written
+	 * @param onFailed
+	 *            called if the properties could not be written
 	 * @return an instance of the added track or {@link Optional#empty()} in
 	 *         case of error. If empty, a warning was logged.
 	 * 
 	 * @throws ITunesException
-	 *             after all retries have been used.
+	 *             errors when writing to iTunes that cannot be retried
 	 */
-	private Optional<Track> addTrack(ITunes iTunes, MediaItem sbTrack,
-			int exceptionRetries, boolean setProperties,
-			Optional<SystemClock> systemClock) throws ITunesException {
-		Track iTunesTrack = null;
+	private Optional<CachingTrack> addTrackToTarget(MigrationTarget target,
+			TrackCache trackCache, PreparedTrack track,
+			RetryScheduler retryScheduler, boolean setProperties,
+			Optional<SystemClock> systemClock, Runnable onCompleted,
+			Runnable onFailed) throws ITunesException {
+		CachingTrack iTunesTrack = null;
 		try {
-			// Get absolute path first (as this might fail)
-			Optional<String> absolutePath = toAbsolutePath(sbTrack);
+			// Path was resolved when preparing (as this might fail)
+			Optional<String> absolutePath = track.getAbsolutePath();
 			if (!absolutePath.isPresent()) {
 				return Optional.empty();
 			}
 
-			// Add track and wait for iTunes reference
-			iTunesTrack = iTunes.addFile(absolutePath.get());
-
-			Date dateCreated = sbTrack.getDateCreated();
-			if (setProperties) {
-				Date lastPlayTime = sbTrack
-						.getPropertyAsDate(Property.PROP_LAST_PLAY_TIME);
-				Date lastSkipTime = sbTrack
-						.getPropertyAsDate(Property.PROP_LAST_SKIP_TIME);
-				Long playCount = sbTrack
-						.getPropertyAsLong(Property.PROP_PLAY_COUNT);
-				Long rating = sbTrack.getPropertyAsLong(Property.PROP_RATING);
-				Long skipCount = sbTrack
-						.getPropertyAsLong(Property.PROP_SKIP_COUNT);
-
-				if (systemClock.isPresent()) {
-					/*
-					 * Changing the dateAdded is not possible via iTunes COM API
-					 * 
-					 * Dirty Hack: Change the computer's system date, then add
-					 * the file. This will only work if the process runs as
-					 * administrator and iTunes is either not running or already
-					 * started as administrator!
-					 */
-					log.debug("Setting system time to " + dateCreated);
-					try {
-						systemClock.get().set(dateCreated);
-					} catch (SystemClockException e) {
-						log.warn(
-								"Failed to set system clock to " + dateCreated,
-								e);
-					}
-				}
+			// Same file, but different URL
+			Optional<CachingTrack> cachedTrack = trackCache.getByPath(absolutePath
+					.get());
+			if (cachedTrack.isPresent()) {
+				trackCache.added(track.getContentUrl(), absolutePath.get(),
+						cachedTrack.get());
+				onCompleted.run();
+				return cachedTrack;
+			}
 
-				// Play count
-				iTunesTrack.setPlayedCount(convertSongbirdLongValue(playCount));
-				// last played
-				if (lastPlayTime != null) {
-					iTunesTrack.setPlayedDate(lastPlayTime);
+			if (setProperties && systemClock.isPresent()) {
+				Date dateCreated = track.getDateCreated();
+				/*
+				 * Changing the dateAdded is not possible via iTunes COM API
+				 * 
+				 * Dirty Hack: Change the computer's system date, then add the
+				 * file. This will only work if the process runs as
+				 * administrator and iTunes is either not running or already
+				 * started as administrator!
+				 */
+				log.debug("Setting system time to " + dateCreated);
+				try {
+					systemClock.get().set(dateCreated);
+				} catch (SystemClockException e) {
+					log.warn("Failed to set system clock to " + dateCreated, e);
 				}
+			}
 
-				iTunesTrack.setRating(convertSongbirdRating(rating));
+			// Add track and wait for reference
+			long start = System.nanoTime();
+			MigrationTarget.Track addedTrack = target.addFile(
+					absolutePath.get(), track);
+			metrics.record(Stage.ADD_FILE, start);
+			if (syncState.wasMigrated(track.getSbTrack())) {
+				// iTunes returns the track added by the previous sync
+				iTunesTrack = CachingTrack.existing(addedTrack, savings);
+			} else {
+				iTunesTrack = CachingTrack.added(addedTrack, savings);
+			}
+			trackCache.added(track.getContentUrl(), absolutePath.get(),
+					iTunesTrack);
 
-				// Skip count
-				iTunesTrack
-						.setSkippedCount(convertSongbirdLongValue(skipCount));
-				// last skipped
-				if (lastSkipTime != null) {
-					iTunesTrack.setSkippedDate(lastSkipTime);
-				}
+			if (setProperties) {
+				retryScheduler.write(iTunesTrack, track.getContentUrl(),
+						createPropertyWrites(track), onCompleted, onFailed);
+			} else {
+				onCompleted.run();
 			}
 			return Optional.of(iTunesTrack);
 		} catch (IOException e) {
 			log.warn(
 					"File not added by iTunes. File corrupt, missing or not supported by iTunes? Skipping file: "
-							+ sbTrack.getContentUrl(), e);
+							+ track.getContentUrl(), e);
 		} catch (WrongParameterException e) {
 			log.warn(
 					"File not added by iTunes. Unsupported type? Skipping file: "
-							+ sbTrack.getContentUrl(), e);
-			// TODO try to convert?
+							+ track.getContentUrl(), e);
+			// Files of unsupported formats are converted before, see setConverter()
 		} catch (NotModifiableException e) {
-			return retryAdding(e, iTunes, sbTrack, exceptionRetries,
-					systemClock);
+			log.warn("File not added by iTunes. Skipping file: "
+					+ track.getContentUrl(), e);
 		}
 		return Optional.empty();
 	}
 
+	/**
+	 * Creates the writes of all properties of a track that are migrated to
+	 * iTunes.
+	 * 
+	 * @param track
+	 *            the track whose properties to write
+	 * @return the property writes, in order
+	 */
+	private List<PropertyWrite> createPropertyWrites(PreparedTrack track) {
+		List<PropertyWrite> writes = new ArrayList<>();
+		// Play count
+		writes.add(timed(Stage.SET_PLAYED_COUNT,
+				iTunesTrack -> iTunesTrack.setPlayedCount(track.getPlayCount())));
+		// last played
+		if (track.getLastPlayTime() != null) {
+			writes.add(timed(Stage.SET_PLAYED_DATE,
+					iTunesTrack -> iTunesTrack.setPlayedDate(track
+							.getLastPlayTime())));
+		}
+
+		writes.add(timed(Stage.SET_RATING,
+				iTunesTrack -> iTunesTrack.setRating(track.getRating())));
+
+		// Skip count
+		writes.add(timed(Stage.SET_SKIPPED_COUNT,
+				iTunesTrack -> iTunesTrack.setSkippedCount(track
+						.getSkipCount())));
+		// last skipped
+		if (track.getLastSkipTime() != null) {
+			writes.add(timed(Stage.SET_SKIPPED_DATE,
+					iTunesTrack -> iTunesTrack.setSkippedDate(track
+							.getLastSkipTime())));
+		}
+		return writes;
+	}
+
+	/**
+	 * @param stage
+	 *            the stage to record the latency for
+	 * @param write
+	 *            the write to measure
+	 * @return a write that records the latency of each successful write that
+	 *         called iTunes
+	 */
+	private PropertyWrite timed(Stage stage, PropertyWrite write) {
+		return iTunesTrack -> {
+			long start = System.nanoTime();
+			boolean written = write.write(iTunesTrack);
+			if (written) {
+				metrics.record(stage, start);
+			}
+			return written;
+		};
+	}
+
+	/**
+	 * Writes the latencies of the stages of this migration to the metrics
+	 * file. Errors are only logged.
+	 */
+	private void writeMetrics() {
+		try {
+			metrics.write(metricsFile);
+			log.debug("Wrote latencies per stage to " + metricsFile);
+		} catch (IOException e) {
+			log.warn("Failed to write latencies to " + metricsFile, e);
+		}
+	}
+
+	/**
+	 * Prepares a songbird track for being added to iTunes: Resolves its path,
+	 * checks the header of its file if enabled and decodes its properties. If
+	 * the file has duplicates, the canonical file is checked instead. Does not
+	 * access iTunes, so it is safe to be called from multiple threads in
+	 * parallel.
+	 * 
+	 * @param sbTrack
+	 *            the songbird track to prepare
+	 * @return a prepared track, whose path is {@link Optional#empty()} if
+	 *         invalid. In this case a warning was logged.
+	 */
+	private PreparedTrack prepareTrack(SongbirdTrack sbTrack) {
+		long start = System.nanoTime();
+		Optional<String> absolutePath = toAbsolutePath(sbTrack);
+		metrics.record(Stage.ABSOLUTE_PATH, start);
+		// Duplicates are converted only once, as the canonical file
+		Optional<Group> duplicate = absolutePath.flatMap(duplicates::getGroup);
+		if (duplicate.isPresent()) {
+			absolutePath = Optional.of(duplicate.get().getCanonicalPath());
+		}
+		if ((checkHeaders || converter != null) && absolutePath.isPresent()) {
+			absolutePath = checkHeader(sbTrack, absolutePath.get());
+		}
+		return prepareTrack(sbTrack, absolutePath, duplicate);
+	}
+
+	/**
+	 * Checks the header of the file of a track, so iTunes is not asked to add
+	 * files it would reject. Files of unsupported formats are converted, if a
+	 * converter is set. On a dry run they are only recorded in
+	 * {@link #filesToConvert}. If rejected an appropriate warning is logged.
+	 * 
+	 * @param sbTrack
+	 *            the songbird track
+	 * @param absolutePath
+	 *            the path of its file
+	 * @return the path of the file or of the converted file.
+	 *         {@link Optional#empty()} if the format of the file is not
+	 *         supported by iTunes and not converted or the file is corrupt.
+	 */
+	private Optional<String> checkHeader(SongbirdTrack sbTrack,
+			String absolutePath) {
+		long start = System.nanoTime();
+		Verdict verdict = headerValidator.validate(Paths.get(absolutePath));
+		metrics.record(Stage.HEADER_CHECK, start);
+		if (verdict == Verdict.UNSUPPORTED) {
+			if (dryRun && converter != null) {
+				filesToConvert.add(absolutePath);
+				return Optional.of(absolutePath);
+			}
+			if (converterPool.isPresent()) {
+				return convert(sbTrack, absolutePath);
+			}
+			log.warn("Songbird track file format is not supported by iTunes. Skipping track: "
+					+ sbTrack.getContentUrl());
+			return Optional.empty();
+		}
+		if (verdict == Verdict.CORRUPT) {
+			log.warn("Songbird track file is corrupt. Skipping track: "
+					+ sbTrack.getContentUrl());
+			return Optional.empty();
+		}
+		return Optional.of(absolutePath);
+	}
+
+	/**
+	 * Converts the file of a track to a format supported by iTunes. If the
+	 * conversion fails a warning is logged.
+	 * 
+	 * @param sbTrack
+	 *            the songbird track
+	 * @param absolutePath
+	 *            the path of its file
+	 * @return the path of the converted file. {@link Optional#empty()} if the
+	 *         file could not be converted.
+	 */
+	private Optional<String> convert(SongbirdTrack sbTrack, String absolutePath) {
+		long start = System.nanoTime();
+		Optional<String> convertedPath = converterPool.get().convert(
+				absolutePath);
+		metrics.record(Stage.CONVERT, start);
+		if (!convertedPath.isPresent()) {
+			log.warn("Songbird track file could not be converted. Skipping track: "
+					+ sbTrack.getContentUrl());
+		}
+		return convertedPath;
+	}
+
+	/**
+	 * Prepares a track read from a plan. Its path was resolved by the dry run
+	 * already. Files the dry run found to be of an unsupported format are
+	 * converted.
+	 * 
+	 * @param track
+	 *            the planned track
+	 * @return a prepared track, whose path is {@link Optional#empty()} if
+	 *         found to be invalid by the dry run. In this case a warning was
+	 *         logged.
+	 */
+	private PreparedTrack preparePlannedTrack(PlannedTrack track) {
+		Optional<String> absolutePath = track.getAbsolutePath();
+		if (!absolutePath.isPresent()) {
+			log.warn("Songbird track was found to be invalid by the dry run. Skipping track: "
+					+ track.getContentUrl());
+		} else if (track.isToConvert()) {
+			if (converterPool.isPresent()) {
+				absolutePath = convert(track, absolutePath.get());
+			} else {
+				log.warn("Songbird track file has to be converted, but no converter is set. Skipping track: "
+						+ track.getContentUrl());
+				absolutePath = Optional.empty();
+			}
+		}
+		// The plan is executed as it is, without checking for duplicates
+		return prepareTrack(track, absolutePath, Optional.empty());
+	}
+
+	/**
+	 * Decodes the properties of a songbird track whose path has been resolved
+	 * already. If the file has duplicates, the merged properties of all
+	 * duplicates are used.
+	 * 
+	 * @param sbTrack
+	 *            the songbird track to prepare
+	 * @param absolutePath
+	 *            the path of the track or of the canonical file of its
+	 *            duplicates. {@link Optional#empty()} if invalid.
+	 * @param duplicate
+	 *            the duplicates of the file of the track, if any
+	 * @return a prepared track
+	 */
+	private PreparedTrack prepareTrack(SongbirdTrack sbTrack,
+			Optional<String> absolutePath, Optional<Group> duplicate) {
+		if (duplicate.isPresent() && absolutePath.isPresent()) {
+			// The canonical file, with the merged properties of all files
+			Group group = duplicate.get();
+			return new PreparedTrack(sbTrack, absolutePath,
+					group.getDateCreated(),
+					group.getLastPlayTime(), group.getLastSkipTime(),
+					convertSongbirdLongValue(group.getPlayCount()),
+					convertSongbirdRating(group.getRating()),
+					convertSongbirdLongValue(group.getSkipCount()));
+		}
+		return new PreparedTrack(sbTrack, absolutePath,
+				sbTrack.getDateCreated(),
+				sbTrack.getPropertyAsDate(Property.PROP_LAST_PLAY_TIME),
+				sbTrack.getPropertyAsDate(Property.PROP_LAST_SKIP_TIME),
+				convertSongbirdLongValue(sbTrack
+						.getPropertyAsLong(Property.PROP_PLAY_COUNT)),
+				convertSongbirdRating(sbTrack
+						.getPropertyAsLong(Property.PROP_RATING)),
+				convertSongbirdLongValue(sbTrack
+						.getPropertyAsLong(Property.PROP_SKIP_COUNT)));
+	}
+
 	/**
 	 * Migrates a songbird track to an absolute URL in the file system. If not a
 	 * valid file an appropriate warning is logged.
@@ -482,15 +1647,26 @@ public class Songbird2itunesMigration {
 	 * @param sbTrack
 	 *            the songbird track whose absolute path is required
 	 * 
-	 * @return the absolute path of the track or an empty result if invalid URI
-	 *         or not a file URI.
+	 * @return the absolute path of the track or an empty result if invalid URI,
+	 *         not a file URI or the file does not exist or is not readable.
 	 * 
 	 */
-	private Optional<String> toAbsolutePath(MediaItem sbTrack) {
+	Optional<String> toAbsolutePath(SongbirdTrack sbTrack) {
 		URI uri = null;
 		try {
 			uri = new URI(sbTrack.getContentUrl());
-			return Optional.of(new File(uri).getCanonicalPath());
+			File file = new File(uri).getCanonicalFile();
+			if (!file.isFile()) {
+				log.warn("Songbird track file does not exist. Skipping track: "
+						+ sbTrack.getContentUrl());
+				return Optional.empty();
+			}
+			if (!file.canRead()) {
+				log.warn("Songbird track file is not readable. Skipping track: "
+						+ sbTrack.getContentUrl());
+				return Optional.empty();
+			}
+			return Optional.of(file.getPath());
 		} catch (URISyntaxException e) {
 			log.warn(
 					"Error adding track iTunes, invalid URI: "
@@ -512,54 +1688,185 @@ public class Songbird2itunesMigration {
 	}
 
 	/**
-	 * Retries calling {@link #addTrack(ITunes, MediaItem, Statistics, int)}
-	 * after a {@link ITunesException}. This is done for <code>nRetries</code>
-	 * times, before giving up and logging a warning. Why? iTunes seems to
-	 * return errors and reconsiders on retry.
-	 * 
-	 * An example is the "a0040203" ({@link NotModifiableException}) error in
-	 * iTunes.
-	 * 
-	 * This exception might occur right after a track has been added but iTunes
-	 * (for some reasons) won't let us modify it for some more milliseconds.
-	 * Maybe it parses artwork or goes fishing.
-	 * 
-	 * After handling the exception (~ 500ms) modifying the track will most
-	 * likely work, because iTunes seems to have finished what it did before. So
-	 * just keep trying some more times. If the error persists, throw Exception.
-	 * 
-	 * @param e
-	 *            exception that might be a "a0040203"
-	 * @param iTunes
-	 *            reference to the iTunes wrapper
-	 * @param sbTrack
-	 *            reference to the songbird track
-	 * @param nRetries
-	 *            amount of retries left
-	 * @param systemClock
-	 *            system clock to set before adding the tracks to iTunes. If
-	 *            {@link Optional#empty()} the system clock is not set.
-	 * @return
+	 * @param threads
+	 *            number of threads that prepare tracks (resolve paths, decode
+	 *            properties) ahead of iTunes
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @param queueDepth
+	 *            maximum number of tracks that are prepared ahead of iTunes
+	 */
+	public void setQueueDepth(int queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	/**
+	 * @param fetchSize
+	 *            number of rows fetched from songbird at once when reading
+	 *            tracks
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * @param batchSize
+	 *            number of files added to iTunes one after another, before
+	 *            their properties are written. 1 writes the properties right
+	 *            after adding each file.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param journalFile
+	 *            file that keeps track of the tracks and playlists that have
+	 *            been migrated
+	 */
+	public void setJournalFile(String journalFile) {
+		this.journalFile = new File(journalFile);
+	}
+
+	/**
+	 * @param resume
+	 *            <code>true</code> continues a previous migration, skipping
+	 *            all tracks and playlists recorded in the journal.
+	 *            <code>false</code> starts over with a new journal.
+	 */
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	/**
+	 * @param progressInterval
+	 *            interval in seconds for logging the progress of the
+	 *            migration. <code>0</code> disables logging the progress.
+	 */
+	public void setProgressInterval(int progressInterval) {
+		this.progressInterval = progressInterval;
+	}
+
+	/**
+	 * @param metricsFile
+	 *            the file the latencies per stage are written to after
+	 *            migrating
+	 */
+	public void setMetricsFile(String metricsFile) {
+		this.metricsFile = new File(metricsFile);
+	}
+
+	/**
+	 * @param dryRun
+	 *            <code>true</code> does not write to iTunes, but checks which
+	 *            tracks and playlists would be migrated and writes them to the
+	 *            plan file
+	 */
+	public void setDryRun(boolean dryRun) {
+		this.dryRun = dryRun;
+	}
+
+	/**
+	 * @param planFile
+	 *            on a dry run, the file the plan is written to. Otherwise, a
+	 *            plan written by a dry run that is migrated instead of the
+	 *            songbird database. If <code>null</code>, no plan is
+	 *            migrated and a dry run writes to {@link #DEFAULT_PLAN_FILE}.
+	 */
+	public void setPlanFile(String planFile) {
+		this.planFile = planFile != null ? new File(planFile) : null;
+	}
+
+	/**
+	 * @param libraryXmlFile
+	 *            if not <code>null</code>, the tracks and playlists are not
+	 *            added to iTunes but written to this iTunes Library XML file,
+	 *            which can be imported into iTunes
+	 */
+	public void setLibraryXmlFile(String libraryXmlFile) {
+		this.libraryXmlFile = libraryXmlFile != null ? new File(
+				libraryXmlFile) : null;
+	}
+
+	/**
+	 * @param directory
+	 *            if not <code>null</code>, the playlists are written to files
+	 *            in this directory instead of migrating them to iTunes
+	 * @param format
+	 *            the format of the playlist files
+	 */
+	public void setPlaylistExport(String directory, PlaylistFormat format) {
+		this.playlistExportDirectory = directory != null ? new File(directory)
+				: null;
+		this.playlistExportFormat = format;
+	}
+
+	/**
+	 * @param deduplicate
+	 *            <code>true</code> adds only one of the files that have the
+	 *            same content to iTunes
+	 */
+	public void setDeduplicate(boolean deduplicate) {
+		this.deduplicate = deduplicate;
+	}
+
+	/**
+	 * @param duplicateMergePolicy
+	 *            how the properties of files that have the same content are
+	 *            merged
+	 */
+	public void setDuplicateMergePolicy(
+			DuplicateMergePolicy duplicateMergePolicy) {
+		this.duplicateMergePolicy = duplicateMergePolicy;
+	}
+
+	/**
+	 * @param checkHeaders
+	 *            <code>true</code> reads the first bytes of each file before
+	 *            adding it to iTunes and skips files whose format is not
+	 *            supported by iTunes or that are corrupt
+	 */
+	public void setCheckHeaders(boolean checkHeaders) {
+		this.checkHeaders = checkHeaders;
+	}
+
+	/**
+	 * Converts files whose format is not supported by iTunes before adding
+	 * them, instead of skipping them. Implies checking the headers of all
+	 * files, see {@link #setCheckHeaders(boolean)}. The conversions run on as
+	 * many threads as there are cores, ahead of iTunes.
 	 * 
-	 * @throws ITunesException
-	 *             if thrown by
-	 *             {@link #addTrack(ITunes, MediaItem, Statistics, int, boolean)}
+	 * @param converter
+	 *            converts the files. <code>null</code> disables converting.
+	 * @param directory
+	 *            where the converted files are written to
 	 */
-	private Optional<Track> retryAdding(ITunesException e, ITunes iTunes,
-			MediaItem sbTrack, int nRetries, Optional<SystemClock> systemClock)
-			throws ITunesException {
-		if (nRetries > 0) {
-			log.debug(
-					"Track was added, but error setting attributes. Retrying "
-							+ nRetries + " more times. File: "
-							+ sbTrack.getContentUrl(), e);
-			return addTrack(iTunes, sbTrack, nRetries - 1, true, systemClock);
-		} else {
-			log.warn(
-					"Unable set track attributes, tried multiple times without luck. Skipping. You might manually add  File: "
-							+ sbTrack.getContentUrl(), e);
-			return Optional.empty();
-		}
+	public void setConverter(TrackConverter converter, String directory) {
+		this.converter = converter;
+		this.convertDirectory = directory != null ? new File(directory) : null;
+	}
+
+	/**
+	 * @param delta
+	 *            <code>true</code> migrates only tracks and playlists that are
+	 *            new or changed since the previous delta sync, according to
+	 *            the state file
+	 */
+	public void setDelta(boolean delta) {
+		this.delta = delta;
+	}
+
+	/**
+	 * @param stateFile
+	 *            the file that keeps the state of the tracks and playlists
+	 *            after a delta sync
+	 */
+	public void setStateFile(String stateFile) {
+		this.stateFile = new File(stateFile);
 	}
 
 	/**
@@ -573,6 +1880,60 @@ public class Songbird2itunesMigration {
 		return new SongbirdDb(songbirdDbFile.getAbsolutePath());
 	}
 
+	/**
+	 * Factory method for the cursor that reads all tracks from songbird.
+	 * Useful for testing.
+	 * 
+	 * @param songbirdDbFile
+	 *            the path to the database
+	 * @param fetchSize
+	 *            number of rows fetched from the database at once
+	 * @param orderByDateCreated
+	 *            <code>true</code> returns the tracks in the order they were
+	 *            added to songbird
+	 * @return a new cursor, positioned before the first track
+	 * 
+	 * @throws SQLException
+	 *             errors when opening or querying the database
+	 */
+	SongbirdTrackCursor openTrackCursor(File songbirdDbFile, int fetchSize,
+			boolean orderByDateCreated) throws SQLException {
+		return SongbirdTrackCursor.open(songbirdDbFile, fetchSize,
+				orderByDateCreated);
+	}
+
+	/**
+	 * Factory method for the journal that keeps track of the migration. Useful
+	 * for testing.
+	 * 
+	 * @param journalFile
+	 *            the journal file
+	 * @param resume
+	 *            <code>true</code> loads the entries of previous runs
+	 * @return a new journal, opened for writing
+	 */
+	MigrationJournal openJournal(File journalFile, boolean resume) {
+		return MigrationJournal.open(journalFile, resume,
+				MigrationJournal.DEFAULT_SYNC_INTERVAL);
+	}
+
+	/**
+	 * Factory method for the scheduler that writes track properties and
+	 * retries failed writes. Useful for testing.
+	 * 
+	 * @param exceptionRetries
+	 *            After running into a {@link NotModifiableException} - amount
+	 *            of times writing the properties of a track is retried.
+	 * @return a new scheduler
+	 */
+	RetryScheduler createRetryScheduler(int exceptionRetries) {
+		Map<Class<? extends ITunesException>, Integer> budgets = new HashMap<>();
+		budgets.put(NotModifiableException.class, exceptionRetries);
+		return new RetryScheduler(budgets,
+				RetryScheduler.DEFAULT_INITIAL_DELAY_MILLIS,
+				RetryScheduler.DEFAULT_MAX_DELAY_MILLIS);
+	}
+
 	/**
 	 * Factory method for {@link ITunes} wrapper. Useful for testing.
 	 * 
@@ -582,6 +1943,32 @@ public class Songbird2itunesMigration {
 		return new ITunes();
 	}
 
+	/**
+	 * @return where to migrate to: An iTunes Library XML file, if set.
+	 *         Otherwise iTunes.
+	 */
+	MigrationTarget createTarget() {
+		if (libraryXmlFile != null) {
+			log.info("Writing iTunes library XML file " + libraryXmlFile
+					+ ". Import it into iTunes afterwards.");
+			return LibraryXmlTarget.create(libraryXmlFile);
+		}
+		return new ITunesTarget(createItunes());
+	}
+
+	/**
+	 * Factory method for {@link SystemClock}. Useful for testing.
+	 * 
+	 * @return a new instance of {@link SystemClock} for the current platform
+	 * 
+	 * @throws SystemClockException
+	 *             if setting the system clock is not supported on the current
+	 *             operating system
+	 */
+	protected SystemClock createSystemClock() throws SystemClockException {
+		return new SystemClock();
+	}
+
 	/**
 	 * Songbird database might return a <code>null</code> that means zero, in
 	 * addition iTunes can only handle integers. This method provides this
@@ -612,69 +1999,145 @@ public class Songbird2itunesMigration {
 		return Rating.fromStars(convertSongbirdLongValue(rating));
 	}
 
+	/**
+	 * Counts the migrated objects. Can be read while the migration is
+	 * running.
+	 */
 	public static class Statistics {
-		private long tracksProcessed = 0;
-		private long tracksFailed = 0;
-		private long playlistTracksProcessed = 0;
-		private long playlistTracksFailed = 0;
-		private long playlistsProcessed = 0;
-		private long playlistsFailed = 0;
+		private final LongAdder tracksFound = new LongAdder();
+		private final LongAdder tracksSkipped = new LongAdder();
+		private final LongAdder tracksProcessed = new LongAdder();
+		private final LongAdder tracksFailed = new LongAdder();
+		private final LongAdder playlistTracksProcessed = new LongAdder();
+		private final LongAdder playlistTracksFailed = new LongAdder();
+		private final LongAdder playlistsProcessed = new LongAdder();
+		private final LongAdder playlistsFailed = new LongAdder();
+		private final LongAdder retries = new LongAdder();
+		private final LongAdder retriesExhausted = new LongAdder();
+		private final LongAdder readsSaved = new LongAdder();
+		private final LongAdder writesSaved = new LongAdder();
+		private final LongAdder duplicatesFound = new LongAdder();
+		private final LongAdder unsupportedFiles = new LongAdder();
+		private final LongAdder corruptFiles = new LongAdder();
+		private final LongAdder convertedFiles = new LongAdder();
+
+		void tracksFound(long tracks) {
+			tracksFound.add(tracks);
+		}
+
+		void trackSkipped() {
+			tracksSkipped.increment();
+		}
+
+		void trackProcessed() {
+			tracksProcessed.increment();
+		}
+
+		void trackFailed() {
+			tracksFailed.increment();
+		}
+
+		void playlistTrackProcessed() {
+			playlistTracksProcessed.increment();
+		}
+
+		void playlistTrackFailed() {
+			playlistTracksFailed.increment();
+		}
+
+		void playlistProcessed() {
+			playlistsProcessed.increment();
+		}
+
+		void retried(long retries, long retriesExhausted) {
+			this.retries.add(retries);
+			this.retriesExhausted.add(retriesExhausted);
+		}
+
+		void callsSaved(long reads, long writes) {
+			readsSaved.add(reads);
+			writesSaved.add(writes);
+		}
 
-		private void trackProcessed() {
-			tracksProcessed++;
+		void duplicatesFound(long duplicates) {
+			duplicatesFound.add(duplicates);
 		}
 
-		private void trackFailed() {
-			tracksFailed++;
+		void filesRejected(long unsupported, long corrupt) {
+			unsupportedFiles.add(unsupported);
+			corruptFiles.add(corrupt);
 		}
 
-		private void playlistTrackProcessed() {
-			playlistTracksProcessed++;
+		void filesConverted(long converted) {
+			convertedFiles.add(converted);
 		}
 
-		private void playlistTrackFailed() {
-			playlistTracksFailed++;
+		void playlistFailed() {
+			playlistsFailed.increment();
 		}
 
-		private void playlistProcessed() {
-			playlistsProcessed++;
+		public long getTracksFound() {
+			return tracksFound.sum();
 		}
 
-		// private void playlistFailed() {
-		// playlistsFailed++;
-		// }
+		public long getTracksSkipped() {
+			return tracksSkipped.sum();
+		}
 
 		public long getTracksFailed() {
-			return tracksFailed;
+			return tracksFailed.sum();
 		}
 
 		public long getTracksProcessed() {
-			return tracksProcessed;
+			return tracksProcessed.sum();
 		}
 
 		public long getPlaylistTracksProcessed() {
-			return playlistTracksProcessed;
+			return playlistTracksProcessed.sum();
 		}
 
 		public long getPlaylistTracksFailed() {
-			return playlistTracksFailed;
+			return playlistTracksFailed.sum();
 		}
 
 		public long getPlaylistsProcessed() {
-			return playlistsProcessed;
+			return playlistsProcessed.sum();
 		}
 
 		public long getPlaylistsFailed() {
-			return playlistsFailed;
+			return playlistsFailed.sum();
+		}
+
+		public long getRetries() {
+			return retries.sum();
+		}
+
+		public long getRetriesExhausted() {
+			return retriesExhausted.sum();
+		}
+
+		public long getReadsSaved() {
+			return readsSaved.sum();
+		}
+
+		public long getWritesSaved() {
+			return writesSaved.sum();
+		}
+
+		public long getDuplicatesFound() {
+			return duplicatesFound.sum();
+		}
+
+		public long getUnsupportedFiles() {
+			return unsupportedFiles.sum();
+		}
+
+		public long getCorruptFiles() {
+			return corruptFiles.sum();
 		}
 
-		private void merge(Statistics stats) {
-			this.tracksProcessed += stats.tracksProcessed;
-			this.tracksFailed += stats.tracksFailed;
-			this.playlistTracksProcessed += stats.playlistTracksProcessed;
-			this.playlistTracksFailed += stats.playlistTracksFailed;
-			this.playlistsProcessed += stats.playlistsProcessed;
-			this.playlistsFailed += stats.playlistsFailed;
+		public long getConvertedFiles() {
+			return convertedFiles.sum();
 		}
 	}
 }
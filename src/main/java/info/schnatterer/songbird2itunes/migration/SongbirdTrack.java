@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import java.util.Date;
+
+/**
+ * The parts of a songbird track (media item) that are needed for migrating it.
+ * Abstracts from where the track was read from: The songbird API (see
+ * {@link MediaItemTrack}) or a cursor (see {@link SongbirdTrackCursor}).
+ * 
+ * @author schnatterer
+ *
+ */
+interface SongbirdTrack {
+
+	/**
+	 * @return the GUID of the track in songbird or <code>null</code> if not
+	 *         known
+	 */
+	String getGuid();
+
+	/**
+	 * @return the URL of the track's file
+	 */
+	String getContentUrl();
+
+	/**
+	 * @return the date the track was added to songbird
+	 */
+	Date getDateCreated();
+
+	/**
+	 * @param propertyName
+	 *            name of the property, e.g.
+	 *            {@link info.schnatterer.songbirddbapi4j.domain.Property#PROP_PLAY_COUNT}
+	 * @return the raw value of the property or <code>null</code> if not set
+	 */
+	String getProperty(String propertyName);
+
+	/**
+	 * @param propertyName
+	 *            name of the property
+	 * @return the value of the property as long or <code>null</code> if not
+	 *         set or not a number
+	 */
+	default Long getPropertyAsLong(String propertyName) {
+		String value = getProperty(propertyName);
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Long.valueOf(value.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param propertyName
+	 *            name of the property
+	 * @return the value of the property (milliseconds since the epoch) as date
+	 *         or <code>null</code> if not set or not a number
+	 */
+	default Date getPropertyAsDate(String propertyName) {
+		Long value = getPropertyAsLong(propertyName);
+		if (value == null) {
+			return null;
+		}
+		return new Date(value);
+	}
+}
@@ -0,0 +1,307 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads all tracks from a songbird database one by one, instead of loading
+ * all of them (with all of their properties) into memory before the first
+ * one is returned.
+ * 
+ * Only the properties that are migrated are read (see {@link #PROPERTIES}),
+ * songbird stores dozens of others per track. Tracks and these properties are
+ * queried in one statement that joins each property by the primary key of
+ * <code>resource_properties</code>, so each row is one track. Only the
+ * current track and the rows fetched by the JDBC driver (see
+ * <code>fetchSize</code>) are held in memory. The properties of a track are
+ * held in an array instead of a map.
+ * 
+ * Not thread-safe. Make sure to {@link #close()} the cursor.
+ * 
+ * @author schnatterer
+ *
+ */
+class SongbirdTrackCursor implements Iterator<SongbirdTrack>, AutoCloseable {
+	/**
+	 * The properties of a track that are read. All others are
+	 * <code>null</code>.
+	 */
+	static final String[] PROPERTIES = { Property.PROP_ARTIST_NAME,
+			Property.PROP_TRACK_NAME, Property.PROP_LAST_PLAY_TIME,
+			Property.PROP_LAST_SKIP_TIME, Property.PROP_PLAY_COUNT,
+			Property.PROP_RATING, Property.PROP_SKIP_COUNT };
+	/** Index of each property within {@link #PROPERTIES}. */
+	private static final Map<String, Integer> PROPERTY_INDEX = new HashMap<>();
+	static {
+		for (int i = 0; i < PROPERTIES.length; i++) {
+			PROPERTY_INDEX.put(PROPERTIES[i], i);
+		}
+	}
+	/** Column of the first property in {@link #QUERY_TRACKS}. */
+	private static final int COLUMN_PROPERTIES = 4;
+
+	/** Selects tracks, as opposed to lists. */
+	private static final String WHERE_TRACK = "WHERE mi.is_list = 0 ";
+
+	private static final String QUERY_PROPERTY_IDS = "SELECT property_name, property_id FROM properties";
+	/** One row per track, the IDs of the properties are parameters. */
+	private static final String QUERY_TRACKS = createTrackQuery();
+	private static final String ORDER_BY_ID = "ORDER BY mi.media_item_id";
+	private static final String ORDER_BY_CREATED = "ORDER BY mi.created, mi.media_item_id";
+
+	private static final String QUERY_COUNT = "SELECT COUNT(*) FROM media_items mi "
+			+ WHERE_TRACK;
+
+	private final Connection connection;
+	private final PreparedStatement statement;
+	private final ResultSet resultSet;
+	/** <code>true</code> if the result set points to a row not read yet. */
+	private boolean hasRow;
+
+	/**
+	 * Creates a cursor on an open connection. The connection is closed when
+	 * the cursor is closed.
+	 * 
+	 * @param connection
+	 *            connection to the songbird database
+	 * @param fetchSize
+	 *            number of rows fetched from the database at once
+	 * @param orderByDateCreated
+	 *            <code>true</code> returns the tracks in the order they were
+	 *            added to songbird
+	 * 
+	 * @throws SQLException
+	 *             errors when querying the database
+	 */
+	SongbirdTrackCursor(Connection connection, int fetchSize,
+			boolean orderByDateCreated) throws SQLException {
+		this.connection = connection;
+		long[] propertyIds = queryPropertyIds(connection);
+		statement = connection.prepareStatement(QUERY_TRACKS
+				+ (orderByDateCreated ? ORDER_BY_CREATED : ORDER_BY_ID));
+		for (int i = 0; i < propertyIds.length; i++) {
+			statement.setLong(i + 1, propertyIds[i]);
+		}
+		statement.setFetchSize(fetchSize);
+		resultSet = statement.executeQuery();
+		hasRow = resultSet.next();
+	}
+
+	/**
+	 * Opens a songbird database file and creates a cursor on it.
+	 * 
+	 * @param songbirdDbFile
+	 *            the songbird database
+	 * @param fetchSize
+	 *            number of rows fetched from the database at once
+	 * @param orderByDateCreated
+	 *            <code>true</code> returns the tracks in the order they were
+	 *            added to songbird
+	 * @return a new cursor, positioned before the first track
+	 * 
+	 * @throws SQLException
+	 *             errors when opening or querying the database
+	 */
+	static SongbirdTrackCursor open(File songbirdDbFile, int fetchSize,
+			boolean orderByDateCreated) throws SQLException {
+		Connection connection = DriverManager.getConnection("jdbc:sqlite:"
+				+ songbirdDbFile.getAbsolutePath());
+		try {
+			return new SongbirdTrackCursor(connection, fetchSize,
+					orderByDateCreated);
+		} catch (SQLException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the total number of tracks in the database
+	 * 
+	 * @throws SQLException
+	 *             errors when querying the database
+	 */
+	long count() throws SQLException {
+		try (Statement countStatement = connection.createStatement();
+				ResultSet count = countStatement.executeQuery(QUERY_COUNT)) {
+			return count.next() ? count.getLong(1) : 0;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return hasRow;
+	}
+
+	/**
+	 * @return the next track including the properties that are migrated
+	 * 
+	 * @throws CursorException
+	 *             wraps errors when reading from the database
+	 */
+	@Override
+	public SongbirdTrack next() {
+		if (!hasRow) {
+			throw new NoSuchElementException();
+		}
+		try {
+			long created = resultSet.getLong(2);
+			Date dateCreated = resultSet.wasNull() ? null : new Date(created);
+			String[] properties = new String[PROPERTIES.length];
+			for (int i = 0; i < properties.length; i++) {
+				properties[i] = resultSet.getString(COLUMN_PROPERTIES + i);
+			}
+			ProjectedTrack track = new ProjectedTrack(resultSet.getString(3),
+					resultSet.getString(1), dateCreated, properties);
+			hasRow = resultSet.next();
+			return track;
+		} catch (SQLException e) {
+			throw new CursorException("Reading track from songbird failed", e);
+		}
+	}
+
+	@Override
+	public void close() throws SQLException {
+		try {
+			resultSet.close();
+			statement.close();
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * @return the query for the tracks, without order. Joins each property
+	 *         separately.
+	 */
+	private static String createTrackQuery() {
+		StringBuilder query = new StringBuilder(
+				"SELECT mi.content_url, mi.created, mi.guid");
+		for (int i = 0; i < PROPERTIES.length; i++) {
+			query.append(", rp").append(i).append(".obj");
+		}
+		query.append(" FROM media_items mi ");
+		for (int i = 0; i < PROPERTIES.length; i++) {
+			query.append("LEFT JOIN resource_properties rp").append(i)
+					.append(" ON rp").append(i)
+					.append(".media_item_id = mi.media_item_id AND rp")
+					.append(i).append(".property_id = ? ");
+		}
+		return query.append(WHERE_TRACK).toString();
+	}
+
+	/**
+	 * @return the IDs of {@link #PROPERTIES}, -1 for properties that don't
+	 *         exist in the database
+	 */
+	private static long[] queryPropertyIds(Connection connection)
+			throws SQLException {
+		long[] propertyIds = new long[PROPERTIES.length];
+		Arrays.fill(propertyIds, -1);
+		try (Statement propertyStatement = connection.createStatement();
+				ResultSet properties = propertyStatement
+						.executeQuery(QUERY_PROPERTY_IDS)) {
+			while (properties.next()) {
+				Integer index = PROPERTY_INDEX.get(properties.getString(1));
+				if (index != null) {
+					propertyIds[index] = properties.getLong(2);
+				}
+			}
+		}
+		return propertyIds;
+	}
+
+	/**
+	 * A track read by the cursor, holding only the properties that are
+	 * migrated.
+	 */
+	private static class ProjectedTrack implements SongbirdTrack {
+		private final String guid;
+		private final String contentUrl;
+		private final Date dateCreated;
+		/** Values of {@link SongbirdTrackCursor#PROPERTIES}, by index. */
+		private final String[] properties;
+
+		ProjectedTrack(String guid, String contentUrl, Date dateCreated,
+				String[] properties) {
+			this.guid = guid;
+			this.contentUrl = contentUrl;
+			this.dateCreated = dateCreated;
+			this.properties = properties;
+		}
+
+		@Override
+		public String getGuid() {
+			return guid;
+		}
+
+		@Override
+		public String getContentUrl() {
+			return contentUrl;
+		}
+
+		@Override
+		public Date getDateCreated() {
+			return dateCreated;
+		}
+
+		@Override
+		public String getProperty(String propertyName) {
+			Integer index = PROPERTY_INDEX.get(propertyName);
+			return index != null ? properties[index] : null;
+		}
+	}
+
+	/**
+	 * Wraps {@link SQLException}s that occur while iterating, as
+	 * {@link Iterator} does not allow for checked exceptions.
+	 * 
+	 * @author schnatterer
+	 */
+	public static class CursorException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * @param message
+		 *            the detail message
+		 * @param cause
+		 *            the {@link SQLException} that occurred
+		 */
+		public CursorException(String message, SQLException cause) {
+			super(message, cause);
+		}
+
+		@Override
+		public synchronized SQLException getCause() {
+			return (SQLException) super.getCause();
+		}
+	}
+}
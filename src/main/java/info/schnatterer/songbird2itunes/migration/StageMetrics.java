@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.java.util.LatencyHistogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latencies of the stages of a migration, in order to find out
+ * where the time goes. Each stage has its own {@link LatencyHistogram}.
+ * 
+ * Recording is thread-safe and cheap: Measure with
+ * <code>long start = System.nanoTime()</code> and call
+ * {@link #record(Stage, long)} afterwards.
+ * 
+ * @author schnatterer
+ *
+ */
+class StageMetrics {
+	/** Header of the CSV file written by {@link #write(File)}. */
+	static final String CSV_HEADER = "stage,count,p50_micros,p95_micros,p99_micros,max_micros";
+
+	/**
+	 * The stages of a migration that are measured.
+	 */
+	enum Stage {
+		/** Reading the next track from songbird. */
+		SONGBIRD_TRACK_QUERY,
+		/** Reading all playlists from songbird. */
+		SONGBIRD_PLAYLIST_QUERY,
+		/** Resolving and checking the path of a track. */
+		ABSOLUTE_PATH,
+		/** Reading the header of the file of a track. */
+		HEADER_CHECK,
+		/** Converting a file of a format not supported by iTunes. */
+		CONVERT,
+		/** {@link info.schnatterer.itunes4j.ITunes#addFile(String)} */
+		ADD_FILE,
+		SET_PLAYED_COUNT,
+		SET_PLAYED_DATE,
+		SET_RATING,
+		SET_SKIPPED_COUNT,
+		SET_SKIPPED_DATE,
+		/** Adding a track to a playlist in iTunes. */
+		PLAYLIST_ADD_TRACK
+	}
+
+	private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(
+			Stage.class);
+
+	StageMetrics() {
+		for (Stage stage : Stage.values()) {
+			histograms.put(stage, new LatencyHistogram());
+		}
+	}
+
+	/**
+	 * Records the time elapsed since <code>startNanos</code> for a stage.
+	 * 
+	 * @param stage
+	 *            the stage that was measured
+	 * @param startNanos
+	 *            {@link System#nanoTime()} when the stage started
+	 */
+	void record(Stage stage, long startNanos) {
+		histograms.get(stage).record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * @param stage
+	 *            the stage to measure
+	 * @param iterator
+	 *            the iterator whose {@link Iterator#next()} to measure
+	 * @return an iterator that records each call to {@link Iterator#next()}
+	 *         for <code>stage</code>
+	 */
+	<T> Iterator<T> timed(Stage stage, Iterator<T> iterator) {
+		return new Iterator<T>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public T next() {
+				long start = System.nanoTime();
+				T next = iterator.next();
+				record(stage, start);
+				return next;
+			}
+		};
+	}
+
+	/**
+	 * @param stage
+	 *            a stage
+	 * @return the histogram of <code>stage</code>
+	 */
+	LatencyHistogram get(Stage stage) {
+		return histograms.get(stage);
+	}
+
+	/**
+	 * Writes count and p50, p95, p99 and max latency in microseconds for each
+	 * stage that was recorded to a CSV file. Overwrites the file.
+	 * 
+	 * @param file
+	 *            the file to write
+	 * 
+	 * @throws IOException
+	 *             If an I/O error occurs
+	 */
+	void write(File file) throws IOException {
+		try (PrintWriter writer = new PrintWriter(file,
+				StandardCharsets.UTF_8.name())) {
+			writer.println(CSV_HEADER);
+			for (Map.Entry<Stage, LatencyHistogram> entry : histograms
+					.entrySet()) {
+				LatencyHistogram histogram = entry.getValue();
+				if (histogram.getCount() == 0) {
+					continue;
+				}
+				writer.println(entry.getKey().name().toLowerCase() + ","
+						+ histogram.getCount() + ","
+						+ micros(histogram.getValueAtPercentile(50)) + ","
+						+ micros(histogram.getValueAtPercentile(95)) + ","
+						+ micros(histogram.getValueAtPercentile(99)) + ","
+						+ micros(histogram.getMax()));
+			}
+			if (writer.checkError()) {
+				throw new IOException("Failed writing metrics to " + file);
+			}
+		}
+	}
+
+	private static long micros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+}
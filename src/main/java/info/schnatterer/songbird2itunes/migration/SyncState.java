@@ -0,0 +1,342 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.java.util.Fnv1a64;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The state of the tracks and playlists after the previous delta sync, so a
+ * sync only needs to migrate the tracks and playlists that are new or changed
+ * since.
+ * 
+ * For each track (by GUID) and each playlist (by name) the state file stores
+ * a 64 bit hash of the key and a 64 bit hash of the values that are migrated:
+ * The content URL and the properties of a track, the members of a playlist.
+ * That is 16 bytes per entry, regardless of the size of the values. In the very
+ * unlikely case of a hash collision, a changed track or playlist might be
+ * skipped wrongly.
+ * 
+ * The new state is written by {@link #complete()} only: The entries of the
+ * previous state, updated by the tracks and playlists that were migrated
+ * during this sync. An aborted sync leaves the previous state untouched.
+ * 
+ * Thread-safe.
+ * 
+ * @author schnatterer
+ *
+ */
+class SyncState {
+	/** Result of comparing a track or playlist to the previous state. */
+	enum Change {
+		/** Not contained in the previous state. */
+		NEW,
+		/** Different from the previous state. */
+		CHANGED,
+		/** Same as in the previous state. */
+		UNCHANGED
+	}
+
+	private static final int VERSION = 1;
+	private static final String TYPE_TRACK = "T\t";
+	private static final String TYPE_PLAYLIST = "L\t";
+	private static final String SEPARATOR = "\t";
+
+	/** Properties of a track that are migrated, in order. */
+	private static final String[] TRACK_PROPERTIES = {
+			Property.PROP_LAST_PLAY_TIME, Property.PROP_LAST_SKIP_TIME,
+			Property.PROP_PLAY_COUNT, Property.PROP_RATING,
+			Property.PROP_SKIP_COUNT };
+
+	private static final SyncState DISABLED = new SyncState(null, false,
+			new long[0], new long[0]);
+
+	private final File file;
+	private final boolean writable;
+	/** Hashes of the keys of the previous state, sorted. */
+	private final long[] keys;
+	/** Hashes of the values of the previous state, by index of the key. */
+	private final long[] values;
+	/** Tracks and playlists migrated during this sync: Key to value. */
+	private final Map<Long, Long> updates = new ConcurrentHashMap<>();
+
+	private final LongAdder newTracks = new LongAdder();
+	private final LongAdder changedTracks = new LongAdder();
+	private final LongAdder unchangedTracks = new LongAdder();
+
+	private SyncState(File file, boolean writable, long[] keys, long[] values) {
+		this.file = file;
+		this.writable = writable;
+		this.keys = keys;
+		this.values = values;
+	}
+
+	/**
+	 * Reads the state of the previous sync.
+	 * 
+	 * @param file
+	 *            the state file. If it does not exist, all tracks and
+	 *            playlists are new.
+	 * @param writable
+	 *            <code>false</code> never writes the state file, e.g. for a
+	 *            dry run
+	 * @return the previous state
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the state file cannot be read
+	 */
+	static SyncState open(File file, boolean writable) {
+		if (!file.exists()) {
+			return new SyncState(file, writable, new long[0], new long[0]);
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)))) {
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unknown version " + version);
+			}
+			int size = in.readInt();
+			long[] keys = new long[size];
+			long[] values = new long[size];
+			for (int i = 0; i < size; i++) {
+				keys[i] = in.readLong();
+				values[i] = in.readLong();
+			}
+			return new SyncState(file, writable, keys, values);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to read sync state " + file,
+					e);
+		}
+	}
+
+	/**
+	 * @return a state that considers all tracks and playlists new and is never
+	 *         written, i.e. a full migration
+	 */
+	static SyncState disabled() {
+		return DISABLED;
+	}
+
+	/**
+	 * Compares a track to the previous state. Counts new, changed and
+	 * unchanged tracks, so call once per track.
+	 * 
+	 * @param track
+	 *            the songbird track
+	 * @return whether the track is new or changed since the previous sync
+	 */
+	Change compareTrack(SongbirdTrack track) {
+		if (this == DISABLED) {
+			return Change.NEW;
+		}
+		Change change = compare(trackKey(track), trackValue(track));
+		if (change == Change.NEW) {
+			newTracks.increment();
+		} else if (change == Change.CHANGED) {
+			changedTracks.increment();
+		} else {
+			unchangedTracks.increment();
+		}
+		return change;
+	}
+
+	/**
+	 * @param track
+	 *            the songbird track
+	 * @return <code>true</code> if the track was migrated by a previous sync,
+	 *         i.e. it is in iTunes already
+	 */
+	boolean wasMigrated(SongbirdTrack track) {
+		if (this == DISABLED) {
+			return false;
+		}
+		return Arrays.binarySearch(keys, trackKey(track)) >= 0;
+	}
+
+	/**
+	 * Records that a track was migrated with its current values.
+	 * 
+	 * @param track
+	 *            the songbird track
+	 */
+	void trackMigrated(SongbirdTrack track) {
+		if (writable) {
+			updates.put(trackKey(track), trackValue(track));
+		}
+	}
+
+	/**
+	 * Compares a playlist to the previous state.
+	 * 
+	 * @param name
+	 *            name of the playlist
+	 * @param members
+	 *            the tracks of the playlist, in order
+	 * @return whether the playlist is new or changed since the previous sync
+	 */
+	Change comparePlaylist(String name, List<? extends SongbirdTrack> members) {
+		if (this == DISABLED) {
+			return Change.NEW;
+		}
+		return compare(playlistKey(name), playlistValue(name, members));
+	}
+
+	/**
+	 * Records that a playlist was migrated with its current members.
+	 * 
+	 * @param name
+	 *            name of the playlist
+	 * @param members
+	 *            the tracks of the playlist, in order
+	 */
+	void playlistMigrated(String name, List<? extends SongbirdTrack> members) {
+		if (writable) {
+			updates.put(playlistKey(name), playlistValue(name, members));
+		}
+	}
+
+	/**
+	 * @return the number of tracks not contained in the previous state
+	 */
+	long getNewTracks() {
+		return newTracks.sum();
+	}
+
+	/**
+	 * @return the number of tracks that changed since the previous sync
+	 */
+	long getChangedTracks() {
+		return changedTracks.sum();
+	}
+
+	/**
+	 * @return the number of tracks that did not change since the previous
+	 *         sync
+	 */
+	long getUnchangedTracks() {
+		return unchangedTracks.sum();
+	}
+
+	/**
+	 * Writes the new state: The previous state, updated by all tracks and
+	 * playlists migrated during this sync. Does nothing if not writable.
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the state file cannot be written
+	 */
+	void complete() {
+		if (!writable) {
+			return;
+		}
+		// Merge updates into previous state, both sorted by key
+		long[] updatedKeys = updates.keySet().stream()
+				.mapToLong(Long::longValue).sorted().toArray();
+		long[] mergedKeys = new long[keys.length + updatedKeys.length];
+		long[] mergedValues = new long[mergedKeys.length];
+		int size = 0;
+		int previous = 0;
+		int updated = 0;
+		while (previous < keys.length || updated < updatedKeys.length) {
+			if (updated == updatedKeys.length
+					|| (previous < keys.length && keys[previous] < updatedKeys[updated])) {
+				mergedKeys[size] = keys[previous];
+				mergedValues[size++] = values[previous++];
+			} else {
+				if (previous < keys.length
+						&& keys[previous] == updatedKeys[updated]) {
+					previous++;
+				}
+				mergedKeys[size] = updatedKeys[updated];
+				mergedValues[size++] = updates.get(updatedKeys[updated++]);
+			}
+		}
+
+		File tempFile = new File(file.getPath() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+				out.writeInt(VERSION);
+				out.writeInt(size);
+				for (int i = 0; i < size; i++) {
+					out.writeLong(mergedKeys[i]);
+					out.writeLong(mergedValues[i]);
+				}
+			}
+			Files.move(tempFile.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write sync state "
+					+ file, e);
+		}
+	}
+
+	private Change compare(long key, long value) {
+		int index = Arrays.binarySearch(keys, key);
+		if (index < 0) {
+			return Change.NEW;
+		}
+		return values[index] == value ? Change.UNCHANGED : Change.CHANGED;
+	}
+
+	private static long trackKey(SongbirdTrack track) {
+		return Fnv1a64.hash(Fnv1a64.hash(TYPE_TRACK),
+				track.getGuid() != null ? track.getGuid() : track
+						.getContentUrl());
+	}
+
+	private static long trackValue(SongbirdTrack track) {
+		long hash = Fnv1a64.hash(track.getContentUrl());
+		for (String property : TRACK_PROPERTIES) {
+			Long value = track.getPropertyAsLong(property);
+			hash = Fnv1a64.hash(hash, SEPARATOR);
+			if (value != null) {
+				hash = Fnv1a64.hash(hash, value.toString());
+			}
+		}
+		return hash;
+	}
+
+	private static long playlistKey(String name) {
+		return Fnv1a64.hash(Fnv1a64.hash(TYPE_PLAYLIST), name);
+	}
+
+	private static long playlistValue(String name,
+			List<? extends SongbirdTrack> members) {
+		long hash = Fnv1a64.hash(name);
+		for (SongbirdTrack member : members) {
+			hash = Fnv1a64.hash(Fnv1a64.hash(hash, SEPARATOR),
+					member.getContentUrl());
+		}
+		return hash;
+	}
+}
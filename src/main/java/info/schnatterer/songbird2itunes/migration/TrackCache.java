@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Run-scoped cache for the tracks that have already been added to iTunes.
+ * Makes sure each file is added only once, no matter how many playlists it is
+ * contained in.
+ * 
+ * Tracks are looked up by the songbird content URL first (cheap, no file
+ * system access). In addition, tracks are stored by their canonical path in
+ * order to detect different URLs pointing to the same file.
+ * 
+ * Not thread-safe, meant to be used by the thread that talks to iTunes only.
+ * 
+ * @author schnatterer
+ *
+ */
+class TrackCache {
+	private final Map<String, CachingTrack> tracksByContentUrl = new HashMap<>();
+	private final Map<String, CachingTrack> tracksByPath = new HashMap<>();
+	private final Set<String> failedContentUrls = new HashSet<>();
+
+	/**
+	 * @param contentUrl
+	 *            songbird content URL of the track
+	 * @return the iTunes track that was added for this URL before or
+	 *         {@link Optional#empty()} if not added yet.
+	 */
+	Optional<CachingTrack> getByContentUrl(String contentUrl) {
+		return Optional.ofNullable(tracksByContentUrl.get(contentUrl));
+	}
+
+	/**
+	 * @param canonicalPath
+	 *            canonical path of the file
+	 * @return the iTunes track that was added for this file before or
+	 *         {@link Optional#empty()} if not added yet.
+	 */
+	Optional<CachingTrack> getByPath(String canonicalPath) {
+		return Optional.ofNullable(tracksByPath.get(canonicalPath));
+	}
+
+	/**
+	 * @param contentUrl
+	 *            songbird content URL of the track
+	 * @return <code>true</code> if the track was either added or failed before
+	 */
+	boolean contains(String contentUrl) {
+		return tracksByContentUrl.containsKey(contentUrl)
+				|| failedContentUrls.contains(contentUrl);
+	}
+
+	/**
+	 * Stores a track that was added to iTunes successfully.
+	 * 
+	 * @param contentUrl
+	 *            songbird content URL of the track
+	 * @param canonicalPath
+	 *            canonical path of the file
+	 * @param track
+	 *            the track returned by iTunes
+	 */
+	void added(String contentUrl, String canonicalPath, CachingTrack track) {
+		tracksByContentUrl.put(contentUrl, track);
+		tracksByPath.put(canonicalPath, track);
+	}
+
+	/**
+	 * Remembers that adding a track failed, so it is not tried again.
+	 * 
+	 * @param contentUrl
+	 *            songbird content URL of the track
+	 */
+	void failed(String contentUrl) {
+		failedContentUrls.add(contentUrl);
+	}
+
+	/**
+	 * @return the number of distinct files that were added to iTunes
+	 */
+	int size() {
+		return tracksByPath.size();
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Converts audio files whose format is not supported by iTunes (e.g. FLAC,
+ * Ogg) into a format that is, so they can be added to iTunes in place of the
+ * original files.
+ * 
+ * Conversions run in parallel, so implementations must be thread-safe.
+ * 
+ * @author schnatterer
+ *
+ */
+public interface TrackConverter {
+
+	/**
+	 * @return the file extension of the converted files, without dot, e.g.
+	 *         <code>m4a</code>
+	 */
+	String getExtension();
+
+	/**
+	 * Converts a file.
+	 * 
+	 * @param source
+	 *            the file to convert
+	 * @param target
+	 *            the file to write. Its parent directory exists.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be converted
+	 */
+	void convert(Path source, Path target) throws IOException;
+}
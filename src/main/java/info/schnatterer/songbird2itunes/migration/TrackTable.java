@@ -0,0 +1,395 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.java.util.PathTrie;
+import info.schnatterer.java.util.StringPool;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The tracks of a songbird library held in memory column by column, instead of
+ * one object (with a property map, boxed numbers and dates) per track.
+ * <ul>
+ * <li>Dates are stored in <code>long</code> arrays, counts and ratings in
+ * <code>int</code> arrays. A sentinel value marks values that are not set.</li>
+ * <li>Strings (GUID, name) are stored UTF-8 encoded in one byte array per
+ * column, indexed by offset.</li>
+ * <li>The directories of the content URLs are stored once in a
+ * {@link PathTrie}, only the file name is stored per track.</li>
+ * <li>Artists are stored once in a {@link StringPool}.</li>
+ * </ul>
+ * This takes about the size of GUID, name and file name plus 60 bytes per
+ * track, so even a library of a million tracks fits in a small heap.
+ * 
+ * A track is accessed by its index via {@link #get(int)}, which returns a view
+ * on the columns. Only the properties of {@link SongbirdTrackCursor#PROPERTIES}
+ * are held. Counts and ratings that do not fit an <code>int</code> are
+ * considered not set, like values that are not a number.
+ * 
+ * Not thread-safe while being built, thread-safe for reading afterwards.
+ * 
+ * @author schnatterer
+ *
+ */
+class TrackTable implements Iterable<SongbirdTrack> {
+	private static final long NO_DATE = Long.MIN_VALUE;
+	private static final int NO_NUMBER = Integer.MIN_VALUE;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int size = 0;
+	private long[] dateCreated;
+	private long[] lastPlayTime;
+	private long[] lastSkipTime;
+	private int[] playCount;
+	private int[] skipCount;
+	private int[] rating;
+	/** Node of the directory of the content URL, -1 for <code>null</code>. */
+	private int[] directoryIds;
+	/** Id of the artist, -1 for <code>null</code>. */
+	private int[] artistIds;
+	private final StringColumn fileName;
+	private final StringColumn guid;
+	private final StringColumn name;
+	private final PathTrie directories = new PathTrie('/');
+	private final StringPool artists = new StringPool();
+
+	/**
+	 * Creates an empty table.
+	 * 
+	 * @param expectedSize
+	 *            expected number of tracks, so the columns don't have to grow
+	 */
+	TrackTable(int expectedSize) {
+		int capacity = Math.max(expectedSize, DEFAULT_CAPACITY);
+		dateCreated = new long[capacity];
+		lastPlayTime = new long[capacity];
+		lastSkipTime = new long[capacity];
+		playCount = new int[capacity];
+		skipCount = new int[capacity];
+		rating = new int[capacity];
+		directoryIds = new int[capacity];
+		artistIds = new int[capacity];
+		fileName = new StringColumn(capacity);
+		guid = new StringColumn(capacity);
+		name = new StringColumn(capacity);
+	}
+
+	/**
+	 * Reads all tracks into a new table.
+	 * 
+	 * @param tracks
+	 *            the tracks, in the order of the table
+	 * @param expectedSize
+	 *            expected number of tracks
+	 * @return a new table
+	 */
+	static TrackTable of(Iterator<? extends SongbirdTrack> tracks,
+			int expectedSize) {
+		TrackTable table = new TrackTable(expectedSize);
+		while (tracks.hasNext()) {
+			table.add(tracks.next());
+		}
+		table.trim();
+		return table;
+	}
+
+	/**
+	 * Appends a track.
+	 * 
+	 * @param track
+	 *            the track to append
+	 */
+	void add(SongbirdTrack track) {
+		if (size == dateCreated.length) {
+			grow();
+		}
+		Date created = track.getDateCreated();
+		dateCreated[size] = created != null ? created.getTime() : NO_DATE;
+		lastPlayTime[size] = toDate(track
+				.getPropertyAsLong(Property.PROP_LAST_PLAY_TIME));
+		lastSkipTime[size] = toDate(track
+				.getPropertyAsLong(Property.PROP_LAST_SKIP_TIME));
+		playCount[size] = toNumber(track
+				.getPropertyAsLong(Property.PROP_PLAY_COUNT));
+		skipCount[size] = toNumber(track
+				.getPropertyAsLong(Property.PROP_SKIP_COUNT));
+		rating[size] = toNumber(track.getPropertyAsLong(Property.PROP_RATING));
+		String contentUrl = track.getContentUrl();
+		if (contentUrl != null) {
+			int directoryEnd = contentUrl.lastIndexOf('/') + 1;
+			directoryIds[size] = directories.add(contentUrl.substring(0,
+					directoryEnd));
+			fileName.add(contentUrl.substring(directoryEnd));
+		} else {
+			directoryIds[size] = -1;
+			fileName.add(null);
+		}
+		String artist = track.getProperty(Property.PROP_ARTIST_NAME);
+		artistIds[size] = artist != null ? artists.intern(artist) : -1;
+		guid.add(track.getGuid());
+		name.add(track.getProperty(Property.PROP_TRACK_NAME));
+		size++;
+	}
+
+	/**
+	 * @return the number of tracks
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param index
+	 *            index of the track
+	 * @return a view on the track
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no track at <code>index</code>
+	 */
+	SongbirdTrack get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: "
+					+ size);
+		}
+		return new Row(index);
+	}
+
+	/**
+	 * @return the tracks, in order
+	 */
+	@Override
+	public Iterator<SongbirdTrack> iterator() {
+		return new Iterator<SongbirdTrack>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public SongbirdTrack next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return new Row(next++);
+			}
+		};
+	}
+
+	/**
+	 * @return the number of distinct prefixes of the directories of the
+	 *         content URLs, see {@link PathTrie#size()}
+	 */
+	int getDirectories() {
+		return directories.size();
+	}
+
+	/**
+	 * @return the approximate number of bytes held by the table: The columns,
+	 *         the distinct directories and the distinct artists
+	 */
+	long getBytes() {
+		return (long) dateCreated.length * 3 * Long.BYTES
+				+ (long) playCount.length * 5 * Integer.BYTES
+				+ fileName.getBytes() + guid.getBytes() + name.getBytes()
+				+ directories.getBytes() + artists.getBytes();
+	}
+
+	private void grow() {
+		int capacity = dateCreated.length + (dateCreated.length >> 1);
+		resize(capacity);
+	}
+
+	/** Releases the capacity that is not used. */
+	private void trim() {
+		resize(size);
+		fileName.trim();
+		guid.trim();
+		name.trim();
+	}
+
+	private void resize(int capacity) {
+		dateCreated = Arrays.copyOf(dateCreated, capacity);
+		lastPlayTime = Arrays.copyOf(lastPlayTime, capacity);
+		lastSkipTime = Arrays.copyOf(lastSkipTime, capacity);
+		playCount = Arrays.copyOf(playCount, capacity);
+		skipCount = Arrays.copyOf(skipCount, capacity);
+		rating = Arrays.copyOf(rating, capacity);
+		directoryIds = Arrays.copyOf(directoryIds, capacity);
+		artistIds = Arrays.copyOf(artistIds, capacity);
+	}
+
+	private static long toDate(Long value) {
+		return value != null ? value : NO_DATE;
+	}
+
+	private static int toNumber(Long value) {
+		if (value == null || value <= Integer.MIN_VALUE
+				|| value > Integer.MAX_VALUE) {
+			return NO_NUMBER;
+		}
+		return value.intValue();
+	}
+
+	private static Long fromDate(long value) {
+		return value != NO_DATE ? value : null;
+	}
+
+	private static Long fromNumber(int value) {
+		return value != NO_NUMBER ? Long.valueOf(value) : null;
+	}
+
+	/**
+	 * A view on one track of the table. Holds its index, values are read from
+	 * the columns when requested. The content URL is put together once per
+	 * view, so the same string (with its hash code) is used for all lookups
+	 * of the track.
+	 */
+	private class Row implements SongbirdTrack {
+		private final int index;
+		private String contentUrl;
+
+		Row(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public String getGuid() {
+			return guid.get(index);
+		}
+
+		@Override
+		public String getContentUrl() {
+			if (contentUrl == null && directoryIds[index] >= 0) {
+				contentUrl = directories.appendTo(new StringBuilder(),
+						directoryIds[index]).append(fileName.get(index))
+						.toString();
+			}
+			return contentUrl;
+		}
+
+		@Override
+		public Date getDateCreated() {
+			Long created = fromDate(dateCreated[index]);
+			return created != null ? new Date(created) : null;
+		}
+
+		@Override
+		public String getProperty(String propertyName) {
+			if (Property.PROP_ARTIST_NAME.equals(propertyName)) {
+				return artistIds[index] >= 0 ? artists.get(artistIds[index])
+						: null;
+			}
+			if (Property.PROP_TRACK_NAME.equals(propertyName)) {
+				return name.get(index);
+			}
+			Long value = getPropertyAsLong(propertyName);
+			return value != null ? value.toString() : null;
+		}
+
+		/** Reads the columns directly, without formatting and parsing. */
+		@Override
+		public Long getPropertyAsLong(String propertyName) {
+			if (Property.PROP_LAST_PLAY_TIME.equals(propertyName)) {
+				return fromDate(lastPlayTime[index]);
+			}
+			if (Property.PROP_LAST_SKIP_TIME.equals(propertyName)) {
+				return fromDate(lastSkipTime[index]);
+			}
+			if (Property.PROP_PLAY_COUNT.equals(propertyName)) {
+				return fromNumber(playCount[index]);
+			}
+			if (Property.PROP_SKIP_COUNT.equals(propertyName)) {
+				return fromNumber(skipCount[index]);
+			}
+			if (Property.PROP_RATING.equals(propertyName)) {
+				return fromNumber(rating[index]);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Strings stored UTF-8 encoded in one byte array. The string at index
+	 * <code>i</code> is stored between <code>offsets[i]</code> and
+	 * <code>offsets[i + 1]</code>. <code>null</code> is marked by a negative
+	 * end offset.
+	 */
+	private static class StringColumn {
+		private byte[] bytes;
+		private int length = 0;
+		/**
+		 * End offset of each string, the start is the end of the previous one.
+		 * Negative (<code>-end - 1</code>) for <code>null</code>.
+		 */
+		private int[] ends;
+		private int size = 0;
+
+		StringColumn(int capacity) {
+			// Assume an average string length
+			bytes = new byte[capacity * 16];
+			ends = new int[capacity];
+		}
+
+		void add(String value) {
+			if (size == ends.length) {
+				ends = Arrays.copyOf(ends, size + (size >> 1));
+			}
+			if (value == null) {
+				ends[size++] = -length - 1;
+				return;
+			}
+			byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+			if (length + encoded.length > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(length + encoded.length,
+						bytes.length + (bytes.length >> 1)));
+			}
+			System.arraycopy(encoded, 0, bytes, length, encoded.length);
+			length += encoded.length;
+			ends[size++] = length;
+		}
+
+		String get(int index) {
+			int end = ends[index];
+			if (end < 0) {
+				return null;
+			}
+			int start = index > 0 ? end(index - 1) : 0;
+			return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+		}
+
+		long getBytes() {
+			return bytes.length + (long) ends.length * Integer.BYTES;
+		}
+
+		void trim() {
+			bytes = Arrays.copyOf(bytes, length);
+			ends = Arrays.copyOf(ends, size);
+		}
+
+		private int end(int index) {
+			int end = ends[index];
+			return end < 0 ? -end - 1 : end;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.lang;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import info.schnatterer.java.lang.SystemClock.SystemClockException;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShellCommandExecutorTest {
+
+	private ShellCommandExecutor executor = new ShellCommandExecutor(
+			new LinuxClockPlatform());
+
+	@Before
+	public void setUp() {
+		Assume.assumeTrue("Requires /bin/sh", new File("/bin/sh").canExecute());
+	}
+
+	@After
+	public void tearDown() {
+		executor.close();
+	}
+
+	@Test
+	public void execute() throws Exception {
+		executor.execute("true");
+		executor.execute("echo some output");
+		executor.execute("true");
+	}
+
+	@Test
+	public void executeFails() throws Exception {
+		try {
+			executor.execute("echo some output; false");
+			fail("Expected exception");
+		} catch (SystemClockException e) {
+			assertThat("Unexpected message", e.getMessage(),
+					containsString("Exit value 1"));
+			assertThat("Unexpected message", e.getMessage(),
+					containsString("some output"));
+		}
+		// Shell is still usable
+		executor.execute("true");
+	}
+
+	/** A new shell is started after the last one terminated. */
+	@Test
+	public void executeAfterExit() throws Exception {
+		try {
+			executor.execute("exit 0");
+			fail("Expected exception");
+		} catch (SystemClockException e) {
+			assertThat("Unexpected message", e.getMessage(),
+					containsString("Shell terminated"));
+		}
+		executor.execute("true");
+	}
+
+	/**
+	 * A command that reads from stdin consumes the exit status command. The
+	 * shell is killed instead of waiting forever.
+	 */
+	@Test(timeout = 10000)
+	public void executeTimeout() throws Exception {
+		executor = new ShellCommandExecutor(new LinuxClockPlatform(), 500);
+		try {
+			executor.execute("read input");
+			fail("Expected exception");
+		} catch (SystemClockException e) {
+			assertThat("Unexpected message", e.getMessage(),
+					containsString("No exit status within 500 ms"));
+		}
+		executor.execute("true");
+	}
+
+	@Test
+	public void parseExitStatus() {
+		assertEquals("Unexpected status", Integer.valueOf(3),
+				ShellCommandExecutor.parseExitStatus("C:\\>"
+						+ ShellCommandExecutor.EXIT_STATUS_MARKER + " 3"));
+		assertNull("Unexpected status",
+				ShellCommandExecutor.parseExitStatus("echo "
+						+ ShellCommandExecutor.EXIT_STATUS_MARKER
+						+ " %errorlevel%"));
+		assertNull("Unexpected status",
+				ShellCommandExecutor.parseExitStatus("output"));
+	}
+}
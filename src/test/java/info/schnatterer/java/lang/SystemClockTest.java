@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.lang;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import info.schnatterer.java.lang.SystemClock.SystemClockException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SystemClockTest {
+
+	private List<String> commands = new ArrayList<>();
+
+	private SystemClock clock = new SystemClock(new LinuxClockPlatform(),
+			commands::add);
+
+	@Test
+	public void platformOfOs() throws Exception {
+		assertTrue("Unexpected platform on Windows",
+				ClockPlatform.of("Windows 10") instanceof WindowsClockPlatform);
+		assertTrue("Unexpected platform on Linux",
+				ClockPlatform.of("Linux") instanceof LinuxClockPlatform);
+	}
+
+	@Test
+	public void platformOfUnsupportedOs() {
+		try {
+			ClockPlatform.of("Mac OS X");
+			fail("Platform for macOS");
+		} catch (SystemClockException e) {
+			assertEquals("Unexpected message",
+					"Setting the system clock is not supported on Mac OS X",
+					e.getMessage());
+		}
+	}
+
+	@Test
+	public void setCoalescesSameMinute() throws Exception {
+		clock.set(new Date(0));
+		clock.set(new Date(59 * 1000));
+		clock.set(new Date(60 * 1000));
+
+		assertEquals("Unexpected commands: " + commands, 2, commands.size());
+		assertEquals("Unexpected set count", 2, clock.getSetCount());
+	}
+
+	@Test
+	public void setAfterResync() throws Exception {
+		clock.set(new Date(0));
+		clock.resync();
+		clock.set(new Date(0));
+
+		assertEquals("Unexpected commands: " + commands, 3, commands.size());
+		assertEquals("Unexpected resync command", "hwclock --hctosys",
+				commands.get(1));
+		assertEquals("Unexpected set count", 2, clock.getSetCount());
+	}
+
+	@Test
+	public void setAfterFailure() throws Exception {
+		SystemClock failingClock = new SystemClock(new WindowsClockPlatform(),
+				new CommandExecutor() {
+					private boolean failed = false;
+
+					@Override
+					public void execute(String command)
+							throws SystemClockException {
+						commands.add(command);
+						if (!failed) {
+							failed = true;
+							throw new SystemClockException("failed");
+						}
+					}
+				});
+		try {
+			failingClock.set(new Date(0));
+		} catch (SystemClockException e) {
+			// Expected
+		}
+		failingClock.set(new Date(0));
+
+		assertEquals("Unexpected commands: " + commands, 2, commands.size());
+		assertThat("Unexpected command", commands.get(1), startsWith("date "));
+		assertEquals("Unexpected set count", 1, failingClock.getSetCount());
+	}
+
+	/** Restores the time the clock was created plus the elapsed time. */
+	@Test
+	public void restore() throws Exception {
+		long before = TimeUnit.MILLISECONDS.toSeconds(System
+				.currentTimeMillis());
+		clock.set(new Date(0));
+		clock.restore();
+		long after = TimeUnit.MILLISECONDS.toSeconds(System
+				.currentTimeMillis());
+
+		assertEquals("Unexpected commands: " + commands, 2, commands.size());
+		assertThat("Unexpected command", commands.get(1),
+				startsWith("date -s @"));
+		long restored = Long.parseLong(commands.get(1).substring(
+				"date -s @".length()));
+		assertTrue("Restored " + restored + ", expected between " + before
+				+ " and " + after, restored >= before && restored <= after);
+	}
+}
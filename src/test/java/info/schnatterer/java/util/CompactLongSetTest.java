@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CompactLongSetTest {
+
+	/** Duplicates are removed, all values are found. */
+	@Test
+	public void build() {
+		CompactLongSet.Builder builder = new CompactLongSet.Builder();
+		for (long i = 100; i > -100; i--) {
+			builder.add(i * 7).add(i * 7);
+		}
+		CompactLongSet set = builder.build();
+
+		assertEquals("Unexpected size", 200, set.size());
+		assertTrue("Value not found", set.contains(-693));
+		assertTrue("Value not found", set.contains(700));
+		assertFalse("Unexpected value", set.contains(1));
+	}
+
+	/** Empty set. */
+	@Test
+	public void empty() {
+		CompactLongSet set = new CompactLongSet.Builder().build();
+
+		assertEquals("Unexpected size", 0, set.size());
+		assertFalse("Unexpected value", set.contains(0));
+	}
+}
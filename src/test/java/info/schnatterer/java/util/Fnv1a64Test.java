@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class Fnv1a64Test {
+
+	/** Test vectors of the reference implementation. */
+	@Test
+	public void hash() {
+		assertEquals("Unexpected hash of empty string", Fnv1a64.OFFSET_BASIS,
+				Fnv1a64.hash(""));
+		assertEquals("Unexpected hash of \"a\"", 0xaf63dc4c8601ec8cL,
+				Fnv1a64.hash("a"));
+		assertEquals("Unexpected hash of \"foobar\"", 0x85944171f73967e8L,
+				Fnv1a64.hash("foobar"));
+	}
+
+	/** Continuing a hash equals hashing the concatenation. */
+	@Test
+	public void continueHash() {
+		assertEquals("Unexpected continued hash", Fnv1a64.hash("foobar"),
+				Fnv1a64.hash(Fnv1a64.hash("foo"), "bar"));
+	}
+
+	/** Bytes hash like the characters of an ASCII string. */
+	@Test
+	public void hashBytes() {
+		ByteBuffer bytes = ByteBuffer.wrap("foobar"
+				.getBytes(StandardCharsets.US_ASCII));
+		assertEquals("Unexpected hash of bytes", 0x85944171f73967e8L,
+				Fnv1a64.hash(Fnv1a64.OFFSET_BASIS, bytes));
+		assertEquals("Bytes not consumed", 0, bytes.remaining());
+	}
+}
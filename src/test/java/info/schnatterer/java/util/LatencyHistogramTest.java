@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	private LatencyHistogram histogram = new LatencyHistogram();
+
+	@Test
+	public void percentiles() {
+		for (long i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000);
+		}
+
+		assertEquals("Unexpected count", 1000, histogram.getCount());
+		assertEquals("Unexpected max", 1000000, histogram.getMax());
+		assertWithinPrecision(500000, histogram.getValueAtPercentile(50));
+		assertWithinPrecision(990000, histogram.getValueAtPercentile(99));
+		assertEquals("Unexpected p100", 1000000,
+				histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void smallValuesExact() {
+		histogram.record(-1);
+		histogram.record(3);
+		histogram.record(63);
+
+		assertEquals("Unexpected p0", 0, histogram.getValueAtPercentile(0));
+		assertEquals("Unexpected p50", 3, histogram.getValueAtPercentile(50));
+		assertEquals("Unexpected p100", 63,
+				histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void empty() {
+		assertEquals("Unexpected count", 0, histogram.getCount());
+		assertEquals("Unexpected p50", 0, histogram.getValueAtPercentile(50));
+	}
+
+	/** Each value lies within the bucket its index points to. */
+	@Test
+	public void buckets() {
+		for (long value : new long[] { 0, 63, 64, 65, 127, 128, 1000,
+				123456789, Long.MAX_VALUE }) {
+			int index = LatencyHistogram.bucketIndex(value);
+			assertTrue("Value " + value + " above bucket " + index,
+					value <= LatencyHistogram.highestValueInBucket(index));
+			assertTrue("Value " + value + " below bucket " + index,
+					index == 0
+							|| value > LatencyHistogram
+									.highestValueInBucket(index - 1));
+		}
+	}
+
+	private static void assertWithinPrecision(long expected, long actual) {
+		assertTrue("Expected about " + expected + ", but was " + actual,
+				Math.abs(expected - actual) <= expected / 32);
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PathTrieTest {
+
+	/** Paths are read back as they were added, prefixes are shared. */
+	@Test
+	public void add() {
+		PathTrie trie = new PathTrie('/');
+		int album = trie.add("file:///D:/Music/Artist/Album/");
+		int otherAlbum = trie.add("file:///D:/Music/Artist/Other Album/");
+		int file = trie.add("file:///D:/Music/Artist/Album/01 Track.mp3");
+
+		assertEquals("Unexpected path", "file:///D:/Music/Artist/Album/",
+				trie.get(album));
+		assertEquals("Unexpected path", "file:///D:/Music/Artist/Other Album/",
+				trie.get(otherAlbum));
+		assertEquals("Unexpected path",
+				"file:///D:/Music/Artist/Album/01 Track.mp3", trie.get(file));
+		assertEquals("Same path added twice", album,
+				trie.add("file:///D:/Music/Artist/Album/"));
+		// Root, "file:/", "/", "/", "D:/", "Music/", "Artist/", "Album/",
+		// "Other Album/", "01 Track.mp3"
+		assertEquals("Unexpected number of nodes", 10, trie.size());
+		// "/" is stored once
+		assertEquals("Unexpected number of segments", 8, trie.getSegments());
+	}
+
+	/** A trailing separator makes a difference, the empty path is the root. */
+	@Test
+	public void edgeCases() {
+		PathTrie trie = new PathTrie('\\');
+		assertEquals("Unexpected node of empty path", PathTrie.ROOT,
+				trie.add(""));
+		assertEquals("Unexpected empty path", "", trie.get(PathTrie.ROOT));
+		int directory = trie.add("C:\\music\\a\\");
+		int file = trie.add("C:\\music\\a");
+		assertNotEquals("Unexpected node", directory, file);
+		assertEquals("Unexpected path", "C:\\music\\a", trie.get(file));
+		assertEquals("Unexpected path", "no separator",
+				trie.get(trie.add("no separator")));
+		assertEquals("Unexpected path", "prefix C:\\music\\a\\",
+				trie.appendTo(new StringBuilder("prefix "), directory)
+						.toString());
+	}
+
+	/** Many paths, so the hash table of the children is resized. */
+	@Test
+	public void grow() {
+		PathTrie trie = new PathTrie('/');
+		List<Integer> nodes = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			nodes.add(trie.add("/music/" + (i % 50) + "/" + i + "/"));
+		}
+		for (int i = 0; i < 5000; i++) {
+			assertEquals("Unexpected path", "/music/" + (i % 50) + "/" + i
+					+ "/", trie.get(nodes.get(i)));
+			assertEquals("Unexpected node", nodes.get(i).intValue(),
+					trie.add("/music/" + (i % 50) + "/" + i + "/"));
+		}
+		// Root, "/", "music/", 50 directories, 5000 subdirectories
+		assertEquals("Unexpected number of nodes", 5053, trie.size());
+	}
+
+	/** The segments are counted as well as the nodes. */
+	@Test
+	public void bytes() {
+		PathTrie trie = new PathTrie('/');
+		long empty = trie.getBytes();
+		trie.add("/music/");
+		long bytes = trie.getBytes();
+		assertTrue("Segments not counted: " + (bytes - empty),
+				bytes - empty >= 2 * (24 + 32 + 16));
+		trie.add("/music/");
+		assertEquals("Same path counted twice", bytes, trie.getBytes());
+	}
+
+	/** Only nodes returned by the trie are valid. */
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void unknownNode() {
+		new PathTrie('/').get(1);
+	}
+}
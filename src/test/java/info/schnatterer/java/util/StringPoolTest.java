@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StringPoolTest {
+
+	/** Each distinct string is stored once, ids are assigned in order. */
+	@Test
+	public void intern() {
+		StringPool pool = new StringPool();
+		String artist = "Artist";
+		assertEquals("Unexpected id", 0, pool.intern(artist));
+		assertEquals("Unexpected id", 1, pool.intern("Other"));
+		assertEquals("Unexpected id of equal string", 0,
+				pool.intern(new String("Artist")));
+		assertEquals("Unexpected size", 2, pool.size());
+		assertSame("Unexpected string", artist, pool.get(0));
+		assertEquals("Unexpected string", "Other", pool.get(1));
+	}
+
+	/** The pool grows beyond its initial capacity. */
+	@Test
+	public void grow() {
+		StringPool pool = new StringPool();
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("Unexpected id", i, pool.intern("value " + i));
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("Unexpected id", i, pool.intern("value " + i));
+			assertEquals("Unexpected string", "value " + i, pool.get(i));
+		}
+		assertEquals("Unexpected size", 1000, pool.size());
+	}
+
+	/** The strings and the map are counted, not just the ids. */
+	@Test
+	public void bytes() {
+		StringPool pool = new StringPool();
+		long empty = pool.getBytes();
+		pool.intern("0123456789");
+		long oneString = pool.getBytes();
+		// Object, 10 chars, map entry, boxed id
+		assertTrue("String not counted: " + (oneString - empty),
+				oneString - empty >= 24 + 20 + 32 + 16);
+		pool.intern("0123456789");
+		assertEquals("Same string counted twice", oneString, pool.getBytes());
+	}
+
+	/** Only ids returned by the pool are valid. */
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void unknownId() {
+		StringPool pool = new StringPool();
+		pool.intern("a");
+		pool.get(1);
+	}
+}
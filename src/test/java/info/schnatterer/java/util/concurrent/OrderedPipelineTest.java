@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.java.util.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class OrderedPipelineTest {
+
+	/**
+	 * Results are returned in the order of the source, even if elements take
+	 * different amounts of time.
+	 */
+	@Test
+	public void order() {
+		List<Integer> source = IntStream.range(0, 200).boxed()
+				.collect(Collectors.toList());
+		Random random = new Random(42);
+		List<Integer> actual = new ArrayList<>();
+
+		try (OrderedPipeline<Integer, Integer> pipeline = new OrderedPipeline<>(
+				source.iterator(), i -> {
+					sleep(random.nextInt(3));
+					return i * 2;
+				}, 4, 8)) {
+			pipeline.forEachRemaining(actual::add);
+			assertFalse("Pipeline not exhausted", pipeline.hasNext());
+		}
+
+		assertEquals("Unexpected results",
+				source.stream().map(i -> i * 2).collect(Collectors.toList()),
+				actual);
+	}
+
+	/** Exceptions thrown by the stage are passed on to the consumer. */
+	@Test(expected = IllegalStateException.class)
+	public void stageException() {
+		try (OrderedPipeline<Integer, Integer> pipeline = new OrderedPipeline<>(
+				IntStream.range(0, 10).iterator(), i -> {
+					if (i == 5) {
+						throw new IllegalStateException("Mocked exception");
+					}
+					return i;
+				}, 2, 2)) {
+			pipeline.forEachRemaining(i -> {
+			});
+		}
+	}
+
+	/** Exceptions thrown by the source are passed on to the consumer. */
+	@Test(expected = IllegalStateException.class)
+	public void sourceException() {
+		Iterator<Integer> source = new Iterator<Integer>() {
+			@Override
+			public boolean hasNext() {
+				return true;
+			}
+
+			@Override
+			public Integer next() {
+				throw new IllegalStateException("Mocked exception");
+			}
+		};
+		try (OrderedPipeline<Integer, Integer> pipeline = new OrderedPipeline<>(
+				source, i -> i, 1, 1)) {
+			pipeline.next();
+		}
+	}
+
+	/**
+	 * Errors thrown by the source are passed on to the consumer, instead of
+	 * leaving it waiting forever.
+	 */
+	@Test(expected = OutOfMemoryError.class, timeout = 10000)
+	public void sourceError() {
+		Iterator<Integer> source = new Iterator<Integer>() {
+			@Override
+			public boolean hasNext() {
+				return true;
+			}
+
+			@Override
+			public Integer next() {
+				throw new OutOfMemoryError("Mocked error");
+			}
+		};
+		try (OrderedPipeline<Integer, Integer> pipeline = new OrderedPipeline<>(
+				source, i -> i, 1, 1)) {
+			pipeline.forEachRemaining(i -> {
+			});
+		}
+	}
+
+	/** Invalid parameters. */
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidThreads() {
+		new OrderedPipeline<Integer, Integer>(IntStream.range(0, 1).iterator(),
+				i -> i, 0, 1);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -16,14 +16,19 @@
 package info.schnatterer.songbird2itunes;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import info.schnatterer.itunes4j.exception.ITunesException;
+import info.schnatterer.songbird2itunes.migration.CommandConverter;
+import info.schnatterer.songbird2itunes.migration.DuplicateMergePolicy;
+import info.schnatterer.songbird2itunes.migration.PlaylistFormat;
 import info.schnatterer.songbird2itunes.migration.Songbird2itunesMigration;
 import info.schnatterer.songbird2itunes.migration.Songbird2itunesMigration.Statistics;
 
@@ -80,6 +85,163 @@ public class Songbird2itunesAppTest {
 				new LinkedList<String>(), false);
 	}
 
+	/**
+	 * Asserts that parameters that tune the migration are passed properly.
+	 * 
+	 * @throws ITunesException
+	 * @throws SQLException
+	 */
+	@Test
+	public void tuningParams() throws SQLException, ITunesException {
+		when(
+				s2iMock.migrate(anyString(), anyInt(), anyBoolean(),
+						anyListOf(String.class), anyBoolean())).thenReturn(
+				new Statistics());
+		assertEquals("Running with tuning parameters returned unexpected result",
+				0, classUnderTest.run(Commandline
+						.translateCommandline("-t 3 --queue-depth 42 --fetch-size 500 --batch-size 8 --progress 10 path")));
+		verify(s2iMock).setThreads(3);
+		verify(s2iMock).setQueueDepth(42);
+		verify(s2iMock).setFetchSize(500);
+		verify(s2iMock).setBatchSize(8);
+		verify(s2iMock).setProgressInterval(10);
+	}
+
+	/**
+	 * Asserts that a dry run is passed to the migration and does not ask for
+	 * confirming the date added workaround.
+	 * 
+	 * @throws ITunesException
+	 * @throws SQLException
+	 */
+	@Test
+	public void dryRun() throws SQLException, ITunesException {
+		when(
+				s2iMock.migrate(anyString(), anyInt(), anyBoolean(),
+						anyListOf(String.class), anyBoolean())).thenReturn(
+				new Statistics());
+		assertEquals("Dry run returned unexpected result", 0,
+				classUnderTest.run(Commandline
+						.translateCommandline("--dry-run -d --plan p path")));
+		verify(s2iMock).setDryRun(true);
+		verify(s2iMock).setPlanFile("p");
+		verify(s2iMock).migrate("path", 50, true, new LinkedList<>(), false);
+	}
+
+	/**
+	 * Asserts that the delta sync parameters are passed to the migration.
+	 * 
+	 * @throws ITunesException
+	 * @throws SQLException
+	 */
+	@Test
+	public void delta() throws SQLException, ITunesException {
+		when(
+				s2iMock.migrate(anyString(), anyInt(), anyBoolean(),
+						anyListOf(String.class), anyBoolean())).thenReturn(
+				new Statistics());
+		assertEquals("Delta sync returned unexpected result", 0,
+				classUnderTest.run(Commandline
+						.translateCommandline("--delta --state s path")));
+		verify(s2iMock).setDelta(true);
+		verify(s2iMock).setStateFile("s");
+	}
+
+	/**
+	 * Asserts that a library XML file is passed to the migration and does not
+	 * ask for confirming the date added workaround.
+	 * 
+	 * @throws ITunesException
+	 * @throws SQLException
+	 */
+	@Test
+	public void libraryXml() throws SQLException, ITunesException {
+		when(
+				s2iMock.migrate(anyString(), anyInt(), anyBoolean(),
+						anyListOf(String.class), anyBoolean())).thenReturn(
+				new Statistics());
+		assertEquals("Library XML returned unexpected result", 0,
+				classUnderTest.run(Commandline
+						.translateCommandline("--library-xml l.xml -d path")));
+		verify(s2iMock).setLibraryXmlFile("l.xml");
+		verify(s2iMock).migrate("path", 50, true, new LinkedList<>(), false);
+	}
+
+	/**
+	 * Asserts that the playlist export is passed to the migration and does
+	 * not ask for confirming the date added workaround.
+	 * 
+	 * @throws ITunesException
+	 * @throws SQLException
+	 */
+	@Test
+	public void exportPlaylists() throws SQLException, ITunesException {
+		when(
+				s2iMock.migrate(anyString(), anyInt(), anyBoolean(),
+						anyListOf(String.class), anyBoolean())).thenReturn(
+				new Statistics());
+		assertEquals("Exporting playlists returned unexpected result", 0,
+				classUnderTest.run(Commandline
+						.translateCommandline("--export-playlists dir --export-format XSPF -d path")));
+		verify(s2iMock).setPlaylistExport("dir", PlaylistFormat.XSPF);
+		verify(s2iMock).migrate("path", 50, true, new LinkedList<>(), false);
+	}
+
+	/**
+	 * Asserts that deduplication is passed to the migration.
+	 * 
+	 * @throws ITunesException
+	 * @throws SQLException
+	 */
+	@Test
+	public void dedup() throws SQLException, ITunesException {
+		when(
+				s2iMock.migrate(anyString(), anyInt(), anyBoolean(),
+						anyListOf(String.class), anyBoolean())).thenReturn(
+				new Statistics());
+		assertEquals("Deduplication returned unexpected result", 0,
+				classUnderTest.run(Commandline
+						.translateCommandline("--dedup --dedup-merge canonical path")));
+		verify(s2iMock).setDeduplicate(true);
+		verify(s2iMock).setDuplicateMergePolicy(DuplicateMergePolicy.CANONICAL);
+	}
+
+	/**
+	 * Asserts that the header check is passed to the migration.
+	 * 
+	 * @throws ITunesException
+	 * @throws SQLException
+	 */
+	@Test
+	public void checkHeaders() throws SQLException, ITunesException {
+		when(
+				s2iMock.migrate(anyString(), anyInt(), anyBoolean(),
+						anyListOf(String.class), anyBoolean())).thenReturn(
+				new Statistics());
+		assertEquals("Header check returned unexpected result", 0,
+				classUnderTest.run(Commandline
+						.translateCommandline("--check-headers path")));
+		verify(s2iMock).setCheckHeaders(true);
+	}
+
+	/**
+	 * Asserts that the converter is passed to the migration.
+	 * 
+	 * @throws ITunesException
+	 * @throws SQLException
+	 */
+	@Test
+	public void convert() throws SQLException, ITunesException {
+		when(
+				s2iMock.migrate(anyString(), anyInt(), anyBoolean(),
+						anyListOf(String.class), anyBoolean())).thenReturn(
+				new Statistics());
+		assertEquals("Converting returned unexpected result", 0,
+				classUnderTest.run(Commandline
+						.translateCommandline("--convert-command \"ffmpeg -i {input} {output}\" --convert-dir out path")));
+		verify(s2iMock).setConverter(any(CommandConverter.class), eq("out"));
+	}
+
 	/**
 	 * Asserts proper return code when an exception is thrown during parameter
 	 * handling.
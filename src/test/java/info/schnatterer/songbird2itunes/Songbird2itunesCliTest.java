@@ -18,6 +18,12 @@ package info.schnatterer.songbird2itunes;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import info.schnatterer.songbird2itunes.migration.CommandConverter;
+import info.schnatterer.songbird2itunes.migration.DuplicateMergePolicy;
+import info.schnatterer.songbird2itunes.migration.PlaylistFormat;
+import info.schnatterer.songbird2itunes.migration.Songbird2itunesMigration;
 
 import org.apache.tools.ant.types.Commandline;
 import org.junit.Test;
@@ -38,6 +44,8 @@ public class Songbird2itunesCliTest {
 				DEFAULT_RETRIES, args.getRetries());
 		assertFalse("Unexpected default for parameter isDateAddedWorkaround",
 				args.isDateAddedWorkaround());
+		assertFalse("Unexpected default for parameter isResume",
+				args.isResume());
 	}
 
 	/** Calls CLI with multiple main parameters. */
@@ -53,6 +61,122 @@ public class Songbird2itunesCliTest {
 				args.isDateAddedWorkaround());
 	}
 
+	/** Calls CLI with parameters that tune the migration. */
+	@Test
+	public void tuning() {
+		Songbird2itunesCli args = parseArgs("--threads 3 --queue-depth 42 --fetch-size 500 --batch-size 8 --progress 10 --metrics m.csv path");
+		assertEquals("Unexpected parameter threads", Integer.valueOf(3),
+				args.getThreads());
+		assertEquals("Unexpected parameter queueDepth", Integer.valueOf(42),
+				args.getQueueDepth());
+		assertEquals("Unexpected parameter fetchSize", Integer.valueOf(500),
+				args.getFetchSize());
+		assertEquals("Unexpected parameter batchSize", Integer.valueOf(8),
+				args.getBatchSize());
+		assertEquals("Unexpected parameter progress", Integer.valueOf(10),
+				args.getProgress());
+		assertEquals("Unexpected parameter metrics", "m.csv",
+				args.getMetrics());
+	}
+
+	/** Calls CLI with parameters for resuming. */
+	@Test
+	public void resume() {
+		Songbird2itunesCli args = parseArgs("--resume --journal j path");
+		assertTrue("Unexpected parameter isResume", args.isResume());
+		assertEquals("Unexpected parameter journal", "j", args.getJournal());
+	}
+
+	/** Calls CLI with parameters for a dry run. */
+	@Test
+	public void dryRun() {
+		Songbird2itunesCli args = parseArgs("--dry-run --plan p path");
+		assertTrue("Unexpected parameter isDryRun", args.isDryRun());
+		assertEquals("Unexpected parameter plan", "p", args.getPlan());
+		args = parseArgs("path");
+		assertFalse("Unexpected parameter isDryRun", args.isDryRun());
+		assertNull("Unexpected parameter plan", args.getPlan());
+	}
+
+	/** Calls CLI with delta sync parameters. */
+	@Test
+	public void delta() {
+		Songbird2itunesCli args = parseArgs("--delta --state s path");
+		assertTrue("Unexpected parameter isDelta", args.isDelta());
+		assertEquals("Unexpected parameter state", "s", args.getState());
+		args = parseArgs("path");
+		assertFalse("Unexpected parameter isDelta", args.isDelta());
+		assertEquals("Unexpected parameter state",
+				Songbird2itunesMigration.DEFAULT_STATE_FILE, args.getState());
+	}
+
+	/** Calls CLI with a library XML file. */
+	@Test
+	public void libraryXml() {
+		assertEquals("Unexpected parameter libraryXml", "l.xml", parseArgs(
+				"--library-xml l.xml path").getLibraryXml());
+		assertNull("Unexpected parameter libraryXml", parseArgs("path")
+				.getLibraryXml());
+	}
+
+	/** Calls CLI with a directory to export the playlists to. */
+	@Test
+	public void exportPlaylists() {
+		Songbird2itunesCli args = parseArgs("--export-playlists dir "
+				+ "--export-format xspf path");
+		assertEquals("Unexpected parameter exportPlaylists", "dir",
+				args.getExportPlaylists());
+		assertEquals("Unexpected parameter exportFormat", PlaylistFormat.XSPF,
+				args.getExportFormat());
+		args = parseArgs("path");
+		assertNull("Unexpected parameter exportPlaylists",
+				args.getExportPlaylists());
+		assertEquals("Unexpected parameter exportFormat", PlaylistFormat.M3U8,
+				args.getExportFormat());
+	}
+
+	/** Calls CLI with deduplication. */
+	@Test
+	public void dedup() {
+		Songbird2itunesCli args = parseArgs("--dedup --dedup-merge max path");
+		assertTrue("Unexpected parameter dedup", args.isDedup());
+		assertEquals("Unexpected parameter dedupMerge",
+				DuplicateMergePolicy.MAX, args.getDedupMerge());
+		args = parseArgs("path");
+		assertFalse("Unexpected parameter dedup", args.isDedup());
+		assertEquals("Unexpected parameter dedupMerge",
+				DuplicateMergePolicy.SUM, args.getDedupMerge());
+	}
+
+	/** Calls CLI with header check. */
+	@Test
+	public void checkHeaders() {
+		assertTrue("Unexpected parameter checkHeaders",
+				parseArgs("--check-headers path").isCheckHeaders());
+		assertFalse("Unexpected parameter checkHeaders", parseArgs("path")
+				.isCheckHeaders());
+	}
+
+	/** Calls CLI with a converter. */
+	@Test
+	public void convert() {
+		Songbird2itunesCli args = parseArgs("--convert-command \"ffmpeg -i {input} {output}\" --convert-format mp3 --convert-dir out path");
+		assertEquals("Unexpected parameter convertCommand",
+				"ffmpeg -i {input} {output}", args.getConvertCommand());
+		assertEquals("Unexpected parameter convertFormat", "mp3",
+				args.getConvertFormat());
+		assertEquals("Unexpected parameter convertDir", "out",
+				args.getConvertDir());
+		args = parseArgs("path");
+		assertNull("Unexpected parameter convertCommand",
+				args.getConvertCommand());
+		assertEquals("Unexpected parameter convertFormat",
+				CommandConverter.DEFAULT_EXTENSION, args.getConvertFormat());
+		assertEquals("Unexpected parameter convertDir",
+				Songbird2itunesMigration.DEFAULT_CONVERT_DIRECTORY,
+				args.getConvertDir());
+	}
+
 	/** Calls CLI with --help parameter. */
 	@Test
 	public void help() {
@@ -66,6 +190,35 @@ public class Songbird2itunesCliTest {
 		parseArgs("-r " + DEFAULT_RETRIES);
 	}
 
+	/** Threads, queue depth and batch size must be greater than 0. */
+	@Test
+	public void notPositive() {
+		for (String args : new String[] { "--threads 0 path",
+				"--queue-depth -1 path", "--batch-size 0 path" }) {
+			try {
+				parseArgs(args);
+				fail("Accepted invalid parameter: " + args);
+			} catch (ParameterException e) {
+				assertTrue("Unexpected message: " + e.getMessage(), e
+						.getMessage().contains("greater than 0"));
+			}
+		}
+	}
+
+	/** The fetch size must not be negative, 0 is the driver's default. */
+	@Test
+	public void fetchSizeNegative() {
+		assertEquals("Unexpected parameter fetch size", Integer.valueOf(0),
+				parseArgs("--fetch-size 0 path").getFetchSize());
+		try {
+			parseArgs("--fetch-size -1 path");
+			fail("Accepted negative fetch size");
+		} catch (ParameterException e) {
+			assertTrue("Unexpected message: " + e.getMessage(), e
+					.getMessage().contains("0 or greater"));
+		}
+	}
+
 	/**
 	 * Convenience method that takes just the parameters passed to CLI splits
 	 * them command-line-style (to {@link String} array), hands them to
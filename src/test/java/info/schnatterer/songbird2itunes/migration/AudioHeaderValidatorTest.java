@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import info.schnatterer.songbird2itunes.migration.AudioHeaderValidator.Verdict;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AudioHeaderValidatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Formats supported by iTunes are recognized by their magic bytes. */
+	@Test
+	public void classifySupported() {
+		assertEquals("Unexpected verdict for ID3", Verdict.SUPPORTED,
+				classify("a.mp3", "ID3\u0004\u0000\u0000"));
+		assertEquals("Unexpected verdict for MPEG frame", Verdict.SUPPORTED,
+				classify("a.mp3", new byte[] { (byte) 0xFF, (byte) 0xFB,
+						(byte) 0x90, 0x00 }));
+		assertEquals("Unexpected verdict for ADTS", Verdict.SUPPORTED,
+				classify("a.aac", new byte[] { (byte) 0xFF, (byte) 0xF1,
+						0x50, (byte) 0x80 }));
+		assertEquals("Unexpected verdict for M4A", Verdict.SUPPORTED,
+				classify("a.m4a", "\u0000\u0000\u0000 ftypM4A "));
+		assertEquals("Unexpected verdict for WAV", Verdict.SUPPORTED,
+				classify("a.wav", "RIFF$\u0000\u0000\u0000WAVE"));
+		assertEquals("Unexpected verdict for AIFF", Verdict.SUPPORTED,
+				classify("a.aiff", "FORM\u0000\u0000\u0000$AIFF"));
+	}
+
+	/** Formats not supported by iTunes are rejected. */
+	@Test
+	public void classifyUnsupported() {
+		assertEquals("Unexpected verdict for FLAC", Verdict.UNSUPPORTED,
+				classify("a.flac", "fLaC\u0000\u0000\u0000\""));
+		assertEquals("Unexpected verdict for Ogg", Verdict.UNSUPPORTED,
+				classify("a.ogg", "OggS\u0000\u0002"));
+		assertEquals("Unexpected verdict for APE", Verdict.UNSUPPORTED,
+				classify("a.ape", "MAC \u0096\u000f"));
+		assertEquals("Unexpected verdict for WMA", Verdict.UNSUPPORTED,
+				classify("a.wma", new byte[] { 0x30, 0x26, (byte) 0xB2, 0x75,
+						(byte) 0x8E, 0x66, (byte) 0xCF, 0x11, 0x00 }));
+		assertEquals("Unexpected verdict for AVI", Verdict.UNSUPPORTED,
+				classify("a.wav", "RIFF$\u0000\u0000\u0000AVI "));
+		// The extension does not matter, the content does
+		assertEquals("Unexpected verdict for renamed FLAC",
+				Verdict.UNSUPPORTED, classify("a.mp3", "fLaC\u0000"));
+	}
+
+	/** Files without a header or not matching their container are corrupt. */
+	@Test
+	public void classifyCorrupt() {
+		assertEquals("Unexpected verdict for empty file", Verdict.CORRUPT,
+				classify("a.mp3", ""));
+		assertEquals("Unexpected verdict for truncated WAV",
+				Verdict.CORRUPT, classify("a.wav", "RIFF$"));
+		assertEquals("Unexpected verdict for M4A without header",
+				Verdict.CORRUPT, classify("a.M4A", "garbage garbage"));
+		// MP3 might start with junk, left to iTunes
+		assertEquals("Unexpected verdict for MP3 without header",
+				Verdict.UNKNOWN, classify("a.mp3", "garbage garbage"));
+	}
+
+	/** Reads only the header of the file and counts rejected files. */
+	@Test
+	public void validate() throws Exception {
+		AudioHeaderValidator validator = new AudioHeaderValidator();
+		assertEquals("Unexpected verdict", Verdict.SUPPORTED,
+				validator.validate(file("a.mp3", "ID3" + repeat('x', 10000))));
+		assertEquals("Unexpected verdict", Verdict.UNSUPPORTED,
+				validator.validate(file("b.flac", "fLaC" + repeat('x', 10))));
+		assertEquals("Unexpected verdict", Verdict.CORRUPT,
+				validator.validate(file("c.mp3", "")));
+		assertEquals("Unexpected verdict for missing file", Verdict.CORRUPT,
+				validator.validate(new File(folder.getRoot(), "missing.mp3")
+						.toPath()));
+
+		assertEquals("Unexpected number of unsupported files", 1,
+				validator.getUnsupported());
+		assertEquals("Unexpected number of corrupt files", 2,
+				validator.getCorrupt());
+	}
+
+	private Path file(String name, String content)
+			throws Exception {
+		File file = folder.newFile(name);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+		return file.toPath();
+	}
+
+	private static Verdict classify(String fileName, String header) {
+		return classify(fileName,
+				header.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private static Verdict classify(String fileName, byte[] header) {
+		return AudioHeaderValidator.classify(fileName, ByteBuffer.wrap(header));
+	}
+
+	private static String repeat(char c, int times) {
+		StringBuilder builder = new StringBuilder(times);
+		for (int i = 0; i < times; i++) {
+			builder.append(c);
+		}
+		return builder.toString();
+	}
+}
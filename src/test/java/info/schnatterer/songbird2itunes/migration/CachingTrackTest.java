@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import info.schnatterer.itunes4j.entity.Rating;
+import info.schnatterer.itunes4j.exception.ITunesException;
+import info.schnatterer.itunes4j.exception.NotModifiableException;
+import info.schnatterer.songbird2itunes.migration.MigrationTarget.Track;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+public class CachingTrackTest {
+
+	private final Track track = mock(Track.class);
+	private final CachingTrack.Savings savings = new CachingTrack.Savings();
+
+	/** Writing the defaults to a track that was just added is elided. */
+	@Test
+	public void addedElidesDefaults() throws ITunesException {
+		CachingTrack cachingTrack = CachingTrack.added(track, savings);
+
+		assertFalse("Play count written", cachingTrack.setPlayedCount(0));
+		assertFalse("Rating written", cachingTrack.setRating(Rating.STARS_0));
+		assertFalse("Skip count written", cachingTrack.setSkippedCount(0));
+		assertTrue("Play count not written", cachingTrack.setPlayedCount(3));
+
+		verify(track, never()).setPlayedCount(0);
+		verify(track, never()).setRating(Rating.STARS_0);
+		verify(track, never()).setSkippedCount(0);
+		verify(track).setPlayedCount(3);
+		assertEquals("Unexpected writes saved", 3, savings.getWrites());
+	}
+
+	/** Values are read once and written values are not read at all. */
+	@Test
+	public void readsMemoized() throws ITunesException {
+		when(track.getArtist()).thenReturn("artist");
+		CachingTrack cachingTrack = CachingTrack.existing(track, savings);
+		Date date = new Date(1000);
+
+		assertEquals("Unexpected artist", "artist", cachingTrack.getArtist());
+		assertEquals("Unexpected artist", "artist", cachingTrack.getArtist());
+		cachingTrack.setPlayedDate(date);
+		assertEquals("Unexpected played date", date,
+				cachingTrack.getPlayedDate());
+
+		verify(track, times(1)).getArtist();
+		verify(track, never()).getPlayedDate();
+		assertEquals("Unexpected reads saved", 2, savings.getReads());
+	}
+
+	/** The values of an existing track are unknown, so all writes are made. */
+	@Test
+	public void existingWritesUnknown() throws ITunesException {
+		CachingTrack cachingTrack = CachingTrack.existing(track, savings);
+
+		assertTrue("Play count not written", cachingTrack.setPlayedCount(0));
+		assertFalse("Same play count written again",
+				cachingTrack.setPlayedCount(0));
+
+		verify(track, times(1)).setPlayedCount(0);
+		assertEquals("Unexpected writes saved", 1, savings.getWrites());
+	}
+
+	/** A write that iTunes refused is made again. */
+	@Test
+	public void failedWriteNotRemembered() throws ITunesException {
+		doThrow(new NotModifiableException("Mocked exception")).doNothing()
+				.when(track).setSkippedCount(2);
+		CachingTrack cachingTrack = CachingTrack.added(track, savings);
+
+		try {
+			cachingTrack.setSkippedCount(2);
+		} catch (NotModifiableException e) {
+			// Expected
+		}
+		assertTrue("Skip count not written", cachingTrack.setSkippedCount(2));
+
+		verify(track, times(2)).setSkippedCount(2);
+		assertEquals("Unexpected writes saved", 0, savings.getWrites());
+	}
+}
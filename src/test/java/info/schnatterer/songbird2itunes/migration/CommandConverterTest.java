@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CommandConverterTest {
+
+	/** The placeholders are replaced by the files, as single arguments. */
+	@Test
+	public void toCommand() {
+		CommandConverter converter = new CommandConverter(
+				" ffmpeg  -i {input} -c:a alac {output} ", "m4a");
+		assertEquals("Unexpected extension", "m4a", converter.getExtension());
+		assertEquals("Unexpected command", Arrays.asList("ffmpeg", "-i",
+				Paths.get("my music", "a.flac").toString(), "-c:a", "alac",
+				Paths.get("out", "a.m4a").toString()), converter.toCommand(
+				Paths.get("my music", "a.flac"), Paths.get("out", "a.m4a")));
+	}
+
+	/** A command without the files cannot convert anything. */
+	@Test(expected = IllegalArgumentException.class)
+	public void missingPlaceholder() {
+		new CommandConverter("ffmpeg -i {input}", "m4a");
+	}
+}
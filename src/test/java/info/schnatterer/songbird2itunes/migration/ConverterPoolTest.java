@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConverterPoolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Files are converted to the directory, called from many threads. */
+	@Test
+	public void convert() throws Exception {
+		StubConverter converter = new StubConverter();
+		File directory = new File(folder.getRoot(), "converted");
+		List<String> sources = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			sources.add(file("track" + i + ".flac").getPath());
+		}
+
+		List<Optional<String>> convertedPaths = new ArrayList<>();
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+		try (ConverterPool pool = new ConverterPool(converter, directory, 2)) {
+			List<Future<Optional<String>>> conversions = new ArrayList<>();
+			for (String source : sources) {
+				conversions.add(callers.submit(() -> pool.convert(source)));
+			}
+			for (Future<Optional<String>> conversion : conversions) {
+				convertedPaths.add(conversion.get());
+			}
+			assertEquals("Unexpected converted", sources.size(),
+					pool.getConverted());
+			assertEquals("Unexpected failed", 0, pool.getFailed());
+		} finally {
+			callers.shutdown();
+		}
+
+		for (Optional<String> convertedPath : convertedPaths) {
+			File convertedFile = new File(convertedPath.get());
+			assertEquals("Unexpected directory", directory,
+					convertedFile.getParentFile());
+			assertTrue("Unexpected extension", convertedFile.getName()
+					.endsWith(".m4a"));
+			assertEquals("Unexpected content", StubConverter.HEADER,
+					new String(Files.readAllBytes(convertedFile.toPath()),
+							StandardCharsets.UTF_8));
+		}
+		assertEquals("Unexpected number of files", sources.size(),
+				directory.list().length);
+	}
+
+	/** A file requested by many threads at the same time is converted once. */
+	@Test
+	public void convertSameFile() throws Exception {
+		StubConverter converter = new StubConverter() {
+			@Override
+			public void convert(Path source, Path target) throws IOException {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.convert(source, target);
+			}
+		};
+		File directory = new File(folder.getRoot(), "converted");
+		String source = file("a.flac").getPath();
+
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+		try (ConverterPool pool = new ConverterPool(converter, directory, 4)) {
+			List<Future<Optional<String>>> conversions = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				conversions.add(callers.submit(() -> pool.convert(source)));
+			}
+			Optional<String> first = conversions.get(0).get();
+			assertTrue("Not converted", first.isPresent());
+			for (Future<Optional<String>> conversion : conversions) {
+				assertEquals("Unexpected path", first, conversion.get());
+			}
+			assertEquals("Unexpected converted", conversions.size(),
+					pool.getConverted());
+		} finally {
+			callers.shutdown();
+		}
+		assertEquals("File converted more than once", 1,
+				converter.getConversions());
+		assertEquals("Unexpected files left", 1, directory.list().length);
+	}
+
+	/** Files converted before are reused, failed conversions leave no file. */
+	@Test
+	public void reuseAndFail() throws Exception {
+		StubConverter converter = new StubConverter();
+		File directory = new File(folder.getRoot(), "converted");
+		File source = file("a.flac");
+		File failing = file("b.flac");
+		converter.fail(failing.toPath());
+
+		try (ConverterPool pool = new ConverterPool(converter, directory, 1)) {
+			Optional<String> first = pool.convert(source.getPath());
+			assertTrue("Not converted", first.isPresent());
+			// Make the converted file newer, file system timestamps are coarse
+			new File(first.get()).setLastModified(source.lastModified() + 2000);
+			assertEquals("Unexpected path of reused file", first,
+					pool.convert(source.getPath()));
+			assertEquals("Converted file was not reused", 1,
+					converter.getConversions());
+
+			assertFalse("Failed conversion returned a path",
+					pool.convert(failing.getPath()).isPresent());
+			assertEquals("Unexpected converted", 2, pool.getConverted());
+			assertEquals("Unexpected failed", 1, pool.getFailed());
+		}
+		assertEquals("Unexpected files left", 1, directory.list().length);
+	}
+
+	/** Files with the same name in different directories don't clash. */
+	@Test
+	public void toTarget() {
+		try (ConverterPool pool = new ConverterPool(new StubConverter(),
+				folder.getRoot(), 1)) {
+			String target = pool.toTarget(Paths.get("music", "a", "track.flac"))
+					.getFileName().toString();
+			assertTrue("Unexpected name " + target, target.startsWith("track-")
+					&& target.endsWith(".m4a"));
+			assertNotEquals("Same target for different files", target, pool
+					.toTarget(Paths.get("music", "b", "track.flac"))
+					.getFileName().toString());
+		}
+	}
+
+	private File file(String name) throws Exception {
+		File file = folder.newFile(name);
+		Files.write(file.toPath(), "fLaC".getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import info.schnatterer.songbird2itunes.migration.DuplicateDetector.Duplicates;
+import info.schnatterer.songbird2itunes.migration.DuplicateDetector.Group;
+import info.schnatterer.songbird2itunes.migration.MigrationPlan.PlannedTrack;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DuplicateDetectorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Files with the same content are grouped, others are not. */
+	@Test
+	public void detect() throws Exception {
+		File original = file("original.mp3", "0123456789");
+		File copy = file("copy.mp3", "0123456789");
+		File sameSize = file("same-size.mp3", "9876543210");
+		File other = file("other.mp3", "other");
+		File empty = file("empty.mp3", "");
+		File emptyToo = file("empty-too.mp3", "");
+
+		// Chunk size smaller than the files
+		Duplicates duplicates = new DuplicateDetector(2, 3,
+				DuplicateMergePolicy.SUM).detect(Arrays.asList(
+				track(copy, 2000, 1L, 2L), track(original, 1000, 3L, 4L),
+				track(sameSize, 500, null, null), track(other, 500, 1L, 1L),
+				track(empty, 500, 1L, 1L), track(emptyToo, 500, 1L, 1L),
+				track(new File(folder.getRoot(), "missing.mp3"), 500, 1L,
+						1L)).iterator());
+
+		assertEquals("Unexpected duplicate files", 1, duplicates.getFiles());
+		assertEquals("Unexpected duplicate bytes", 10, duplicates.getBytes());
+		Group group = duplicates.getGroup(copy.getCanonicalPath()).get();
+		assertEquals("Canonical file is not the one added first",
+				original.getCanonicalPath(), group.getCanonicalPath());
+		assertEquals("Unexpected date created", new Date(1000),
+				group.getDateCreated());
+		assertEquals("Same group expected", group, duplicates.getGroup(
+				original.getCanonicalPath()).get());
+		assertFalse("Same size is no duplicate",
+				duplicates.getGroup(sameSize.getCanonicalPath()).isPresent());
+		assertFalse("Empty files are no duplicates",
+				duplicates.getGroup(empty.getCanonicalPath()).isPresent());
+	}
+
+	/** Counts are added up, the latest date and best rating win. */
+	@Test
+	public void mergeSum() throws Exception {
+		Group group = detectPair(DuplicateMergePolicy.SUM);
+		assertEquals("Unexpected play count", Long.valueOf(4),
+				group.getPlayCount());
+		assertEquals("Unexpected skip count", Long.valueOf(6),
+				group.getSkipCount());
+		assertEquals("Unexpected rating", Long.valueOf(5), group.getRating());
+		assertEquals("Unexpected last play time", new Date(3000),
+				group.getLastPlayTime());
+	}
+
+	/** The highest counts win. */
+	@Test
+	public void mergeMax() throws Exception {
+		Group group = detectPair(DuplicateMergePolicy.MAX);
+		assertEquals("Unexpected play count", Long.valueOf(3),
+				group.getPlayCount());
+		assertEquals("Unexpected skip count", Long.valueOf(4),
+				group.getSkipCount());
+		assertEquals("Unexpected rating", Long.valueOf(5), group.getRating());
+	}
+
+	/** Only the properties of the canonical file are kept. */
+	@Test
+	public void mergeCanonical() throws Exception {
+		Group group = detectPair(DuplicateMergePolicy.CANONICAL);
+		assertEquals("Unexpected play count", Long.valueOf(3),
+				group.getPlayCount());
+		assertEquals("Unexpected skip count", Long.valueOf(4),
+				group.getSkipCount());
+		assertEquals("Unexpected rating", Long.valueOf(1), group.getRating());
+		assertNull("Unexpected last play time", group.getLastPlayTime());
+	}
+
+	/** Different URLs of the same file are left to the track cache. */
+	@Test
+	public void sameFile() throws Exception {
+		File file = file("a.mp3", "content");
+		PlannedTrack track = track(file, 1000, 1L, 1L);
+		PlannedTrack sameFile = new PlannedTrack(null, file.toURI()
+				.toString().replace("a.mp3", "./a.mp3"), Optional.empty(),
+				new Date(2000), new HashMap<>());
+
+		Duplicates duplicates = new DuplicateDetector(1, 1024,
+				DuplicateMergePolicy.SUM).detect(Arrays.asList(track,
+				sameFile).iterator());
+
+		assertEquals("Unexpected duplicates", 0, duplicates.getFiles());
+		assertFalse("Unexpected group",
+				duplicates.getGroup(file.getCanonicalPath()).isPresent());
+	}
+
+	private Group detectPair(DuplicateMergePolicy policy) throws Exception {
+		File original = file("original.mp3", "content");
+		File copy = file("copy.mp3", "content");
+		PlannedTrack canonical = track(original, 1000, 3L, 4L, 1L, null);
+		PlannedTrack duplicate = track(copy, 2000, 1L, 2L, 5L, 3000L);
+		List<PlannedTrack> tracks = Arrays.asList(duplicate, canonical);
+		return new DuplicateDetector(2, 1024, policy)
+				.detect(tracks.iterator())
+				.getGroup(copy.getCanonicalPath()).get();
+	}
+
+	private File file(String name, String content) throws Exception {
+		File file = new File(folder.getRoot(), name);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static PlannedTrack track(File file, long dateCreated,
+			Long playCount, Long skipCount) {
+		return track(file, dateCreated, playCount, skipCount, null, null);
+	}
+
+	private static PlannedTrack track(File file, long dateCreated,
+			Long playCount, Long skipCount, Long rating, Long lastPlayTime) {
+		Map<String, String> properties = new HashMap<>();
+		put(properties, Property.PROP_PLAY_COUNT, playCount);
+		put(properties, Property.PROP_SKIP_COUNT, skipCount);
+		put(properties, Property.PROP_RATING, rating);
+		put(properties, Property.PROP_LAST_PLAY_TIME, lastPlayTime);
+		return new PlannedTrack(null, file.toURI().toString(),
+				Optional.empty(), new Date(dateCreated), properties);
+	}
+
+	private static void put(Map<String, String> properties, String name,
+			Long value) {
+		if (value != null) {
+			properties.put(name, value.toString());
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+import info.schnatterer.itunes4j.ITunes;
+import info.schnatterer.itunes4j.entity.Playlist;
+import info.schnatterer.itunes4j.entity.Track;
+import info.schnatterer.itunes4j.exception.NotModifiableException;
+import info.schnatterer.itunes4j.exception.WrongParameterException;
+
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+
+/**
+ * An in-memory stand-in for iTunes that runs anywhere. Each call to iTunes
+ * takes a configurable time and can fail randomly:
+ * <ul>
+ * <li>{@link ITunes#addFile(String)} throws {@link WrongParameterException}</li>
+ * <li>The setters of {@link Track} throw {@link NotModifiableException}</li>
+ * </ul>
+ * 
+ * The fakes are stub-only mocks, so they don't remember their invocations.
+ * All files share the same {@link Track}, so the fake needs almost no memory,
+ * no matter how many tracks are added.
+ * 
+ * @author schnatterer
+ *
+ */
+class FakeITunes {
+	private final long latencyNanos;
+	private final double notModifiableRate;
+	private final double wrongParameterRate;
+	private final Random random;
+
+	private final Track track = mock(Track.class, withSettings().stubOnly()
+			.defaultAnswer(this::answerTrack));
+
+	private final LongAdder filesAdded = new LongAdder();
+	private final LongAdder propertiesWritten = new LongAdder();
+	private final LongAdder playlistsCreated = new LongAdder();
+	private final LongAdder playlistTracksAdded = new LongAdder();
+	private final LongAdder notModifiableThrown = new LongAdder();
+	private final LongAdder wrongParameterThrown = new LongAdder();
+
+	/**
+	 * @param latencyNanos
+	 *            time each call to iTunes takes
+	 * @param notModifiableRate
+	 *            fraction of calls (0..1) to the setters of a track that throw
+	 *            {@link NotModifiableException}
+	 * @param wrongParameterRate
+	 *            fraction of calls (0..1) to {@link ITunes#addFile(String)}
+	 *            that throw {@link WrongParameterException}
+	 * @param seed
+	 *            seed for randomly throwing exceptions
+	 */
+	FakeITunes(long latencyNanos, double notModifiableRate,
+			double wrongParameterRate, long seed) {
+		this.latencyNanos = latencyNanos;
+		this.notModifiableRate = notModifiableRate;
+		this.wrongParameterRate = wrongParameterRate;
+		random = new Random(seed);
+	}
+
+	/**
+	 * @return a new fake, backed by this instance
+	 */
+	ITunes create() {
+		return mock(ITunes.class,
+				withSettings().stubOnly().defaultAnswer(this::answerITunes));
+	}
+
+	private Object answerITunes(InvocationOnMock invocation) throws Throwable {
+		switch (invocation.getMethod().getName()) {
+		case "addFile":
+			simulateLatency();
+			if (random.nextDouble() < wrongParameterRate) {
+				wrongParameterThrown.increment();
+				throw new WrongParameterException("Injected exception");
+			}
+			filesAdded.increment();
+			return track;
+		case "createPlaylist":
+			simulateLatency();
+			playlistsCreated.increment();
+			return mock(Playlist.class, withSettings().stubOnly()
+					.defaultAnswer(this::answerPlaylist));
+		default:
+			return Mockito.RETURNS_DEFAULTS.answer(invocation);
+		}
+	}
+
+	private Object answerTrack(InvocationOnMock invocation) throws Throwable {
+		if (invocation.getMethod().getName().startsWith("set")) {
+			simulateLatency();
+			if (random.nextDouble() < notModifiableRate) {
+				notModifiableThrown.increment();
+				throw new NotModifiableException("Injected exception");
+			}
+			propertiesWritten.increment();
+			return null;
+		}
+		return Mockito.RETURNS_DEFAULTS.answer(invocation);
+	}
+
+	private Object answerPlaylist(InvocationOnMock invocation)
+			throws Throwable {
+		if ("addTrack".equals(invocation.getMethod().getName())) {
+			simulateLatency();
+			playlistTracksAdded.increment();
+			return null;
+		}
+		return Mockito.RETURNS_DEFAULTS.answer(invocation);
+	}
+
+	private void simulateLatency() {
+		if (latencyNanos > 0) {
+			LockSupport.parkNanos(latencyNanos);
+		}
+	}
+
+	long getFilesAdded() {
+		return filesAdded.sum();
+	}
+
+	long getPropertiesWritten() {
+		return propertiesWritten.sum();
+	}
+
+	long getPlaylistsCreated() {
+		return playlistsCreated.sum();
+	}
+
+	long getPlaylistTracksAdded() {
+		return playlistTracksAdded.sum();
+	}
+
+	long getNotModifiableThrown() {
+		return notModifiableThrown.sum();
+	}
+
+	long getWrongParameterThrown() {
+		return wrongParameterThrown.sum();
+	}
+}
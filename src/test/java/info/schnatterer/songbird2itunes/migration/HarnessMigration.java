@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.itunes4j.ITunes;
+import info.schnatterer.itunes4j.exception.ITunesException;
+import info.schnatterer.itunes4j.exception.NotModifiableException;
+import info.schnatterer.songbirddbapi4j.SongbirdDb;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A migration that writes to a {@link FakeITunes} and keeps all of its files
+ * (journal, metrics) within a working directory.
+ * 
+ * @author schnatterer
+ *
+ */
+class HarnessMigration extends Songbird2itunesMigration {
+	private final FakeITunes fakeITunes;
+	private final SongbirdDb songbirdDb;
+	private final long retryDelayMillis;
+
+	/**
+	 * @param fakeITunes
+	 *            the iTunes to migrate to
+	 * @param songbirdDb
+	 *            the songbird database to read the playlists from. If
+	 *            <code>null</code> the songbird database file is used, just
+	 *            like in a real migration.
+	 * @param workDir
+	 *            directory for the journal and the metrics
+	 * @param retryDelayMillis
+	 *            delay before the first retry of writing a property
+	 */
+	HarnessMigration(FakeITunes fakeITunes, SongbirdDb songbirdDb,
+			File workDir, long retryDelayMillis) {
+		this.fakeITunes = fakeITunes;
+		this.songbirdDb = songbirdDb;
+		this.retryDelayMillis = retryDelayMillis;
+		setJournalFile(new File(workDir, DEFAULT_JOURNAL_FILE)
+				.getAbsolutePath());
+		setMetricsFile(new File(workDir, DEFAULT_METRICS_FILE)
+				.getAbsolutePath());
+		setProgressInterval(0);
+	}
+
+	@Override
+	protected ITunes createItunes() {
+		return fakeITunes.create();
+	}
+
+	@Override
+	protected SongbirdDb createSongbirdDb(File songbirdDbFile) {
+		if (songbirdDb != null) {
+			return songbirdDb;
+		}
+		return super.createSongbirdDb(songbirdDbFile);
+	}
+
+	@Override
+	RetryScheduler createRetryScheduler(int exceptionRetries) {
+		Map<Class<? extends ITunesException>, Integer> budgets = new HashMap<>();
+		budgets.put(NotModifiableException.class, exceptionRetries);
+		return new RetryScheduler(budgets, retryDelayMillis,
+				100 * retryDelayMillis);
+	}
+}
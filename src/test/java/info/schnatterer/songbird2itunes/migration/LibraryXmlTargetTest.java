@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import info.schnatterer.itunes4j.entity.Rating;
+import info.schnatterer.songbird2itunes.migration.MigrationPlan.PlannedTrack;
+import info.schnatterer.songbird2itunes.migration.MigrationTarget.Playlist;
+import info.schnatterer.songbird2itunes.migration.MigrationTarget.Track;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+public class LibraryXmlTargetTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Tracks and playlists are written as iTunes library. */
+	@Test
+	public void complete() throws Exception {
+		File file = new File(folder.getRoot(), "library.xml");
+		try (LibraryXmlTarget target = LibraryXmlTarget.create(file)) {
+			Track a = target.addFile("/music/a b.mp3",
+					track("Track <a>", 5, Rating.STARS_3, new Date(1000)));
+			Track b = target.addFile("/music/b.mp3",
+					track(null, 0, Rating.STARS_0, null));
+			Playlist playlist = target.createPlaylist("List & more");
+			playlist.addTrack(b);
+			playlist.addTrack(a);
+			target.createPlaylist("Empty");
+			// Same values as written
+			a.setPlayedCount(5);
+			target.complete();
+		}
+
+		Document library = parse(file);
+		XPath xpath = XPathFactory.newInstance().newXPath();
+		assertEquals("Unexpected number of tracks", "2", xpath.evaluate(
+				"count(/plist/dict/dict/dict)", library));
+		String trackA = "/plist/dict/dict/dict[1]/";
+		assertEquals("Unexpected name", "Track <a>", xpath.evaluate(trackA
+				+ "key[.='Name']/following-sibling::string[1]", library));
+		assertEquals("Unexpected play count", "5", xpath.evaluate(trackA
+				+ "key[.='Play Count']/following-sibling::integer[1]",
+				library));
+		assertEquals("Unexpected rating", "60", xpath.evaluate(trackA
+				+ "key[.='Rating']/following-sibling::integer[1]", library));
+		assertEquals("Unexpected date added", "1970-01-01T00:00:02Z",
+				xpath.evaluate(trackA
+						+ "key[.='Date Added']/following-sibling::date[1]",
+						library));
+		assertEquals("Unexpected play date", "1970-01-01T00:00:01Z",
+				xpath.evaluate(trackA
+						+ "key[.='Play Date UTC']/following-sibling::date[1]",
+						library));
+		assertEquals("Unexpected location", "file://localhost"
+				+ new File("/music/a b.mp3").toURI().getRawPath(),
+				xpath.evaluate(trackA
+						+ "key[.='Location']/following-sibling::string[1]",
+						library));
+		assertEquals("Unexpected play count of unplayed track", "0",
+				xpath.evaluate("count(/plist/dict/dict/dict[2]/"
+						+ "key[.='Play Count'])", library));
+
+		String playlists = "/plist/dict/array/dict";
+		assertEquals("Unexpected number of playlists", "2",
+				xpath.evaluate("count(" + playlists + ")", library));
+		assertEquals("Unexpected playlist name", "List & more",
+				xpath.evaluate(playlists
+						+ "[1]/key[.='Name']/following-sibling::string[1]",
+						library));
+		assertEquals("Unexpected first playlist item", "2",
+				xpath.evaluate(playlists + "[1]/array/dict[1]/integer",
+						library));
+		assertEquals("Unexpected second playlist item", "1",
+				xpath.evaluate(playlists + "[1]/array/dict[2]/integer",
+						library));
+		assertEquals("Unexpected items of empty playlist", "0",
+				xpath.evaluate("count(" + playlists + "[2]/array/dict)",
+						library));
+		assertEquals("Temporary files not deleted", 1,
+				folder.getRoot().list().length);
+	}
+
+	/** A track cannot be changed after it was written. */
+	@Test(expected = IllegalStateException.class)
+	public void changeWrittenTrack() throws Exception {
+		File file = new File(folder.getRoot(), "library.xml");
+		try (LibraryXmlTarget target = LibraryXmlTarget.create(file)) {
+			target.addFile("/music/a.mp3", track(null, 5, Rating.STARS_0, null))
+					.setPlayedCount(6);
+		}
+	}
+
+	/** An aborted migration leaves no library. */
+	@Test
+	public void incomplete() throws Exception {
+		File file = new File(folder.getRoot(), "library.xml");
+		try (LibraryXmlTarget target = LibraryXmlTarget.create(file)) {
+			target.addFile("/music/a.mp3", track(null, 5, Rating.STARS_0, null));
+		}
+		assertFalse("Incomplete library written", file.exists());
+		assertTrue("Temporary files not deleted",
+				folder.getRoot().list().length == 0);
+	}
+
+	private static Document parse(File file) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		// Don't fetch the DTD from apple.com
+		factory.setFeature(
+				"http://apache.org/xml/features/nonvalidating/load-external-dtd",
+				false);
+		return factory.newDocumentBuilder().parse(file);
+	}
+
+	private static PreparedTrack track(String name, int playCount,
+			Rating rating, Date lastPlayTime) {
+		Map<String, String> properties = new HashMap<>();
+		if (name != null) {
+			properties.put(Property.PROP_TRACK_NAME, name);
+		}
+		return new PreparedTrack(new PlannedTrack(null, "file:///a.mp3",
+				Optional.empty(), new Date(2000), properties), Optional.empty(),
+				new Date(2000), lastPlayTime, null, playCount, rating, 0);
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MigrationJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Entries written by one run are found when resuming. */
+	@Test
+	public void resume() throws IOException {
+		File file = folder.newFile();
+		try (MigrationJournal journal = MigrationJournal.open(file, false, 1)) {
+			journal.trackMigrated("file:///a.mp3");
+			journal.playlistCreated("list");
+			journal.playlistCreated("other list");
+			journal.playlistCompleted("other list");
+		}
+
+		try (MigrationJournal journal = MigrationJournal.open(file, true, 1)) {
+			assertEquals("Unexpected number of entries", 4,
+					journal.getPreviousEntries());
+			assertTrue("Track not found",
+					journal.isTrackMigrated("file:///a.mp3"));
+			assertFalse("Unexpected track",
+					journal.isTrackMigrated("file:///b.mp3"));
+			assertTrue("Playlist not created",
+					journal.isPlaylistCreated("list"));
+			assertFalse("Unexpected completed playlist",
+					journal.isPlaylistCompleted("list"));
+			assertTrue("Playlist not completed",
+					journal.isPlaylistCompleted("other list"));
+		}
+	}
+
+	/** Not resuming starts over. */
+	@Test
+	public void noResume() throws IOException {
+		File file = folder.newFile();
+		try (MigrationJournal journal = MigrationJournal.open(file, false, 1)) {
+			journal.trackMigrated("file:///a.mp3");
+		}
+		try (MigrationJournal journal = MigrationJournal.open(file, false, 1)) {
+			assertFalse("Unexpected track",
+					journal.isTrackMigrated("file:///a.mp3"));
+		}
+		try (MigrationJournal journal = MigrationJournal.open(file, true, 1)) {
+			assertEquals("Unexpected number of entries", 0,
+					journal.getPreviousEntries());
+		}
+	}
+
+	/** An incomplete last line (e.g. after a crash) does not corrupt entries. */
+	@Test
+	public void incompleteLastLine() throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(),
+				"T\tfile:///a.mp3\nT\tfile:///b.m".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+		try (MigrationJournal journal = MigrationJournal.open(file, true, 1)) {
+			journal.trackMigrated("file:///c.mp3");
+		}
+		try (MigrationJournal journal = MigrationJournal.open(file, true, 1)) {
+			assertTrue("Track a not found",
+					journal.isTrackMigrated("file:///a.mp3"));
+			assertFalse("Unexpected track b",
+					journal.isTrackMigrated("file:///b.mp3"));
+			assertTrue("Track c not found",
+					journal.isTrackMigrated("file:///c.mp3"));
+		}
+	}
+
+	/**
+	 * An incomplete last line that is the prefix of another key is not
+	 * mistaken for that key, neither when resuming nor afterwards.
+	 */
+	@Test
+	public void incompleteLastLinePrefix() throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(),
+				"T\tfile:///a.mp3\nP\tRock".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+		try (MigrationJournal journal = MigrationJournal.openReadOnly(file,
+				true)) {
+			assertEquals("Unexpected number of entries", 1,
+					journal.getPreviousEntries());
+			assertFalse("Unexpected completed playlist",
+					journal.isPlaylistCompleted("Rock"));
+		}
+		try (MigrationJournal journal = MigrationJournal.open(file, true, 1)) {
+			assertFalse("Unexpected completed playlist",
+					journal.isPlaylistCompleted("Rock"));
+			journal.trackMigrated("file:///a");
+		}
+		assertEquals("Incomplete line not removed",
+				"T\tfile:///a.mp3\nT\tfile:///a\n", new String(
+						Files.readAllBytes(file.toPath()),
+						StandardCharsets.UTF_8));
+		try (MigrationJournal journal = MigrationJournal.open(file, true, 1)) {
+			assertFalse("Unexpected completed playlist",
+					journal.isPlaylistCompleted("Rock"));
+			assertTrue("Track not found", journal.isTrackMigrated("file:///a"));
+			assertTrue("Track not found",
+					journal.isTrackMigrated("file:///a.mp3"));
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import info.schnatterer.songbird2itunes.migration.MigrationPlan.PlannedPlaylist;
+import info.schnatterer.songbird2itunes.migration.MigrationPlan.PlannedTrack;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MigrationPlanTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Tracks and playlists written by a dry run are read in order. */
+	@Test
+	public void writeAndRead() {
+		File file = new File(folder.getRoot(), "plan");
+		try (MigrationPlan.Writer plan = MigrationPlan.create(file, false)) {
+			plan.track(track("file:///a.mp3", 42L), "/music/a.mp3");
+			plan.track(track("file:///b.mp3", null), "/music/b\tc%.mp3");
+			plan.playlist("list\tone");
+			plan.member("file:///a.mp3");
+			plan.track(track("file:///c.mp3", 1L), "/music/c.mp3");
+			plan.member("file:///c.mp3");
+			plan.member("file:///missing.mp3");
+			plan.playlist("other list");
+			plan.member("file:///c.mp3");
+			plan.complete();
+		}
+
+		try (MigrationPlan.Reader plan = MigrationPlan.open(file)) {
+			assertFalse("Unexpected playlistsOnly", plan.isPlaylistsOnly());
+			assertEquals("Unexpected number of tracks", 2, plan.getTracks());
+
+			Iterator<PlannedTrack> tracks = plan.tracks();
+			PlannedTrack a = tracks.next();
+			assertEquals("Unexpected GUID", "guid-file:///a.mp3", a.getGuid());
+			assertEquals("Unexpected content URL", "file:///a.mp3",
+					a.getContentUrl());
+			assertEquals("Unexpected path", Optional.of("/music/a.mp3"),
+					a.getAbsolutePath());
+			assertEquals("Unexpected date created", new Date(1000),
+					a.getDateCreated());
+			assertEquals("Unexpected play count", Long.valueOf(42),
+					a.getPropertyAsLong(Property.PROP_PLAY_COUNT));
+			PlannedTrack b = tracks.next();
+			assertEquals("Unexpected escaped path",
+					Optional.of("/music/b\tc%.mp3"), b.getAbsolutePath());
+			assertNull("Unexpected play count",
+					b.getProperty(Property.PROP_PLAY_COUNT));
+			assertFalse("Unexpected track", tracks.hasNext());
+
+			Iterator<PlannedPlaylist> playlists = plan.playlists();
+			PlannedPlaylist list = playlists.next();
+			assertEquals("Unexpected escaped name", "list\tone", list.getName());
+			assertEquals("Unexpected members", 3, list.getMembers().size());
+			// Only known as member of a playlist
+			assertEquals("Unexpected member path",
+					Optional.of("/music/c.mp3"), list.getMembers().get(1)
+							.getAbsolutePath());
+			assertEquals("Unexpected invalid member", Optional.empty(), list
+					.getMembers().get(2).getAbsolutePath());
+			PlannedPlaylist other = playlists.next();
+			assertEquals("Unexpected member of other playlist",
+					Optional.of("/music/c.mp3"), other.getMembers().get(0)
+							.getAbsolutePath());
+			assertFalse("Unexpected playlist", playlists.hasNext());
+		}
+	}
+
+	/** Playlists can be read without reading the tracks first. */
+	@Test
+	public void skipTracks() {
+		File file = new File(folder.getRoot(), "plan");
+		try (MigrationPlan.Writer plan = MigrationPlan.create(file, true)) {
+			plan.track(track("file:///a.mp3", 1L), "/music/a.mp3");
+			plan.playlist("list");
+			plan.member("file:///a.mp3");
+			plan.complete();
+		}
+
+		try (MigrationPlan.Reader plan = MigrationPlan.open(file)) {
+			assertTrue("Unexpected playlistsOnly", plan.isPlaylistsOnly());
+			Iterator<PlannedPlaylist> playlists = plan.playlists();
+			assertEquals("Unexpected playlist", "list", playlists.next()
+					.getName());
+			assertFalse("Unexpected playlist", playlists.hasNext());
+		}
+	}
+
+	/** Tracks whose files are converted on execution are marked. */
+	@Test
+	public void trackToConvert() {
+		File file = new File(folder.getRoot(), "plan");
+		try (MigrationPlan.Writer plan = MigrationPlan.create(file, false)) {
+			plan.track(track("file:///a.mp3", 1L), "/music/a.mp3");
+			plan.trackToConvert(track("file:///b.flac", 2L), "/music/b.flac");
+			plan.playlist("list");
+			plan.trackToConvert(track("file:///c.ogg", 3L), "/music/c.ogg");
+			plan.member("file:///c.ogg");
+			plan.complete();
+		}
+
+		try (MigrationPlan.Reader plan = MigrationPlan.open(file)) {
+			assertEquals("Unexpected number of tracks", 2, plan.getTracks());
+			Iterator<PlannedTrack> tracks = plan.tracks();
+			assertFalse("Unexpected conversion", tracks.next().isToConvert());
+			PlannedTrack b = tracks.next();
+			assertTrue("Conversion not planned", b.isToConvert());
+			assertEquals("Unexpected path of original file",
+					Optional.of("/music/b.flac"), b.getAbsolutePath());
+			assertFalse("Unexpected track", tracks.hasNext());
+			assertTrue("Conversion of member not planned", plan.playlists()
+					.next().getMembers().get(0).isToConvert());
+		}
+	}
+
+	/** An aborted dry run leaves the previous plan untouched. */
+	@Test
+	public void incomplete() {
+		File file = new File(folder.getRoot(), "plan");
+		try (MigrationPlan.Writer plan = MigrationPlan.create(file, false)) {
+			plan.track(track("file:///a.mp3", 1L), "/music/a.mp3");
+		}
+		assertFalse("Incomplete plan written", file.exists());
+		assertEquals("Temporary file not deleted", 0,
+				folder.getRoot().list().length);
+	}
+
+	private static SongbirdTrack track(String contentUrl, Long playCount) {
+		Map<String, String> properties = new HashMap<>();
+		if (playCount != null) {
+			properties.put(Property.PROP_PLAY_COUNT, playCount.toString());
+		}
+		return new PlannedTrack("guid-" + contentUrl, contentUrl,
+				Optional.empty(), new Date(1000), properties);
+	}
+}
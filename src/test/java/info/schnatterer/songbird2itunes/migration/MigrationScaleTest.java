@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import info.schnatterer.songbird2itunes.migration.Songbird2itunesMigration.Statistics;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures throughput and memory of full migrations of generated songbird
+ * databases to a {@link FakeITunes}. Reads the playlists using the songbird
+ * database API, just like a real migration.
+ * 
+ * Skipped unless the number of tracks is passed, for example:
+ * 
+ * <pre>
+ * mvn test -Dtest=MigrationScaleTest -Dsongbird2itunes.scale=10000,100000,1000000
+ * </pre>
+ * 
+ * Optional parameters:
+ * <ul>
+ * <li><code>songbird2itunes.scale.latencyMicros</code>: time each call to
+ * iTunes takes, default 0</li>
+ * <li><code>songbird2itunes.scale.notModifiableRate</code>: fraction of
+ * property writes that fail, default 0</li>
+ * <li><code>songbird2itunes.scale.wrongParameterRate</code>: fraction of
+ * files that iTunes refuses, default 0</li>
+ * </ul>
+ */
+public class MigrationScaleTest {
+	private static final String PROPERTY_PREFIX = "songbird2itunes.scale";
+
+	/** SLF4J-Logger. */
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void scale() throws Exception {
+		String scale = System.getProperty(PROPERTY_PREFIX);
+		Assume.assumeTrue("Set " + PROPERTY_PREFIX + " to run", scale != null);
+
+		for (String tracks : scale.split(",")) {
+			run(Integer.parseInt(tracks.trim()));
+		}
+	}
+
+	private void run(int tracks) throws Exception {
+		File workDir = folder.newFolder(String.valueOf(tracks));
+		File dbFile = new File(workDir, "songbird.db");
+		SyntheticSongbirdDb syntheticDb = new SyntheticSongbirdDb(tracks,
+				0.01, 42);
+		long start = System.nanoTime();
+		syntheticDb.generate(dbFile, new File(workDir, "music"));
+		log.info("Generated " + tracks + " tracks and "
+				+ syntheticDb.getPlaylists() + " playlists with "
+				+ syntheticDb.getPlaylistMembers() + " tracks in "
+				+ millisSince(start) + "ms");
+
+		FakeITunes iTunes = new FakeITunes(TimeUnit.MICROSECONDS.toNanos(Long
+				.getLong(PROPERTY_PREFIX + ".latencyMicros", 0)),
+				getDouble("notModifiableRate"),
+				getDouble("wrongParameterRate"), 42);
+		HarnessMigration migration = new HarnessMigration(iTunes, null,
+				workDir, RetryScheduler.DEFAULT_INITIAL_DELAY_MILLIS);
+
+		resetPeakHeap();
+		start = System.nanoTime();
+		Statistics stats = migration.migrate(dbFile.getAbsolutePath(), 50,
+				false, null, false);
+		long millis = Math.max(1, millisSince(start));
+
+		log.info("Migrated " + tracks + " tracks in " + millis + "ms ("
+				+ (stats.getTracksProcessed() * 1000 / millis)
+				+ " tracks/s), peak heap " + (getPeakHeap() >> 20) + "MB");
+		log.info("Tracks failed: " + stats.getTracksFailed()
+				+ ", playlist tracks: " + stats.getPlaylistTracksProcessed()
+				+ ", retries: " + stats.getRetries() + ", files added: "
+				+ iTunes.getFilesAdded() + ", properties written: "
+				+ iTunes.getPropertiesWritten());
+		log.info("Latencies per stage: "
+				+ new File(workDir, Songbird2itunesMigration.DEFAULT_METRICS_FILE));
+		assertEquals("Unexpected tracks processed", tracks,
+				stats.getTracksProcessed());
+	}
+
+	private static double getDouble(String name) {
+		return Double.parseDouble(System.getProperty(PROPERTY_PREFIX + "."
+				+ name, "0"));
+	}
+
+	private static long millisSince(long startNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+	}
+
+	private static void resetPeakHeap() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import info.schnatterer.songbird2itunes.migration.MigrationPlan.PlannedTrack;
+import info.schnatterer.songbird2itunes.migration.Songbird2itunesMigration.Statistics;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+public class PlaylistExporterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final AtomicInteger pathsResolved = new AtomicInteger();
+
+	/** Playlists are written as M3U8, leaving out invalid tracks. */
+	@Test
+	public void m3u8() throws Exception {
+		File dir = new File(folder.getRoot(), "out");
+		Statistics stats = new Statistics();
+
+		export(dir, PlaylistFormat.M3U8, stats);
+
+		assertEquals("Unexpected playlist",
+				Arrays.asList("#EXTM3U", "#PLAYLIST:List: one",
+						"#EXTINF:-1,Artist - Title", "/music/a.mp3",
+						"#EXTINF:-1,b.mp3", "/music/b.mp3"),
+				Files.readAllLines(new File(dir, "List_ one.m3u8").toPath(),
+						StandardCharsets.UTF_8));
+		assertEquals("Unexpected playlist", Arrays.asList("#EXTM3U",
+				"#PLAYLIST:list: ONE", "#EXTINF:-1,b.mp3", "/music/b.mp3"),
+				Files.readAllLines(
+						new File(dir, "list_ ONE (2).m3u8").toPath(),
+						StandardCharsets.UTF_8));
+		assertEquals("Unexpected playlists processed", 2,
+				stats.getPlaylistsProcessed());
+		assertEquals("Unexpected playlist tracks processed", 4,
+				stats.getPlaylistTracksProcessed());
+		assertEquals("Unexpected playlist tracks failed", 1,
+				stats.getPlaylistTracksFailed());
+		assertEquals("Paths not resolved once per track", 3,
+				pathsResolved.get());
+	}
+
+	/** Playlists are written as XSPF. */
+	@Test
+	public void xspf() throws Exception {
+		File dir = new File(folder.getRoot(), "out");
+		Statistics stats = new Statistics();
+
+		export(dir, PlaylistFormat.XSPF, stats);
+
+		Document playlist = DocumentBuilderFactory.newInstance()
+				.newDocumentBuilder()
+				.parse(new File(dir, "List_ one.xspf"));
+		XPath xpath = XPathFactory.newInstance().newXPath();
+		assertEquals("Unexpected title", "List: one", xpath.evaluate(
+				"/*[local-name()='playlist']/*[local-name()='title']",
+				playlist));
+		assertEquals("Unexpected number of tracks", "2", xpath.evaluate(
+				"count(//*[local-name()='track'])", playlist));
+		assertTrue("Unexpected location", xpath.evaluate(
+				"(//*[local-name()='location'])[1]", playlist).endsWith(
+				"/music/a.mp3"));
+		assertEquals("Unexpected creator", "Artist", xpath.evaluate(
+				"(//*[local-name()='creator'])[1]", playlist));
+	}
+
+	/** File names are valid on all platforms. */
+	@Test
+	public void toFileName() {
+		assertEquals("Unexpected file name", "a_b_c_",
+				PlaylistExporter.toFileName("a/b\\c?"));
+		assertEquals("Unexpected file name", "list",
+				PlaylistExporter.toFileName(" list.. "));
+		assertEquals("Unexpected file name", "_",
+				PlaylistExporter.toFileName(""));
+	}
+
+	private void export(File dir, PlaylistFormat format, Statistics stats) {
+		SongbirdTrack a = track("file:///music/a.mp3", "Title", "Artist");
+		SongbirdTrack b = track("file:///music/b.mp3", null, null);
+		SongbirdTrack missing = track("file:///music/missing.mp3", null, null);
+		Map<String, List<SongbirdTrack>> playlists = new HashMap<>();
+		playlists.put("List: one", Arrays.asList(a, missing, b));
+		// Same file name, ignoring case
+		playlists.put("list: ONE", Arrays.asList(b));
+
+		List<String> names = new ArrayList<>(playlists.keySet());
+		names.sort(null);
+		new PlaylistExporter(dir, format, 2, track -> {
+			pathsResolved.incrementAndGet();
+			return track == missing ? Optional.empty() : Optional.of(track
+					.getContentUrl().substring("file://".length()));
+		}).export(names, name -> name, playlists::get, stats);
+	}
+
+	private static SongbirdTrack track(String contentUrl, String name,
+			String artist) {
+		Map<String, String> properties = new HashMap<>();
+		if (name != null) {
+			properties.put(Property.PROP_TRACK_NAME, name);
+		}
+		if (artist != null) {
+			properties.put(Property.PROP_ARTIST_NAME, artist);
+		}
+		return new PlannedTrack(null, contentUrl, Optional.empty(), new Date(
+				1000), properties);
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class PlaylistIndexTest {
+
+	private final PlaylistIndex<String> index = new PlaylistIndex<>(
+			Arrays.asList("Rock", "pop", " Jazz ", "Rock Classics", "rock"),
+			Function.identity());
+
+	/** Playlists are sorted by name. */
+	@Test
+	public void sorted() {
+		assertEquals("Unexpected order", Arrays.asList(" Jazz ", "Rock",
+				"Rock Classics", "pop", "rock"), index.getPlaylists());
+	}
+
+	/** Exact names ignore case and whitespace and select duplicates. */
+	@Test
+	public void selectExact() {
+		PlaylistIndex.Selection<String> selection = index.select(Arrays
+				.asList("ROCK", "jazz", "Blues", "rock"));
+		assertEquals("Unexpected selection",
+				Arrays.asList(" Jazz ", "Rock", "rock"),
+				selection.getSelected());
+		assertEquals("Unexpected ignored names",
+				Arrays.asList("Rock Classics", "pop"),
+				selection.getIgnoredNames());
+		assertEquals("Unexpected not found", Arrays.asList("Blues"),
+				selection.getNotFound());
+	}
+
+	/** Globs match the whole name, ignoring case. */
+	@Test
+	public void selectGlob() {
+		PlaylistIndex.Selection<String> selection = index.select(Arrays
+				.asList("glob:rock*", "glob:p?p", "glob:x*"));
+		assertEquals("Unexpected selection",
+				Arrays.asList("Rock", "Rock Classics", "pop", "rock"),
+				selection.getSelected());
+		assertEquals("Unexpected not found", Arrays.asList("glob:x*"),
+				selection.getNotFound());
+	}
+
+	/** Regular expressions match the whole name, ignoring case. */
+	@Test
+	public void selectRegex() {
+		PlaylistIndex.Selection<String> selection = index.select(Collections
+				.singletonList("regex:jazz|rock\\s.*"));
+		assertEquals("Unexpected selection",
+				Arrays.asList(" Jazz ", "Rock Classics"),
+				selection.getSelected());
+	}
+
+	/** Invalid regular expressions are reported. */
+	@Test(expected = IllegalArgumentException.class)
+	public void selectInvalidRegex() {
+		index.select(Collections.singletonList("regex:("));
+	}
+
+	/** Special characters in globs are literals. */
+	@Test
+	public void globToRegex() {
+		assertEquals("Unexpected regex", "\\Qa.b\\E.*\\Q+\\E.",
+				PlaylistIndex.globToRegex("a.b*+?"));
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import info.schnatterer.songbird2itunes.migration.Songbird2itunesMigration.Statistics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ProgressReporterTest {
+
+	private Statistics stats = new Statistics();
+	private ProgressReporter reporter = new ProgressReporter(stats, 0);
+
+	@Test
+	public void progress() {
+		stats.tracksFound(110);
+		stats.trackSkipped();
+		for (int i = 0; i < 10; i++) {
+			stats.trackSkipped();
+			stats.trackProcessed();
+		}
+		stats.trackFailed();
+
+		assertEquals("Unexpected progress",
+				"Progress after 0:00:10: 10 of 99 tracks, 1.0 tracks/s, "
+						+ "10.0% failed; 0 playlist tracks, 0.0 playlist tracks/s, "
+						+ "0.0% failed; tracks ETA 0:01:29",
+				reporter.progress(TimeUnit.SECONDS.toNanos(10)));
+	}
+
+	/** Rates are measured per interval. */
+	@Test
+	public void progressInterval() {
+		for (int i = 0; i < 10; i++) {
+			stats.playlistTrackProcessed();
+		}
+		reporter.progress(TimeUnit.SECONDS.toNanos(10));
+		for (int i = 0; i < 5; i++) {
+			stats.playlistTrackProcessed();
+		}
+		stats.playlistTrackFailed();
+
+		assertEquals("Unexpected progress",
+				"Progress after 0:00:20: 0 tracks, 0.0 tracks/s, "
+						+ "0.0% failed; 15 playlist tracks, 0.5 playlist tracks/s, "
+						+ "6.7% failed",
+				reporter.progress(TimeUnit.SECONDS.toNanos(20)));
+	}
+
+	@Test
+	public void formatDuration() {
+		assertEquals("Unexpected duration", "27:46:40",
+				ProgressReporter.formatDuration(TimeUnit.SECONDS
+						.toNanos(100000)));
+	}
+}
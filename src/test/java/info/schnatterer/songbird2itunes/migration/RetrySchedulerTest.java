@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import info.schnatterer.itunes4j.exception.ITunesException;
+import info.schnatterer.itunes4j.exception.NotModifiableException;
+import info.schnatterer.songbird2itunes.migration.MigrationTarget.Track;
+import info.schnatterer.songbird2itunes.migration.RetryScheduler.PropertyWrite;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class RetrySchedulerTest {
+
+	private final RetryScheduler scheduler = new RetryScheduler(
+			Collections.singletonMap(NotModifiableException.class, 2), 1, 5);
+
+	private final Track track = mock(Track.class);
+	private final CachingTrack cachingTrack = CachingTrack.existing(track,
+			new CachingTrack.Savings());
+	private final AtomicInteger completed = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	/** Only the writes that failed are retried. */
+	@Test
+	public void retriesFailedWritesOnly() throws ITunesException {
+		doThrow(new NotModifiableException("Mocked exception")).doNothing()
+				.when(track).setSkippedCount(2);
+
+		scheduler.write(cachingTrack, "track", writes(),
+				completed::incrementAndGet, failed::incrementAndGet);
+		assertEquals("Completed before retry", 0, completed.get());
+		scheduler.drain();
+
+		verify(track, times(1)).setPlayedCount(1);
+		verify(track, times(2)).setSkippedCount(2);
+		assertEquals("Not completed", 1, completed.get());
+		assertEquals("Unexpected failure", 0, failed.get());
+		assertEquals("Unexpected retries", 1, scheduler.getRetriesSpent());
+		assertEquals("Unexpected exhausted", 0,
+				scheduler.getRetriesExhausted());
+	}
+
+	/** Gives up after the budget is exhausted. */
+	@Test
+	public void budgetExhausted() throws ITunesException {
+		doThrow(new NotModifiableException("Mocked exception")).when(track)
+				.setPlayedCount(1);
+
+		scheduler.write(cachingTrack, "track", writes(),
+				completed::incrementAndGet, failed::incrementAndGet);
+		scheduler.drain();
+
+		verify(track, times(3)).setPlayedCount(1);
+		verify(track, never()).setSkippedCount(2);
+		assertEquals("Unexpected completion", 0, completed.get());
+		assertEquals("Not failed", 1, failed.get());
+		assertEquals("Unexpected retries", 2, scheduler.getRetriesSpent());
+		assertEquals("Unexpected exhausted", 1,
+				scheduler.getRetriesExhausted());
+	}
+
+	/** Exceptions without budget are not retried. */
+	@Test(expected = ITunesException.class)
+	public void noBudget() throws ITunesException {
+		doThrow(new ITunesException("Mocked exception")).when(track)
+				.setPlayedCount(1);
+		doNothing().when(track).setSkippedCount(2);
+
+		scheduler.write(cachingTrack, "track", writes(),
+				completed::incrementAndGet, failed::incrementAndGet);
+	}
+
+	/** Writes during a batch are executed when the batch ends. */
+	@Test
+	public void batch() throws ITunesException {
+		scheduler.startBatch();
+		scheduler.write(cachingTrack, "track", writes(),
+				completed::incrementAndGet, failed::incrementAndGet);
+		verify(track, never()).setPlayedCount(1);
+
+		scheduler.endBatch();
+
+		verify(track, times(1)).setPlayedCount(1);
+		verify(track, times(1)).setSkippedCount(2);
+		assertEquals("Not completed", 1, completed.get());
+	}
+
+	private List<PropertyWrite> writes() {
+		return Arrays.asList(t -> t.setPlayedCount(1),
+				t -> t.setSkippedCount(2));
+	}
+}
@@ -15,21 +15,669 @@
  */
 package info.schnatterer.songbird2itunes.migration;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import info.schnatterer.java.lang.SystemClock;
+import info.schnatterer.java.lang.SystemClock.SystemClockException;
+import info.schnatterer.songbird2itunes.migration.Songbird2itunesMigration.Statistics;
+import info.schnatterer.songbirddbapi4j.SongbirdDb;
+import info.schnatterer.songbirddbapi4j.domain.MediaItem;
+import info.schnatterer.songbirddbapi4j.domain.MemberMediaItem;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+import info.schnatterer.songbirddbapi4j.domain.SimpleMediaList;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+/**
+ * Runs the migration end to end, from a generated songbird database to a
+ * {@link FakeITunes}.
+ */
 public class Songbird2itunesMigrationTest {
+	private static final int TRACKS = 100;
+	private static final int RETRIES = 50;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SyntheticSongbirdDb syntheticDb = new SyntheticSongbirdDb(TRACKS,
+			0.1, 42);
+	private File dbFile;
+	private File musicDir;
+	/** No playlists by default. */
+	private SongbirdDb songbirdDb = mock(SongbirdDb.class);
+
+	@Before
+	public void setUp() throws Exception {
+		dbFile = folder.newFile("songbird.db");
+		musicDir = folder.newFolder("music");
+		syntheticDb.generate(dbFile, musicDir);
+	}
+
+	@Test
+	public void migrate() throws Exception {
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+
+		Statistics stats = migrate(iTunes, RETRIES, false);
+
+		long added = TRACKS - syntheticDb.getMissingFiles();
+		assertEquals("Unexpected tracks processed", TRACKS,
+				stats.getTracksProcessed());
+		assertEquals("Unexpected tracks failed", syntheticDb.getMissingFiles(),
+				stats.getTracksFailed());
+		assertEquals("Unexpected files added", added, iTunes.getFilesAdded());
+		// Play count, rating and skip count at least
+		assertTrue("Too few properties written: "
+				+ iTunes.getPropertiesWritten(), iTunes.getPropertiesWritten()
+				+ stats.getWritesSaved() >= 3 * added);
+		assertEquals("Unexpected retries", 0, stats.getRetries());
+	}
+
+	/** Adding files in batches has the same outcome as one by one. */
+	@Test
+	public void migrateBatched() throws Exception {
+		FakeITunes iTunes = new FakeITunes(0, 0.2, 0, 42);
+		HarnessMigration migration = new HarnessMigration(iTunes, songbirdDb,
+				folder.getRoot(), 1);
+		migration.setBatchSize(7);
+
+		Statistics stats = migration.migrate(dbFile.getAbsolutePath(),
+				RETRIES, false, null, false);
+
+		long added = TRACKS - syntheticDb.getMissingFiles();
+		assertEquals("Unexpected tracks processed", TRACKS,
+				stats.getTracksProcessed());
+		assertEquals("Unexpected tracks failed", syntheticDb.getMissingFiles(),
+				stats.getTracksFailed());
+		assertEquals("Unexpected files added", added, iTunes.getFilesAdded());
+		assertEquals("Unexpected retries exhausted", 0,
+				stats.getRetriesExhausted());
+		assertTrue("Too few properties written: "
+				+ iTunes.getPropertiesWritten(), iTunes.getPropertiesWritten()
+				+ stats.getWritesSaved() >= 3 * added);
+	}
+
+	/** Writes that iTunes refused are retried until they succeed. */
+	@Test
+	public void migrateNotModifiable() throws Exception {
+		FakeITunes iTunes = new FakeITunes(0, 0.2, 0, 42);
+
+		Statistics stats = migrate(iTunes, RETRIES, false);
+
+		long added = TRACKS - syntheticDb.getMissingFiles();
+		assertEquals("Unexpected files added", added, iTunes.getFilesAdded());
+		assertEquals("Unexpected retries", iTunes.getNotModifiableThrown(),
+				stats.getRetries());
+		assertTrue("No retries", stats.getRetries() > 0);
+		assertEquals("Unexpected retries exhausted", 0,
+				stats.getRetriesExhausted());
+		assertTrue("Too few properties written: "
+				+ iTunes.getPropertiesWritten(), iTunes.getPropertiesWritten()
+				+ stats.getWritesSaved() >= 3 * added);
+	}
+
+	@Test
+	public void migrateRetriesExhausted() throws Exception {
+		FakeITunes iTunes = new FakeITunes(0, 1, 0, 42);
+
+		Statistics stats = migrate(iTunes, 2, false);
+
+		// Tracks with default values only don't need any write
+		assertTrue("No retries exhausted", stats.getRetriesExhausted() > 0);
+		assertTrue("Too many retries exhausted: "
+				+ stats.getRetriesExhausted(),
+				stats.getRetriesExhausted() <= iTunes.getFilesAdded());
+		assertEquals("Tracks not counted as failed",
+				syntheticDb.getMissingFiles() + stats.getRetriesExhausted(),
+				stats.getTracksFailed());
+		assertEquals("Unexpected properties written", 0,
+				iTunes.getPropertiesWritten());
+	}
+
+	@Test
+	public void migrateWrongParameter() throws Exception {
+		FakeITunes iTunes = new FakeITunes(0, 0, 0.2, 42);
+
+		Statistics stats = migrate(iTunes, RETRIES, false);
+
+		assertTrue("No exceptions injected",
+				iTunes.getWrongParameterThrown() > 0);
+		assertEquals("Unexpected tracks failed", syntheticDb.getMissingFiles()
+				+ iTunes.getWrongParameterThrown(), stats.getTracksFailed());
+	}
+
+	/** Tracks of playlists that were migrated before are not added again. */
+	@Test
+	public void migratePlaylists() throws Exception {
+		SimpleMediaList playlist = mockPlaylist("Playlist",
+				mockMember(findExistingTrack(1)),
+				mockMember(findExistingTrack(2)));
+		when(songbirdDb.getPlayLists(true, true)).thenReturn(
+				Collections.singletonList(playlist));
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+
+		Statistics stats = migrate(iTunes, RETRIES, false);
+
+		assertEquals("Unexpected playlists processed", 1,
+				stats.getPlaylistsProcessed());
+		assertEquals("Unexpected playlist tracks processed", 2,
+				stats.getPlaylistTracksProcessed());
+		assertEquals("Unexpected playlist tracks added", 2,
+				iTunes.getPlaylistTracksAdded());
+		assertEquals("Unexpected files added", TRACKS
+				- syntheticDb.getMissingFiles(), iTunes.getFilesAdded());
+	}
+
+	/** Only the playlists that match the requested names are migrated. */
+	@Test
+	public void migrateSelectedPlaylists() throws Exception {
+		SimpleMediaList rock = mockPlaylist("Rock",
+				mockMember(findExistingTrack(1)));
+		SimpleMediaList pop = mockPlaylist("Pop",
+				mockMember(findExistingTrack(2)));
+		when(songbirdDb.getPlayLists(true, true)).thenReturn(
+				Arrays.asList(rock, pop));
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+		HarnessMigration migration = new HarnessMigration(iTunes, songbirdDb,
+				folder.getRoot(), 1);
+
+		Statistics stats = migration.migrate(dbFile.getAbsolutePath(),
+				RETRIES, false, Arrays.asList("glob:r*", "missing"), true);
+
+		assertEquals("Unexpected playlists processed", 1,
+				stats.getPlaylistsProcessed());
+		assertEquals("Unexpected files added", 1, iTunes.getFilesAdded());
+	}
+
+	/** Only one of the files with the same content is added to iTunes. */
+	@Test
+	public void migrateDeduplicated() throws Exception {
+		byte[] content = "same content".getBytes(StandardCharsets.UTF_8);
+		Files.write(findExistingTrack(1).toPath(), content);
+		Files.write(findExistingTrack(2).toPath(), content);
+		// Same size, different content
+		Files.write(findExistingTrack(3).toPath(),
+				"diff content".getBytes(StandardCharsets.UTF_8));
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+		HarnessMigration migration = new HarnessMigration(iTunes, songbirdDb,
+				folder.getRoot(), 1);
+		migration.setDeduplicate(true);
+
+		Statistics stats = migration.migrate(dbFile.getAbsolutePath(),
+				RETRIES, false, null, false);
+
+		assertEquals("Unexpected duplicates found", 1,
+				stats.getDuplicatesFound());
+		assertEquals("Unexpected tracks failed", syntheticDb.getMissingFiles(),
+				stats.getTracksFailed());
+		assertEquals("Unexpected files added", TRACKS
+				- syntheticDb.getMissingFiles() - 1, iTunes.getFilesAdded());
+	}
+
+	/** Files rejected by their header are not added to iTunes. */
+	@Test
+	public void migrateCheckHeaders() throws Exception {
+		Files.write(findExistingTrack(1).toPath(),
+				"fLaC\u0000\u0000\u0000".getBytes(StandardCharsets.UTF_8));
+		Files.write(findExistingTrack(2).toPath(),
+				"ID3\u0004\u0000\u0000".getBytes(StandardCharsets.UTF_8));
+		// All other files are empty, i.e. corrupt
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+		HarnessMigration migration = new HarnessMigration(iTunes, songbirdDb,
+				folder.getRoot(), 1);
+		migration.setCheckHeaders(true);
+
+		Statistics stats = migration.migrate(dbFile.getAbsolutePath(),
+				RETRIES, false, null, false);
+
+		assertEquals("Unexpected files added", 1, iTunes.getFilesAdded());
+		assertEquals("Unexpected unsupported files", 1,
+				stats.getUnsupportedFiles());
+		assertEquals("Unexpected corrupt files", TRACKS
+				- syntheticDb.getMissingFiles() - 2, stats.getCorruptFiles());
+		assertEquals("Unexpected tracks failed", TRACKS - 1,
+				stats.getTracksFailed());
+	}
+
+	/** Files of unsupported formats are converted and added instead. */
+	@Test
+	public void migrateConverted() throws Exception {
+		for (int i = 1; i <= 3; i++) {
+			Files.write(findExistingTrack(i).toPath(),
+					"fLaC".getBytes(StandardCharsets.UTF_8));
+		}
+		StubConverter converter = new StubConverter();
+		converter.fail(findExistingTrack(3).toPath());
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+		HarnessMigration migration = new HarnessMigration(iTunes, songbirdDb,
+				folder.getRoot(), 1);
+		migration.setConverter(converter, new File(folder.getRoot(),
+				"converted").getPath());
+
+		Statistics stats = migration.migrate(dbFile.getAbsolutePath(),
+				RETRIES, false, null, false);
+
+		assertEquals("Unexpected files converted", 2,
+				stats.getConvertedFiles());
+		assertEquals("Unexpected unsupported files", 1,
+				stats.getUnsupportedFiles());
+		assertEquals("Unexpected files added", 2, iTunes.getFilesAdded());
+		// The empty files are corrupt
+		assertEquals("Unexpected tracks failed", TRACKS - 2,
+				stats.getTracksFailed());
+	}
+
+	/** Of files with the same content, only the canonical one is converted. */
+	@Test
+	public void migrateDeduplicatedConverted() throws Exception {
+		byte[] content = "fLaC\u0000\u0000\u0000".getBytes(StandardCharsets.UTF_8);
+		Files.write(findExistingTrack(1).toPath(), content);
+		Files.write(findExistingTrack(2).toPath(), content);
+		StubConverter converter = new StubConverter();
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+		HarnessMigration migration = new HarnessMigration(iTunes, songbirdDb,
+				folder.getRoot(), 1);
+		migration.setDeduplicate(true);
+		migration.setConverter(converter, new File(folder.getRoot(),
+				"converted").getPath());
+
+		Statistics stats = migration.migrate(dbFile.getAbsolutePath(),
+				RETRIES, false, null, false);
+
+		assertEquals("Unexpected duplicates found", 1,
+				stats.getDuplicatesFound());
+		assertEquals("Unexpected conversions", 1, converter.getConversions());
+		assertEquals("Unexpected files added", 1, iTunes.getFilesAdded());
+		// The empty files are corrupt
+		assertEquals("Unexpected tracks failed", TRACKS - 2,
+				stats.getTracksFailed());
+	}
 
+	/**
+	 * A dry run does not convert files, but plans them for conversion. They
+	 * are converted when the plan is executed.
+	 */
 	@Test
-	public void test() {
-		assertTrue(true);
+	public void dryRunConverted() throws Exception {
+		for (int i = 1; i <= 3; i++) {
+			Files.write(findExistingTrack(i).toPath(),
+					"fLaC".getBytes(StandardCharsets.UTF_8));
+		}
+		StubConverter converter = new StubConverter();
+		converter.fail(findExistingTrack(3).toPath());
+		File convertDirectory = new File(folder.getRoot(), "converted");
+		File planFile = new File(folder.getRoot(), "plan");
+		HarnessMigration dryRun = new HarnessMigration(new FakeITunes(0, 0,
+				0, 42), songbirdDb, folder.getRoot(), 1);
+		dryRun.setConverter(converter, convertDirectory.getPath());
+		dryRun.setDryRun(true);
+		dryRun.setPlanFile(planFile.getAbsolutePath());
+
+		Statistics stats = dryRun.migrate(dbFile.getAbsolutePath(), RETRIES,
+				false, null, false);
+
+		assertEquals("Converted on dry run", 0, converter.getConversions());
+		assertFalse("Conversion directory created on dry run",
+				convertDirectory.exists());
+		assertEquals("Unexpected files that would be converted", 3,
+				stats.getConvertedFiles());
+		assertEquals("Unexpected unsupported files", 0,
+				stats.getUnsupportedFiles());
+
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+		HarnessMigration migration = new HarnessMigration(iTunes, songbirdDb,
+				folder.getRoot(), 1);
+		migration.setConverter(converter, convertDirectory.getPath());
+		migration.setPlanFile(planFile.getAbsolutePath());
+
+		stats = migration.migrate(dbFile.getAbsolutePath(), RETRIES, false,
+				null, false);
+
+		assertEquals("Unexpected conversions", 3, converter.getConversions());
+		assertEquals("Unexpected files converted", 2,
+				stats.getConvertedFiles());
+		assertEquals("Unexpected unsupported files", 1,
+				stats.getUnsupportedFiles());
+		assertEquals("Unexpected files added", 2, iTunes.getFilesAdded());
+	}
+
+	/** Tracks migrated by a previous run are skipped. */
+	@Test
+	public void migrateResume() throws Exception {
+		FakeITunes firstITunes = new FakeITunes(0, 0, 0, 42);
+		migrate(firstITunes, RETRIES, false);
+		FakeITunes secondITunes = new FakeITunes(0, 0, 0, 42);
+
+		Statistics stats = migrate(secondITunes, RETRIES, true);
+
+		assertEquals("Unexpected tracks skipped", firstITunes.getFilesAdded(),
+				stats.getTracksSkipped());
+		assertEquals("Unexpected files added", 0, secondITunes.getFilesAdded());
+		assertEquals("Unexpected tracks failed", syntheticDb.getMissingFiles(),
+				stats.getTracksFailed());
+	}
+
+	/**
+	 * If the system clock cannot be set on this operating system, the tracks
+	 * are migrated without the date added.
+	 */
+	@Test
+	public void migrateSystemClockNotSupported() throws Exception {
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+		HarnessMigration migration = new HarnessMigration(iTunes, songbirdDb,
+				folder.getRoot(), 1) {
+			@Override
+			protected SystemClock createSystemClock()
+					throws SystemClockException {
+				throw new SystemClockException(
+						"Setting the system clock is not supported on Mac OS X");
+			}
+		};
+
+		Statistics stats = migration.migrate(dbFile.getAbsolutePath(),
+				RETRIES, true, null, false);
+
+		assertEquals("Unexpected files added", TRACKS
+				- syntheticDb.getMissingFiles(), iTunes.getFilesAdded());
+		assertEquals("Unexpected tracks failed", syntheticDb.getMissingFiles(),
+				stats.getTracksFailed());
+	}
+
+	/** A dry run reports what would be migrated without touching iTunes. */
+	@Test
+	public void dryRun() throws Exception {
+		mockPlaylistWithMissingTrack();
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+		File planFile = new File(folder.getRoot(), "plan");
+
+		Statistics stats = migrate(iTunes, RETRIES, false, true, planFile);
+
+		assertEquals("Unexpected files added", 0, iTunes.getFilesAdded());
+		assertEquals("Unexpected tracks processed", TRACKS,
+				stats.getTracksProcessed());
+		assertEquals("Unexpected tracks failed", syntheticDb.getMissingFiles(),
+				stats.getTracksFailed());
+		assertEquals("Unexpected playlist tracks processed", 3,
+				stats.getPlaylistTracksProcessed());
+		assertEquals("Unexpected playlist tracks failed", 1,
+				stats.getPlaylistTracksFailed());
+		assertTrue("Plan not written", planFile.exists());
+	}
+
+	/**
+	 * Executing a plan has the same outcome as migrating directly, without
+	 * reading songbird again.
+	 */
+	@Test
+	public void migratePlan() throws Exception {
+		mockPlaylistWithMissingTrack();
+		File planFile = new File(folder.getRoot(), "plan");
+		migrate(new FakeITunes(0, 0, 0, 42), RETRIES, false, true, planFile);
+		assertTrue("Songbird database not deleted", dbFile.delete());
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+
+		Statistics stats = migrate(iTunes, RETRIES, false, false, planFile);
+
+		verify(songbirdDb, times(1)).getPlayLists(true, true);
+		long added = TRACKS - syntheticDb.getMissingFiles();
+		assertEquals("Unexpected files added", added, iTunes.getFilesAdded());
+		assertEquals("Unexpected tracks processed", added,
+				stats.getTracksProcessed());
+		assertTrue("Too few properties written: "
+				+ iTunes.getPropertiesWritten(), iTunes.getPropertiesWritten()
+				+ stats.getWritesSaved() >= 3 * added);
+		assertEquals("Unexpected playlist tracks added", 2,
+				iTunes.getPlaylistTracksAdded());
+		assertEquals("Unexpected playlist tracks failed", 1,
+				stats.getPlaylistTracksFailed());
+	}
+
+	/**
+	 * A delta sync only migrates the tracks and playlists that are new or
+	 * changed since the previous delta sync.
+	 */
+	@Test
+	public void deltaSync() throws Exception {
+		mockPlaylistWithMissingTrack();
+		File stateFile = new File(folder.getRoot(), "state");
+		FakeITunes firstITunes = new FakeITunes(0, 0, 0, 42);
+		migrateDelta(firstITunes, stateFile);
+		assertEquals("Unexpected files added by first sync", TRACKS
+				- syntheticDb.getMissingFiles(), firstITunes.getFilesAdded());
+
+		FakeITunes unchangedITunes = new FakeITunes(0, 0, 0, 42);
+		Statistics stats = migrateDelta(unchangedITunes, stateFile);
+		assertEquals("Unexpected files added when unchanged", 0,
+				unchangedITunes.getFilesAdded());
+		assertEquals("Unexpected playlists processed when unchanged", 0,
+				stats.getPlaylistsProcessed());
+		assertEquals("Unexpected tracks skipped when unchanged", TRACKS
+				- syntheticDb.getMissingFiles(), stats.getTracksSkipped());
+
+		String changedTrack = findExistingTrack(3).getName().replace(".mp3",
+				"");
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:"
+				+ dbFile.getAbsolutePath());
+				Statement statement = connection.createStatement()) {
+			statement
+					.executeUpdate("INSERT OR REPLACE INTO resource_properties VALUES ("
+							+ changedTrack + ", 3, '999', NULL, NULL, NULL)");
+		}
+		FakeITunes changedITunes = new FakeITunes(0, 0, 0, 42);
+		stats = migrateDelta(changedITunes, stateFile);
+		assertEquals("Unexpected files added when changed", 1,
+				changedITunes.getFilesAdded());
+		assertEquals("Unexpected playlists processed when changed", 0,
+				stats.getPlaylistsProcessed());
+	}
+
+	/**
+	 * Writing an iTunes library XML file does not touch iTunes at all, nor the
+	 * system clock.
+	 */
+	@Test
+	public void migrateLibraryXml() throws Exception {
+		mockPlaylistWithMissingTrack();
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+		File libraryXmlFile = new File(folder.getRoot(), "library.xml");
+		HarnessMigration migration = new HarnessMigration(iTunes, songbirdDb,
+				folder.getRoot(), 1) {
+			@Override
+			protected SystemClock createSystemClock() {
+				throw new AssertionError("System clock used");
+			}
+		};
+		migration.setLibraryXmlFile(libraryXmlFile.getAbsolutePath());
+
+		Statistics stats = migration.migrate(dbFile.getAbsolutePath(),
+				RETRIES, true, null, false);
+
+		assertEquals("Unexpected files added to iTunes", 0,
+				iTunes.getFilesAdded());
+		assertEquals("Unexpected tracks failed", syntheticDb.getMissingFiles(),
+				stats.getTracksFailed());
+		assertEquals("Unexpected playlist tracks failed", 1,
+				stats.getPlaylistTracksFailed());
+		String library = new String(Files.readAllBytes(libraryXmlFile
+				.toPath()), StandardCharsets.UTF_8);
+		assertEquals("Unexpected tracks in library", TRACKS
+				- syntheticDb.getMissingFiles(), countMatches(library,
+				"<key>Track ID</key>") - 2);
+	}
+
+	/**
+	 * A library XML file always contains all tracks of one migration, so it
+	 * cannot be resumed.
+	 */
+	@Test
+	public void migrateLibraryXmlResume() throws Exception {
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+		// Tracks migrated to iTunes before
+		migrate(iTunes, RETRIES, false);
+		File journalFile = new File(folder.getRoot(),
+				Songbird2itunesMigration.DEFAULT_JOURNAL_FILE);
+		byte[] journal = Files.readAllBytes(journalFile.toPath());
+		File libraryXmlFile = new File(folder.getRoot(), "library.xml");
+		HarnessMigration migration = new HarnessMigration(iTunes, songbirdDb,
+				folder.getRoot(), 1);
+		migration.setLibraryXmlFile(libraryXmlFile.getAbsolutePath());
+		migration.setResume(true);
+
+		try {
+			migration.migrate(dbFile.getAbsolutePath(), RETRIES, false, null,
+					false);
+			fail("Resuming a library XML file not rejected");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		assertFalse("Library XML file written", libraryXmlFile.exists());
+
+		migration.setResume(false);
+		migration.migrate(dbFile.getAbsolutePath(), RETRIES, false, null,
+				false);
+		assertTrue("Library XML file not written", libraryXmlFile.exists());
+		assertTrue("Journal of the previous migration modified",
+				Arrays.equals(journal, Files.readAllBytes(journalFile.toPath())));
+	}
+
+	/**
+	 * Exporting playlists writes files only, neither iTunes nor the system
+	 * clock is touched.
+	 */
+	@Test
+	public void exportPlaylists() throws Exception {
+		mockPlaylistWithMissingTrack();
+		FakeITunes iTunes = new FakeITunes(0, 0, 0, 42);
+		File exportDir = new File(folder.getRoot(), "playlists");
+		HarnessMigration migration = new HarnessMigration(iTunes, songbirdDb,
+				folder.getRoot(), 1) {
+			@Override
+			protected SystemClock createSystemClock() {
+				throw new AssertionError("System clock used");
+			}
+		};
+		migration.setPlaylistExport(exportDir.getAbsolutePath(),
+				PlaylistFormat.M3U8);
+
+		Statistics stats = migration.migrate(dbFile.getAbsolutePath(),
+				RETRIES, true, null, false);
+
+		assertEquals("Unexpected files added to iTunes", 0,
+				iTunes.getFilesAdded());
+		assertEquals("Unexpected tracks processed", 0,
+				stats.getTracksProcessed());
+		assertEquals("Unexpected playlists processed", 1,
+				stats.getPlaylistsProcessed());
+		assertEquals("Unexpected playlist tracks failed", 1,
+				stats.getPlaylistTracksFailed());
+		List<String> lines = Files.readAllLines(new File(exportDir,
+				"Playlist.m3u8").toPath(), StandardCharsets.UTF_8);
+		assertEquals("Unexpected first track",
+				findExistingTrack(1).getCanonicalPath(), lines.get(3));
+		assertEquals("Unexpected second track",
+				findExistingTrack(2).getCanonicalPath(), lines.get(5));
+		assertEquals("Unexpected number of lines", 6, lines.size());
+	}
+
+	private void mockPlaylistWithMissingTrack() throws Exception {
+		SimpleMediaList playlist = mockPlaylist("Playlist",
+				mockMember(findExistingTrack(1)),
+				mockMember(new File(musicDir, "missing.mp3")),
+				mockMember(findExistingTrack(2)));
+		when(songbirdDb.getPlayLists(true, true)).thenReturn(
+				Collections.singletonList(playlist));
+	}
+
+	private Statistics migrate(FakeITunes iTunes, int retries, boolean resume)
+			throws Exception {
+		return migrate(iTunes, retries, resume, false, null);
+	}
+
+	private Statistics migrate(FakeITunes iTunes, int retries,
+			boolean resume, boolean dryRun, File planFile) throws Exception {
+		HarnessMigration migration = new HarnessMigration(iTunes, songbirdDb,
+				folder.getRoot(), 1);
+		migration.setResume(resume);
+		migration.setDryRun(dryRun);
+		if (planFile != null) {
+			migration.setPlanFile(planFile.getAbsolutePath());
+		}
+		return migration.migrate(dbFile.getAbsolutePath(), retries, false,
+				null, false);
+	}
+
+	private Statistics migrateDelta(FakeITunes iTunes, File stateFile)
+			throws Exception {
+		HarnessMigration migration = new HarnessMigration(iTunes, songbirdDb,
+				folder.getRoot(), 1);
+		migration.setDelta(true);
+		migration.setStateFile(stateFile.getAbsolutePath());
+		return migration.migrate(dbFile.getAbsolutePath(), RETRIES, false,
+				null, false);
+	}
+
+	private static int countMatches(String string, String substring) {
+		int count = 0;
+		for (int i = string.indexOf(substring); i >= 0; i = string.indexOf(
+				substring, i + 1)) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the file of the <code>n</code>th track whose file exists
+	 */
+	private File findExistingTrack(int n) {
+		int found = 0;
+		for (int id = 1; id <= TRACKS; id++) {
+			File file = new File(new File(musicDir, "0"), id + ".mp3");
+			if (file.exists() && ++found == n) {
+				return file;
+			}
+		}
+		throw new IllegalStateException("Less than " + n + " tracks exist");
+	}
+
+	private static SimpleMediaList mockPlaylist(String name,
+			MemberMediaItem... members) {
+		MediaItem list = mock(MediaItem.class);
+		when(list.getProperty(Property.PROP_MEDIA_LIST_NAME)).thenReturn(name);
+		SimpleMediaList playlist = mock(SimpleMediaList.class);
+		when(playlist.getList()).thenReturn(list);
+		when(playlist.getMembers()).thenReturn(Arrays.asList(members));
+		return playlist;
+	}
+
+	private static MemberMediaItem mockMember(File file) {
+		MediaItem track = mock(MediaItem.class);
+		when(track.getContentUrl()).thenReturn(file.toURI().toString());
+		MemberMediaItem member = mock(MemberMediaItem.class);
+		when(member.getMember()).thenReturn(track);
+		return member;
 	}
 
 	// TODO long values from SB are null
 	// TODO dates from SB are null
 	// TODO URLs are malformed
-	// TODO iTunes Exceptions
 	// TODO setting system clock fails
 	// TODO ...
 
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SongbirdTrackCursorTest {
+	/** A property that is not migrated. */
+	private static final String PROPERTY_GENRE = "http://songbirdnest.com/data/1.0#genre";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File db;
+
+	@Before
+	public void setUp() throws Exception {
+		db = folder.newFile("songbird.db");
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:"
+				+ db.getAbsolutePath());
+				Statement statement = connection.createStatement()) {
+			statement
+					.executeUpdate("CREATE TABLE media_items (media_item_id INTEGER PRIMARY KEY, guid TEXT, "
+							+ "created INTEGER, content_url TEXT, is_list INTEGER)");
+			statement
+					.executeUpdate("CREATE TABLE properties (property_id INTEGER PRIMARY KEY, property_name TEXT)");
+			statement
+					.executeUpdate("CREATE TABLE resource_properties (media_item_id INTEGER, property_id INTEGER, obj TEXT)");
+			statement.executeUpdate("INSERT INTO properties VALUES (1, '"
+					+ Property.PROP_PLAY_COUNT + "'), (2, '"
+					+ Property.PROP_RATING + "'), (3, '" + PROPERTY_GENRE
+					+ "'), (4, '" + Property.PROP_TRACK_NAME + "')");
+			statement
+					.executeUpdate("INSERT INTO media_items VALUES (1, 'a', 1000, 'file:///a.mp3', 0), "
+							+ "(2, 'b', 2000, 'file:///b.mp3', 0), (3, 'l', 3000, NULL, 1), "
+							+ "(4, 'c', NULL, 'file:///c.mp3', 0)");
+			statement
+					.executeUpdate("INSERT INTO resource_properties VALUES (1, 1, '3'), (1, 2, '5'), (2, 1, '7'), (3, 1, '9'), "
+							+ "(1, 3, 'Rock'), (1, 4, 'Song A'), (4, 3, 'Jazz')");
+		}
+	}
+
+	/** One track per media item, lists are ignored. */
+	@Test
+	public void tracks() throws SQLException {
+		try (SongbirdTrackCursor cursor = SongbirdTrackCursor.open(db, 1,
+				false)) {
+			assertEquals("Unexpected count", 3, cursor.count());
+
+			SongbirdTrack a = cursor.next();
+			assertEquals("Unexpected GUID", "a", a.getGuid());
+			assertEquals("Unexpected URL", "file:///a.mp3", a.getContentUrl());
+			assertEquals("Unexpected date", new Date(1000), a.getDateCreated());
+			assertEquals("Unexpected play count", Long.valueOf(3),
+					a.getPropertyAsLong(Property.PROP_PLAY_COUNT));
+			assertEquals("Unexpected rating", Long.valueOf(5),
+					a.getPropertyAsLong(Property.PROP_RATING));
+
+			SongbirdTrack b = cursor.next();
+			assertEquals("Unexpected URL", "file:///b.mp3", b.getContentUrl());
+			assertEquals("Unexpected play count", Long.valueOf(7),
+					b.getPropertyAsLong(Property.PROP_PLAY_COUNT));
+			assertNull("Unexpected rating",
+					b.getPropertyAsLong(Property.PROP_RATING));
+
+			SongbirdTrack c = cursor.next();
+			assertEquals("Unexpected URL", "file:///c.mp3", c.getContentUrl());
+			assertNull("Unexpected date", c.getDateCreated());
+
+			assertFalse("Unexpected track", cursor.hasNext());
+		}
+	}
+
+	/** Only the properties that are migrated are read. */
+	@Test
+	public void projection() throws SQLException {
+		try (SongbirdTrackCursor cursor = SongbirdTrackCursor.open(db, 1,
+				false)) {
+			SongbirdTrack a = cursor.next();
+			assertEquals("Unexpected name", "Song A",
+					a.getProperty(Property.PROP_TRACK_NAME));
+			assertNull("Unexpected genre", a.getProperty(PROPERTY_GENRE));
+			// Not contained in the properties table
+			assertNull("Unexpected skip count",
+					a.getProperty(Property.PROP_SKIP_COUNT));
+			cursor.next();
+			SongbirdTrack c = cursor.next();
+			assertNull("Unexpected genre", c.getProperty(PROPERTY_GENRE));
+			assertNull("Unexpected play count",
+					c.getProperty(Property.PROP_PLAY_COUNT));
+		}
+	}
+
+	/** Tracks without a date come first, one row per track. */
+	@Test
+	public void tracksOrderedByDateCreated() throws Exception {
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:"
+				+ db.getAbsolutePath());
+				Statement statement = connection.createStatement()) {
+			statement.executeUpdate("UPDATE media_items SET created = 500 "
+					+ "WHERE media_item_id = 2");
+		}
+		try (SongbirdTrackCursor cursor = SongbirdTrackCursor.open(db, 1,
+				true)) {
+			assertEquals("Unexpected URL", "file:///c.mp3", cursor.next()
+					.getContentUrl());
+			SongbirdTrack b = cursor.next();
+			assertEquals("Unexpected URL", "file:///b.mp3", b.getContentUrl());
+			assertEquals("Unexpected play count", Long.valueOf(7),
+					b.getPropertyAsLong(Property.PROP_PLAY_COUNT));
+			SongbirdTrack a = cursor.next();
+			assertEquals("Unexpected URL", "file:///a.mp3", a.getContentUrl());
+			assertEquals("Unexpected rating", Long.valueOf(5),
+					a.getPropertyAsLong(Property.PROP_RATING));
+			assertFalse("Unexpected track", cursor.hasNext());
+		}
+	}
+}
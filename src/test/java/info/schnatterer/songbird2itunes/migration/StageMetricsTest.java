@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import info.schnatterer.songbird2itunes.migration.StageMetrics.Stage;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StageMetricsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private StageMetrics metrics = new StageMetrics();
+
+	/** Only stages that were recorded are written. */
+	@Test
+	public void write() throws Exception {
+		Iterator<String> timed = metrics.timed(Stage.SONGBIRD_TRACK_QUERY,
+				Arrays.asList("a", "b").iterator());
+		while (timed.hasNext()) {
+			timed.next();
+		}
+		metrics.record(Stage.ADD_FILE, System.nanoTime());
+
+		File file = folder.newFile();
+		metrics.write(file);
+
+		List<String> lines = Files.readAllLines(file.toPath());
+		assertEquals("Unexpected lines: " + lines, 3, lines.size());
+		assertEquals("Unexpected header", StageMetrics.CSV_HEADER,
+				lines.get(0));
+		assertThat("Unexpected stage", lines.get(1),
+				startsWith("songbird_track_query,2,"));
+		assertThat("Unexpected stage", lines.get(2), startsWith("add_file,1,"));
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link TrackConverter} for tests: Writes an ID3 header, so the converted
+ * file is supported by iTunes. Fails on the files it is told to.
+ */
+class StubConverter implements TrackConverter {
+	static final String HEADER = "ID3\u0004\u0000\u0000";
+
+	private final Set<Path> failing = Collections
+			.synchronizedSet(new HashSet<>());
+	private final AtomicInteger conversions = new AtomicInteger();
+
+	@Override
+	public String getExtension() {
+		return "m4a";
+	}
+
+	@Override
+	public void convert(Path source, Path target) throws IOException {
+		conversions.incrementAndGet();
+		if (failing.contains(source)) {
+			Files.write(target, "partial".getBytes(StandardCharsets.UTF_8));
+			throw new IOException("Mocked conversion failure: " + source);
+		}
+		Files.write(target, HEADER.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param source
+	 *            a file whose conversion fails
+	 */
+	void fail(Path source) {
+		failing.add(source);
+	}
+
+	/**
+	 * @return the number of times {@link #convert(Path, Path)} was called
+	 */
+	int getConversions() {
+		return conversions.get();
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import info.schnatterer.songbird2itunes.migration.MigrationPlan.PlannedTrack;
+import info.schnatterer.songbird2itunes.migration.SyncState.Change;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SyncStateTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Tracks are new, changed or unchanged compared to the previous sync. */
+	@Test
+	public void compareTracks() {
+		File file = new File(folder.getRoot(), "state");
+		SyncState first = SyncState.open(file, true);
+		assertEquals("Unexpected change of track in first sync", Change.NEW,
+				first.compareTrack(track("a", "file:///a.mp3", 1L)));
+		first.trackMigrated(track("a", "file:///a.mp3", 1L));
+		first.trackMigrated(track("b", "file:///b.mp3", 1L));
+		first.complete();
+
+		SyncState second = SyncState.open(file, true);
+		assertEquals("Unexpected change of unchanged track",
+				Change.UNCHANGED,
+				second.compareTrack(track("a", "file:///a.mp3", 1L)));
+		assertEquals("Unexpected change of changed play count",
+				Change.CHANGED,
+				second.compareTrack(track("b", "file:///b.mp3", 2L)));
+		assertEquals("Unexpected change of new track", Change.NEW,
+				second.compareTrack(track("c", "file:///c.mp3", 1L)));
+		assertEquals("Unexpected new tracks", 1, second.getNewTracks());
+		assertEquals("Unexpected changed tracks", 1, second.getChangedTracks());
+		assertEquals("Unexpected unchanged tracks", 1,
+				second.getUnchangedTracks());
+	}
+
+	/**
+	 * Completing a sync keeps the entries of the previous sync that were not
+	 * migrated again.
+	 */
+	@Test
+	public void completeMerges() {
+		File file = new File(folder.getRoot(), "state");
+		SyncState first = SyncState.open(file, true);
+		first.trackMigrated(track("a", "file:///a.mp3", 1L));
+		first.trackMigrated(track("b", "file:///b.mp3", 1L));
+		first.complete();
+		SyncState second = SyncState.open(file, true);
+		second.trackMigrated(track("b", "file:///b.mp3", 2L));
+		second.trackMigrated(track("c", "file:///c.mp3", 1L));
+		second.complete();
+
+		SyncState third = SyncState.open(file, false);
+		assertEquals("Unexpected change of track from first sync",
+				Change.UNCHANGED,
+				third.compareTrack(track("a", "file:///a.mp3", 1L)));
+		assertEquals("Unexpected change of track updated by second sync",
+				Change.UNCHANGED,
+				third.compareTrack(track("b", "file:///b.mp3", 2L)));
+		assertEquals("Unexpected change of track added by second sync",
+				Change.UNCHANGED,
+				third.compareTrack(track("c", "file:///c.mp3", 1L)));
+	}
+
+	/** Playlists change when their members change. */
+	@Test
+	public void comparePlaylists() {
+		File file = new File(folder.getRoot(), "state");
+		List<SongbirdTrack> members = Arrays.asList(new PlannedTrack(
+				"file:///a.mp3"), new PlannedTrack("file:///b.mp3"));
+		SyncState first = SyncState.open(file, true);
+		first.playlistMigrated("list", members);
+		first.complete();
+
+		SyncState second = SyncState.open(file, true);
+		assertEquals("Unexpected change of unchanged playlist",
+				Change.UNCHANGED, second.comparePlaylist("list", members));
+		assertEquals("Unexpected change of changed playlist", Change.CHANGED,
+				second.comparePlaylist("list",
+						Collections.singletonList(members.get(0))));
+		assertEquals("Unexpected change of new playlist", Change.NEW,
+				second.comparePlaylist("other", members));
+	}
+
+	/** A state that is not writable, e.g. for a dry run, is never written. */
+	@Test
+	public void notWritable() {
+		File file = new File(folder.getRoot(), "state");
+		SyncState state = SyncState.open(file, false);
+		state.trackMigrated(track("a", "file:///a.mp3", 1L));
+		state.complete();
+		assertFalse("State written", file.exists());
+	}
+
+	/** When disabled, everything is migrated. */
+	@Test
+	public void disabled() {
+		SyncState state = SyncState.disabled();
+		state.trackMigrated(track("a", "file:///a.mp3", 1L));
+		state.complete();
+		assertEquals("Unexpected change when disabled", Change.NEW,
+				state.compareTrack(track("a", "file:///a.mp3", 1L)));
+	}
+
+	private static SongbirdTrack track(String guid, String contentUrl,
+			Long playCount) {
+		Map<String, String> properties = new HashMap<>();
+		properties.put(Property.PROP_PLAY_COUNT, playCount.toString());
+		return new PlannedTrack(guid, contentUrl, Optional.empty(), new Date(
+				1000), properties);
+	}
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates songbird databases of arbitrary size, for testing and measuring
+ * the migration. The databases use songbird's schema and contain tracks with
+ * realistic properties and playlists of varying size.
+ * 
+ * Each track refers to an (empty) file within a music directory. Some tracks
+ * refer to files that do not exist.
+ * 
+ * @author schnatterer
+ *
+ */
+class SyntheticSongbirdDb {
+	private static final String PROP_ARTIST_NAME = "http://songbirdnest.com/data/1.0#artistName";
+	private static final String PROP_TRACK_NAME = "http://songbirdnest.com/data/1.0#trackName";
+	/** Properties are inserted in this order, their IDs start at 1. */
+	private static final String[] PROPERTIES = { PROP_ARTIST_NAME,
+			PROP_TRACK_NAME, Property.PROP_PLAY_COUNT, Property.PROP_SKIP_COUNT,
+			Property.PROP_RATING, Property.PROP_LAST_PLAY_TIME,
+			Property.PROP_LAST_SKIP_TIME, Property.PROP_MEDIA_LIST_NAME };
+	private static final int PROPERTY_ID_MEDIA_LIST_NAME = PROPERTIES.length;
+
+	private static final int FILES_PER_DIRECTORY = 1000;
+	private static final int BATCH_SIZE = 10000;
+	/** Tracks were added to songbird within these years. */
+	private static final long CREATED_RANGE_MILLIS = TimeUnit.DAYS
+			.toMillis(5 * 365);
+	private static final long CREATED_START_MILLIS = 1230768000000L; // 2009
+
+	private final int tracks;
+	private final double missingFileRate;
+	private final Random random;
+
+	private int playlists = 0;
+	private long playlistMembers = 0;
+	private int missingFiles = 0;
+
+	/**
+	 * @param tracks
+	 *            number of tracks to generate
+	 * @param missingFileRate
+	 *            fraction of tracks (0..1) whose file does not exist
+	 * @param seed
+	 *            seed for the random values. The same seed generates the same
+	 *            database.
+	 */
+	SyntheticSongbirdDb(int tracks, double missingFileRate, long seed) {
+		this.tracks = tracks;
+		this.missingFileRate = missingFileRate;
+		random = new Random(seed);
+	}
+
+	/**
+	 * Writes the database and creates the files of the tracks.
+	 * 
+	 * @param dbFile
+	 *            the database file to create
+	 * @param musicDir
+	 *            directory to create the files of the tracks in
+	 * 
+	 * @throws SQLException
+	 *             errors when writing the database
+	 * @throws IOException
+	 *             errors when creating the files
+	 */
+	void generate(File dbFile, File musicDir) throws SQLException,
+			IOException {
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:"
+				+ dbFile.getAbsolutePath())) {
+			connection.setAutoCommit(false);
+			createSchema(connection);
+			insertTracks(connection, musicDir);
+			insertPlaylists(connection);
+			connection.commit();
+		}
+	}
+
+	private void createSchema(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate("CREATE TABLE media_list_types ("
+					+ "media_list_type_id INTEGER PRIMARY KEY, type TEXT UNIQUE, "
+					+ "factory_contract_id TEXT)");
+			statement.executeUpdate("INSERT INTO media_list_types VALUES "
+					+ "(1, 'simple', '@songbirdnest.com/Songbird/Library/LocalDatabase/SimpleMediaListFactory;1'), "
+					+ "(2, 'smart', '@songbirdnest.com/Songbird/Library/LocalDatabase/SmartMediaListFactory;1')");
+			statement.executeUpdate("CREATE TABLE media_items ("
+					+ "media_item_id INTEGER PRIMARY KEY, guid TEXT UNIQUE NOT NULL, "
+					+ "created INTEGER NOT NULL, updated INTEGER NOT NULL, "
+					+ "content_url TEXT NOT NULL, content_mime_type TEXT, "
+					+ "content_length INTEGER, hidden INTEGER NOT NULL CHECK(hidden IN (0,1)), "
+					+ "media_list_type_id INTEGER, is_list INTEGER NOT NULL DEFAULT 0, "
+					+ "metadata_hash_identity TEXT)");
+			statement.executeUpdate("CREATE TABLE properties ("
+					+ "property_id INTEGER PRIMARY KEY, property_name TEXT NOT NULL UNIQUE)");
+			statement.executeUpdate("CREATE TABLE resource_properties ("
+					+ "media_item_id INTEGER NOT NULL, property_id INTEGER NOT NULL, "
+					+ "obj TEXT NOT NULL, obj_searchable TEXT, obj_sortable TEXT, "
+					+ "obj_secondary_sortable TEXT, "
+					+ "PRIMARY KEY (media_item_id, property_id))");
+			statement.executeUpdate("CREATE TABLE simple_media_lists ("
+					+ "media_item_id INTEGER NOT NULL, member_media_item_id INTEGER NOT NULL, "
+					+ "ordinal TEXT NOT NULL)");
+			statement
+					.executeUpdate("CREATE INDEX idx_simple_media_lists_media_item_id_ordinal "
+							+ "ON simple_media_lists (media_item_id, ordinal)");
+		}
+		try (PreparedStatement insert = connection
+				.prepareStatement("INSERT INTO properties VALUES (?, ?)")) {
+			for (int i = 0; i < PROPERTIES.length; i++) {
+				insert.setInt(1, i + 1);
+				insert.setString(2, PROPERTIES[i]);
+				insert.addBatch();
+			}
+			insert.executeBatch();
+		}
+	}
+
+	private void insertTracks(Connection connection, File musicDir)
+			throws SQLException, IOException {
+		try (PreparedStatement insertItem = connection
+				.prepareStatement("INSERT INTO media_items VALUES (?, ?, ?, ?, ?, 'audio/mpeg', 0, 0, NULL, 0, NULL)");
+				PreparedStatement insertProperty = connection
+						.prepareStatement("INSERT INTO resource_properties VALUES (?, ?, ?, NULL, NULL, NULL)")) {
+			for (int id = 1; id <= tracks; id++) {
+				File file = new File(new File(musicDir, String.valueOf(id
+						/ FILES_PER_DIRECTORY)), id + ".mp3");
+				if (random.nextDouble() < missingFileRate) {
+					missingFiles++;
+				} else {
+					createFile(file);
+				}
+				long created = CREATED_START_MILLIS
+						+ (long) (random.nextDouble() * CREATED_RANGE_MILLIS);
+				insertItem.setInt(1, id);
+				insertItem.setString(2, UUID.randomUUID().toString());
+				insertItem.setLong(3, created);
+				insertItem.setLong(4, created);
+				insertItem.setString(5, file.toURI().toString());
+				insertItem.addBatch();
+
+				insertProperty(insertProperty, id, 1, "Artist "
+						+ random.nextInt(Math.max(1, tracks / 10)));
+				insertProperty(insertProperty, id, 2, "Track " + id);
+				// Most tracks are played rarely, some very often
+				int playCount = (int) Math.floor(Math.pow(random.nextDouble(),
+						3) * 200);
+				if (playCount > 0) {
+					insertProperty(insertProperty, id, 3,
+							String.valueOf(playCount));
+					insertProperty(insertProperty, id, 6,
+							String.valueOf(created
+									+ (long) (random.nextDouble() * CREATED_RANGE_MILLIS)));
+				}
+				if (random.nextInt(4) == 0) {
+					insertProperty(insertProperty, id, 4,
+							String.valueOf(1 + random.nextInt(10)));
+					insertProperty(insertProperty, id, 7,
+							String.valueOf(created
+									+ (long) (random.nextDouble() * CREATED_RANGE_MILLIS)));
+				}
+				// Songbird stores ratings as 0..5, most tracks are unrated
+				if (random.nextInt(3) == 0) {
+					insertProperty(insertProperty, id, 5,
+							String.valueOf(1 + random.nextInt(5)));
+				}
+
+				if (id % BATCH_SIZE == 0) {
+					insertItem.executeBatch();
+					insertProperty.executeBatch();
+				}
+			}
+			insertItem.executeBatch();
+			insertProperty.executeBatch();
+		}
+	}
+
+	/**
+	 * Creates about one playlist per 500 tracks (at least 5). Most playlists
+	 * are small, some contain thousands of tracks. Tracks may be contained in
+	 * several playlists.
+	 */
+	private void insertPlaylists(Connection connection) throws SQLException {
+		playlists = Math.max(5, tracks / 500);
+		try (PreparedStatement insertItem = connection
+				.prepareStatement("INSERT INTO media_items VALUES (?, ?, ?, ?, ?, NULL, NULL, 0, 1, 1, NULL)");
+				PreparedStatement insertProperty = connection
+						.prepareStatement("INSERT INTO resource_properties VALUES (?, ?, ?, NULL, NULL, NULL)");
+				PreparedStatement insertMember = connection
+						.prepareStatement("INSERT INTO simple_media_lists VALUES (?, ?, ?)")) {
+			for (int i = 0; i < playlists; i++) {
+				int id = tracks + 1 + i;
+				String guid = UUID.randomUUID().toString();
+				insertItem.setInt(1, id);
+				insertItem.setString(2, guid);
+				insertItem.setLong(3, CREATED_START_MILLIS);
+				insertItem.setLong(4, CREATED_START_MILLIS);
+				insertItem.setString(5, "songbird-medialist://" + guid);
+				insertItem.addBatch();
+				insertProperty(insertProperty, id, PROPERTY_ID_MEDIA_LIST_NAME,
+						"Playlist " + i);
+
+				// Between 1 and about 5000 tracks, log-uniform
+				int size = Math.min(tracks,
+						(int) Math.exp(random.nextDouble() * Math.log(5000)));
+				for (int ordinal = 0; ordinal < size; ordinal++) {
+					insertMember.setInt(1, id);
+					insertMember.setInt(2, 1 + random.nextInt(tracks));
+					insertMember.setString(3, String.valueOf(ordinal));
+					insertMember.addBatch();
+					if (++playlistMembers % BATCH_SIZE == 0) {
+						insertMember.executeBatch();
+					}
+				}
+			}
+			insertItem.executeBatch();
+			insertProperty.executeBatch();
+			insertMember.executeBatch();
+		}
+	}
+
+	private static void insertProperty(PreparedStatement insertProperty,
+			int mediaItemId, int propertyId, String value) throws SQLException {
+		insertProperty.setInt(1, mediaItemId);
+		insertProperty.setInt(2, propertyId);
+		insertProperty.setString(3, value);
+		insertProperty.addBatch();
+	}
+
+	private static void createFile(File file) throws IOException {
+		File dir = file.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Unable to create directory " + dir);
+		}
+		if (!file.createNewFile() && !file.isFile()) {
+			throw new IOException("Unable to create file " + file);
+		}
+	}
+
+	/**
+	 * @return the number of tracks generated
+	 */
+	int getTracks() {
+		return tracks;
+	}
+
+	/**
+	 * @return the number of tracks whose file does not exist
+	 */
+	int getMissingFiles() {
+		return missingFiles;
+	}
+
+	/**
+	 * @return the number of playlists generated
+	 */
+	int getPlaylists() {
+		return playlists;
+	}
+
+	/**
+	 * @return the number of tracks in all playlists
+	 */
+	long getPlaylistMembers() {
+		return playlistMembers;
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+
+public class TrackCacheTest {
+
+	private final TrackCache cache = new TrackCache();
+
+	/** Tracks can be found by both URL and path after they were added. */
+	@Test
+	public void added() {
+		CachingTrack track = mock(CachingTrack.class);
+		cache.added("file:///a.mp3", "/a.mp3", track);
+
+		assertSame("Unexpected track by URL", track,
+				cache.getByContentUrl("file:///a.mp3").get());
+		assertSame("Unexpected track by path", track,
+				cache.getByPath("/a.mp3").get());
+		assertFalse("Unexpected track for other URL",
+				cache.getByContentUrl("file:///b.mp3").isPresent());
+	}
+
+	/** Different URLs pointing to the same file count as one file. */
+	@Test
+	public void sizeCountsDistinctFiles() {
+		CachingTrack track = mock(CachingTrack.class);
+		cache.added("file:///a.mp3", "/a.mp3", track);
+		cache.added("file:///x/../a.mp3", "/a.mp3", track);
+
+		assertEquals("Unexpected size", 1, cache.size());
+	}
+
+	/** Failed tracks are remembered but not returned as track. */
+	@Test
+	public void failed() {
+		cache.failed("file:///a.mp3");
+
+		assertTrue("Failed track not remembered",
+				cache.contains("file:///a.mp3"));
+		assertFalse("Failed track returned",
+				cache.getByContentUrl("file:///a.mp3").isPresent());
+	}
+}
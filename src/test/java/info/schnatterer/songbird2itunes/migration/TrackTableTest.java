@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2015 Johannes Schnatterer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.schnatterer.songbird2itunes.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import info.schnatterer.songbird2itunes.migration.MigrationPlan.PlannedTrack;
+import info.schnatterer.songbirddbapi4j.domain.Property;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class TrackTableTest {
+
+	/** All values of a track are read back from the columns. */
+	@Test
+	public void values() {
+		Map<String, String> properties = new HashMap<>();
+		properties.put(Property.PROP_ARTIST_NAME, "Motörhead");
+		properties.put(Property.PROP_TRACK_NAME, "Ace of Spades");
+		properties.put(Property.PROP_LAST_PLAY_TIME, "1420070400000");
+		properties.put(Property.PROP_LAST_SKIP_TIME, "1420070500000");
+		properties.put(Property.PROP_PLAY_COUNT, " 42 ");
+		properties.put(Property.PROP_SKIP_COUNT, "0");
+		properties.put(Property.PROP_RATING, "5");
+		List<SongbirdTrack> tracks = new ArrayList<>();
+		tracks.add(new PlannedTrack("guid-a", "file:///m%C3%BCsic/a.mp3",
+				Optional.empty(), new Date(1000), properties));
+		tracks.add(new PlannedTrack(null, "file:///b.mp3", Optional.empty(),
+				null, new HashMap<>()));
+
+		TrackTable table = TrackTable.of(tracks.iterator(), 0);
+
+		assertEquals("Unexpected size", 2, table.size());
+		SongbirdTrack a = table.get(0);
+		assertEquals("Unexpected GUID", "guid-a", a.getGuid());
+		assertEquals("Unexpected URL", "file:///m%C3%BCsic/a.mp3",
+				a.getContentUrl());
+		assertEquals("Unexpected date created", new Date(1000),
+				a.getDateCreated());
+		assertEquals("Unexpected artist", "Motörhead",
+				a.getProperty(Property.PROP_ARTIST_NAME));
+		assertEquals("Unexpected name", "Ace of Spades",
+				a.getProperty(Property.PROP_TRACK_NAME));
+		assertEquals("Unexpected last play time", new Date(1420070400000L),
+				a.getPropertyAsDate(Property.PROP_LAST_PLAY_TIME));
+		assertEquals("Unexpected last skip time", new Date(1420070500000L),
+				a.getPropertyAsDate(Property.PROP_LAST_SKIP_TIME));
+		assertEquals("Unexpected play count", "42",
+				a.getProperty(Property.PROP_PLAY_COUNT));
+		assertEquals("Unexpected skip count", Long.valueOf(0),
+				a.getPropertyAsLong(Property.PROP_SKIP_COUNT));
+		assertEquals("Unexpected rating", Long.valueOf(5),
+				a.getPropertyAsLong(Property.PROP_RATING));
+		assertNull("Unexpected property", a.getProperty("other"));
+
+		SongbirdTrack b = table.get(1);
+		assertNull("Unexpected GUID", b.getGuid());
+		assertEquals("Unexpected URL", "file:///b.mp3", b.getContentUrl());
+		assertNull("Unexpected date created", b.getDateCreated());
+		assertNull("Unexpected artist",
+				b.getProperty(Property.PROP_ARTIST_NAME));
+		assertNull("Unexpected last play time",
+				b.getPropertyAsDate(Property.PROP_LAST_PLAY_TIME));
+		assertNull("Unexpected play count",
+				b.getProperty(Property.PROP_PLAY_COUNT));
+		assertNull("Unexpected rating",
+				b.getPropertyAsLong(Property.PROP_RATING));
+	}
+
+	/** Numbers that are not a number or don't fit an int are not set. */
+	@Test
+	public void invalidNumbers() {
+		Map<String, String> properties = new HashMap<>();
+		properties.put(Property.PROP_PLAY_COUNT, "many");
+		properties.put(Property.PROP_SKIP_COUNT, "3000000000");
+		properties.put(Property.PROP_LAST_PLAY_TIME, "yesterday");
+		TrackTable table = new TrackTable(1);
+		table.add(new PlannedTrack("guid", "file:///a.mp3", Optional.empty(),
+				null, properties));
+
+		SongbirdTrack track = table.get(0);
+		assertNull("Unexpected play count",
+				track.getPropertyAsLong(Property.PROP_PLAY_COUNT));
+		assertNull("Unexpected skip count",
+				track.getPropertyAsLong(Property.PROP_SKIP_COUNT));
+		assertNull("Unexpected last play time",
+				track.getPropertyAsDate(Property.PROP_LAST_PLAY_TIME));
+	}
+
+	/** The columns grow beyond the expected size, the order is kept. */
+	@Test
+	public void grow() {
+		List<SongbirdTrack> tracks = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			Map<String, String> properties = new HashMap<>();
+			properties.put(Property.PROP_PLAY_COUNT, String.valueOf(i));
+			if (i % 3 == 0) {
+				properties.put(Property.PROP_TRACK_NAME, "Track " + i);
+			}
+			tracks.add(new PlannedTrack("guid-" + i, "file:///" + i + ".mp3",
+					Optional.empty(), new Date(i), properties));
+		}
+
+		TrackTable table = TrackTable.of(tracks.iterator(), 10);
+
+		assertEquals("Unexpected size", tracks.size(), table.size());
+		Iterator<SongbirdTrack> iterator = table.iterator();
+		for (int i = 0; i < tracks.size(); i++) {
+			SongbirdTrack track = iterator.next();
+			assertEquals("Unexpected URL", "file:///" + i + ".mp3",
+					track.getContentUrl());
+			assertEquals("Unexpected play count", Long.valueOf(i),
+					track.getPropertyAsLong(Property.PROP_PLAY_COUNT));
+			assertEquals("Unexpected name", i % 3 == 0 ? "Track " + i : null,
+					track.getProperty(Property.PROP_TRACK_NAME));
+		}
+		assertFalse("Unexpected track", iterator.hasNext());
+	}
+
+	/** Directories and artists are stored once, URLs are read back. */
+	@Test
+	public void sharedPrefixes() {
+		List<SongbirdTrack> tracks = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			Map<String, String> properties = new HashMap<>();
+			properties.put(Property.PROP_ARTIST_NAME, "Artist " + (i % 2));
+			tracks.add(new PlannedTrack("guid-" + i, "file:///D:/Music/Artist%20"
+					+ (i % 2) + "/" + i + ".mp3", Optional.empty(), null,
+					properties));
+		}
+		tracks.add(new PlannedTrack("guid-no-directory", "a.mp3",
+				Optional.empty(), null, new HashMap<>()));
+
+		TrackTable table = TrackTable.of(tracks.iterator(), 0);
+
+		// Root, "file:/", "/", "/", "D:/", "Music/", 2 artists
+		assertEquals("Unexpected directory prefixes", 8,
+				table.getDirectories());
+		for (int i = 0; i < 20; i++) {
+			SongbirdTrack track = table.get(i);
+			assertEquals("Unexpected URL", tracks.get(i).getContentUrl(),
+					track.getContentUrl());
+			assertEquals("Unexpected artist", "Artist " + (i % 2),
+					track.getProperty(Property.PROP_ARTIST_NAME));
+		}
+		assertEquals("Unexpected URL", "a.mp3", table.get(20)
+				.getContentUrl());
+	}
+
+	/** Only existing tracks can be read. */
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void outOfBounds() {
+		new TrackTable(10).get(0);
+	}
+}